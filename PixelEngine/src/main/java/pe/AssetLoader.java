@@ -0,0 +1,257 @@
+package pe;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import rutils.Logger;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Loads assets without stalling the render thread.
+ * <p>
+ * Files are read and decoded on a pool of worker threads. Anything that
+ * needs the GL context, like creating a texture, is then queued for the
+ * render thread, which runs the queue before drawing each frame until the
+ * {@link #uploadBudget() upload budget} is spent. At least one upload runs
+ * every frame, so a large asset is never held back.
+ * <p>
+ * A future that needs an upload must not be waited on from the render
+ * thread or from {@link Engine#setup()}, as the upload would never run.
+ */
+public final class AssetLoader
+{
+    private static final Logger LOGGER = new Logger();
+    
+    private static final Queue<Upload<?, ?>>       uploads  = new ConcurrentLinkedQueue<>();
+    private static final Set<CompletableFuture<?>> decoding = ConcurrentHashMap.newKeySet(); // Decodes that have not completed
+    private static final AtomicInteger             pending  = new AtomicInteger();
+    
+    private static          ExecutorService workers;
+    private static volatile boolean         running;
+    
+    private static long uploadBudget = 2_000_000L; // The time the render thread can spend on uploads each frame (ns)
+    
+    static void setup()
+    {
+        AssetLoader.LOGGER.fine("Setup");
+        
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2); // The main and render threads are busy
+        
+        AssetLoader.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AssetLoader.running = true;
+    }
+    
+    static void destroy()
+    {
+        AssetLoader.LOGGER.fine("Destroy");
+        
+        AssetLoader.running = false;
+        
+        if (AssetLoader.workers != null) AssetLoader.workers.shutdownNow();
+        AssetLoader.workers = null;
+        
+        // Decodes that never started are dropped by the workers, so nothing else would complete them
+        for (CompletableFuture<?> future : AssetLoader.decoding) future.cancel(false);
+        
+        discardUploads();
+    }
+    
+    /**
+     * Runs the queued uploads until the budget for this frame is spent.
+     * Only called on the render thread.
+     */
+    static void upload()
+    {
+        long start = System.nanoTime();
+        
+        Upload<?, ?> upload;
+        while ((upload = AssetLoader.uploads.poll()) != null)
+        {
+            upload.run();
+            
+            if (System.nanoTime() - start >= AssetLoader.uploadBudget) break;
+        }
+    }
+    
+    /**
+     * Decodes an asset on a worker thread.
+     *
+     * @param decode Reads and decodes the asset. Must not use the GL context.
+     * @return The future that is completed on a worker thread
+     */
+    public static <T> @NotNull CompletableFuture<T> load(@NotNull Supplier<T> decode)
+    {
+        ExecutorService workers = workers();
+        
+        AssetLoader.pending.incrementAndGet();
+        return decode(workers, decode, null).whenComplete((result, e) -> AssetLoader.pending.decrementAndGet());
+    }
+    
+    /**
+     * Decodes an asset on a worker thread, then uploads it on the render
+     * thread.
+     *
+     * @param decode  Reads and decodes the asset. Must not use the GL context.
+     * @param upload  Creates the asset from the decoded data. Owns the data
+     *                if it returns.
+     * @param discard Frees the decoded data if it is never uploaded, because
+     *                the future was cancelled, the upload threw or the engine
+     *                stopped.
+     * @return The future that is completed on the render thread
+     */
+    public static <T, R> @NotNull CompletableFuture<R> load(@NotNull Supplier<T> decode, @NotNull Function<T, R> upload, @NotNull Consumer<T> discard)
+    {
+        ExecutorService workers = workers();
+        
+        CompletableFuture<R> future = new CompletableFuture<>();
+        
+        AssetLoader.pending.incrementAndGet();
+        decode(workers, decode, discard).whenComplete((decoded, e) -> {
+            if (e != null)
+            {
+                AssetLoader.pending.decrementAndGet();
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            AssetLoader.uploads.offer(new Upload<>(decoded, upload, discard, future));
+            
+            // The loader was destroyed while decoding, so nothing will run the upload
+            if (!AssetLoader.running) discardUploads();
+        });
+        return future;
+    }
+    
+    /**
+     * @return The number of assets that are decoding or waiting to be uploaded
+     */
+    public static int pending()
+    {
+        return AssetLoader.pending.get();
+    }
+    
+    /**
+     * @return The time the render thread can spend on uploads each frame (ns)
+     */
+    public static long uploadBudget()
+    {
+        return AssetLoader.uploadBudget;
+    }
+    
+    /**
+     * Sets the time the render thread can spend on uploads each frame.
+     *
+     * @param nanos The budget in nanoseconds
+     */
+    public static void uploadBudget(long nanos)
+    {
+        AssetLoader.uploadBudget = Math.max(0L, nanos);
+    }
+    
+    private static @NotNull ExecutorService workers()
+    {
+        ExecutorService workers = AssetLoader.workers;
+        if (workers == null) throw new IllegalStateException("AssetLoader is not running");
+        return workers;
+    }
+    
+    /**
+     * Runs a decode on a worker thread. The future is cancelled by
+     * {@link #destroy()} if the decode has not completed by then.
+     *
+     * @param discard Frees the decoded data if the future was already
+     *                cancelled when the decode finished, or {@code null}
+     */
+    private static <T> @NotNull CompletableFuture<T> decode(@NotNull ExecutorService workers, @NotNull Supplier<T> decode, @Nullable Consumer<T> discard)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        
+        AssetLoader.decoding.add(future);
+        future.whenComplete((result, e) -> AssetLoader.decoding.remove(future));
+        
+        try
+        {
+            workers.execute(() -> {
+                if (future.isDone()) return;
+                
+                try
+                {
+                    T decoded = decode.get();
+                    if (!future.complete(decoded) && discard != null) discard.accept(decoded);
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            future.cancel(false); // The loader was destroyed on another thread
+        }
+        return future;
+    }
+    
+    private static void discardUploads()
+    {
+        Upload<?, ?> upload;
+        while ((upload = AssetLoader.uploads.poll()) != null) upload.discard();
+    }
+    
+    private static final class Upload<T, R>
+    {
+        private final T                    decoded;
+        private final Function<T, R>       upload;
+        private final Consumer<T>          discard;
+        private final CompletableFuture<R> future;
+        
+        private Upload(T decoded, Function<T, R> upload, Consumer<T> discard, CompletableFuture<R> future)
+        {
+            this.decoded = decoded;
+            this.upload  = upload;
+            this.discard = discard;
+            this.future  = future;
+        }
+        
+        private void run()
+        {
+            AssetLoader.pending.decrementAndGet();
+            
+            // Cancelled while decoding
+            if (this.future.isDone())
+            {
+                this.discard.accept(this.decoded);
+                return;
+            }
+            
+            try
+            {
+                this.future.complete(this.upload.apply(this.decoded));
+            }
+            catch (Exception e)
+            {
+                AssetLoader.LOGGER.warning("Asset upload failed:", e);
+                
+                this.discard.accept(this.decoded);
+                this.future.completeExceptionally(e);
+            }
+        }
+        
+        private void discard()
+        {
+            AssetLoader.pending.decrementAndGet();
+            
+            this.discard.accept(this.decoded);
+            this.future.cancel(false);
+        }
+    }
+}
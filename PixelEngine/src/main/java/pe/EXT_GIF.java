@@ -1,10 +1,11 @@
 package pe;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.system.MemoryStack;
-import pe.color.Color;
-import pe.color.ColorFormat;
+import pe.color.*;
 import pe.render.GL;
+import pe.render.GLReadback;
 import pe.texture.Image;
 import rutils.Logger;
 
@@ -12,24 +13,26 @@ import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 public final class EXT_GIF extends Extension
 {
     private static final Logger LOGGER = new Logger();
     
-    private static GIFEncoder encoder;
-    private static boolean    recording;
-    private static long       lastFrame;
-    private static int        frameCounter;
-    private static String     timestamp;
+    private static final Set<CompletableFuture<Boolean>> closing = ConcurrentHashMap.newKeySet(); // Recordings that are stopped but still being written
     
-    @StageMethod(stage = Stage.RENDER_SETUP)
-    static void renderSetup()
-    {
-        EXT_GIF.encoder = new GIFEncoder();
-    }
+    private static Pipeline            pipeline;
+    private static Backpressure        backpressure = Backpressure.DROP;
+    private static Supplier<Quantizer> quantizer    = NeuQuantizer::new;
+    private static boolean             recording;
+    private static long                lastFrame;
+    private static int                 frameCounter;
+    private static String              timestamp;
     
     @StageMethod(stage = Stage.POST_EVENTS)
     static void postEvents()
@@ -58,24 +61,33 @@ public final class EXT_GIF extends Extension
             // NOTE: We record one gif frame every 10 game frames
             if ((EXT_GIF.frameCounter % GIF_RECORD_FRAMERATE) == 0)
             {
+                Pipeline pipeline = EXT_GIF.pipeline;
+                
+                // A dropped frame leaves lastFrame alone, so its time goes to the next frame
+                if (!pipeline.reserve(EXT_GIF.backpressure)) return;
+                
                 long time  = Time.getNS();
                 long delta = time - EXT_GIF.lastFrame;
                 EXT_GIF.lastFrame = time;
                 
-                // Get image data for the current frame (from back buffer)
-                // NOTE: This process is quite slow... :(
-                
                 int w = Window.framebufferWidth();
                 int h = Window.framebufferHeight();
                 
-                Color.Buffer data  = GL.readFrontBuffer(0, 0, w, h);
-                Image        image = Image.load(data, w, h, 1, data.format());
-                
-                boolean result = EXT_GIF.encoder.addFrame(image, (int) (delta / 1_000_000));
+                int delay = (int) (delta / 1_000_000);
                 
-                if (!result) EXT_GIF.LOGGER.warning("Could not add frame to", EXT_GIF.timestamp);
-                
-                image.delete(); // Free image data
+                // The read does not stall the frame. The frame is handed to
+                // the encoder threads when the pixels arrive.
+                GL.readFrontBufferAsync(0, 0, w, h).whenComplete((data, error) -> {
+                    if (data != null)
+                    {
+                        pipeline.submit(Image.load(data, w, h, 1, data.format()), delay);
+                    }
+                    else
+                    {
+                        EXT_GIF.LOGGER.warning("Could not read frame for", EXT_GIF.timestamp, error);
+                        pipeline.release();
+                    }
+                });
             }
         }
     }
@@ -84,21 +96,29 @@ public final class EXT_GIF extends Extension
     static void renderDestroy()
     {
         stopRecording();
+        
+        // The files are only complete once their writers are done with them, which includes earlier recordings
+        CompletableFuture.allOf(EXT_GIF.closing.toArray(CompletableFuture[]::new)).join();
     }
     
     public static void startRecording()
     {
         if (EXT_GIF.recording) return;
         
-        EXT_GIF.recording    = true;
         EXT_GIF.lastFrame    = Time.getNS();
         EXT_GIF.frameCounter = 0;
         EXT_GIF.timestamp    = String.format("Recording - %s.gif", Time.timeStamp());
         
-        boolean result = EXT_GIF.encoder.start(EXT_GIF.timestamp, Window.framebufferWidth(), Window.framebufferHeight());
+        GIFEncoder encoder = new GIFEncoder();
+        encoder.quantizer(EXT_GIF.quantizer);
+        
+        boolean result = encoder.start(EXT_GIF.timestamp, Window.framebufferWidth(), Window.framebufferHeight());
         
         if (result)
         {
+            EXT_GIF.recording = true;
+            EXT_GIF.pipeline  = new Pipeline(encoder, EXT_GIF.timestamp);
+            
             EXT_GIF.LOGGER.info("Started GIF Recording: %s", EXT_GIF.timestamp);
         }
         else
@@ -113,9 +133,214 @@ public final class EXT_GIF extends Extension
         
         EXT_GIF.recording = false;
         
-        boolean result = EXT_GIF.encoder.finish();
+        // Frames that are still being read belong to this recording
+        GLReadback.finish();
+        
+        // The writer finishes the file on its own thread
+        String                     timestamp = EXT_GIF.timestamp;
+        CompletableFuture<Boolean> closed    = EXT_GIF.pipeline.close();
+        
+        EXT_GIF.closing.add(closed);
+        closed.whenComplete((result, e) -> EXT_GIF.closing.remove(closed));
+        closed.thenAccept(result -> EXT_GIF.LOGGER.info("Finished GIF Recording %s. Result:", timestamp, result ? "Success" : "Failure"));
+    }
+    
+    /**
+     * @return What is done with captured frames when the encoder falls behind
+     */
+    public static @NotNull Backpressure backpressure()
+    {
+        return EXT_GIF.backpressure;
+    }
+    
+    /**
+     * Sets what is done with captured frames when the encoder falls behind.
+     */
+    public static void backpressure(@NotNull Backpressure backpressure)
+    {
+        EXT_GIF.backpressure = backpressure;
+    }
+    
+    /**
+     * Sets how the colors of each frame are reduced to a palette for the
+     * recordings that are started after this. Frames are quantized on
+     * several threads at once, so the supplier is called once for each of
+     * them.
+     * <p>
+     * {@link NeuQuantizer} gives the best colors. {@link MedianCutQuantizer}
+     * and {@link OctreeQuantizer} are many times faster, and a
+     * {@link PaletteQuantizer} is the fastest and keeps colors from
+     * flickering between frames.
+     */
+    public static void quantizer(@NotNull Supplier<Quantizer> quantizer)
+    {
+        EXT_GIF.quantizer = quantizer;
+    }
+    
+    /**
+     * What the recorder does when {@link Pipeline#CAPACITY} frames are
+     * already waiting to be encoded.
+     */
+    public enum Backpressure
+    {
+        /**
+         * The frame is skipped. Its time is added to the next frame, so the
+         * recording keeps its length but is less smooth.
+         */
+        DROP,
+        
+        /**
+         * The render thread waits for the encoder. Every frame is kept at the
+         * cost of frame time.
+         */
+        BLOCK,
+    }
+    
+    /**
+     * Encodes the frames of one recording on background threads.
+     * <p>
+     * Frames are quantized and LZW compressed by a pool of worker threads,
+     * several at a time, and a single writer thread writes them to the file
+     * in the order that they were captured. A frame holds one of {@link #CAPACITY} permits
+     * from the moment it is captured until it is written, which bounds the
+     * memory used when the encoder falls behind.
+     */
+    private static final class Pipeline
+    {
+        private static final int CAPACITY = 8;
+        
+        private static final Future<Frame> END = CompletableFuture.completedFuture(null);
+        
+        private final GIFEncoder encoder;
+        private final String     fileName;
+        
+        private final Semaphore                   permits = new Semaphore(Pipeline.CAPACITY);
+        private final BlockingQueue<Future<Frame>> frames  = new LinkedBlockingQueue<>();
+        
+        private final ExecutorService            workers;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        
+        private CompletableFuture<byte[]> previous = CompletableFuture.completedFuture(null); // Only used on the render thread
+        
+        private Pipeline(@NotNull GIFEncoder encoder, @NotNull String fileName)
+        {
+            this.encoder  = encoder;
+            this.fileName = fileName;
+            
+            int workers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 2));
+            this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "gif-quantize");
+                thread.setDaemon(true);
+                return thread;
+            });
+            
+            Thread writer = new Thread(this::write, "gif-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        
+        /**
+         * Takes a permit for a frame that is about to be captured.
+         *
+         * @return If the frame should be captured
+         */
+        private boolean reserve(@NotNull Backpressure backpressure)
+        {
+            if (backpressure == Backpressure.BLOCK)
+            {
+                this.permits.acquireUninterruptibly();
+                return true;
+            }
+            if (this.permits.tryAcquire()) return true;
+            
+            EXT_GIF.LOGGER.finer("Encoder is behind, dropping frame of", this.fileName);
+            return false;
+        }
+        
+        /**
+         * Gives back the permit of a frame that could not be captured.
+         */
+        private void release()
+        {
+            this.permits.release();
+        }
+        
+        /**
+         * Queues a captured frame. The image is deleted once its pixels are
+         * extracted.
+         * <p>
+         * Each frame is diffed against the pixels of the frame before it, so
+         * its quantize step waits for those pixels, but not for the previous
+         * frame to be quantized. If they could not be read the frame is
+         * written in full.
+         */
+        private void submit(@NotNull Image image, int delay)
+        {
+            CompletableFuture<byte[]> pixels = CompletableFuture.supplyAsync(() -> {
+                try
+                {
+                    return this.encoder.getImagePixels(image);
+                }
+                finally
+                {
+                    image.delete(); // Free image data
+                }
+            }, this.workers);
+            
+            CompletableFuture<byte[]> previous = this.previous.exceptionally(e -> null);
+            this.previous = pixels;
+            
+            this.frames.add(pixels.thenCombineAsync(previous, (curr, prev) -> this.encoder.prepareFrame(curr, prev, delay), this.workers));
+        }
         
-        EXT_GIF.LOGGER.info("Finished GIF Recording. Result:", result ? "Success" : "Failure");
+        /**
+         * Lets the writer finish the file after the frames that are queued.
+         *
+         * @return The result of the recording
+         */
+        private @NotNull CompletableFuture<Boolean> close()
+        {
+            this.frames.add(Pipeline.END);
+            return this.result;
+        }
+        
+        private void write()
+        {
+            boolean success = true;
+            try
+            {
+                for (Future<Frame> frame; (frame = this.frames.take()) != Pipeline.END; )
+                {
+                    try
+                    {
+                        if (!this.encoder.writeFrame(frame.get()))
+                        {
+                            EXT_GIF.LOGGER.warning("Could not add frame to", this.fileName);
+                            success = false;
+                        }
+                    }
+                    catch (ExecutionException e)
+                    {
+                        EXT_GIF.LOGGER.warning("Could not encode frame of", this.fileName, e.getCause());
+                        success = false;
+                    }
+                    finally
+                    {
+                        this.permits.release();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                success = false;
+            }
+            finally
+            {
+                this.workers.shutdown();
+                
+                this.result.complete(this.encoder.finish() && success);
+            }
+        }
     }
     
     @SuppressWarnings("unused")
@@ -136,8 +361,16 @@ public final class EXT_GIF extends Extension
         
         // -------------------- Per Frame State -------------------- //
         
-        protected int dispose = -1;
-        protected int quality = 10;
+        protected int     dispose = -1;
+        protected int     quality = 10;
+        protected boolean delta   = true;
+        
+        protected byte[] previous; // Pixels of the last frame from addFrame
+        
+        protected Supplier<Quantizer>    quantizers = () -> new NeuQuantizer(this.quality);
+        protected ThreadLocal<Quantizer> quantizer  = ThreadLocal.withInitial(this.quantizers);
+        
+        protected final ThreadLocal<LZW> lzw = ThreadLocal.withInitial(LZW::new);
         
         protected int     transparentColor = -1;
         protected boolean transparentExact = false;
@@ -306,24 +539,152 @@ public final class EXT_GIF extends Extension
         {
             if (image == null || !this.started) return false;
             
-            try
+            if (!this.sizeSet)
             {
-                if (!this.sizeSet)
-                {
-                    // use first frame's size
-                    this.width   = image.width();
-                    this.height  = image.height();
-                    this.sizeSet = true;
-                }
+                // use first frame's size
+                this.width   = image.width();
+                this.height  = image.height();
+                this.sizeSet = true;
+            }
+            
+            // convert to correct format if necessary
+            byte[] pixels = getImagePixels(image);
+            
+            Frame frame = prepareFrame(pixels, this.previous, delay);
+            
+            this.previous = pixels;
+            
+            return writeFrame(frame);
+        }
+        
+        /**
+         * Quantizes and compresses a frame without writing anything, so it
+         * can be called for several frames at once from different threads.
+         * The size must already be set.
+         * <p>
+         * If delta frames are on, only the rectangle that changed since the
+         * previous frame is kept and the pixels in it that did not change are
+         * made transparent, so the previous frame shows through. A frame with
+         * no changes becomes a single transparent pixel.
+         *
+         * @param pixels   The pixels from {@link #getImagePixels(Image)}.
+         * @param previous The pixels of the frame shown before this one, or
+         *                 null to write the whole frame.
+         * @param delay    The time, in milliseconds, before the succeeding frame will be shown
+         * @return The frame to pass to {@link #writeFrame(Frame)}.
+         */
+        public @NotNull Frame prepareFrame(byte @NotNull [] pixels, byte @Nullable [] previous, int delay)
+        {
+            if (previous == null || !this.delta || this.transparentColor >= 0 || previous.length != pixels.length)
+            {
+                // build color table & map pixels
+                return compress(analyzePixels(pixels), 0, 0, this.width, this.height, this.transparentColor >= 0, delay);
+            }
+            
+            // find the rectangle around the changed pixels
+            int stride = this.width * 3;
+            int minX   = this.width, minY = this.height, maxX = -1, maxY = -1;
+            for (int y = 0; y < this.height; y++)
+            {
+                int row   = y * stride;
+                int first = Arrays.mismatch(pixels, row, row + stride, previous, row, row + stride);
+                if (first < 0) continue;
                 
-                // convert to correct format if necessary
-                byte[] pixels = getImagePixels(image);
+                int last = stride - 1;
+                while (pixels[row + last] == previous[row + last]) last--;
                 
-                // build color table & map pixels
-                AnalyzeResults results = analyzePixels(pixels);
+                minX = Math.min(minX, first / 3);
+                maxX = Math.max(maxX, last / 3);
+                minY = Math.min(minY, y);
+                maxY = y;
+            }
+            
+            // nothing changed, but the delay still needs a frame
+            if (maxY < 0) return compress(new AnalyzeResults(new byte[1], new byte[3], 0), 0, 0, 1, 1, true, delay);
+            
+            int cropWidth  = maxX - minX + 1;
+            int cropHeight = maxY - minY + 1;
+            
+            byte[] crop = new byte[cropWidth * cropHeight * 3];
+            for (int y = 0; y < cropHeight; y++)
+            {
+                System.arraycopy(pixels, (minY + y) * stride + minX * 3, crop, y * cropWidth * 3, cropWidth * 3);
+            }
+            
+            // build the palette with this thread's quantizer
+            Palette palette = this.quantizer.get().quantize(crop);
+            
+            byte[]    indices   = new byte[cropWidth * cropHeight];
+            boolean[] usedEntry = new boolean[256];
+            for (int y = 0, i = 0; y < cropHeight; y++)
+            {
+                for (int x = 0, k = (minY + y) * stride + minX * 3; x < cropWidth; x++, i++, k += 3)
+                {
+                    if (unchanged(pixels, previous, k)) continue;
+                    
+                    int index = palette.index(pixels[k] & 0xFF, pixels[k + 1] & 0xFF, pixels[k + 2] & 0xFF);
+                    indices[i]       = (byte) index;
+                    usedEntry[index] = true;
+                }
+            }
+            
+            // any entry that the changed pixels do not use can be transparent
+            int transparentIndex = 0;
+            while (transparentIndex < usedEntry.length && usedEntry[transparentIndex]) transparentIndex++;
+            
+            boolean transparent = transparentIndex < usedEntry.length;
+            for (int y = 0, i = 0; y < cropHeight; y++)
+            {
+                for (int x = 0, k = (minY + y) * stride + minX * 3; x < cropWidth; x++, i++, k += 3)
+                {
+                    if (!unchanged(pixels, previous, k)) continue;
+                    
+                    indices[i] = transparent ?
+                                 (byte) transparentIndex :
+                                 (byte) palette.index(pixels[k] & 0xFF, pixels[k + 1] & 0xFF, pixels[k + 2] & 0xFF);
+                }
+            }
+            
+            AnalyzeResults results = new AnalyzeResults(indices, palette.colors(), transparent ? transparentIndex : 0);
+            return compress(results, minX, minY, cropWidth, cropHeight, transparent, delay);
+        }
+        
+        /**
+         * LZW compresses the pixels of a frame with this thread's compressor.
+         */
+        protected @NotNull Frame compress(AnalyzeResults results, int x, int y, int width, int height, boolean transparent, int delay)
+        {
+            ByteBuffer data = this.lzw.get().encode(results.pixels(), Math.max(2, tableBits(results)));
+            
+            return new Frame(results, x, y, width, height, transparent, delay, Arrays.copyOf(data.array(), data.limit()));
+        }
+        
+        /**
+         * @return The bits needed to index every color table entry that a frame uses
+         */
+        protected static int tableBits(AnalyzeResults results)
+        {
+            int colors = Math.max(results.colorTable().length / 3, results.transparentIndex() + 1);
+            return Math.max(1, 32 - Integer.numberOfLeadingZeros(colors - 1));
+        }
+        
+        /**
+         * Writes a frame from {@link #prepareFrame(byte[], byte[], int)}. Frames must
+         * be written one at a time in the order that they are shown.
+         *
+         * @param frame The frame to write.
+         * @return true if successful.
+         */
+        public boolean writeFrame(@NotNull Frame frame)
+        {
+            if (!this.started) return false;
+            
+            try
+            {
+                AnalyzeResults results = frame.results();
                 
-                int colorDepth = 8;
-                int palletSize = 7;
+                // delta frames are often small, so local tables only hold the entries that are used
+                int palletSize = this.firstFrame ? 7 : tableBits(results) - 1;
                 
                 if (this.firstFrame)
                 {
@@ -331,23 +692,23 @@ public final class EXT_GIF extends Extension
                     writeLSD(palletSize);
                     
                     // global color table
-                    writePalette(results.colorTable());
+                    writePalette(results.colorTable(), palletSize);
                     
                     // use NS app extension to indicate reps
                     if (this.repeat >= 0) writeNetscapeExt();
                 }
                 
                 // write graphic control extension
-                writeGraphicCtrlExt(delay, results.transparentIndex());
+                writeGraphicCtrlExt(frame.delay(), results.transparentIndex(), frame.transparent());
                 
                 // image descriptor
-                writeImageDesc(palletSize);
+                writeImageDesc(frame.x(), frame.y(), frame.width(), frame.height(), palletSize);
                 
                 // local color table
-                if (!this.firstFrame) writePalette(results.colorTable());
+                if (!this.firstFrame) writePalette(results.colorTable(), palletSize);
                 
-                // encode and write pixel data
-                LZW.encode(results.pixels(), colorDepth, this.stream);
+                // write compressed pixel data
+                this.stream.write(frame.data());
                 
                 this.firstFrame = false;
                 
@@ -394,6 +755,12 @@ public final class EXT_GIF extends Extension
             
             this.dispose = -1;
             this.quality = 10;
+            this.delta   = true;
+            
+            this.previous = null;
+            
+            this.quantizers = () -> new NeuQuantizer(this.quality);
+            this.quantizer  = ThreadLocal.withInitial(this.quantizers);
             
             this.transparentColor = -1;
             this.transparentExact = false;
@@ -416,6 +783,18 @@ public final class EXT_GIF extends Extension
             this.dispose = Math.max(code, 0);
         }
         
+        /**
+         * Sets if frames only store what changed since the frame before them.
+         * Delta frames are left in place for the next frame to be drawn over
+         * and are not used while a transparent color is set. Default is true.
+         *
+         * @param delta If delta frames should be used.
+         */
+        public void delta(boolean delta)
+        {
+            this.delta = delta;
+        }
+        
         /**
          * Sets quality of color quantization (conversion of images
          * to the maximum 256 colors allowed by the GIF specification).
@@ -431,6 +810,19 @@ public final class EXT_GIF extends Extension
             this.quality = Math.max(quality, 1);
         }
         
+        /**
+         * Sets how the colors of each frame are reduced to a palette. Each
+         * thread that prepares frames gets its own quantizer from the
+         * supplier. Replaces {@link #quality(int)}.
+         *
+         * @param quantizers Creates a quantizer.
+         */
+        public void quantizer(@NotNull Supplier<Quantizer> quantizers)
+        {
+            this.quantizers = quantizers;
+            this.quantizer  = ThreadLocal.withInitial(quantizers);
+        }
+        
         /**
          * Sets the transparent color for the last added frame and any subsequent
          * frames. Since all colors are subject to modification in the quantization
@@ -530,9 +922,9 @@ public final class EXT_GIF extends Extension
             for (int i = 0; data.hasRemaining(); )
             {
                 Color color = data.get();
-                pixels[i++] = (byte) color.b();
-                pixels[i++] = (byte) color.g();
                 pixels[i++] = (byte) color.r();
+                pixels[i++] = (byte) color.g();
+                pixels[i++] = (byte) color.b();
             }
             if (delete) data.free();
             
@@ -548,27 +940,20 @@ public final class EXT_GIF extends Extension
             int          nPix   = len / 3;
             final byte[] pixels = new byte[nPix];
             
-            // initialize quantizer
-            final byte[]    colorTable = NeuQuantize.quantize(rawPixels, this.quality); // create reduced palette
-            final boolean[] usedEntry  = new boolean[256];
-            // convert map from BGR to RGB
-            for (int i = 0; i < colorTable.length; i += 3)
-            {
-                byte temp = colorTable[i];
-                colorTable[i]     = colorTable[i + 2];
-                colorTable[i + 2] = temp;
-                usedEntry[i / 3]  = false;
-            }
+            // build the palette with this thread's quantizer
+            Palette palette = this.quantizer.get().quantize(rawPixels);
+            
+            byte[]    colorTable = palette.colors();
+            boolean[] usedEntry  = new boolean[256];
             // map image pixels to new palette
-            int k = 0;
-            for (int i = 0; i < nPix; i++)
+            for (int i = 0, k = 0; i < nPix; i++, k += 3)
             {
-                int index = NeuQuantize.map(rawPixels[k++] & 0xFF, rawPixels[k++] & 0xFF, rawPixels[k++] & 0xFF);
+                int index = palette.index(rawPixels[k] & 0xFF, rawPixels[k + 1] & 0xFF, rawPixels[k + 2] & 0xFF);
                 pixels[i]        = (byte) index;
                 usedEntry[index] = true;
             }
             // get the closest match to transparent color if specified
-            final int transparentIndex;
+            int transparentIndex = 0;
             if (this.transparentColor > 0)
             {
                 if (this.transparentExact)
@@ -580,30 +965,17 @@ public final class EXT_GIF extends Extension
                     transparentIndex = findClosest(this.transparentColor, colorTable, usedEntry);
                 }
             }
-            else
-            {
-                transparentIndex = 0;
-            }
-            return new AnalyzeResults()
-            {
-                @Override
-                public byte[] pixels()
-                {
-                    return pixels;
-                }
-                
-                @Override
-                public byte[] colorTable()
-                {
-                    return colorTable;
-                }
-                
-                @Override
-                public int transparentIndex()
-                {
-                    return transparentIndex;
-                }
-            };
+            return new AnalyzeResults(pixels, colorTable, transparentIndex);
+        }
+        
+        /**
+         * @return If the pixel at a byte offset is the same in both frames
+         */
+        protected static boolean unchanged(byte[] pixels, byte[] previous, int offset)
+        {
+            return pixels[offset] == previous[offset] &&
+                   pixels[offset + 1] == previous[offset + 1] &&
+                   pixels[offset + 2] == previous[offset + 2];
         }
         
         // -------------------- Custom Write Methods -------------------- //
@@ -612,7 +984,7 @@ public final class EXT_GIF extends Extension
          * Writes Graphic Control Extension
          */
         @SuppressWarnings("PointlessBitwiseExpression")
-        protected void writeGraphicCtrlExt(int delay, int transIndex) throws IOException
+        protected void writeGraphicCtrlExt(int delay, int transIndex, boolean transparent) throws IOException
         {
             // extension introducer
             this.stream.write(0x21);
@@ -623,16 +995,20 @@ public final class EXT_GIF extends Extension
             // data block size
             this.stream.write(4);
             
-            int transparency, dispose;
-            if (this.transparentColor < 0)
+            int transparency = transparent ? 1 : 0;
+            
+            int dispose;
+            if (this.transparentColor >= 0)
             {
-                transparency = 0;
-                dispose      = 0; // dispose = no action
+                dispose = 2; // force clear if using transparent color
+            }
+            else if (this.delta)
+            {
+                dispose = 1; // leave in place, the next frame only draws what changed
             }
             else
             {
-                transparency = 1;
-                dispose      = 2; // force clear if using transparent color
+                dispose = 0; // dispose = no action
             }
             
             // user override
@@ -653,18 +1029,18 @@ public final class EXT_GIF extends Extension
          * Writes Image Descriptor
          */
         @SuppressWarnings("PointlessBitwiseExpression")
-        protected void writeImageDesc(int palletSize) throws IOException
+        protected void writeImageDesc(int x, int y, int width, int height, int palletSize) throws IOException
         {
             // image separator
             this.stream.write(0x2C);
             
-            // image position x,y = 0,0
-            writeShort(0);
-            writeShort(0);
+            // image position
+            writeShort(x);
+            writeShort(y);
             
             // image size
-            writeShort(this.width);
-            writeShort(this.height);
+            writeShort(width);
+            writeShort(height);
             
             // packed fields
             if (this.firstFrame)
@@ -740,10 +1116,10 @@ public final class EXT_GIF extends Extension
         /**
          * Writes color table
          */
-        protected void writePalette(byte[] colorTab) throws IOException
+        protected void writePalette(byte[] colorTab, int palletSize) throws IOException
         {
             this.stream.write(colorTab);
-            int n = (3 * 256) - colorTab.length;
+            int n = (3 << (palletSize + 1)) - colorTab.length;
             for (int i = 0; i < n; i++) this.stream.write(0);
         }
         
@@ -837,763 +1213,214 @@ public final class EXT_GIF extends Extension
         }
     }
     
-    private interface AnalyzeResults
-    {
-        byte[] pixels();
-        
-        byte[] colorTable();
-        
-        int transparentIndex();
-    }
+    private record AnalyzeResults(byte[] pixels, byte[] colorTable, int transparentIndex) {}
+    
+    /**
+     * A quantized and compressed frame that is ready to be written, covering
+     * a rectangle of the canvas.
+     */
+    private record Frame(AnalyzeResults results, int x, int y, int width, int height, boolean transparent, int delay, byte[] data) {}
     
-    private static class LZW
+    /**
+     * GIF flavoured LZW compressor.
+     * <p>
+     * The string table is indexed directly by the prefix code and the next
+     * pixel instead of being hashed, so finding a string is a single array
+     * read. Only the entries that were added are cleared when the table
+     * fills up. Codes are packed straight into sub-blocks in a buffer that
+     * is kept between frames, so the whole image data of a frame is written
+     * with one call.
+     * <p>
+     * An instance keeps its table and buffer between calls, so threads that
+     * compress at the same time each need their own.
+     */
+    static final class LZW
     {
-        /**
-         * General Defines
-         *
-         * <ul>
-         *     <li>{@link #HASH_SIZE}: 80% occupancy</li>
-         *     <li>{@link #MAX_BIT_DEPTH}</li>
-         *     <li>{@link #MAX_MAX_CODE}: Should <b>NEVER</b> generate this code</li>
-         * </ul>
-         *
-         * @noinspection JavaDoc
-         */
-        private static final int
-                HASH_SIZE     = 5003,
-                MAX_BIT_DEPTH = 12,
-                MAX_MAX_CODE  = 1 << MAX_BIT_DEPTH;
-        
-        private static final int[] MASKS = {
-                0x0000,
-                0x0001, 0x0003, 0x0007, 0x000F,
-                0x001F, 0x003F, 0x007F, 0x00FF,
-                0x01FF, 0x03FF, 0x07FF, 0x0FFF,
-                0x1FFF, 0x3FFF, 0x7FFF, 0xFFFF
-        };
+        private static final int MAX_BIT_DEPTH = 12;
+        private static final int MAX_CODE      = 1 << LZW.MAX_BIT_DEPTH; // Should NEVER generate this code
+        private static final int BLOCK_SIZE    = 255;
         
-        /**
-         * Initial Number of Bits
-         */
-        private static int initBitDepth;
+        private final char[] table = new char[LZW.MAX_CODE << 8]; // Code of each prefix code and pixel, 0 if there is none
+        private final int[]  added = new int[LZW.MAX_CODE];       // Table entries to clear on a reset
+        private       int    addedCount;
         
-        /**
-         * Number of bits/code
-         */
-        private static int bitDepth;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
         
-        /**
-         * Maximum Code, given n_bits
-         */
-        private static int maxCode;
+        private int blockStart;
+        private int blockLength;
         
-        private static int[] hashTable;
-        private static int[] codeTable;
+        private int initBitDepth;
+        private int bitDepth;
+        private int maxCode;
+        private int clearCode;
+        private int freeEntry;
         
-        /**
-         * Block Compression Parameters. After all codes are used up, and
-         * compression rate changes, start over.
-         */
-        private static boolean clearFlag = false;
+        private boolean clearFlag;
         
-        private static int clearCode;
-        private static int eofCode;
+        private int curAccum;
+        private int curBitDepth;
         
         /**
-         * First unused entry
-         */
-        private static int freeEntry;
-        
-        private static int curBitDepth;
-        private static int curAccum;
-        
-        /**
-         * Number of characters so far in this 'packet'
-         */
-        private static int accumulatorIndex;
-        
-        /**
-         * Define the storage for the packet accumulator
-         */
-        private static byte[] accumulator;
-        
-        /**
-         * Algorithm: Use open addressing double hashing (no chaining) on the
-         * prefix code / next character combination. We do a variant of Knuth's
-         * algorithm D (vol. 3, sec. 6.4) along with G. Knott's
-         * relatively-prime secondary probe.  Here, the modular division first
-         * probe is gives way to a faster exclusive-or manipulation. Also do
-         * block compression with an adaptive reset, whereby the code table is
-         * cleared when the compression ratio decreases, but after the table
-         * fills. The variable-length output codes are re-sized at this point,
-         * and a special CLEAR code is generated for the decompressor. Late
-         * addition: construct the table according to file size for noticeable
-         * speed improvement on small files. Please direct questions about this
-         * implementation to ames!jaw.
-         * <p>
-         * Maintain a BITS character long buffer (so that 8 codes will fit in
-         * it exactly). Use the VAX insv instruction to insert each code in
-         * turn. When the buffer fills up empty it and start over.
+         * Compresses an image into GIF image data: the initial code size
+         * byte, the sub-blocks and the block terminator.
          *
-         * @param data     The array of data formatted to encode.
-         * @param bitDepth The bit depth. Usually 8.
-         * @param stream   The stream to output the data.
-         * @throws IOException Writing to the stream failed.
+         * @param data     The color table index of each pixel.
+         * @param bitDepth The bits needed for the largest index.
+         * @return The compressed data, which is only valid until the next call.
          */
-        public static void encode(byte[] data, int bitDepth, OutputStream stream) throws IOException
+        @NotNull ByteBuffer encode(byte @NotNull [] data, int bitDepth)
         {
-            LZW.initBitDepth = Math.max(2, bitDepth) + 1;
-            
-            LZW.bitDepth = LZW.initBitDepth;
-            LZW.maxCode  = (1 << LZW.bitDepth) - 1;
-            
-            LZW.hashTable = new int[LZW.HASH_SIZE];
-            LZW.codeTable = new int[LZW.HASH_SIZE];
-            
-            // Set up the necessary values
-            LZW.clearFlag = false;
-            
-            LZW.clearCode = 1 << (LZW.initBitDepth - 1);
-            LZW.eofCode   = LZW.clearCode + 1;
-            LZW.freeEntry = LZW.clearCode + 2;
-            
-            LZW.curAccum    = 0;
-            LZW.curBitDepth = 0;
+            this.initBitDepth = Math.max(2, bitDepth) + 1;
             
-            LZW.accumulatorIndex = 0; // clear packet
-            LZW.accumulator      = new byte[256];
+            this.bitDepth  = this.initBitDepth;
+            this.maxCode   = (1 << this.bitDepth) - 1;
+            this.clearCode = 1 << (this.initBitDepth - 1);
+            this.freeEntry = this.clearCode + 2;
+            this.clearFlag = false;
             
-            // compress and write the pixel data
+            this.curAccum    = 0;
+            this.curBitDepth = 0;
             
-            int hashShift = 0;
-            for (int i = LZW.HASH_SIZE; i < 65536; i *= 2) ++hashShift;
-            hashShift = 8 - hashShift; // set hash code range bound
+            int eofCode = this.clearCode + 1;
             
-            Arrays.fill(LZW.hashTable, -1); // clear hash table
+            clearTable();
             
-            stream.write(LZW.initBitDepth - 1); // write "initial code size" byte
+            this.buffer.clear();
+            this.buffer.put((byte) (this.initBitDepth - 1)); // "initial code size" byte
+            startBlock();
             
-            output(LZW.clearCode, stream);
+            output(this.clearCode);
             
-            int byteIndex = 0;
-            int prevByte  = data[byteIndex] & 0xFF;
-            outer_loop:
-            for (int n = data.length; byteIndex < n; ++byteIndex)
+            if (data.length > 0)
             {
-                int curByte = data[byteIndex] & 0xFF;
+                char[] table = this.table;
                 
-                int hash      = (curByte << LZW.MAX_BIT_DEPTH) + prevByte;
-                int hashIndex = (curByte << hashShift) ^ prevByte; // xor hashing
-                
-                if (LZW.hashTable[hashIndex] == hash)
-                {
-                    prevByte = LZW.codeTable[hashIndex];
-                    continue;
-                }
-                else if (LZW.hashTable[hashIndex] >= 0) // non-empty slot
+                int prefix = data[0] & 0xFF;
+                for (int i = 1, n = data.length; i < n; i++)
                 {
-                    int secondaryHash = hashIndex == 0 ? 1 : LZW.HASH_SIZE - hashIndex; // secondary hash (after G. Knott)
-                    do
+                    int pixel = data[i] & 0xFF;
+                    int key   = (prefix << 8) | pixel;
+                    int code  = table[key];
+                    
+                    if (code != 0)
                     {
-                        if ((hashIndex -= secondaryHash) < 0) hashIndex += LZW.HASH_SIZE;
-                        
-                        if (LZW.hashTable[hashIndex] == hash)
-                        {
-                            prevByte = LZW.codeTable[hashIndex];
-                            continue outer_loop;
-                        }
-                    } while (LZW.hashTable[hashIndex] >= 0);
-                }
-                output(prevByte, stream);
-                if (LZW.freeEntry < LZW.MAX_MAX_CODE)
-                {
-                    LZW.codeTable[hashIndex] = LZW.freeEntry++; // code -> hashtable
-                    LZW.hashTable[hashIndex] = hash;
-                }
-                else
-                {
-                    Arrays.fill(LZW.hashTable, -1);
-                    LZW.freeEntry = LZW.clearCode + 2;
-                    LZW.clearFlag = true;
+                        prefix = code;
+                        continue;
+                    }
                     
-                    output(LZW.clearCode, stream);
+                    output(prefix);
+                    if (this.freeEntry < LZW.MAX_CODE)
+                    {
+                        table[key] = (char) this.freeEntry++;
+                        
+                        this.added[this.addedCount++] = key;
+                    }
+                    else
+                    {
+                        clearTable();
+                        this.freeEntry = this.clearCode + 2;
+                        this.clearFlag = true;
+                        
+                        output(this.clearCode);
+                    }
+                    prefix = pixel;
                 }
-                prevByte = curByte;
+                // Put out the final code.
+                output(prefix);
             }
-            // Put out the final code.
-            output(prevByte, stream);
-            output(LZW.eofCode, stream);
+            output(eofCode);
             
-            // write block terminator
-            stream.write(0);
-        }
-        
-        /**
-         * Add a character to the end of the current packet, and if it is 254
-         * characters, flush the packet to disk.
-         */
-        private static void writeAccumulator(byte c, OutputStream stream) throws IOException
-        {
-            LZW.accumulator[LZW.accumulatorIndex++] = c;
-            if (LZW.accumulatorIndex >= 254) flushAccumulator(stream);
-        }
-        
-        /**
-         * Flush the packet to disk, and reset the accumulator.
-         */
-        private static void flushAccumulator(OutputStream stream) throws IOException
-        {
-            if (LZW.accumulatorIndex > 0)
-            {
-                stream.write(LZW.accumulatorIndex);
-                stream.write(LZW.accumulator, 0, LZW.accumulatorIndex);
-                LZW.accumulatorIndex = 0;
-            }
-        }
-        
-        private static void output(int code, OutputStream stream) throws IOException
-        {
-            LZW.curAccum &= LZW.MASKS[LZW.curBitDepth];
-            LZW.curAccum = LZW.curBitDepth > 0 ? LZW.curAccum | (code << LZW.curBitDepth) : code;
-            LZW.curBitDepth += LZW.bitDepth;
+            // write the rest of the bits
+            if (this.curBitDepth > 0) write(this.curAccum);
             
-            while (LZW.curBitDepth >= 8)
+            if (this.blockLength > 0)
             {
-                writeAccumulator((byte) (LZW.curAccum & 0xFF), stream);
-                LZW.curAccum >>= 8;
-                LZW.curBitDepth -= 8;
+                this.buffer.put(this.blockStart, (byte) this.blockLength);
             }
-            
-            // If the next entry is going to be too big for the code size,
-            // then increase it, if possible.
-            if (LZW.freeEntry > LZW.maxCode || LZW.clearFlag)
+            else
             {
-                if (LZW.clearFlag)
-                {
-                    LZW.bitDepth  = LZW.initBitDepth;
-                    LZW.maxCode   = (1 << LZW.bitDepth) - 1;
-                    LZW.clearFlag = false;
-                }
-                else
-                {
-                    ++LZW.bitDepth;
-                    LZW.maxCode = LZW.bitDepth == LZW.MAX_BIT_DEPTH ? LZW.MAX_MAX_CODE : (1 << LZW.bitDepth) - 1;
-                }
+                this.buffer.position(this.blockStart); // drop the empty block
             }
+            this.buffer.put((byte) 0); // block terminator
             
-            if (code == LZW.eofCode)
-            {
-                // At EOF, write the rest of the buffer.
-                while (LZW.curBitDepth > 0)
-                {
-                    writeAccumulator((byte) (LZW.curAccum & 0xFF), stream);
-                    LZW.curAccum >>= 8;
-                    LZW.curBitDepth -= 8;
-                }
-                
-                flushAccumulator(stream);
-            }
+            return this.buffer.flip();
         }
-    }
-    
-    private static class NeuQuantize
-    {
-        /**
-         * Number of Colors Used
-         */
-        protected static final int NET_SIZE = 256;
-        
-        /**
-         * Four Primes near 500. Assume no image has a length so large that it is
-         * divisible by all four primes.
-         */
-        protected static final int
-                PRIME1 = 499,
-                PRIME2 = 491,
-                PRIME3 = 487,
-                PRIME4 = 503;
-        
-        /**
-         * Minimum Size for Input Image.
-         */
-        protected static final int MIN_PICTURE_BYTES = 3 * PRIME4;
-        
-        /**
-         * Network Definitions
-         *
-         * <ul>
-         *     <li>{@link #MAX_NET_POS}</li>
-         *     <li>{@link #NET_BIAS_SHIFT}: Bias for Color Values</li>
-         *     <li>{@link #N_CYCLES}: Number of Learning Cycles</li>
-         * </ul>
-         *
-         * @noinspection JavaDoc
-         */
-        protected static final int
-                MAX_NET_POS    = NET_SIZE - 1,
-                NET_BIAS_SHIFT = 4,
-                N_CYCLES       = 100;
-        
-        /**
-         * Frequency and Bias Definitions
-         *
-         * <ul>
-         *     <li>{@link #INT_BIAS_SHIFT}</li>
-         *     <li>{@link #INT_BIAS}: Bias for Fractions</li>
-         *     <li>{@link #GAMMA_SHIFT}</li>
-         *     <li>{@link #GAMMA} {@code = 1024}</li>
-         *     <li>{@link #BETA_SHIFT}</li>
-         *     <li>{@link #BETA} {@code = 1/1024}</li>
-         *     <li>{@link #BETA_GAMMA}</li>
-         * </ul>
-         *
-         * @noinspection JavaDoc
-         */
-        @SuppressWarnings("unused")
-        protected static final int
-                INT_BIAS_SHIFT = 16,
-                INT_BIAS       = 1 << INT_BIAS_SHIFT,
-                GAMMA_SHIFT    = 10,
-                GAMMA          = 1 << GAMMA_SHIFT,
-                BETA_SHIFT     = 10,
-                BETA           = INT_BIAS >> BETA_SHIFT,
-                BETA_GAMMA     = INT_BIAS << (GAMMA_SHIFT - BETA_SHIFT);
-        
-        /**
-         * Decreasing Radius Factor Definitions
-         * <p>
-         * For 256 columns, radius starts at {@code 32.0} bias by {@code 6} bits
-         * and decreases by a factor of {@code 1/30} each cycle
-         *
-         * <ul>
-         *     <li{@link #INIT_RAD}</li>
-         *     <li{@link #RADIUS_BIAS_SHIFT}</li>
-         *     <li{@link #RADIUS_BIAS}</li>
-         *     <li{@link #INIT_RADIUS}</li>
-         *     <li{@link #RADIUS_DEC}</li>
-         * </ul>
-         *
-         * @noinspection JavaDoc
-         */
-        protected static final int
-                INIT_RAD          = NET_SIZE >> 3,
-                RADIUS_BIAS_SHIFT = 6,
-                RADIUS_BIAS       = 1 << RADIUS_BIAS_SHIFT,
-                INIT_RADIUS       = INIT_RAD * RADIUS_BIAS,
-                RADIUS_DEC        = 30;
-        
-        /**
-         * Decreasing Alpha Factor Definitions
-         * <p>
-         * For 256 columns, radius starts at {@code 32.0} bias by {@code 6} bits
-         * and decreases by a factor of {@code 1/30} each cycle
-         *
-         * <ul>
-         *     <li{@link #ALPHA_BIAS_SHIFT}: Alpha starts at {@code 1.0}</li>
-         *     <li{@link #INIT_ALPHA}</li>
-         * </ul>
-         *
-         * @noinspection JavaDoc
-         */
-        protected static final int
-                ALPHA_BIAS_SHIFT = 10,
-                INIT_ALPHA       = 1 << ALPHA_BIAS_SHIFT;
-        
-        /**
-         * {@link #RAD_BIAS} and {@link #ALPHA_RAD_BIAS} used for {@link #radPower} calculation
-         *
-         * @noinspection JavaDoc, RedundantSuppression
-         */
-        protected static final int
-                RAD_BIAS_SHIFT       = 8,
-                RAD_BIAS             = 1 << RAD_BIAS_SHIFT,
-                ALPHA_RAD_BIAS_SHIFT = ALPHA_BIAS_SHIFT + RAD_BIAS_SHIFT,
-                ALPHA_RAD_BIAS       = 1 << ALPHA_RAD_BIAS_SHIFT;
-        
-        /*
-         * Types and Global Variables
-         * --------------------------
-         */
-        
-        /**
-         * The Network Itself
-         * <p>
-         * {@code network = new int[}{@link #NET_SIZE}{@code ][4]}
-         */
-        protected static int[][] network;
-        
-        /**
-         * For Network Lookup - Really 256
-         * <p>
-         * {@code netIndex = new int[256]}
-         */
-        protected static int[] netIndex;
-        
-        /**
-         * Bias and Frequency Arrays for Learning
-         * <p>
-         * {@code bias = new int[}{@link #NET_SIZE}{@code ]}
-         * <p>
-         * {@code freq = new int[}{@link #NET_SIZE}{@code ]}
-         */
-        protected static int[] bias, freq;
         
         /**
-         * radPower for pre-computation.
-         * <p>
-         * {@code radPower = new int[}{@link #INIT_RAD}{@code ]}
-         */
-        protected static int[] radPower;
-        
-        /**
-         * biased by 10 bits
-         */
-        protected static int alphaDec;
-        
-        /**
-         * Initialise network in range (0,0,0) to (255,255,255), set parameters,
-         * and create reduced palette
+         * Compresses an image and writes it to a stream.
          *
-         * @param pixels       The input image.
-         * @param sampleFactor Sampling Factor {@code [1..30]}
+         * @param data     The color table index of each pixel.
+         * @param bitDepth The bits needed for the largest index.
+         * @param stream   The stream to output the data.
+         * @throws IOException Writing to the stream failed.
          */
-        public static byte @NotNull [] quantize(byte @NotNull [] pixels, int sampleFactor)
+        void encode(byte @NotNull [] data, int bitDepth, @NotNull OutputStream stream) throws IOException
         {
-            sampleFactor = pixels.length < NeuQuantize.MIN_PICTURE_BYTES ? 1 : sampleFactor;
-            
-            NeuQuantize.network  = new int[NeuQuantize.NET_SIZE][];
-            NeuQuantize.netIndex = new int[256];
-            NeuQuantize.bias     = new int[NeuQuantize.NET_SIZE];
-            NeuQuantize.freq     = new int[NeuQuantize.NET_SIZE];
-            NeuQuantize.radPower = new int[NeuQuantize.INIT_RAD];
-            
-            NeuQuantize.alphaDec = 30 + ((sampleFactor - 1) / 3);
-            
-            for (int i = 0; i < NeuQuantize.NET_SIZE; i++)
-            {
-                int initial = (i << (NeuQuantize.NET_BIAS_SHIFT + 8)) / NeuQuantize.NET_SIZE;
-                
-                NeuQuantize.network[i] = new int[] {initial, initial, initial, 0};
-            }
-            Arrays.fill(NeuQuantize.netIndex, 0);
-            Arrays.fill(NeuQuantize.bias, 0);
-            Arrays.fill(NeuQuantize.freq, NeuQuantize.INT_BIAS / NeuQuantize.NET_SIZE); // 1/NET_SIZE
-            Arrays.fill(NeuQuantize.radPower, 0);
-            
-            learn(pixels, sampleFactor);
-            
-            // Unbias network to give byte values 0..255 and record position i to prepare for sort
-            for (int i = 0; i < NeuQuantize.NET_SIZE; i++)
-            {
-                NeuQuantize.network[i][0] >>= NeuQuantize.NET_BIAS_SHIFT;
-                NeuQuantize.network[i][1] >>= NeuQuantize.NET_BIAS_SHIFT;
-                NeuQuantize.network[i][2] >>= NeuQuantize.NET_BIAS_SHIFT;
-                NeuQuantize.network[i][3] =   i; /* record color no */
-            }
-            
-            inxBuild();
-            
-            int[] index = new int[NeuQuantize.NET_SIZE];
-            for (int i = 0; i < NeuQuantize.NET_SIZE; i++) index[NeuQuantize.network[i][3]] = i;
-            
-            byte[] map = new byte[3 * NeuQuantize.NET_SIZE];
-            for (int i = 0, k = 0; i < NeuQuantize.NET_SIZE; i++)
-            {
-                int j = index[i];
-                map[k++] = (byte) (NeuQuantize.network[j][0]);
-                map[k++] = (byte) (NeuQuantize.network[j][1]);
-                map[k++] = (byte) (NeuQuantize.network[j][2]);
-            }
-            return map;
+            ByteBuffer buffer = encode(data, bitDepth);
+            stream.write(buffer.array(), 0, buffer.limit());
         }
         
-        /**
-         * Search for BGR values 0..255 (after net is unbiased) and return color
-         * index
-         */
-        public static int map(int b, int g, int r)
+        private void clearTable()
         {
-            int bestDist = 1000; /* biggest possible dist is 256*3 */
-            int best     = -1;
-            
-            // i: index on g
-            // j: start at netIndex[g] and work outwards
-            for (int i = NeuQuantize.netIndex[g], j = i - 1; i < NeuQuantize.NET_SIZE || j >= 0; )
-            {
-                if (i < NeuQuantize.NET_SIZE)
-                {
-                    int[] p    = NeuQuantize.network[i];
-                    int   dist = p[1] - g; /* inx key */
-                    if (dist >= bestDist)
-                    {
-                        i = NeuQuantize.NET_SIZE; /* stop iter */
-                    }
-                    else
-                    {
-                        i++;
-                        dist = Math.abs(dist) + Math.abs(p[0] - b);
-                        if (dist < bestDist)
-                        {
-                            dist += Math.abs(p[2] - r);
-                            if (dist < bestDist)
-                            {
-                                bestDist = dist;
-                                best     = p[3];
-                            }
-                        }
-                    }
-                }
-                if (j >= 0)
-                {
-                    int[] p    = NeuQuantize.network[j];
-                    int   dist = g - p[1]; /* inx key - reverse dif */
-                    if (dist >= bestDist)
-                    {
-                        j = -1; /* stop iter */
-                    }
-                    else
-                    {
-                        j--;
-                        dist = Math.abs(dist) + Math.abs(p[0] - b);
-                        if (dist < bestDist)
-                        {
-                            dist += Math.abs(p[2] - r);
-                            if (dist < bestDist)
-                            {
-                                bestDist = dist;
-                                best     = p[3];
-                            }
-                        }
-                    }
-                }
-            }
-            return best;
+            for (int i = 0; i < this.addedCount; i++) this.table[this.added[i]] = 0;
+            this.addedCount = 0;
         }
         
-        /**
-         * Main Learning Loop
-         * ------------------
-         */
-        private static void learn(byte @NotNull [] pixels, int sampleFactor)
+        private void output(int code)
         {
-            int samplePixels = pixels.length / (3 * sampleFactor);
-            int alpha        = NeuQuantize.INIT_ALPHA;
-            int radius       = NeuQuantize.INIT_RADIUS;
-            int rad          = radius >> NeuQuantize.RADIUS_BIAS_SHIFT;
-            
-            // if (rad <= 1) rad = 0;
+            this.curAccum |= code << this.curBitDepth;
+            this.curBitDepth += this.bitDepth;
             
-            for (int i = 0; i < rad; i++)
+            while (this.curBitDepth >= 8)
             {
-                NeuQuantize.radPower[i] = alpha * (((rad * rad - i * i) * NeuQuantize.RAD_BIAS) / (rad * rad));
+                write(this.curAccum & 0xFF);
+                this.curAccum >>>= 8;
+                this.curBitDepth -= 8;
             }
             
-            int step;
-            if (pixels.length < NeuQuantize.MIN_PICTURE_BYTES)
-            {
-                step = 3;
-            }
-            else if ((pixels.length % NeuQuantize.PRIME1) != 0)
-            {
-                step = 3 * NeuQuantize.PRIME1;
-            }
-            else if ((pixels.length % NeuQuantize.PRIME2) != 0)
-            {
-                step = 3 * NeuQuantize.PRIME2;
-            }
-            else if ((pixels.length % NeuQuantize.PRIME3) != 0)
-            {
-                step = 3 * NeuQuantize.PRIME3;
-            }
-            else
-            {
-                step = 3 * NeuQuantize.PRIME4;
-            }
-            
-            int delta = samplePixels / NeuQuantize.N_CYCLES;
-            if (delta == 0) delta = 1;
-            for (int i = 0, pix = 0; i < samplePixels; )
-            {
-                int b = (pixels[pix] & 0xFF) << NeuQuantize.NET_BIAS_SHIFT;
-                int g = (pixels[pix + 1] & 0xFF) << NeuQuantize.NET_BIAS_SHIFT;
-                int r = (pixels[pix + 2] & 0xFF) << NeuQuantize.NET_BIAS_SHIFT;
-                
-                int bestBiasPos = contest(b, g, r);
-                
-                alterSingle(alpha, bestBiasPos, b, g, r);
-                if (rad != 0) alterNeighbours(rad, bestBiasPos, b, g, r); /* alter neighbours */
-                
-                pix += step;
-                if (pix >= pixels.length) pix -= pixels.length;
-                
-                i++;
-                
-                if (i % delta == 0)
-                {
-                    alpha -= alpha / NeuQuantize.alphaDec;
-                    radius -= radius / NeuQuantize.RADIUS_DEC;
-                    rad = radius >> NeuQuantize.RADIUS_BIAS_SHIFT;
-                    if (rad <= 1) rad = 0;
-                    for (bestBiasPos = 0; bestBiasPos < rad; bestBiasPos++)
-                    {
-                        NeuQuantize.radPower[bestBiasPos] = alpha * (((rad * rad - bestBiasPos * bestBiasPos) * NeuQuantize.RAD_BIAS) / (rad * rad));
-                    }
-                }
-            }
-        }
-        
-        /**
-         * Insertion sort of network and building of netIndex[0..255] (to do after unbias)
-         */
-        private static void inxBuild()
-        {
-            int prevCol  = 0;
-            int startPos = 0;
-            for (int i = 0; i < NeuQuantize.NET_SIZE; i++)
+            // If the next entry is going to be too big for the code size,
+            // then increase it, if possible.
+            if (this.freeEntry > this.maxCode || this.clearFlag)
             {
-                int[] p        = NeuQuantize.network[i];
-                int   smallPos = i;
-                int   smallVal = p[1]; /* index on g */
-                /* find smallest in [i..NET_SIZE-1] */
-                for (int j = i + 1; j < NeuQuantize.NET_SIZE; j++)
+                if (this.clearFlag)
                 {
-                    int[] q = NeuQuantize.network[j];
-                    if (q[1] < smallVal)
-                    { /* index on g */
-                        smallPos = j;
-                        smallVal = q[1]; /* index on g */
-                    }
-                }
-                int[] q = NeuQuantize.network[smallPos];
-                /* swap p(i) and q(smallPos) entries */
-                if (i != smallPos)
-                {
-                    int temp;
-                    
-                    temp = q[0];
-                    q[0] = p[0];
-                    p[0] = temp;
-                    temp = q[1];
-                    q[1] = p[1];
-                    p[1] = temp;
-                    temp = q[2];
-                    q[2] = p[2];
-                    p[2] = temp;
-                    temp = q[3];
-                    q[3] = p[3];
-                    p[3] = temp;
+                    this.bitDepth  = this.initBitDepth;
+                    this.maxCode   = (1 << this.bitDepth) - 1;
+                    this.clearFlag = false;
                 }
-                /* smallVal entry is now in position i */
-                if (smallVal != prevCol)
+                else
                 {
-                    NeuQuantize.netIndex[prevCol] = (startPos + i) >> 1;
-                    for (int j = prevCol + 1; j < smallVal; j++) NeuQuantize.netIndex[j] = i;
-                    prevCol  = smallVal;
-                    startPos = i;
+                    this.bitDepth++;
+                    this.maxCode = this.bitDepth == LZW.MAX_BIT_DEPTH ? LZW.MAX_CODE : (1 << this.bitDepth) - 1;
                 }
             }
-            
-            NeuQuantize.netIndex[prevCol] = (startPos + NeuQuantize.MAX_NET_POS) >> 1;
-            Arrays.fill(NeuQuantize.netIndex, prevCol + 1, NeuQuantize.netIndex.length, NeuQuantize.MAX_NET_POS); // really 256
         }
         
-        /**
-         * Move adjacent neurons by precomputed {@code alpha*(1-((i-j)^2/[r]^2))}
-         * in {@link #radPower}{@code [|i-j|]}
-         */
-        private static void alterNeighbours(int rad, int bestBiasPos, int b, int g, int r)
+        private void write(int b)
         {
-            int lo = Math.max(bestBiasPos - rad, -1);
-            int hi = Math.min(bestBiasPos + rad, NeuQuantize.NET_SIZE);
-            
-            int j = bestBiasPos + 1;
-            int k = bestBiasPos - 1;
-            int m = 1;
-            while (j < hi || k > lo)
+            if (this.blockLength == LZW.BLOCK_SIZE)
             {
-                int a = NeuQuantize.radPower[m++];
-                if (j < hi)
-                {
-                    int[] p = NeuQuantize.network[j++];
-                    try
-                    {
-                        p[0] -= (a * (p[0] - b)) / NeuQuantize.ALPHA_RAD_BIAS;
-                        p[1] -= (a * (p[1] - g)) / NeuQuantize.ALPHA_RAD_BIAS;
-                        p[2] -= (a * (p[2] - r)) / NeuQuantize.ALPHA_RAD_BIAS;
-                    }
-                    catch (Exception ignored) {}
-                }
-                if (k > lo)
-                {
-                    int[] p = NeuQuantize.network[k--];
-                    try
-                    {
-                        p[0] -= (a * (p[0] - b)) / NeuQuantize.ALPHA_RAD_BIAS;
-                        p[1] -= (a * (p[1] - g)) / NeuQuantize.ALPHA_RAD_BIAS;
-                        p[2] -= (a * (p[2] - r)) / NeuQuantize.ALPHA_RAD_BIAS;
-                    }
-                    catch (Exception ignored) {}
-                }
+                this.buffer.put(this.blockStart, (byte) LZW.BLOCK_SIZE);
+                startBlock();
             }
+            this.buffer.put((byte) b);
+            this.blockLength++;
         }
         
         /**
-         * Move neuron i towards biased (b,g,r) by factor alpha
-         */
-        private static void alterSingle(int alpha, int bestBiasPos, int b, int g, int r)
-        {
-            // alter hit neuron
-            int[] n = NeuQuantize.network[bestBiasPos];
-            n[0] -= (alpha * (n[0] - b)) / NeuQuantize.INIT_ALPHA;
-            n[1] -= (alpha * (n[1] - g)) / NeuQuantize.INIT_ALPHA;
-            n[2] -= (alpha * (n[2] - r)) / NeuQuantize.INIT_ALPHA;
-        }
-        
-        /**
-         * Search for biased BGR values
-         * <p>
-         * Finds the closest neuron (minimum distance) and updates frequency.
-         * Finds the best neuron (minimum distance-bias) and returns position.
-         * For frequently chosen neurons, {@code freq[i]} is high and
-         * {@code bias[i]} is negative.
-         * <p>
-         * {@code bias[i] = }{@link #GAMMA}{@code *((1/}{@link #NET_SIZE}{@code )-freq[i])}
+         * Reserves the length byte of the next sub-block, making sure there
+         * is room for the whole block and the terminator after it.
          */
-        private static int contest(int b, int g, int r)
+        private void startBlock()
         {
-            int bestDist     = Integer.MAX_VALUE;
-            int bestBiasDist = bestDist;
-            int bestPos      = -1;
-            int bestBiasPos  = bestPos;
-            
-            for (int i = 0; i < NeuQuantize.NET_SIZE; i++)
+            if (this.buffer.remaining() < LZW.BLOCK_SIZE + 2)
             {
-                int[] n = NeuQuantize.network[i];
-                
-                int dist = Math.abs(n[0] - b) +
-                           Math.abs(n[1] - g) +
-                           Math.abs(n[2] - r);
-                
-                if (dist < bestDist)
-                {
-                    bestDist = dist;
-                    bestPos  = i;
-                }
-                
-                int biasDist = dist - (NeuQuantize.bias[i] >> (NeuQuantize.INT_BIAS_SHIFT - NeuQuantize.NET_BIAS_SHIFT));
-                if (biasDist < bestBiasDist)
-                {
-                    bestBiasDist = biasDist;
-                    bestBiasPos  = i;
-                }
-                
-                int betaFreq = NeuQuantize.freq[i] >> NeuQuantize.BETA_SHIFT;
-                NeuQuantize.bias[i] += betaFreq << NeuQuantize.GAMMA_SHIFT;
-                NeuQuantize.freq[i] -= betaFreq;
+                ByteBuffer buffer = ByteBuffer.allocate(this.buffer.capacity() * 2);
+                this.buffer = buffer.put(this.buffer.flip());
             }
-            NeuQuantize.bias[bestPos] -= NeuQuantize.BETA_GAMMA;
-            NeuQuantize.freq[bestPos] += NeuQuantize.BETA;
-            return bestBiasPos;
+            this.blockStart  = this.buffer.position();
+            this.blockLength = 0;
+            this.buffer.put((byte) 0);
         }
     }
 }
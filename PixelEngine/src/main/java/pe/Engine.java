@@ -30,6 +30,8 @@ public abstract class Engine
     
     static boolean mainThreadRunning, renderThreadRunning;
     
+    private static final double EVENT_TIMEOUT = 0.001; // The longest the main thread waits for events, so joysticks are still polled (s)
+    
     static Random random;
     
     static boolean wireframe = false;
@@ -217,6 +219,7 @@ public abstract class Engine
             }
             
             Delegator.run.offer(task);
+            glfwPostEmptyEvent(); // Wake the main thread
         }
         
         public static void waitRunTask(@NotNull Runnable task)
@@ -228,6 +231,7 @@ public abstract class Engine
             }
             
             Delegator.waitRun.offer(task);
+            glfwPostEmptyEvent(); // Wake the main thread
             
             try
             {
@@ -245,6 +249,7 @@ public abstract class Engine
             if (Thread.currentThread().getName().equals("main")) return task.get();
             
             Delegator.waitReturn.offer(task);
+            glfwPostEmptyEvent(); // Wake the main thread
             
             try
             {
@@ -332,6 +337,7 @@ public abstract class Engine
             Engine.random              = new Random();
             
             Time.setup();
+            AssetLoader.setup();
             // Delegator.setup(); // TODO
             
             Extension.stage(Extension.Stage.PRE_SETUP);
@@ -349,13 +355,11 @@ public abstract class Engine
             
             while (Engine.mainThreadRunning)
             {
-                glfwPollEvents();
+                glfwWaitEventsTimeout(Engine.EVENT_TIMEOUT);
                 
                 Joystick.pollCallbackEmulation();
                 
                 Delegator.runTasks();
-                
-                Thread.yield();
             }
             this.latch.await();
         }
@@ -367,6 +371,8 @@ public abstract class Engine
         {
             Extension.stageCatch(Extension.Stage.PRE_DESTROY);
             
+            AssetLoader.destroy();
+            
             Engine.LOGGER.info("Instance Destroy");
             this.destroy();
             
@@ -411,6 +417,9 @@ public abstract class Engine
                     
                     Debug.handleEvents();
                     
+                    AssetLoader.upload();
+                    GLUpload.poll();
+                    
                     if (!Time.paused)
                     {
                         GLFramebuffer.bind(null);
@@ -459,6 +468,8 @@ public abstract class Engine
                     
                     Window.swap();
                     
+                    GLReadback.poll();
+                    
                     if (Engine.screenshot != null)
                     {
                         String fileName = Engine.screenshot + (!Engine.screenshot.endsWith(".png") ? ".png" : "");
@@ -466,11 +477,15 @@ public abstract class Engine
                         int w = Window.framebufferWidth();
                         int h = Window.framebufferHeight();
                         
-                        Color.Buffer data = GL.readFrontBuffer(0, 0, w, h);
-                        
-                        Image image = Image.load(data, w, h, 1, data.format());
-                        image.export(fileName);
-                        image.delete();
+                        // The pixels arrive a frame or two later and are written off the render thread
+                        GL.readFrontBufferAsync(0, 0, w, h).thenAcceptAsync(data -> {
+                            Image image = Image.load(data, w, h, 1, data.format());
+                            image.export(fileName);
+                            image.delete();
+                        }).exceptionally(e -> {
+                            Engine.LOGGER.warning("Could not save screenshot:", fileName, e);
+                            return null;
+                        });
                         
                         Engine.screenshot = null;
                     }
@@ -490,8 +505,10 @@ public abstract class Engine
                 //     // Debug.update();
                 // }
                 
-                Thread.yield();
+                Time.waitForFrame();
             }
+            
+            GLReadback.finish();
         }
         catch (Throwable e)
         {
@@ -500,6 +517,7 @@ public abstract class Engine
         finally
         {
             Engine.mainThreadRunning = false;
+            glfwPostEmptyEvent();
             
             Extension.stageCatch(Extension.Stage.RENDER_DESTROY);
             
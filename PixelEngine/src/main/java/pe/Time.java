@@ -4,6 +4,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 public final class Time
 {
@@ -19,6 +21,15 @@ public final class Time
     static final long[] frameTimesRaw = new long[512]; // actualFrameTime -> low-pass filtered (ns)
     static       long   frameTimeTarget; // The target time taken to send on rendering a frame (ns)
     
+    static final long[] frameJitter = new long[512]; // How late each frame started after its deadline (ns)
+    static       int    frameJitterIndex;            // The next entry in frameJitter to write
+    static       int    frameJitterCount;            // The number of entries in frameJitter
+    static       long   frameDeadline;               // The time that the next frame should start (ns)
+    
+    static final long MIN_SPIN   = 250_000L;   // The shortest time spun before a deadline (ns)
+    static final long MAX_SPIN   = 4_000_000L; // The longest time spun before a deadline (ns)
+    static       long sleepError = 1_000_000L; // The decaying maximum that parking overshot its timeout (ns)
+    
     static long engineTime;       // The time that since the start of the engine (ns)
     static long engineFrameCount; // The number of frames that have been rendered
     
@@ -27,20 +38,63 @@ public final class Time
         Time.start = System.nanoTime();
         
         Time.paused = false;
+        
+        Time.frameDeadline    = 0L;
+        Time.frameJitterIndex = 0;
+        Time.frameJitterCount = 0;
     }
     
     static boolean startFrame()
     {
         Time.currFrameTimestamp  = Time.getRawNS();
         Time.deltaFrameTimestamp = Time.currFrameTimestamp - Time.lastFrameTimestamp;
-        if (Time.deltaNS() >= Time.frameTimeTarget)
+        if (Time.currFrameTimestamp >= Time.frameDeadline)
         {
+            if (Time.frameTimeTarget > 0)
+            {
+                Time.frameJitter[Time.frameJitterIndex] = Time.currFrameTimestamp - Time.frameDeadline;
+                Time.frameJitterIndex = (Time.frameJitterIndex + 1) % Time.frameJitter.length;
+                Time.frameJitterCount = Math.min(Time.frameJitterCount + 1, Time.frameJitter.length);
+            }
+            
             Time.lastFrameTimestamp = Time.currFrameTimestamp;
+            
+            // Deadlines are kept on a fixed grid so that late frames do not lower the frame rate,
+            // unless a whole frame was missed, then the grid restarts from now.
+            Time.frameDeadline += Time.frameTimeTarget;
+            if (Time.frameDeadline <= Time.currFrameTimestamp) Time.frameDeadline = Time.currFrameTimestamp + Time.frameTimeTarget;
             return true;
         }
         return false;
     }
     
+    /**
+     * Waits until the next frame should start. The thread is parked until
+     * shortly before the deadline, then spins for the rest, as parking can
+     * overshoot by more than a millisecond on some platforms. The spin time
+     * follows how much parking has overshot recently.
+     */
+    static void waitForFrame()
+    {
+        long remaining;
+        while ((remaining = Time.frameDeadline - Time.getRawNS()) > Time.spinNS())
+        {
+            long timeout = remaining - Time.spinNS();
+            long parked  = Time.getRawNS();
+            
+            LockSupport.parkNanos(timeout);
+            
+            long overshoot = Time.getRawNS() - parked - timeout;
+            Time.sleepError = Math.max(overshoot, Time.sleepError - (Time.sleepError >> 4));
+        }
+        while (Time.frameDeadline - Time.getRawNS() > 0) Thread.onSpinWait();
+    }
+    
+    private static long spinNS()
+    {
+        return Math.min(Time.MIN_SPIN + Time.sleepError, Time.MAX_SPIN);
+    }
+    
     @SuppressWarnings("SuspiciousSystemArraycopy")
     static void endFrame()
     {
@@ -180,6 +234,28 @@ public final class Time
     public static void frameRate(int frameRate)
     {
         Time.frameTimeTarget = frameRate > 0 ? 1_000_000_000L / (long) frameRate : 0L;
+        Time.frameDeadline   = Time.lastFrameTimestamp + Time.frameTimeTarget;
+    }
+    
+    /**
+     * The statistics are taken over the last 512 frames that had a target
+     * frame rate. Uncapped frames are not counted.
+     *
+     * @return How late frames started after their deadline.
+     */
+    @NotNull
+    public static FrameJitter frameJitter()
+    {
+        int count = Time.frameJitterCount;
+        if (count == 0) return new FrameJitter(0, 0L, 0L, 0L);
+        
+        long[] samples = Arrays.copyOf(Time.frameJitter, count);
+        Arrays.sort(samples);
+        
+        long total = 0;
+        for (long sample : samples) total += sample;
+        
+        return new FrameJitter(count, total / count, samples[Math.min((int) (count * 0.99), count - 1)], samples[count - 1]);
     }
     
     @NotNull
@@ -187,4 +263,12 @@ public final class Time
     {
         return LocalDateTime.now().format(DateTimeFormatter.ofPattern("uuuu-MM-dd HH.mm.ss"));
     }
+    
+    /**
+     * @param frames The number of frames measured
+     * @param meanNS The average time frames started late (ns)
+     * @param p99NS  The time 99% of frames started within (ns)
+     * @param maxNS  The latest that a frame started (ns)
+     */
+    public record FrameJitter(int frames, long meanNS, long p99NS, long maxNS) {}
 }
@@ -0,0 +1,385 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Blends rows of pixels in native memory without creating {@link Color}
+ * objects.
+ * <p>
+ * There is a kernel for every {@link BlendMode}, source format and
+ * destination format. {@link BlendMode#NONE} copies or converts the
+ * pixels. {@link BlendMode#ALPHA} between two {@link ColorFormat#RGBA RGBA}
+ * images premultiplies the source and blends two channels per
+ * multiplication. Every other combination reads each pixel into ints and
+ * applies the blend equation with a switch over the enums, which gives the
+ * same results as {@link BlendMode#blend(Colorc, Colorc, Color)}.
+ * <p>
+ * Kernels hold no state, so they can be used from any thread.
+ */
+public abstract class BlendKernel
+{
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    
+    private static final BlendMode[] MODES = {
+            BlendMode.NONE,
+            BlendMode.ALPHA,
+            BlendMode.ADDITIVE,
+            BlendMode.MULTIPLICATIVE,
+            BlendMode.STENCIL,
+            BlendMode.ADD_COLORS,
+            BlendMode.SUB_COLORS,
+            BlendMode.ILLUMINATE,
+            };
+    
+    private static final int FORMATS = 4;
+    
+    private static final BlendKernel[] KERNELS = new BlendKernel[BlendKernel.MODES.length * BlendKernel.FORMATS * BlendKernel.FORMATS];
+    
+    static
+    {
+        ColorFormat[] formats = {ColorFormat.GRAY, ColorFormat.GRAY_ALPHA, ColorFormat.RGB, ColorFormat.RGBA};
+        for (int m = 0; m < BlendKernel.MODES.length; m++)
+        {
+            for (ColorFormat src : formats)
+            {
+                for (ColorFormat dst : formats)
+                {
+                    BlendKernel.KERNELS[index(m, src, dst)] = create(BlendKernel.MODES[m], src, dst);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the kernel that blends pixels of one format onto pixels of
+     * another. Kernels for the constants in {@link BlendMode} are shared,
+     * other modes get a new kernel.
+     *
+     * @param blendMode The blend mode.
+     * @param src       The format of the source pixels.
+     * @param dst       The format of the destination pixels.
+     * @return The kernel.
+     */
+    public static @NotNull BlendKernel get(@NotNull BlendMode blendMode, @NotNull ColorFormat src, @NotNull ColorFormat dst)
+    {
+        if (src == ColorFormat.UNKNOWN || dst == ColorFormat.UNKNOWN) throw new IllegalArgumentException("Cannot blend UNKNOWN color format");
+        
+        for (int m = 0; m < BlendKernel.MODES.length; m++)
+        {
+            BlendMode mode = BlendKernel.MODES[m];
+            if (mode == blendMode || mode.equals(blendMode)) return BlendKernel.KERNELS[index(m, src, dst)];
+        }
+        return create(blendMode, src, dst);
+    }
+    
+    /**
+     * Gets the kernel that blends single colors onto pixels of a format.
+     *
+     * @param blendMode The blend mode.
+     * @param dst       The format of the destination pixels.
+     * @return The kernel.
+     */
+    public static @NotNull BlendKernel get(@NotNull BlendMode blendMode, @NotNull ColorFormat dst)
+    {
+        return get(blendMode, ColorFormat.RGBA, dst);
+    }
+    
+    private static int index(int mode, ColorFormat src, ColorFormat dst)
+    {
+        return (mode * BlendKernel.FORMATS + src.ordinal()) * BlendKernel.FORMATS + dst.ordinal();
+    }
+    
+    private static BlendKernel create(BlendMode blendMode, ColorFormat src, ColorFormat dst)
+    {
+        if (blendMode.equals(BlendMode.NONE)) return new Copy(src, dst);
+        if (blendMode.equals(BlendMode.ALPHA) && src == ColorFormat.RGBA && dst == ColorFormat.RGBA) return new AlphaRGBA();
+        return new Generic(blendMode, src, dst);
+    }
+    
+    protected final ColorFormat src;
+    protected final ColorFormat dst;
+    
+    protected BlendKernel(ColorFormat src, ColorFormat dst)
+    {
+        this.src = src;
+        this.dst = dst;
+    }
+    
+    /**
+     * Blends a row of source pixels onto a row of destination pixels.
+     *
+     * @param src   The address of the first source pixel.
+     * @param dst   The address of the first destination pixel.
+     * @param count The number of pixels.
+     */
+    public abstract void blend(long src, long dst, int count);
+    
+    /**
+     * Blends one color onto a row of destination pixels.
+     *
+     * @param r     The red value of the color [{@code 0-255}]
+     * @param g     The green value of the color [{@code 0-255}]
+     * @param b     The blue value of the color [{@code 0-255}]
+     * @param a     The alpha value of the color [{@code 0-255}]
+     * @param dst   The address of the first destination pixel.
+     * @param count The number of pixels.
+     */
+    public abstract void blend(int r, int g, int b, int a, long dst, int count);
+    
+    // ----- Pixels ----- //
+    
+    // Pixels are passed around packed as 0xAABBGGRR
+    
+    private static int pack(int r, int g, int b, int a)
+    {
+        return r | (g << 8) | (b << 16) | (a << 24);
+    }
+    
+    private static int read(ColorFormat format, long address)
+    {
+        return switch (format)
+                {
+                    case GRAY -> {
+                        int gray = memGetByte(address) & 0xFF;
+                        yield pack(gray, gray, gray, 0xFF);
+                    }
+                    case GRAY_ALPHA -> {
+                        int gray = memGetByte(address) & 0xFF;
+                        yield pack(gray, gray, gray, memGetByte(address + 1) & 0xFF);
+                    }
+                    case RGB -> pack(memGetByte(address) & 0xFF, memGetByte(address + 1) & 0xFF, memGetByte(address + 2) & 0xFF, 0xFF);
+                    default -> pack(memGetByte(address) & 0xFF, memGetByte(address + 1) & 0xFF, memGetByte(address + 2) & 0xFF, memGetByte(address + 3) & 0xFF);
+                };
+    }
+    
+    private static void write(ColorFormat format, long address, int r, int g, int b, int a)
+    {
+        switch (format)
+        {
+            case GRAY -> memPutByte(address, (byte) Color.toGray(clamp(r), clamp(g), clamp(b)));
+            case GRAY_ALPHA -> {
+                memPutByte(address, (byte) Color.toGray(clamp(r), clamp(g), clamp(b)));
+                memPutByte(address + 1, (byte) clamp(a));
+            }
+            case RGB -> {
+                memPutByte(address, (byte) clamp(r));
+                memPutByte(address + 1, (byte) clamp(g));
+                memPutByte(address + 2, (byte) clamp(b));
+            }
+            default -> {
+                memPutByte(address, (byte) clamp(r));
+                memPutByte(address + 1, (byte) clamp(g));
+                memPutByte(address + 2, (byte) clamp(b));
+                memPutByte(address + 3, (byte) clamp(a));
+            }
+        }
+    }
+    
+    private static int clamp(int value)
+    {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+    
+    // ----- Kernels ----- //
+    
+    /**
+     * {@link BlendMode#NONE}: the source replaces the destination.
+     */
+    private static final class Copy extends BlendKernel
+    {
+        private Copy(ColorFormat src, ColorFormat dst)
+        {
+            super(src, dst);
+        }
+        
+        @Override
+        public void blend(long src, long dst, int count)
+        {
+            if (this.src == this.dst)
+            {
+                memCopy(src, dst, (long) count * this.src.sizeof);
+                return;
+            }
+            
+            int srcBPP = this.src.sizeof, dstBPP = this.dst.sizeof;
+            for (int i = 0; i < count; i++, src += srcBPP, dst += dstBPP)
+            {
+                int p = read(this.src, src);
+                write(this.dst, dst, p & 0xFF, (p >>> 8) & 0xFF, (p >>> 16) & 0xFF, p >>> 24);
+            }
+        }
+        
+        @Override
+        public void blend(int r, int g, int b, int a, long dst, int count)
+        {
+            if (count == 0) return;
+            
+            int dstBPP = this.dst.sizeof;
+            
+            // Write the first pixel and then double it until the row is full
+            write(this.dst, dst, r, g, b, a);
+            for (long filled = 1; filled < count; filled <<= 1)
+            {
+                memCopy(dst, dst + filled * dstBPP, Math.min(filled, count - filled) * dstBPP);
+            }
+        }
+    }
+    
+    /**
+     * {@link BlendMode#ALPHA} from {@link ColorFormat#RGBA RGBA} to
+     * {@link ColorFormat#RGBA RGBA}.
+     * <p>
+     * Each pixel is split into red/blue and green/alpha pairs, so the
+     * premultiplied source and the weighted destination are two
+     * multiplications each. Opaque and fully transparent sources skip the
+     * math.
+     */
+    private static final class AlphaRGBA extends BlendKernel
+    {
+        private static final int MASK = 0x00FF00FF;
+        
+        private AlphaRGBA()
+        {
+            super(ColorFormat.RGBA, ColorFormat.RGBA);
+        }
+        
+        @Override
+        public void blend(long src, long dst, int count)
+        {
+            for (int i = 0; i < count; i++, src += 4, dst += 4)
+            {
+                int s = memGetInt(src);
+                int a = BlendKernel.LITTLE_ENDIAN ? s >>> 24 : s & 0xFF;
+                
+                if (a == 0) continue;
+                if (a == 0xFF)
+                {
+                    memPutInt(dst, s);
+                    continue;
+                }
+                
+                int sRB = (s & AlphaRGBA.MASK) * a;
+                int sGA = ((s >>> 8) & AlphaRGBA.MASK) * a;
+                
+                memPutInt(dst, blend(sRB, sGA, 255 - a, memGetInt(dst)));
+            }
+        }
+        
+        @Override
+        public void blend(int r, int g, int b, int a, long dst, int count)
+        {
+            int s = BlendKernel.LITTLE_ENDIAN ? pack(r, g, b, a) : Integer.reverseBytes(pack(r, g, b, a));
+            
+            if (a == 0) return;
+            if (a == 0xFF)
+            {
+                for (int i = 0; i < count; i++, dst += 4) memPutInt(dst, s);
+                return;
+            }
+            
+            // The source only needs to be premultiplied once
+            int sRB = (s & AlphaRGBA.MASK) * a;
+            int sGA = ((s >>> 8) & AlphaRGBA.MASK) * a;
+            int inv = 255 - a;
+            for (int i = 0; i < count; i++, dst += 4) memPutInt(dst, blend(sRB, sGA, inv, memGetInt(dst)));
+        }
+        
+        private static int blend(int sRB, int sGA, int inv, int d)
+        {
+            int rb = div255(sRB + (d & AlphaRGBA.MASK) * inv);
+            int ga = div255(sGA + ((d >>> 8) & AlphaRGBA.MASK) * inv);
+            return rb | (ga << 8);
+        }
+        
+        /**
+         * Divides both 16-bit halves by 255, exactly for values up to
+         * {@code 255 * 255}.
+         */
+        private static int div255(int x)
+        {
+            return ((x + 0x00010001 + ((x >>> 8) & AlphaRGBA.MASK)) >>> 8) & AlphaRGBA.MASK;
+        }
+    }
+    
+    /**
+     * Any {@link BlendMode} and formats.
+     */
+    private static final class Generic extends BlendKernel
+    {
+        private final BlendEqn  eqn;
+        private final BlendFunc srcFunc;
+        private final BlendFunc dstFunc;
+        
+        private Generic(BlendMode blendMode, ColorFormat src, ColorFormat dst)
+        {
+            super(src, dst);
+            
+            this.eqn     = blendMode.blendEqn();
+            this.srcFunc = blendMode.srcFunc();
+            this.dstFunc = blendMode.dstFunc();
+        }
+        
+        @Override
+        public void blend(long src, long dst, int count)
+        {
+            int srcBPP = this.src.sizeof, dstBPP = this.dst.sizeof;
+            for (int i = 0; i < count; i++, src += srcBPP, dst += dstBPP)
+            {
+                int p = read(this.src, src);
+                blend(p & 0xFF, (p >>> 8) & 0xFF, (p >>> 16) & 0xFF, p >>> 24, dst);
+            }
+        }
+        
+        @Override
+        public void blend(int r, int g, int b, int a, long dst, int count)
+        {
+            int dstBPP = this.dst.sizeof;
+            for (int i = 0; i < count; i++, dst += dstBPP) blend(r, g, b, a, dst);
+        }
+        
+        private void blend(int rs, int gs, int bs, int as, long dst)
+        {
+            int p  = read(this.dst, dst);
+            int rd = p & 0xFF, gd = (p >>> 8) & 0xFF, bd = (p >>> 16) & 0xFF, ad = p >>> 24;
+            
+            write(this.dst, dst,
+                  apply(factor(this.srcFunc, rs, as, rd, ad) * rs, factor(this.dstFunc, rs, as, rd, ad) * rd) / 255,
+                  apply(factor(this.srcFunc, gs, as, gd, ad) * gs, factor(this.dstFunc, gs, as, gd, ad) * gd) / 255,
+                  apply(factor(this.srcFunc, bs, as, bd, ad) * bs, factor(this.dstFunc, bs, as, bd, ad) * bd) / 255,
+                  apply(factor(this.srcFunc, as, as, ad, ad) * as, factor(this.dstFunc, as, as, ad, ad) * ad) / 255);
+        }
+        
+        private int apply(int s, int d)
+        {
+            return switch (this.eqn)
+                    {
+                        case ADD -> s + d;
+                        case SUBTRACT -> s - d;
+                        case REVERSE_SUBTRACT -> d - s;
+                        case MIN -> Math.min(s, d);
+                        case MAX -> Math.max(s, d);
+                    };
+        }
+        
+        private static int factor(BlendFunc func, int cs, int as, int cd, int ad)
+        {
+            return switch (func)
+                    {
+                        case ZERO -> 0;
+                        case ONE -> 255;
+                        case SRC_COLOR -> cs;
+                        case ONE_MINUS_SRC_COLOR -> 255 - cs;
+                        case SRC_ALPHA -> as;
+                        case ONE_MINUS_SRC_ALPHA -> 255 - as;
+                        case DST_COLOR -> cd;
+                        case ONE_MINUS_DST_COLOR -> 255 - cd;
+                        case DST_ALPHA -> ad;
+                        case ONE_MINUS_DST_ALPHA -> 255 - ad;
+                    };
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Median Cut Color Quantization
+ * <p>
+ * Pixels are counted into a histogram with 5 bits per channel. Starting
+ * from one box around every color in the histogram, the box with the most
+ * pixels is split at the median of its longest side until there are enough
+ * boxes. The palette is the average color of the pixels in each box.
+ * <p>
+ * The work after the histogram only depends on the number of distinct
+ * colors, so this is the fastest of the quantizers that learn a palette.
+ */
+public class MedianCutQuantizer implements Quantizer
+{
+    private static final int BITS  = 5;
+    private static final int SHIFT = 8 - MedianCutQuantizer.BITS;
+    private static final int SIDE  = 1 << MedianCutQuantizer.BITS;
+    
+    private final int maxColors;
+    
+    private final int[]  histogram = new int[1 << (3 * MedianCutQuantizer.BITS)];
+    private final long[] sumR      = new long[1 << (3 * MedianCutQuantizer.BITS)]; // The sum of the r values of the pixels in each cell
+    private final long[] sumG      = new long[1 << (3 * MedianCutQuantizer.BITS)];
+    private final long[] sumB      = new long[1 << (3 * MedianCutQuantizer.BITS)];
+    
+    private int[] cells  = new int[1024]; // Histogram index of each distinct color
+    private int[] sorted = new int[1024];
+    
+    private final int[] boxStart = new int[Quantizer.MAX_COLORS];
+    private final int[] boxEnd   = new int[Quantizer.MAX_COLORS];
+    private final int[] boxCount = new int[Quantizer.MAX_COLORS];
+    
+    private final int[] buckets = new int[MedianCutQuantizer.SIDE + 1];
+    
+    /**
+     * @param maxColors The most colors in a palette {@code [2..256]}
+     */
+    public MedianCutQuantizer(int maxColors)
+    {
+        this.maxColors = Math.max(2, Math.min(maxColors, Quantizer.MAX_COLORS));
+    }
+    
+    public MedianCutQuantizer()
+    {
+        this(Quantizer.MAX_COLORS);
+    }
+    
+    @Override
+    public @NotNull Palette quantize(byte @NotNull [] pixels)
+    {
+        Arrays.fill(this.histogram, 0);
+        Arrays.fill(this.sumR, 0L);
+        Arrays.fill(this.sumG, 0L);
+        Arrays.fill(this.sumB, 0L);
+        for (int i = 0, n = pixels.length; i < n; i += 3)
+        {
+            int r = pixels[i] & 0xFF;
+            int g = pixels[i + 1] & 0xFF;
+            int b = pixels[i + 2] & 0xFF;
+            
+            int cell = cell(r, g, b);
+            this.histogram[cell]++;
+            this.sumR[cell] += r;
+            this.sumG[cell] += g;
+            this.sumB[cell] += b;
+        }
+        
+        int colorCount = 0;
+        for (int cell = 0; cell < this.histogram.length; cell++)
+        {
+            if (this.histogram[cell] == 0) continue;
+            if (colorCount == this.cells.length)
+            {
+                this.cells  = Arrays.copyOf(this.cells, colorCount * 2);
+                this.sorted = Arrays.copyOf(this.sorted, colorCount * 2);
+            }
+            this.cells[colorCount++] = cell;
+        }
+        if (colorCount == 0) return new Palette(new byte[3]);
+        
+        int boxes = 1;
+        this.boxStart[0] = 0;
+        this.boxEnd[0]   = colorCount;
+        this.boxCount[0] = pixels.length / 3;
+        
+        while (boxes < this.maxColors)
+        {
+            // Split the box with the most pixels that has more than one color
+            int box = -1;
+            for (int i = 0; i < boxes; i++)
+            {
+                if (this.boxEnd[i] - this.boxStart[i] > 1 && (box < 0 || this.boxCount[i] > this.boxCount[box])) box = i;
+            }
+            if (box < 0) break;
+            
+            int split = split(this.boxStart[box], this.boxEnd[box], this.boxCount[box]);
+            
+            int lowerCount = 0;
+            for (int i = this.boxStart[box]; i < split; i++) lowerCount += this.histogram[this.cells[i]];
+            
+            this.boxStart[boxes] = split;
+            this.boxEnd[boxes]   = this.boxEnd[box];
+            this.boxCount[boxes] = this.boxCount[box] - lowerCount;
+            this.boxEnd[box]     = split;
+            this.boxCount[box]   = lowerCount;
+            boxes++;
+        }
+        
+        byte[] colors = new byte[boxes * 3];
+        for (int i = 0, k = 0; i < boxes; i++)
+        {
+            long r = 0, g = 0, b = 0, count = 0;
+            for (int j = this.boxStart[i]; j < this.boxEnd[i]; j++)
+            {
+                int cell = this.cells[j];
+                
+                r += this.sumR[cell];
+                g += this.sumG[cell];
+                b += this.sumB[cell];
+                count += this.histogram[cell];
+            }
+            colors[k++] = (byte) ((r + count / 2) / count);
+            colors[k++] = (byte) ((g + count / 2) / count);
+            colors[k++] = (byte) ((b + count / 2) / count);
+        }
+        return new Palette(colors);
+    }
+    
+    /**
+     * Sorts the colors of a box along its longest side and finds where half
+     * of its pixels are on each side.
+     *
+     * @return The index of the first color of the upper box
+     */
+    private int split(int start, int end, int count)
+    {
+        int minR = MedianCutQuantizer.SIDE, minG = MedianCutQuantizer.SIDE, minB = MedianCutQuantizer.SIDE;
+        int maxR = -1, maxG = -1, maxB = -1;
+        for (int i = start; i < end; i++)
+        {
+            int cell = this.cells[i];
+            int r    = channel(cell, 0);
+            int g    = channel(cell, 1);
+            int b    = channel(cell, 2);
+            
+            minR = Math.min(minR, r);
+            maxR = Math.max(maxR, r);
+            minG = Math.min(minG, g);
+            maxG = Math.max(maxG, g);
+            minB = Math.min(minB, b);
+            maxB = Math.max(maxB, b);
+        }
+        
+        int rangeR = maxR - minR, rangeG = maxG - minG, rangeB = maxB - minB;
+        
+        int axis = rangeG >= rangeR && rangeG >= rangeB ? 1 : rangeR >= rangeB ? 0 : 2;
+        
+        // Counting sort on the chosen channel, there are only SIDE values
+        Arrays.fill(this.buckets, 0);
+        for (int i = start; i < end; i++) this.buckets[channel(this.cells[i], axis) + 1]++;
+        for (int i = 1; i <= MedianCutQuantizer.SIDE; i++) this.buckets[i] += this.buckets[i - 1];
+        for (int i = start; i < end; i++)
+        {
+            int cell = this.cells[i];
+            this.sorted[start + this.buckets[channel(cell, axis)]++] = cell;
+        }
+        System.arraycopy(this.sorted, start, this.cells, start, end - start);
+        
+        int half = count / 2;
+        int sum  = 0;
+        for (int i = start; i < end - 1; i++)
+        {
+            sum += this.histogram[this.cells[i]];
+            if (sum >= half) return i + 1;
+        }
+        return end - 1;
+    }
+    
+    private static int cell(int r, int g, int b)
+    {
+        return ((r >> MedianCutQuantizer.SHIFT) << (2 * MedianCutQuantizer.BITS)) |
+               ((g >> MedianCutQuantizer.SHIFT) << MedianCutQuantizer.BITS) |
+               (b >> MedianCutQuantizer.SHIFT);
+    }
+    
+    /**
+     * @return The r, g or b value of a cell from 0 to {@link #SIDE} - 1
+     */
+    private static int channel(int cell, int channel)
+    {
+        return (cell >> ((2 - channel) * MedianCutQuantizer.BITS)) & (MedianCutQuantizer.SIDE - 1);
+    }
+}
@@ -0,0 +1,395 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * NeuQuant Neural-Net Quantization Algorithm
+ * <p>
+ * Copyright (c) 1994 Anthony Dekker
+ * <p>
+ * NEUQUANT Neural-Net quantization algorithm by Anthony Dekker, 1994. See
+ * "Kohonen neural networks for optimal colour quantization" in "Network:
+ * Computation in Neural Systems" Vol. 5 (1994) pp 351-367. for a discussion
+ * of the algorithm.
+ * <p>
+ * Gives the best colors of the quantizers here, at the cost of training a
+ * network of 256 neurons on a sample of the pixels of every image.
+ */
+public class NeuQuantizer implements Quantizer
+{
+    /**
+     * Number of Colors Used
+     */
+    protected static final int NET_SIZE = Quantizer.MAX_COLORS;
+    
+    /**
+     * Four Primes near 500. Assume no image has a length so large that it is
+     * divisible by all four primes.
+     */
+    protected static final int
+            PRIME1 = 499,
+            PRIME2 = 491,
+            PRIME3 = 487,
+            PRIME4 = 503;
+    
+    /**
+     * Minimum Size for Input Image.
+     */
+    protected static final int MIN_PICTURE_BYTES = 3 * PRIME4;
+    
+    /**
+     * Network Definitions
+     *
+     * <ul>
+     *     <li>{@link #MAX_NET_POS}</li>
+     *     <li>{@link #NET_BIAS_SHIFT}: Bias for Color Values</li>
+     *     <li>{@link #N_CYCLES}: Number of Learning Cycles</li>
+     * </ul>
+     *
+     * @noinspection JavaDoc
+     */
+    protected static final int
+            MAX_NET_POS    = NET_SIZE - 1,
+            NET_BIAS_SHIFT = 4,
+            N_CYCLES       = 100;
+    
+    /**
+     * Frequency and Bias Definitions
+     *
+     * <ul>
+     *     <li>{@link #INT_BIAS_SHIFT}</li>
+     *     <li>{@link #INT_BIAS}: Bias for Fractions</li>
+     *     <li>{@link #GAMMA_SHIFT}</li>
+     *     <li>{@link #BETA_SHIFT}</li>
+     *     <li>{@link #BETA} {@code = 1/1024}</li>
+     *     <li>{@link #BETA_GAMMA}</li>
+     * </ul>
+     *
+     * @noinspection JavaDoc
+     */
+    protected static final int
+            INT_BIAS_SHIFT = 16,
+            INT_BIAS       = 1 << INT_BIAS_SHIFT,
+            GAMMA_SHIFT    = 10,
+            BETA_SHIFT     = 10,
+            BETA           = INT_BIAS >> BETA_SHIFT,
+            BETA_GAMMA     = INT_BIAS << (GAMMA_SHIFT - BETA_SHIFT);
+    
+    /**
+     * Decreasing Radius Factor Definitions
+     * <p>
+     * For 256 columns, radius starts at {@code 32.0} bias by {@code 6} bits
+     * and decreases by a factor of {@code 1/30} each cycle
+     *
+     * @noinspection JavaDoc
+     */
+    protected static final int
+            INIT_RAD          = NET_SIZE >> 3,
+            RADIUS_BIAS_SHIFT = 6,
+            INIT_RADIUS       = INIT_RAD * (1 << RADIUS_BIAS_SHIFT),
+            RADIUS_DEC        = 30;
+    
+    /**
+     * Decreasing Alpha Factor Definitions. Alpha starts at {@code 1.0}
+     *
+     * @noinspection JavaDoc
+     */
+    protected static final int
+            ALPHA_BIAS_SHIFT = 10,
+            INIT_ALPHA       = 1 << ALPHA_BIAS_SHIFT;
+    
+    /**
+     * {@link #RAD_BIAS} and {@link #ALPHA_RAD_BIAS} used for {@link #radPower} calculation
+     *
+     * @noinspection JavaDoc
+     */
+    protected static final int
+            RAD_BIAS_SHIFT = 8,
+            RAD_BIAS       = 1 << RAD_BIAS_SHIFT,
+            ALPHA_RAD_BIAS = 1 << (ALPHA_BIAS_SHIFT + RAD_BIAS_SHIFT);
+    
+    private final int sampleFactor;
+    
+    /**
+     * The Network Itself. Each neuron is {@code r, g, b, color index}
+     */
+    private final int[][] network  = new int[NeuQuantizer.NET_SIZE][4];
+    private final int[]   netIndex = new int[256];
+    private final int[]   bias     = new int[NeuQuantizer.NET_SIZE];
+    private final int[]   freq     = new int[NeuQuantizer.NET_SIZE];
+    private final int[]   radPower = new int[NeuQuantizer.INIT_RAD];
+    
+    /**
+     * biased by 10 bits
+     */
+    private int alphaDec;
+    
+    /**
+     * @param sampleFactor Sampling Factor {@code [1..30]}. Lower values
+     *                     learn from more pixels and give better colors, but
+     *                     are slower. 10 gives good colors at a reasonable
+     *                     speed.
+     */
+    public NeuQuantizer(int sampleFactor)
+    {
+        this.sampleFactor = Math.max(1, Math.min(sampleFactor, 30));
+    }
+    
+    public NeuQuantizer()
+    {
+        this(10);
+    }
+    
+    /**
+     * Initialise network in range (0,0,0) to (255,255,255), set parameters,
+     * and create reduced palette
+     */
+    @Override
+    public @NotNull Palette quantize(byte @NotNull [] pixels)
+    {
+        int sampleFactor = pixels.length < NeuQuantizer.MIN_PICTURE_BYTES ? 1 : this.sampleFactor;
+        
+        this.alphaDec = 30 + ((sampleFactor - 1) / 3);
+        
+        for (int i = 0; i < NeuQuantizer.NET_SIZE; i++)
+        {
+            int initial = (i << (NeuQuantizer.NET_BIAS_SHIFT + 8)) / NeuQuantizer.NET_SIZE;
+            
+            int[] n = this.network[i];
+            n[0] = n[1] = n[2] = initial;
+            n[3] = 0;
+        }
+        Arrays.fill(this.netIndex, 0);
+        Arrays.fill(this.bias, 0);
+        Arrays.fill(this.freq, NeuQuantizer.INT_BIAS / NeuQuantizer.NET_SIZE); // 1/NET_SIZE
+        Arrays.fill(this.radPower, 0);
+        
+        learn(pixels, sampleFactor);
+        
+        // Unbias network to give byte values 0..255 and record position i to prepare for sort
+        for (int i = 0; i < NeuQuantizer.NET_SIZE; i++)
+        {
+            this.network[i][0] >>= NeuQuantizer.NET_BIAS_SHIFT;
+            this.network[i][1] >>= NeuQuantizer.NET_BIAS_SHIFT;
+            this.network[i][2] >>= NeuQuantizer.NET_BIAS_SHIFT;
+            this.network[i][3] = i; /* record color no */
+        }
+        
+        inxBuild();
+        
+        int[] index = new int[NeuQuantizer.NET_SIZE];
+        for (int i = 0; i < NeuQuantizer.NET_SIZE; i++) index[this.network[i][3]] = i;
+        
+        byte[] colors = new byte[3 * NeuQuantizer.NET_SIZE];
+        for (int i = 0, k = 0; i < NeuQuantizer.NET_SIZE; i++)
+        {
+            int j = index[i];
+            colors[k++] = (byte) (this.network[j][0]);
+            colors[k++] = (byte) (this.network[j][1]);
+            colors[k++] = (byte) (this.network[j][2]);
+        }
+        return new Palette(colors);
+    }
+    
+    /**
+     * Main Learning Loop
+     */
+    private void learn(byte @NotNull [] pixels, int sampleFactor)
+    {
+        int samplePixels = pixels.length / (3 * sampleFactor);
+        int alpha        = NeuQuantizer.INIT_ALPHA;
+        int radius       = NeuQuantizer.INIT_RADIUS;
+        int rad          = radius >> NeuQuantizer.RADIUS_BIAS_SHIFT;
+        
+        for (int i = 0; i < rad; i++)
+        {
+            this.radPower[i] = alpha * (((rad * rad - i * i) * NeuQuantizer.RAD_BIAS) / (rad * rad));
+        }
+        
+        int step;
+        if (pixels.length < NeuQuantizer.MIN_PICTURE_BYTES)
+        {
+            step = 3;
+        }
+        else if ((pixels.length % NeuQuantizer.PRIME1) != 0)
+        {
+            step = 3 * NeuQuantizer.PRIME1;
+        }
+        else if ((pixels.length % NeuQuantizer.PRIME2) != 0)
+        {
+            step = 3 * NeuQuantizer.PRIME2;
+        }
+        else if ((pixels.length % NeuQuantizer.PRIME3) != 0)
+        {
+            step = 3 * NeuQuantizer.PRIME3;
+        }
+        else
+        {
+            step = 3 * NeuQuantizer.PRIME4;
+        }
+        
+        int delta = samplePixels / NeuQuantizer.N_CYCLES;
+        if (delta == 0) delta = 1;
+        for (int i = 0, pix = 0; i < samplePixels; )
+        {
+            int r = (pixels[pix] & 0xFF) << NeuQuantizer.NET_BIAS_SHIFT;
+            int g = (pixels[pix + 1] & 0xFF) << NeuQuantizer.NET_BIAS_SHIFT;
+            int b = (pixels[pix + 2] & 0xFF) << NeuQuantizer.NET_BIAS_SHIFT;
+            
+            int bestBiasPos = contest(r, g, b);
+            
+            alterSingle(alpha, bestBiasPos, r, g, b);
+            if (rad != 0) alterNeighbours(rad, bestBiasPos, r, g, b); /* alter neighbours */
+            
+            pix += step;
+            if (pix >= pixels.length) pix -= pixels.length;
+            
+            i++;
+            
+            if (i % delta == 0)
+            {
+                alpha -= alpha / this.alphaDec;
+                radius -= radius / NeuQuantizer.RADIUS_DEC;
+                rad = radius >> NeuQuantizer.RADIUS_BIAS_SHIFT;
+                if (rad <= 1) rad = 0;
+                for (int j = 0; j < rad; j++)
+                {
+                    this.radPower[j] = alpha * (((rad * rad - j * j) * NeuQuantizer.RAD_BIAS) / (rad * rad));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Insertion sort of network and building of netIndex[0..255] (to do after unbias)
+     */
+    private void inxBuild()
+    {
+        int prevCol  = 0;
+        int startPos = 0;
+        for (int i = 0; i < NeuQuantizer.NET_SIZE; i++)
+        {
+            int[] p        = this.network[i];
+            int   smallPos = i;
+            int   smallVal = p[1]; /* index on g */
+            /* find smallest in [i..NET_SIZE-1] */
+            for (int j = i + 1; j < NeuQuantizer.NET_SIZE; j++)
+            {
+                int[] q = this.network[j];
+                if (q[1] < smallVal)
+                { /* index on g */
+                    smallPos = j;
+                    smallVal = q[1]; /* index on g */
+                }
+            }
+            /* swap p(i) and q(smallPos) entries */
+            if (i != smallPos)
+            {
+                this.network[i]        = this.network[smallPos];
+                this.network[smallPos] = p;
+            }
+            /* smallVal entry is now in position i */
+            if (smallVal != prevCol)
+            {
+                this.netIndex[prevCol] = (startPos + i) >> 1;
+                for (int j = prevCol + 1; j < smallVal; j++) this.netIndex[j] = i;
+                prevCol  = smallVal;
+                startPos = i;
+            }
+        }
+        
+        this.netIndex[prevCol] = (startPos + NeuQuantizer.MAX_NET_POS) >> 1;
+        Arrays.fill(this.netIndex, prevCol + 1, this.netIndex.length, NeuQuantizer.MAX_NET_POS); // really 256
+    }
+    
+    /**
+     * Move adjacent neurons by precomputed {@code alpha*(1-((i-j)^2/[r]^2))}
+     * in {@link #radPower}{@code [|i-j|]}
+     */
+    private void alterNeighbours(int rad, int bestBiasPos, int r, int g, int b)
+    {
+        int lo = Math.max(bestBiasPos - rad, -1);
+        int hi = Math.min(bestBiasPos + rad, NeuQuantizer.NET_SIZE);
+        
+        int j = bestBiasPos + 1;
+        int k = bestBiasPos - 1;
+        int m = 1;
+        while (j < hi || k > lo)
+        {
+            int a = this.radPower[m++];
+            if (j < hi)
+            {
+                int[] p = this.network[j++];
+                p[0] -= (a * (p[0] - r)) / NeuQuantizer.ALPHA_RAD_BIAS;
+                p[1] -= (a * (p[1] - g)) / NeuQuantizer.ALPHA_RAD_BIAS;
+                p[2] -= (a * (p[2] - b)) / NeuQuantizer.ALPHA_RAD_BIAS;
+            }
+            if (k > lo)
+            {
+                int[] p = this.network[k--];
+                p[0] -= (a * (p[0] - r)) / NeuQuantizer.ALPHA_RAD_BIAS;
+                p[1] -= (a * (p[1] - g)) / NeuQuantizer.ALPHA_RAD_BIAS;
+                p[2] -= (a * (p[2] - b)) / NeuQuantizer.ALPHA_RAD_BIAS;
+            }
+        }
+    }
+    
+    /**
+     * Move neuron i towards biased (r,g,b) by factor alpha
+     */
+    private void alterSingle(int alpha, int bestBiasPos, int r, int g, int b)
+    {
+        // alter hit neuron
+        int[] n = this.network[bestBiasPos];
+        n[0] -= (alpha * (n[0] - r)) / NeuQuantizer.INIT_ALPHA;
+        n[1] -= (alpha * (n[1] - g)) / NeuQuantizer.INIT_ALPHA;
+        n[2] -= (alpha * (n[2] - b)) / NeuQuantizer.INIT_ALPHA;
+    }
+    
+    /**
+     * Search for biased RGB values
+     * <p>
+     * Finds the closest neuron (minimum distance) and updates frequency.
+     * Finds the best neuron (minimum distance-bias) and returns position.
+     * For frequently chosen neurons, {@code freq[i]} is high and
+     * {@code bias[i]} is negative.
+     */
+    private int contest(int r, int g, int b)
+    {
+        int bestDist     = Integer.MAX_VALUE;
+        int bestBiasDist = bestDist;
+        int bestPos      = -1;
+        int bestBiasPos  = bestPos;
+        
+        for (int i = 0; i < NeuQuantizer.NET_SIZE; i++)
+        {
+            int[] n = this.network[i];
+            
+            int dist = Math.abs(n[0] - r) +
+                       Math.abs(n[1] - g) +
+                       Math.abs(n[2] - b);
+            
+            if (dist < bestDist)
+            {
+                bestDist = dist;
+                bestPos  = i;
+            }
+            
+            int biasDist = dist - (this.bias[i] >> (NeuQuantizer.INT_BIAS_SHIFT - NeuQuantizer.NET_BIAS_SHIFT));
+            if (biasDist < bestBiasDist)
+            {
+                bestBiasDist = biasDist;
+                bestBiasPos  = i;
+            }
+            
+            int betaFreq = this.freq[i] >> NeuQuantizer.BETA_SHIFT;
+            this.bias[i] += betaFreq << NeuQuantizer.GAMMA_SHIFT;
+            this.freq[i] -= betaFreq;
+        }
+        this.bias[bestPos] -= NeuQuantizer.BETA_GAMMA;
+        this.freq[bestPos] += NeuQuantizer.BETA;
+        return bestBiasPos;
+    }
+}
@@ -0,0 +1,169 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Octree Color Quantization
+ * <p>
+ * Every pixel is added to a tree that splits the color cube in eight at
+ * each level, down to one leaf per distinct color. Whenever there are more
+ * leaves than colors, the deepest node with children is folded into a
+ * single leaf. The palette is the average color of each remaining leaf.
+ * <p>
+ * Looks at every pixel once and is several times faster than
+ * {@link NeuQuantizer}. Large flat areas keep their exact color, which
+ * suits user interfaces well, while smooth gradients band more.
+ */
+public class OctreeQuantizer implements Quantizer
+{
+    private static final int MAX_DEPTH = 8;
+    
+    private final int maxColors;
+    
+    // Nodes are stored in parallel arrays that are kept between images.
+    // Node 0 is the root and a child index of 0 means no child.
+    private int[]     children = new int[8 * 1024];
+    private long[]    sums     = new long[3 * 1024];
+    private int[]     counts   = new int[1024];
+    private boolean[] leaves   = new boolean[1024];
+    private int[]     next     = new int[1024];
+    
+    private final int[] reducible = new int[OctreeQuantizer.MAX_DEPTH]; // Head of the reducible node list of each level
+    
+    private int nodeCount;
+    private int leafCount;
+    
+    /**
+     * @param maxColors The most colors in a palette {@code [2..256]}
+     */
+    public OctreeQuantizer(int maxColors)
+    {
+        this.maxColors = Math.max(2, Math.min(maxColors, Quantizer.MAX_COLORS));
+    }
+    
+    public OctreeQuantizer()
+    {
+        this(Quantizer.MAX_COLORS);
+    }
+    
+    @Override
+    public @NotNull Palette quantize(byte @NotNull [] pixels)
+    {
+        this.nodeCount = 0;
+        this.leafCount = 0;
+        Arrays.fill(this.reducible, -1);
+        
+        newNode(0);
+        
+        for (int i = 0, n = pixels.length; i < n; i += 3)
+        {
+            add(pixels[i] & 0xFF, pixels[i + 1] & 0xFF, pixels[i + 2] & 0xFF);
+            
+            while (this.leafCount > this.maxColors) reduce();
+        }
+        
+        byte[] colors = new byte[Math.max(this.leafCount, 1) * 3];
+        
+        int k = 0;
+        for (int node = 0; node < this.nodeCount; node++)
+        {
+            // Folded nodes are still in the arrays but have no pixels
+            if (!this.leaves[node] || this.counts[node] == 0) continue;
+            
+            int count = this.counts[node];
+            colors[k++] = (byte) (this.sums[node * 3] / count);
+            colors[k++] = (byte) (this.sums[node * 3 + 1] / count);
+            colors[k++] = (byte) (this.sums[node * 3 + 2] / count);
+        }
+        return new Palette(k == colors.length ? colors : Arrays.copyOf(colors, Math.max(k, 3)));
+    }
+    
+    private void add(int r, int g, int b)
+    {
+        int node = 0;
+        for (int level = 0; !this.leaves[node]; level++)
+        {
+            int shift = 7 - level;
+            int child = ((r >> shift) & 1) << 2 | ((g >> shift) & 1) << 1 | ((b >> shift) & 1);
+            
+            int index = node * 8 + child;
+            if (this.children[index] == 0)
+            {
+                // newNode can grow the arrays, so it has to run before the store
+                int created = newNode(level + 1);
+                this.children[index] = created;
+            }
+            node = this.children[index];
+        }
+        this.sums[node * 3] += r;
+        this.sums[node * 3 + 1] += g;
+        this.sums[node * 3 + 2] += b;
+        this.counts[node]++;
+    }
+    
+    private int newNode(int level)
+    {
+        int node = this.nodeCount++;
+        if (node == this.counts.length)
+        {
+            int capacity = node * 2;
+            
+            this.children = Arrays.copyOf(this.children, capacity * 8);
+            this.sums     = Arrays.copyOf(this.sums, capacity * 3);
+            this.counts   = Arrays.copyOf(this.counts, capacity);
+            this.leaves   = Arrays.copyOf(this.leaves, capacity);
+            this.next     = Arrays.copyOf(this.next, capacity);
+        }
+        
+        Arrays.fill(this.children, node * 8, node * 8 + 8, 0);
+        this.sums[node * 3]     = 0;
+        this.sums[node * 3 + 1] = 0;
+        this.sums[node * 3 + 2] = 0;
+        this.counts[node]       = 0;
+        
+        if (level == OctreeQuantizer.MAX_DEPTH)
+        {
+            this.leaves[node] = true;
+            this.leafCount++;
+        }
+        else
+        {
+            this.leaves[node]     = false;
+            this.next[node]       = this.reducible[level];
+            this.reducible[level] = node;
+        }
+        return node;
+    }
+    
+    /**
+     * Folds the most recently added node of the deepest level into a leaf.
+     */
+    private void reduce()
+    {
+        int level = OctreeQuantizer.MAX_DEPTH - 1;
+        while (this.reducible[level] < 0) level--;
+        
+        int node = this.reducible[level];
+        this.reducible[level] = this.next[node];
+        
+        int removed = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            int child = this.children[node * 8 + i];
+            if (child == 0) continue;
+            
+            this.sums[node * 3] += this.sums[child * 3];
+            this.sums[node * 3 + 1] += this.sums[child * 3 + 1];
+            this.sums[node * 3 + 2] += this.sums[child * 3 + 2];
+            this.counts[node] += this.counts[child];
+            
+            this.counts[child] = 0;
+            this.children[node * 8 + i] = 0;
+            removed++;
+        }
+        this.leaves[node] = true;
+        this.leafCount -= removed - 1;
+    }
+}
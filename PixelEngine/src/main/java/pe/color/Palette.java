@@ -0,0 +1,248 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * An indexed set of up to {@link Quantizer#MAX_COLORS} RGB colors.
+ * <p>
+ * Colors are mapped to an index through a lookup table with 6 bits per
+ * channel. Each entry is filled in the first time a color in its cell is
+ * looked up, so a palette that is used for many images, like the one from
+ * a {@link PaletteQuantizer}, only searches for each cell once. A cell that
+ * is not closest to one color everywhere keeps the few colors that can be
+ * closest to a point in it, and those are searched for each lookup, so the
+ * result is always exact. An entry always gets the same value and an empty
+ * entry is zero, so a palette can be shared between threads.
+ */
+public final class Palette
+{
+    private static final int LOOKUP_BITS  = 6;
+    private static final int LOOKUP_SHIFT = 8 - Palette.LOOKUP_BITS;
+    private static final int LOOKUP_STEP  = 1 << Palette.LOOKUP_SHIFT;
+    
+    private static final short SHARED = -1; // The cell is closest to more than one color
+    
+    private final byte[] colors;
+    private final int    size;
+    
+    private short[]  lookup; // index + 1, SHARED, or 0 if the cell has not been searched
+    private Shared[] shared; // The colors that can be closest in each SHARED cell
+    
+    /**
+     * @param colors The colors as tightly packed RGB triplets.
+     */
+    public Palette(byte @NotNull [] colors)
+    {
+        if (colors.length % 3 != 0) throw new IllegalArgumentException("Colors must be RGB triplets: " + colors.length);
+        
+        this.size = colors.length / 3;
+        
+        if (this.size < 1 || this.size > Quantizer.MAX_COLORS) throw new IllegalArgumentException("Invalid Palette Size: " + this.size);
+        
+        this.colors = colors.clone();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "Palette{" + "size=" + this.size + '}';
+    }
+    
+    /**
+     * @return The number of colors
+     */
+    public int size()
+    {
+        return this.size;
+    }
+    
+    /**
+     * @return The r component of a color
+     */
+    public int r(int index)
+    {
+        return this.colors[index * 3] & 0xFF;
+    }
+    
+    /**
+     * @return The g component of a color
+     */
+    public int g(int index)
+    {
+        return this.colors[index * 3 + 1] & 0xFF;
+    }
+    
+    /**
+     * @return The b component of a color
+     */
+    public int b(int index)
+    {
+        return this.colors[index * 3 + 2] & 0xFF;
+    }
+    
+    /**
+     * @return A copy of the colors as tightly packed RGB triplets
+     */
+    public byte @NotNull [] colors()
+    {
+        return this.colors.clone();
+    }
+    
+    /**
+     * Searches every color for the one that is closest to a color.
+     *
+     * @return The index of the closest color
+     */
+    public int nearest(int r, int g, int b)
+    {
+        int best     = 0;
+        int bestDist = Integer.MAX_VALUE;
+        for (int i = 0, k = 0; i < this.size; i++)
+        {
+            int dr = r - (this.colors[k++] & 0xFF);
+            int dg = g - (this.colors[k++] & 0xFF);
+            int db = b - (this.colors[k++] & 0xFF);
+            
+            int dist = dr * dr + dg * dg + db * db;
+            if (dist < bestDist)
+            {
+                bestDist = dist;
+                best     = i;
+                if (dist == 0) break;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Finds the color that is closest to a color through the lookup table.
+     * The result is always the same as {@link #nearest(int, int, int)}.
+     *
+     * @return The index of the color
+     */
+    public int index(int r, int g, int b)
+    {
+        short[] lookup = this.lookup;
+        if (lookup == null) this.lookup = lookup = new short[1 << (3 * Palette.LOOKUP_BITS)];
+        
+        int cell = ((r >> Palette.LOOKUP_SHIFT) << (2 * Palette.LOOKUP_BITS)) |
+                   ((g >> Palette.LOOKUP_SHIFT) << Palette.LOOKUP_BITS) |
+                   (b >> Palette.LOOKUP_SHIFT);
+        
+        short entry = lookup[cell];
+        if (entry > 0) return entry - 1;
+        
+        Shared[] shared = this.shared;
+        if (shared == null) this.shared = shared = new Shared[lookup.length];
+        
+        Shared candidates = shared[cell];
+        if (candidates == null)
+        {
+            // Another thread may have marked the cell without the candidates being visible yet, so they are found again
+            int mask = ~(Palette.LOOKUP_STEP - 1);
+            
+            candidates = candidates(r & mask, g & mask, b & mask);
+            if (candidates.indices.length == 1)
+            {
+                int index = candidates.indices[0] & 0xFF;
+                lookup[cell] = (short) (index + 1);
+                return index;
+            }
+            shared[cell] = candidates;
+            lookup[cell] = Palette.SHARED;
+        }
+        
+        int best     = 0;
+        int bestDist = Integer.MAX_VALUE;
+        for (byte candidate : candidates.indices)
+        {
+            int i = candidate & 0xFF, k = i * 3;
+            
+            int dr = r - (this.colors[k] & 0xFF);
+            int dg = g - (this.colors[k + 1] & 0xFF);
+            int db = b - (this.colors[k + 2] & 0xFF);
+            
+            int dist = dr * dr + dg * dg + db * db;
+            if (dist < bestDist)
+            {
+                bestDist = dist;
+                best     = i;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Finds the colors that can be the closest to a point in a lookup cell.
+     * A color can only be closest if its nearest distance to the cell is not
+     * more than the farthest distance to the cell of some color.
+     *
+     * @return The indices of the colors, in ascending order
+     */
+    private @NotNull Shared candidates(int minR, int minG, int minB)
+    {
+        int maxR = minR + Palette.LOOKUP_STEP - 1;
+        int maxG = minG + Palette.LOOKUP_STEP - 1;
+        int maxB = minB + Palette.LOOKUP_STEP - 1;
+        
+        int minFar = Integer.MAX_VALUE;
+        for (int i = 0, k = 0; i < this.size; i++)
+        {
+            int far = far(this.colors[k++] & 0xFF, minR, maxR) +
+                      far(this.colors[k++] & 0xFF, minG, maxG) +
+                      far(this.colors[k++] & 0xFF, minB, maxB);
+            minFar = Math.min(minFar, far);
+        }
+        
+        byte[] indices = new byte[this.size];
+        int    count   = 0;
+        for (int i = 0, k = 0; i < this.size; i++, k += 3)
+        {
+            int near = near(this.colors[k] & 0xFF, minR, maxR) +
+                       near(this.colors[k + 1] & 0xFF, minG, maxG) +
+                       near(this.colors[k + 2] & 0xFF, minB, maxB);
+            if (near <= minFar) indices[count++] = (byte) i;
+        }
+        return new Shared(Arrays.copyOf(indices, count));
+    }
+    
+    /**
+     * @return The squared distance from a value to the closest end of a range
+     */
+    private static int near(int value, int min, int max)
+    {
+        int d = value < min ? min - value : value > max ? value - max : 0;
+        return d * d;
+    }
+    
+    /**
+     * @return The squared distance from a value to the farthest end of a range
+     */
+    private static int far(int value, int min, int max)
+    {
+        int d = Math.max(value - min, max - value);
+        return d * d;
+    }
+    
+    /**
+     * Maps every pixel of an image to the index of its color.
+     *
+     * @param pixels  The image as tightly packed RGB triplets.
+     * @param indices The destination, one byte per pixel.
+     */
+    public void map(byte @NotNull [] pixels, byte @NotNull [] indices)
+    {
+        for (int i = 0, k = 0, n = pixels.length / 3; i < n; i++, k += 3)
+        {
+            indices[i] = (byte) index(pixels[k] & 0xFF, pixels[k + 1] & 0xFF, pixels[k + 2] & 0xFF);
+        }
+    }
+    
+    /**
+     * The indices are only read after the record is constructed, so they
+     * are safely published through its final field.
+     */
+    private record Shared(byte[] indices) {}
+}
@@ -0,0 +1,58 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Quantizes every image to the same palette.
+ * <p>
+ * Nothing is learned from the image, so this is the fastest quantizer and
+ * the colors do not shift between frames of an animation. The palette
+ * keeps its lookup table, so after the first few frames mapping a pixel
+ * is a single table read. It holds no other state, so one instance can be
+ * used from any number of threads.
+ */
+public class PaletteQuantizer implements Quantizer
+{
+    /**
+     * @return A quantizer for 252 colors evenly spread over six levels of
+     * red, seven of green and six of blue
+     */
+    public static @NotNull PaletteQuantizer uniform()
+    {
+        byte[] colors = new byte[6 * 7 * 6 * 3];
+        for (int r = 0, k = 0; r < 6; r++)
+        {
+            for (int g = 0; g < 7; g++)
+            {
+                for (int b = 0; b < 6; b++)
+                {
+                    colors[k++] = (byte) (r * 255 / 5);
+                    colors[k++] = (byte) (g * 255 / 6);
+                    colors[k++] = (byte) (b * 255 / 5);
+                }
+            }
+        }
+        return new PaletteQuantizer(new Palette(colors));
+    }
+    
+    private final Palette palette;
+    
+    public PaletteQuantizer(@NotNull Palette palette)
+    {
+        this.palette = palette;
+    }
+    
+    /**
+     * @return The palette that every image is quantized to
+     */
+    public @NotNull Palette palette()
+    {
+        return this.palette;
+    }
+    
+    @Override
+    public @NotNull Palette quantize(byte @NotNull [] pixels)
+    {
+        return this.palette;
+    }
+}
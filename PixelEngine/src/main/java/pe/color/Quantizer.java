@@ -0,0 +1,25 @@
+package pe.color;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reduces the colors of an image to a {@link Palette} of at most
+ * {@link #MAX_COLORS} colors.
+ * <p>
+ * Implementations keep their working memory between calls so that
+ * quantizing one frame after another does not allocate it again. That
+ * makes an instance unsafe to use from more than one thread, so threads
+ * that quantize at the same time each need their own.
+ */
+public interface Quantizer
+{
+    int MAX_COLORS = 256;
+    
+    /**
+     * Builds a palette for an image.
+     *
+     * @param pixels The image as tightly packed RGB triplets.
+     * @return The palette.
+     */
+    @NotNull Palette quantize(byte @NotNull [] pixels);
+}
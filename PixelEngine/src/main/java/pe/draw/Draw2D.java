@@ -3,16 +3,19 @@ package pe.draw;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import pe.font.CharData;
+import pe.font.FontSingle;
+import pe.font.GlyphRegion;
+import pe.font.TextLayout;
+import pe.font.TextFormat;
 import pe.font.TextState;
 import pe.render.DrawMode;
 import pe.render.GL;
 import pe.render.GLBatch;
+import pe.render.GLProgram;
 import pe.render.GLTexture;
 import rutils.Logger;
 import rutils.Math;
 
-import java.util.ArrayList;
-
 public abstract class Draw2D
 {
     private static final Logger LOGGER = new Logger();
@@ -23,6 +26,8 @@ public abstract class Draw2D
     
     private static final GLBatch.Vertex VERTEX0, VERTEX1, VERTEX2, VERTEX3;
     
+    private static TextState backState; // Reused by drawText for the background pass
+    
     static
     {
         texture = GL.defaultTexture();
@@ -1329,123 +1334,160 @@ public abstract class Draw2D
         drawTexture(texture, x0, y0, x1, y1, x2, y2, x3, y3, u0, v0, u0, v1, u1, v1, u1, v0, r, g, b, a);
     }
     
+    protected static void drawTextureInstanced(@NotNull GLTexture texture,
+                                               double srcX, double srcY, double srcW, double srcH,
+                                               double dstX, double dstY, double dstW, double dstH,
+                                               double rotationOriginX, double rotationOriginY, double rotationAngle,
+                                               int r, int g, int b, int a)
+    {
+        double width  = texture.width();
+        double height = texture.height();
+        
+        boolean flipX = false;
+        
+        if (srcW < 0)
+        {
+            flipX = true;
+            srcW *= -1;
+        }
+        if (srcH < 0) srcY -= srcH;
+        
+        double sin = 0.0, cos = 1.0;
+        
+        // Only calculate rotation if needed
+        if (!Math.equals(rotationAngle, 0.0, 1e-6))
+        {
+            sin = Math.sin(rotationAngle);
+            cos = Math.cos(rotationAngle);
+        }
+        
+        double u0 = (srcX + (flipX ? srcW : 0)) / width;
+        double v0 = srcY / height;
+        double u1 = (srcX + (flipX ? 0 : srcW)) / width;
+        double v1 = (srcY + srcH) / height;
+        
+        // Same placement as drawTexture: rotate the scaled unit quad about the origin, then move to dst
+        GLBatch.instance(texture,
+                         dstW * cos, -dstH * sin,
+                         dstW * sin, dstH * cos,
+                         dstX - (rotationOriginX * cos - rotationOriginY * sin),
+                         dstY - (rotationOriginX * sin + rotationOriginY * cos),
+                         u0, v0, u1, v1,
+                         r, g, b, a);
+    }
+    
     public void drawText(@NotNull TextState state, @NotNull String line, double x, double y)
     {
+        drawText(state, line, 0, line.length(), x, y);
+    }
+    
+    /**
+     * Draws part of a line of text. Each glyph is streamed straight into
+     * the batch, so nothing is allocated once the glyphs are cached.
+     *
+     * @param state The state to draw with. Modifiers in the text update it.
+     * @param text  The text that holds the line.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     */
+    public void drawText(@NotNull TextState state, @NotNull CharSequence text, int start, int end, double x, double y)
+    {
+        // Backgrounds go under every character, so they are drawn in a pass
+        // of their own over a copy of the state.
+        if (state.backA != 0 || indexOf(text, TextFormat.MODIFIER, start, end) >= 0)
+        {
+            if (Draw2D.backState == null) Draw2D.backState = new TextState(state.baseFont, state.weight, state.italicized, state.size);
+            TextState backState = Draw2D.backState.set(state);
+            
+            double scale = backState.currFont.scale(backState.size);
+            double backX = x;
+            
+            CharData prevChar = null, currChar;
+            for (int i = start; i < end; i++)
+            {
+                char character = text.charAt(i);
+                
+                if (backState.handleModifier(character)) continue;
+                
+                backState.changeFont();
+                
+                currChar = backState.currFont.charData(character, backState.size);
+                
+                backX += backState.currFont.getKernAdvanceUnscaled(prevChar, currChar) * scale;
+                
+                double advance = currChar.advanceWidthUnscaled() * scale;
+                
+                if (backState.backA != 0)
+                {
+                    drawTextQuad(GL.defaultTexture(),
+                                 backX, y, backX + advance, y + (backState.currFont.ascentUnscaled - backState.currFont.descentUnscaled) * scale,
+                                 0.0, 0.0, 1.0, 1.0,
+                                 backState.backR, backState.backG, backState.backB, backState.backA);
+                }
+                
+                backX += advance;
+                
+                prevChar = currChar;
+            }
+        }
+        
         double scale = state.currFont.scale(state.size);
         
-        ArrayList<GLBatch.VertexGroup> textVertices = new ArrayList<>();
-        ArrayList<GLBatch.VertexGroup> quadVertices = new ArrayList<>();
+        // Signed distance field fonts need their own program, which only
+        // applies to whole batches.
+        GLProgram program = GL.currentProgram();
+        boolean   sdf     = false;
         
         CharData prevChar = null, currChar;
-        for (int i = 0, n = line.length(); i < n; i++)
+        for (int i = start; i < end; i++)
         {
-            char character = line.charAt(i);
+            char character = text.charAt(i);
             
             if (state.handleModifier(character)) continue;
             
             state.changeFont();
             
-            currChar = state.currFont.charData.get(character);
+            if (state.currFont.sdf != sdf)
+            {
+                sdf = state.currFont.sdf;
+                
+                GLBatch.draw();
+                GLProgram.bind(sdf ? GL.defaultProgramSDF() : program);
+            }
+            
+            // The glyph is drawn straight away, before the next lookup can move it in the font texture
+            GlyphRegion glyph = state.currFont.glyph(character, state.size);
+            
+            currChar = glyph.data();
             
             x += state.currFont.getKernAdvanceUnscaled(prevChar, currChar) * scale;
             
-            double x0 = x + currChar.x0Unscaled() * scale;
-            double y0 = y + currChar.y0Unscaled() * scale;
-            double x1 = x + currChar.x1Unscaled() * scale;
-            double y1 = y + currChar.y1Unscaled() * scale;
-            
-            textVertices.add(new GLBatch.VertexGroup(
-                    state.currFont.texture,
-                    new GLBatch.Vertex()
-                            .pos(x0, y0) // v0
-                            .texCoord(currChar.u0(), currChar.v0())
-                            .color(state.textR, state.textG, state.textB, state.textA),
-                    new GLBatch.Vertex()
-                            .pos(x0, y1) // v1
-                            .texCoord(currChar.u0(), currChar.v1())
-                            .color(state.textR, state.textG, state.textB, state.textA),
-                    new GLBatch.Vertex()
-                            .pos(x1, y1) // v2
-                            .texCoord(currChar.u1(), currChar.v1())
-                            .color(state.textR, state.textG, state.textB, state.textA),
-                    new GLBatch.Vertex()
-                            .pos(x1, y0) // v3
-                            .texCoord(currChar.u1(), currChar.v0())
-                            .color(state.textR, state.textG, state.textB, state.textA)
-            ));
+            drawTextQuad(state.currFont.texture(),
+                         x + currChar.x0Unscaled() * scale, y + currChar.y0Unscaled() * scale,
+                         x + currChar.x1Unscaled() * scale, y + currChar.y1Unscaled() * scale,
+                         glyph.u0(), glyph.v0(), glyph.u1(), glyph.v1(),
+                         state.textR, state.textG, state.textB, state.textA);
             
             double advance = currChar.advanceWidthUnscaled() * scale;
             
-            if (state.backA != 0)
-            {
-                x0 = x;
-                y0 = y;
-                x1 = x0 + advance;
-                y1 = y0 + (state.currFont.ascentUnscaled - state.currFont.descentUnscaled) * scale;
-                
-                quadVertices.add(new GLBatch.VertexGroup(
-                        null,
-                        new GLBatch.Vertex()
-                                .pos(x0, y0) // v0
-                                .color(state.backR, state.backG, state.backB, state.backA),
-                        new GLBatch.Vertex()
-                                .pos(x0, y1) // v1
-                                .color(state.backR, state.backG, state.backB, state.backA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y1) // v2
-                                .color(state.backR, state.backG, state.backB, state.backA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y0) // v3
-                                .color(state.backR, state.backG, state.backB, state.backA)
-                ));
-            }
-            
             if (state.underline)
             {
-                x0 = x;
-                y0 = y + state.currFont.ascentUnscaled * scale * 1.05F;
-                x1 = x0 + advance;
-                y1 = y0 + (100 * scale);
+                double y0 = y + state.currFont.ascentUnscaled * scale * 1.05F;
                 
-                textVertices.add(new GLBatch.VertexGroup(
-                        null,
-                        new GLBatch.Vertex()
-                                .pos(x0, y0) // v0
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x0, y1) // v1
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y1) // v2
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y0) // v3
-                                .color(state.textR, state.textG, state.textB, state.textA)
-                ));
+                drawTextQuad(GL.defaultTexture(),
+                             x, y0, x + advance, y0 + (100 * scale),
+                             0.0, 0.0, 1.0, 1.0,
+                             state.textR, state.textG, state.textB, state.textA);
             }
             
             if (state.strike)
             {
-                x0 = x;
-                y0 = y + state.currFont.ascentUnscaled * scale * 0.65F;
-                x1 = x0 + advance;
-                y1 = y0 + (100 * scale);
+                double y0 = y + state.currFont.ascentUnscaled * scale * 0.65F;
                 
-                textVertices.add(new GLBatch.VertexGroup(
-                        null,
-                        new GLBatch.Vertex()
-                                .pos(x0, y0) // v0
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x0, y1) // v1
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y1) // v2
-                                .color(state.textR, state.textG, state.textB, state.textA),
-                        new GLBatch.Vertex()
-                                .pos(x1, y0) // v3
-                                .color(state.textR, state.textG, state.textB, state.textA)
-                ));
+                drawTextQuad(GL.defaultTexture(),
+                             x, y0, x + advance, y0 + (100 * scale),
+                             0.0, 0.0, 1.0, 1.0,
+                             state.textR, state.textG, state.textB, state.textA);
             }
             
             x += advance;
@@ -1453,37 +1495,123 @@ public abstract class Draw2D
             prevChar = currChar;
         }
         
-        for (GLBatch.VertexGroup vertexGroup : quadVertices)
+        if (sdf)
         {
-            GLBatch.Vertex[] vertices = vertexGroup.points();
+            GLBatch.draw();
+            GLProgram.bind(program);
+        }
+    }
+    
+    /**
+     * Draws one line of a layout. Only the texture coordinates are looked
+     * up, everything else was resolved when the layout was built.
+     *
+     * @param layout The layout
+     * @param line   The index of the line
+     */
+    public void drawText(@NotNull TextLayout layout, int line, double x, double y)
+    {
+        int start = layout.lineStart(line);
+        int end   = layout.lineEnd(line);
+        int size  = layout.size();
+        
+        for (int i = start; i < end; i++)
+        {
+            int back = layout.backColor(i);
+            if ((back & 0xFF) == 0) continue;
             
-            GLBatch.checkBuffer(6);
-            GLBatch.setTexture(GL.defaultTexture());
-            GLBatch.begin(DrawMode.TRIANGLES);
-            GLBatch.vertex(vertices[0]);
-            GLBatch.vertex(vertices[1]);
-            GLBatch.vertex(vertices[2]);
-            GLBatch.vertex(vertices[0]);
-            GLBatch.vertex(vertices[2]);
-            GLBatch.vertex(vertices[3]);
-            GLBatch.end();
+            FontSingle font  = layout.font(i);
+            double     x0    = x + layout.offset(i);
+            double     scale = layout.scale(i);
+            
+            drawTextQuad(GL.defaultTexture(),
+                         x0, y, x0 + layout.advance(i), y + (font.ascentUnscaled - font.descentUnscaled) * scale,
+                         0.0, 0.0, 1.0, 1.0,
+                         back >>> 24, (back >> 16) & 0xFF, (back >> 8) & 0xFF, back & 0xFF);
         }
         
-        for (GLBatch.VertexGroup vertexGroup : textVertices)
+        GLProgram program = GL.currentProgram();
+        boolean   sdf     = false;
+        
+        for (int i = start; i < end; i++)
         {
-            GLBatch.Vertex[] vertices = vertexGroup.points();
+            FontSingle font = layout.font(i);
             
-            GLBatch.checkBuffer(6);
-            GLBatch.setTexture(vertexGroup.texture());
-            GLBatch.begin(DrawMode.TRIANGLES);
-            GLBatch.vertex(vertices[0]);
-            GLBatch.vertex(vertices[1]);
-            GLBatch.vertex(vertices[2]);
-            GLBatch.vertex(vertices[0]);
-            GLBatch.vertex(vertices[2]);
-            GLBatch.vertex(vertices[3]);
-            GLBatch.end();
+            if (font.sdf != sdf)
+            {
+                sdf = font.sdf;
+                
+                GLBatch.draw();
+                GLProgram.bind(sdf ? GL.defaultProgramSDF() : program);
+            }
+            
+            GlyphRegion glyph    = font.glyph(layout.codePoint(i), size);
+            CharData    charData = glyph.data();
+            
+            double x0    = x + layout.offset(i);
+            double scale = layout.scale(i);
+            int    color = layout.textColor(i);
+            
+            int r = color >>> 24, g = (color >> 16) & 0xFF, b = (color >> 8) & 0xFF, a = color & 0xFF;
+            
+            drawTextQuad(font.texture(),
+                         x0 + charData.x0Unscaled() * scale, y + charData.y0Unscaled() * scale,
+                         x0 + charData.x1Unscaled() * scale, y + charData.y1Unscaled() * scale,
+                         glyph.u0(), glyph.v0(), glyph.u1(), glyph.v1(),
+                         r, g, b, a);
+            
+            int decoration = layout.decoration(i);
+            if ((decoration & TextLayout.UNDERLINE) != 0)
+            {
+                double y0 = y + font.ascentUnscaled * scale * 1.05F;
+                
+                drawTextQuad(GL.defaultTexture(), x0, y0, x0 + layout.advance(i), y0 + (100 * scale), 0.0, 0.0, 1.0, 1.0, r, g, b, a);
+            }
+            if ((decoration & TextLayout.STRIKE) != 0)
+            {
+                double y0 = y + font.ascentUnscaled * scale * 0.65F;
+                
+                drawTextQuad(GL.defaultTexture(), x0, y0, x0 + layout.advance(i), y0 + (100 * scale), 0.0, 0.0, 1.0, 1.0, r, g, b, a);
+            }
         }
+        
+        if (sdf)
+        {
+            GLBatch.draw();
+            GLProgram.bind(program);
+        }
+    }
+    
+    private static int indexOf(@NotNull CharSequence text, char character, int start, int end)
+    {
+        for (int i = start; i < end; i++) if (text.charAt(i) == character) return i;
+        return -1;
+    }
+    
+    private static void drawTextQuad(@NotNull GLTexture texture,
+                                     double x0, double y0, double x1, double y1,
+                                     double u0, double v0, double u1, double v1,
+                                     int r, int g, int b, int a)
+    {
+        GLBatch.checkBuffer(6);
+        
+        GLBatch.setTexture(texture);
+        
+        GLBatch.begin(DrawMode.TRIANGLES);
+        
+        Draw2D.VERTEX0.clear().pos(x0, y0).texCoord(u0, v0).color(r, g, b, a);
+        Draw2D.VERTEX1.clear().pos(x0, y1).texCoord(u0, v1).color(r, g, b, a);
+        Draw2D.VERTEX2.clear().pos(x1, y1).texCoord(u1, v1).color(r, g, b, a);
+        Draw2D.VERTEX3.clear().pos(x1, y0).texCoord(u1, v0).color(r, g, b, a);
+        
+        GLBatch.vertex(Draw2D.VERTEX0);
+        GLBatch.vertex(Draw2D.VERTEX1);
+        GLBatch.vertex(Draw2D.VERTEX2);
+        GLBatch.vertex(Draw2D.VERTEX0);
+        GLBatch.vertex(Draw2D.VERTEX2);
+        GLBatch.vertex(Draw2D.VERTEX3);
+        
+        GLBatch.end();
     }
     
     protected static int segments(double rx, double ry)
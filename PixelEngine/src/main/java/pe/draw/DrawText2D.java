@@ -5,7 +5,6 @@ import pe.color.Colorc;
 import pe.font.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class DrawText2D extends Draw2D implements Point<DrawText2D>,
@@ -37,6 +36,8 @@ public class DrawText2D extends Draw2D implements Point<DrawText2D>,
     
     private boolean ignoreFormatting;
     
+    private TextState state, other; // Reused between draws
+    
     @Override
     public String toString()
     {
@@ -106,62 +107,57 @@ public class DrawText2D extends Draw2D implements Point<DrawText2D>,
     @Override
     protected void drawImpl()
     {
-        List<String> lines;
+        if (this.state == null)
+        {
+            this.state = new TextState(this.font, this.weight, this.italicized, this.size);
+            this.other = new TextState(this.font, this.weight, this.italicized, this.size);
+        }
+        
+        int hPos = this.align.getH(), vPos = this.align.getV();
+        
+        TextState state = initState(this.state);
+        TextState other = this.other;
+        
         if (this.w > 0 && this.h > 0)
         {
-            lines = new ArrayList<>();
-            
-            TextState state = new TextState(this.font, this.weight, this.italicized, this.size);
-            state.underline     = this.underline;
-            state.strike        = this.strike;
-            state.textR         = this.textR;
-            state.textG         = this.textG;
-            state.textB         = this.textB;
-            state.textA         = this.textA;
-            state.backR         = this.backR;
-            state.backG         = this.backG;
-            state.backB         = this.backB;
-            state.backA         = this.backA;
-            state.ignoreChanges = this.ignoreFormatting;
+            double actualHeight = this.font.getTextHeight(this.text, this.size);
             
-            TextState lineState       = new TextState(this.font, this.weight, this.italicized, this.size);
-            TextState subLineState    = new TextState(this.font, this.weight, this.italicized, this.size);
-            TextState subSubLineState = new TextState(this.font, this.weight, this.italicized, this.size);
+            double yOffset = vPos == -1 ? 0 : vPos == 0 ? 0.5 * (this.h - actualHeight) : this.h - actualHeight;
             
-            for (String line : this.text.split("\n"))
+            for (String line : wrapLines())
             {
-                lineState.set(state);
-                if (this.font.getTextWidthImpl(line, state) > this.w)
-                {
-                    String[]      subLines = line.split(" ");
-                    StringBuilder builder  = new StringBuilder(subLines[0]);
-                    for (int j = 1, n = subLines.length; j < n; j++)
-                    {
-                        subLineState.set(lineState);
-                        if (this.font.getTextWidthImpl(builder + " " + subLines[j], subSubLineState.set(subLineState)) > this.w)
-                        {
-                            lines.add(builder.toString());
-                            builder.setLength(0);
-                            builder.append(subLines[j]);
-                            lineState.set(subLineState);
-                            continue;
-                        }
-                        builder.append(" ").append(subLines[j]);
-                    }
-                    lines.add(builder.toString());
-                }
-                else
-                {
-                    lines.add(line);
-                }
+                double lineWidth  = this.font.getTextWidthImpl(line, other.set(state));
+                double lineHeight = this.font.getTextHeightImpl(line, other.set(state));
+                
+                double xOffset = hPos == -1 ? 0 : hPos == 0 ? 0.5 * (this.w - lineWidth) : this.w - lineWidth;
+                
+                drawText(state, line, this.x + xOffset, this.y + yOffset);
+                
+                yOffset += lineHeight;
             }
         }
         else
         {
-            lines = Arrays.asList(this.text.split("\n"));
+            // Unwrapped text is laid out once and reused while it is drawn
+            TextLayout layout = TextLayout.get(this.text, state);
+            
+            double yOffset = vPos == -1 ? 0 : vPos == 0 ? 0.5 * (this.h - layout.height()) : this.h - layout.height();
+            for (int line = 0, n = layout.lineCount(); line < n; line++)
+            {
+                double lineWidth = layout.lineWidth(line);
+                
+                double xOffset = hPos == -1 ? 0 : hPos == 0 ? 0.5 * (this.w - lineWidth) : this.w - lineWidth;
+                
+                drawText(layout, line, this.x + xOffset, this.y + yOffset);
+                
+                yOffset += layout.lineHeight(line);
+            }
         }
-        
-        TextState state = new TextState(this.font, this.weight, this.italicized, this.size);
+    }
+    
+    private @NotNull TextState initState(@NotNull TextState state)
+    {
+        state.set(this.font, this.weight, this.italicized, this.size);
         state.underline     = this.underline;
         state.strike        = this.strike;
         state.textR         = this.textR;
@@ -173,25 +169,47 @@ public class DrawText2D extends Draw2D implements Point<DrawText2D>,
         state.backB         = this.backB;
         state.backA         = this.backA;
         state.ignoreChanges = this.ignoreFormatting;
+        return state;
+    }
+    
+    private @NotNull List<String> wrapLines()
+    {
+        List<String> lines = new ArrayList<>();
         
-        TextState other = new TextState(this.font, this.weight, this.italicized, this.size);
-        
-        double actualHeight = this.font.getTextHeight(this.text, this.size);
+        TextState state = initState(new TextState(this.font, this.weight, this.italicized, this.size));
         
-        int hPos = this.align.getH(), vPos = this.align.getV();
+        TextState lineState       = new TextState(this.font, this.weight, this.italicized, this.size);
+        TextState subLineState    = new TextState(this.font, this.weight, this.italicized, this.size);
+        TextState subSubLineState = new TextState(this.font, this.weight, this.italicized, this.size);
         
-        double yOffset = vPos == -1 ? 0 : vPos == 0 ? 0.5 * (this.h - actualHeight) : this.h - actualHeight;
-        for (String line : lines)
+        for (String line : this.text.split("\n"))
         {
-            double lineWidth  = this.font.getTextWidthImpl(line, other.set(state));
-            double lineHeight = this.font.getTextHeightImpl(line, other.set(state));
-            
-            double xOffset = hPos == -1 ? 0 : hPos == 0 ? 0.5 * (this.w - lineWidth) : this.w - lineWidth;
-            
-            drawText(state, line, this.x + xOffset, this.y + yOffset);
-            
-            yOffset += lineHeight;
+            lineState.set(state);
+            if (this.font.getTextWidthImpl(line, state) > this.w)
+            {
+                String[]      subLines = line.split(" ");
+                StringBuilder builder  = new StringBuilder(subLines[0]);
+                for (int j = 1, n = subLines.length; j < n; j++)
+                {
+                    subLineState.set(lineState);
+                    if (this.font.getTextWidthImpl(builder + " " + subLines[j], subSubLineState.set(subLineState)) > this.w)
+                    {
+                        lines.add(builder.toString());
+                        builder.setLength(0);
+                        builder.append(subLines[j]);
+                        lineState.set(subLineState);
+                        continue;
+                    }
+                    builder.append(" ").append(subLines[j]);
+                }
+                lines.add(builder.toString());
+            }
+            else
+            {
+                lines.add(line);
+            }
         }
+        return lines;
     }
     
     public DrawText2D text(String text)
@@ -1,6 +1,7 @@
 package pe.draw;
 
 import org.jetbrains.annotations.NotNull;
+import pe.texture.AtlasRegion;
 
 public class DrawTexture2D extends Draw2D implements Texture<DrawTexture2D>,
                                                      Src<DrawTexture2D>,
@@ -9,6 +10,7 @@ public class DrawTexture2D extends Draw2D implements Texture<DrawTexture2D>,
                                                      Color<DrawTexture2D>
 {
     private pe.texture.Texture texture;
+    private AtlasRegion        region;
     
     private double srcX, srcY, srcW, srcH;
     
@@ -38,6 +40,7 @@ public class DrawTexture2D extends Draw2D implements Texture<DrawTexture2D>,
     protected void reset()
     {
         this.texture = null;
+        this.region  = null;
         
         this.srcX = 0.0;
         this.srcY = 0.0;
@@ -60,13 +63,18 @@ public class DrawTexture2D extends Draw2D implements Texture<DrawTexture2D>,
     {
         if (this.texture == null) throw new IllegalStateException("Must provide texture");
         if (!this.hasDst) throw new IllegalStateException("Must provide dst");
+        if (this.region != null && !this.region.valid()) throw new IllegalStateException("Region was removed from its atlas: " + this.region);
     }
     
     @Override
     protected void drawImpl()
     {
+        // src is relative to the region
+        double offsetX = this.region != null ? this.region.x() : 0.0;
+        double offsetY = this.region != null ? this.region.y() : 0.0;
+        
         drawTexture(this.texture,
-                    this.srcX, this.srcY, this.srcW, this.srcH,
+                    this.srcX + offsetX, this.srcY + offsetY, this.srcW, this.srcH,
                     this.dstX, this.dstY, this.dstW, this.dstH,
                     this.originX, this.originY, this.angle,
                     this.r, this.g, this.b, this.a);
@@ -76,11 +84,22 @@ public class DrawTexture2D extends Draw2D implements Texture<DrawTexture2D>,
     public DrawTexture2D texture(@NotNull pe.texture.Texture texture)
     {
         this.texture = texture;
+        this.region  = null;
         this.srcW    = this.dstW = texture.width();
         this.srcH    = this.dstH = texture.height();
         return this;
     }
     
+    @Override
+    public DrawTexture2D texture(@NotNull AtlasRegion region)
+    {
+        this.texture = region.texture();
+        this.region  = region;
+        this.srcW    = this.dstW = region.width();
+        this.srcH    = this.dstH = region.height();
+        return this;
+    }
+    
     @Override
     public DrawTexture2D src(double x, double y, double width, double height)
     {
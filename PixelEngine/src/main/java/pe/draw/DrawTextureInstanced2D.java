@@ -0,0 +1,160 @@
+package pe.draw;
+
+import org.jetbrains.annotations.NotNull;
+import pe.render.GL;
+import pe.render.GLTexture;
+import pe.texture.AtlasRegion;
+
+/**
+ * Draws a texture the same way as {@link DrawTexture2D}, but as a single
+ * instanced sprite record instead of four batch vertices.
+ * <p>
+ * If no texture is provided, the default texture is used, which makes this
+ * an instanced version of a plain {@link FillRect2D}.
+ */
+public class DrawTextureInstanced2D extends Draw2D implements Texture<DrawTextureInstanced2D>,
+                                                              Src<DrawTextureInstanced2D>,
+                                                              Dst<DrawTextureInstanced2D>,
+                                                              Rotation<DrawTextureInstanced2D>,
+                                                              Color<DrawTextureInstanced2D>
+{
+    private pe.texture.Texture texture;
+    private AtlasRegion        region;
+    
+    private double srcX, srcY, srcW, srcH;
+    
+    private double dstX, dstY, dstW, dstH;
+    private boolean hasDst;
+    
+    private double originX, originY;
+    
+    private double angle;
+    
+    private int r, g, b, a;
+    
+    @Override
+    public String toString()
+    {
+        return "DrawTextureInstanced2D{" +
+               "texture=" + this.texture + ' ' +
+               "src=(" + this.srcX + ", " + this.srcY + ", " + this.srcW + ", " + this.srcH + ')' + ' ' +
+               "dst=(" + this.dstX + ", " + this.dstY + ", " + this.dstW + ", " + this.dstH + ')' + ' ' +
+               "rotationOrigin=(" + this.originX + ", " + this.originY + ')' + ' ' +
+               "rotationAngle=" + this.angle + ' ' +
+               "color=(" + this.r + ", " + this.g + ", " + this.b + ", " + this.a + ')' +
+               '}';
+    }
+    
+    @Override
+    protected void reset()
+    {
+        this.texture = null;
+        this.region  = null;
+        
+        this.srcX = 0.0;
+        this.srcY = 0.0;
+        this.srcW = 1.0;
+        this.srcH = 1.0;
+        
+        this.hasDst = false;
+        
+        this.originX = 0.0;
+        this.originY = 0.0;
+        
+        this.angle = 0.0;
+        
+        this.r = 255;
+        this.g = 255;
+        this.b = 255;
+        this.a = 255;
+    }
+    
+    @Override
+    protected void check()
+    {
+        if (!this.hasDst) throw new IllegalStateException("Must provide dst");
+        if (this.region != null && !this.region.valid()) throw new IllegalStateException("Region was removed from its atlas: " + this.region);
+    }
+    
+    @Override
+    protected void drawImpl()
+    {
+        // src is relative to the region
+        double offsetX = this.region != null ? this.region.x() : 0.0;
+        double offsetY = this.region != null ? this.region.y() : 0.0;
+        
+        GLTexture texture = this.texture != null ? this.texture : GL.defaultTexture();
+        
+        drawTextureInstanced(texture,
+                             this.srcX + offsetX, this.srcY + offsetY, this.srcW, this.srcH,
+                             this.dstX, this.dstY, this.dstW, this.dstH,
+                             this.originX, this.originY, this.angle,
+                             this.r, this.g, this.b, this.a);
+    }
+    
+    @Override
+    public DrawTextureInstanced2D texture(@NotNull pe.texture.Texture texture)
+    {
+        this.texture = texture;
+        this.region  = null;
+        this.srcW    = this.dstW = texture.width();
+        this.srcH    = this.dstH = texture.height();
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D texture(@NotNull AtlasRegion region)
+    {
+        this.texture = region.texture();
+        this.region  = region;
+        this.srcW    = this.dstW = region.width();
+        this.srcH    = this.dstH = region.height();
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D src(double x, double y, double width, double height)
+    {
+        this.srcX = x;
+        this.srcY = y;
+        this.srcW = width;
+        this.srcH = height;
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D dst(double x, double y, double width, double height)
+    {
+        this.dstX   = x;
+        this.dstY   = y;
+        this.dstW   = width;
+        this.dstH   = height;
+        this.hasDst = true;
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D rotationOrigin(double x, double y)
+    {
+        this.originX = x;
+        this.originY = y;
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D rotationAngle(double angleRadians)
+    {
+        this.angle = angleRadians;
+        return this;
+    }
+    
+    @Override
+    public DrawTextureInstanced2D color(int r, int g, int b, int a)
+    {
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.a = a;
+        return this;
+    }
+}
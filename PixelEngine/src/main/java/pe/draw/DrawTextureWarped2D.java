@@ -1,6 +1,7 @@
 package pe.draw;
 
 import org.jetbrains.annotations.NotNull;
+import pe.texture.AtlasRegion;
 
 public class DrawTextureWarped2D extends Draw2D implements Texture<DrawTextureWarped2D>,
                                                            Point0<DrawTextureWarped2D>,
@@ -14,6 +15,7 @@ public class DrawTextureWarped2D extends Draw2D implements Texture<DrawTextureWa
                                                            Color<DrawTextureWarped2D>
 {
     private pe.texture.Texture texture;
+    private AtlasRegion        region;
     
     private double x0, y0, x1, y1, x2, y2, x3, y3;
     private boolean hasPoint0, hasPoint1, hasPoint2, hasPoint3;
@@ -43,6 +45,7 @@ public class DrawTextureWarped2D extends Draw2D implements Texture<DrawTextureWa
     protected void reset()
     {
         this.texture = null;
+        this.region  = null;
         
         this.hasPoint0 = false;
         this.hasPoint1 = false;
@@ -75,11 +78,27 @@ public class DrawTextureWarped2D extends Draw2D implements Texture<DrawTextureWa
         if (!this.hasPoint1) throw new IllegalStateException("Must provide point1");
         if (!this.hasPoint2) throw new IllegalStateException("Must provide point2");
         if (!this.hasPoint3) throw new IllegalStateException("Must provide point3");
+        if (this.region != null && !this.region.valid()) throw new IllegalStateException("Region was removed from its atlas: " + this.region);
     }
     
     @Override
     protected void drawImpl()
     {
+        if (this.region != null)
+        {
+            // uvs are relative to the region
+            double u = this.region.u0(), du = this.region.u1() - u;
+            double v = this.region.v0(), dv = this.region.v1() - v;
+            
+            drawTexture(this.texture,
+                        this.x0, this.y0, this.x1, this.y1, this.x2, this.y2, this.x3, this.y3,
+                        u + this.u0 * du, v + this.v0 * dv,
+                        u + this.u1 * du, v + this.v1 * dv,
+                        u + this.u2 * du, v + this.v2 * dv,
+                        u + this.u3 * du, v + this.v3 * dv,
+                        this.r, this.g, this.b, this.a);
+            return;
+        }
         drawTexture(this.texture,
                     this.x0, this.y0, this.x1, this.y1, this.x2, this.y2, this.x3, this.y3,
                     this.u0, this.v0, this.u1, this.v1, this.u2, this.v2, this.u3, this.v3,
@@ -90,6 +109,15 @@ public class DrawTextureWarped2D extends Draw2D implements Texture<DrawTextureWa
     public DrawTextureWarped2D texture(@NotNull pe.texture.Texture texture)
     {
         this.texture = texture;
+        this.region  = null;
+        return this;
+    }
+    
+    @Override
+    public DrawTextureWarped2D texture(@NotNull AtlasRegion region)
+    {
+        this.texture = region.texture();
+        this.region  = region;
         return this;
     }
     
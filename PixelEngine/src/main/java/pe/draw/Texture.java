@@ -1,8 +1,11 @@
 package pe.draw;
 
 import org.jetbrains.annotations.NotNull;
+import pe.texture.AtlasRegion;
 
 interface Texture<SELF>
 {
     SELF texture(@NotNull pe.texture.Texture texture);
+    
+    SELF texture(@NotNull AtlasRegion region);
 }
@@ -1,8 +1,11 @@
 package pe.font;
 
+/**
+ * The metrics of a glyph in font units. They do not depend on where the
+ * glyph is in the font texture, see {@link GlyphRegion} for that.
+ */
 public record CharData(char character, int index,
                        int advanceWidthUnscaled, int leftSideBearingUnscaled,
-                       int x0Unscaled, int y0Unscaled, int x1Unscaled, int y1Unscaled,
-                       double u0, double v0, double u1, double v1)
+                       double x0Unscaled, double y0Unscaled, double x1Unscaled, double y1Unscaled)
 {
 }
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.stb.STBTTFontinfo;
 import org.lwjgl.system.MemoryUtil;
+import pe.AssetLoader;
 import pe.render.DrawMode;
 import pe.render.GL;
 import pe.render.GLBatch;
@@ -17,6 +18,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.lwjgl.stb.STBTruetype.stbtt_InitFont;
 
@@ -69,12 +71,26 @@ public abstract class Font
         List.copyOf(Font.FONT_CACHE.values()).forEach(FontSingle::delete);
     }
     
-    private static @NotNull FontSingle register(@NotNull String filePath, boolean kerning, boolean alignToInt, boolean interpolated, boolean warn)
+    private static @NotNull FontSingle register(@NotNull String filePath, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf, boolean warn)
+    {
+        return register(decode(filePath), kerning, alignToInt, interpolated, sdf, warn);
+    }
+    
+    /**
+     * Reads the font file and its names. Does not touch the caches or the GL
+     * context, so it can run on any thread.
+     */
+    private static @NotNull Decoded decode(@NotNull String filePath)
     {
         STBTTFontinfo info     = STBTTFontinfo.malloc();
         ByteBuffer    fileData = IOUtil.readFromFile(filePath, new int[1], MemoryUtil::memAlloc);
         
-        if (fileData == null || !stbtt_InitFont(info, fileData)) throw new RuntimeException("Font Data could not be loaded: " + filePath);
+        if (fileData == null || !stbtt_InitFont(info, fileData))
+        {
+            info.free();
+            MemoryUtil.memFree(fileData);
+            throw new RuntimeException("Font Data could not be loaded: " + filePath);
+        }
         
         String fontFamilyName    = FontSingle.nameString(info, 1);  // Font Family name
         String fontSubfamilyName = FontSingle.nameString(info, 2);  // Font Subfamily name
@@ -100,21 +116,24 @@ public abstract class Font
             weight     = Font.DEFAULT_WEIGHT;
             italicized = Font.DEFAULT_ITALICS;
         }
-        
-        String fontID = FontSingle.getID(family, weight, italicized);
+        return new Decoded(filePath, info, fileData, family, weight, italicized);
+    }
+    
+    private static @NotNull FontSingle register(@NotNull Decoded decoded, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf, boolean warn)
+    {
+        String fontID = FontSingle.getID(decoded.family(), decoded.weight(), decoded.italicized());
         
         if (Font.FONT_CACHE.containsKey(fontID))
         {
-            info.free();
-            MemoryUtil.memFree(fileData);
+            decoded.free();
             
             if (warn) Font.LOGGER.warning("Font already registered: " + fontID);
             return Font.FONT_CACHE.get(fontID);
         }
         
-        Font.LOGGER.fine("Loading Font \"%s\" from file: %s", fontID, filePath);
+        Font.LOGGER.fine("Loading Font \"%s\" from file: %s", fontID, decoded.filePath());
         
-        FontSingle font = new FontSingle(info, fileData, family, weight, italicized, kerning, alignToInt, interpolated);
+        FontSingle font = new FontSingle(decoded.info(), decoded.fileData(), decoded.family(), decoded.weight(), decoded.italicized(), kerning, alignToInt, interpolated, sdf);
         
         Font.FONT_CACHE.put(fontID, font);
         return font;
@@ -132,7 +151,40 @@ public abstract class Font
      */
     public static @NotNull FontSingle register(@NotNull String filePath, boolean kerning, boolean alignToInt, boolean interpolated)
     {
-        return register(filePath, kerning, alignToInt, interpolated, true);
+        return register(filePath, kerning, alignToInt, interpolated, false, true);
+    }
+    
+    /**
+     * Registers a font to be used. All fonts need to be registered before they can be used. Font instances are owned by this class.
+     * <p>
+     * There is no checking if the characteristics provided actually match the font.
+     *
+     * @param filePath     The path to the .ttf file
+     * @param kerning      If kerning should be used when rendering.
+     * @param alignToInt   If each character should align to integer values.
+     * @param interpolated If the texture should be linear interpolated.
+     * @param sdf          If the characters should be stored as signed distance fields, which stay sharp at every size.
+     */
+    public static @NotNull FontSingle register(@NotNull String filePath, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf)
+    {
+        return register(filePath, kerning, alignToInt, interpolated, sdf, true);
+    }
+    
+    /**
+     * Registers a font to be used, reading the file on a background thread.
+     * The font is added to the registry on the render thread.
+     *
+     * @param filePath     The path to the .ttf file
+     * @param kerning      If kerning should be used when rendering.
+     * @param alignToInt   If each character should align to integer values.
+     * @param interpolated If the texture should be linear interpolated.
+     * @param sdf          If the characters should be stored as signed distance fields, which stay sharp at every size.
+     * @return The future that is completed with the font on the render thread
+     * @see AssetLoader
+     */
+    public static @NotNull CompletableFuture<FontSingle> registerAsync(@NotNull String filePath, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf)
+    {
+        return AssetLoader.load(() -> decode(filePath), decoded -> register(decoded, kerning, alignToInt, interpolated, sdf, true), Decoded::free);
     }
     
     /**
@@ -145,6 +197,21 @@ public abstract class Font
      * @param interpolated If the texture should be linear interpolated.
      */
     public static @NotNull FontFamily registerFamily(@NotNull String directory, @NotNull String name, boolean kerning, boolean alignToInt, boolean interpolated)
+    {
+        return registerFamily(directory, name, kerning, alignToInt, interpolated, false);
+    }
+    
+    /**
+     * Registers a font family to be used.
+     *
+     * @param directory    The path to the directory where the .ttf files are located.
+     * @param name         The registry name for the family.
+     * @param kerning      If kerning should be used when rendering.
+     * @param alignToInt   If each character should align to integer values.
+     * @param interpolated If the texture should be linear interpolated.
+     * @param sdf          If the characters should be stored as signed distance fields, which stay sharp at every size.
+     */
+    public static @NotNull FontFamily registerFamily(@NotNull String directory, @NotNull String name, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf)
     {
         String familyID = FontFamily.getID(name);
         
@@ -164,7 +231,7 @@ public abstract class Font
                 String fileName = FontFamily.getID(path.getFileName().toString());
                 if (fileName.startsWith(familyID) && fileName.endsWith(".ttf"))
                 {
-                    FontSingle font = Font.register(path.toString(), kerning, alignToInt, interpolated, false);
+                    FontSingle font = Font.register(path.toString(), kerning, alignToInt, interpolated, sdf, false);
                     Font.LOGGER.fine("Added %s to Font Family: %s", font, familyID);
                 }
             });
@@ -254,31 +321,38 @@ public abstract class Font
      */
     public double getTextWidth(@NotNull String text, int size)
     {
-        TextState state = new TextState(this, Font.DEFAULT_WEIGHT, Font.DEFAULT_ITALICS, size);
-        
-        String[] lines = text.split("\n");
-        if (lines.length == 1) return getTextWidthImpl(text, state);
-        
-        double width = 0;
-        for (String line : lines) width = Math.max(width, getTextWidthImpl(line, state));
-        return width;
+        return TextLayout.get(text, this, size).width();
     }
     
     public double getTextWidthImpl(@NotNull String line, TextState state)
+    {
+        return getTextWidthImpl(line, 0, line.length(), state);
+    }
+    
+    /**
+     * Calculates the width in pixels of part of a line.
+     *
+     * @param text  The text that holds the line.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     * @param state The state to read and update with any modifiers.
+     * @return The width in pixels.
+     */
+    public double getTextWidthImpl(@NotNull CharSequence text, int start, int end, TextState state)
     {
         double width = 0;
         
         CharData prevChar = null, currChar;
         
-        for (int i = 0, n = line.length(); i < n; i++)
+        for (int i = start; i < end; i++)
         {
-            char character = line.charAt(i);
+            char character = text.charAt(i);
             
             if (state.handleModifier(character)) continue;
             
             state.changeFont();
             
-            currChar = state.currFont.charData.get(line.charAt(i));
+            currChar = state.currFont.charData(character, state.size);
             
             double scale = state.currFont.scale(state.size);
             
@@ -300,22 +374,30 @@ public abstract class Font
      */
     public double getTextHeight(@NotNull String text, int size)
     {
-        TextState state = new TextState(this, Font.DEFAULT_WEIGHT, Font.DEFAULT_ITALICS, size);
-        
-        String[] lines = text.split("\n");
-        
-        double height = 0;
-        for (String line : lines) height += getTextHeightImpl(line, state);
-        return height;
+        return TextLayout.get(text, this, size).height();
     }
     
     public double getTextHeightImpl(@NotNull String line, TextState state)
+    {
+        return getTextHeightImpl(line, 0, line.length(), state);
+    }
+    
+    /**
+     * Calculates the height in pixels of part of a line.
+     *
+     * @param text  The text that holds the line.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     * @param state The state to read and update with any modifiers.
+     * @return The height in pixels.
+     */
+    public double getTextHeightImpl(@NotNull CharSequence text, int start, int end, TextState state)
     {
         double height = 0;
         
-        for (int i = 0, n = line.length(); i < n; i++)
+        for (int i = start; i < end; i++)
         {
-            char character = line.charAt(i);
+            char character = text.charAt(i);
             
             if (state.handleModifier(character)) continue;
             
@@ -330,4 +412,13 @@ public abstract class Font
         
         return height;
     }
+    
+    private record Decoded(String filePath, STBTTFontinfo info, ByteBuffer fileData, String family, Weight weight, boolean italicized)
+    {
+        private void free()
+        {
+            this.info.free();
+            MemoryUtil.memFree(this.fileData);
+        }
+    }
 }
@@ -2,24 +2,15 @@ package pe.font;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.lwjgl.stb.STBTTAlignedQuad;
 import org.lwjgl.stb.STBTTFontinfo;
-import org.lwjgl.stb.STBTTPackContext;
-import org.lwjgl.stb.STBTTPackedchar;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
-import pe.color.ColorFormat;
 import pe.texture.Texture;
-import pe.texture.TextureFilter;
 import rutils.Logger;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Objects;
 
 import static org.lwjgl.stb.STBTruetype.*;
@@ -75,6 +66,7 @@ public class FontSingle extends Font
     
     public final boolean kerning;
     public final boolean alignToInt;
+    public final boolean sdf;
     
     public final String id;
     
@@ -82,11 +74,10 @@ public class FontSingle extends Font
     public final int descentUnscaled;
     public final int lineGapUnscaled;
     
-    public final List<CharData> charData;
+    private final GlyphCache   glyphs;
+    private final KerningTable kerningTable;
     
-    public final Texture texture;
-    
-    FontSingle(STBTTFontinfo info, ByteBuffer fileData, String family, Weight weight, boolean italicized, boolean kerning, boolean alignToInt, boolean interpolated)
+    FontSingle(STBTTFontinfo info, ByteBuffer fileData, String family, Weight weight, boolean italicized, boolean kerning, boolean alignToInt, boolean interpolated, boolean sdf)
     {
         this.info     = info;
         this.fileData = fileData;
@@ -97,6 +88,7 @@ public class FontSingle extends Font
         
         this.kerning    = kerning;
         this.alignToInt = alignToInt;
+        this.sdf        = sdf;
         
         this.id = getID(this.family, this.weight, this.italicized);
         
@@ -111,93 +103,10 @@ public class FontSingle extends Font
             this.ascentUnscaled  = ascent.get(0);
             this.descentUnscaled = descent.get(0);
             this.lineGapUnscaled = lineGap.get(0);
-            
-            int baseSize = 96;
-            
-            STBTTPackedchar.Buffer packedChars = STBTTPackedchar.malloc(0xFFFF);
-            
-            int width;
-            int height;
-            
-            ByteBuffer buffer;
-            
-            boolean success;
-            
-            int textureSize = 32;
-            int samples     = 1;
-            while (true)
-            {
-                width  = baseSize * textureSize;
-                height = baseSize * (textureSize >> 1);
-                
-                buffer = MemoryUtil.memAlloc(width * height);
-                
-                packedChars.position(32);
-                try (STBTTPackContext pc = STBTTPackContext.malloc())
-                {
-                    stbtt_PackBegin(pc, buffer, width, height, 0, 2, MemoryUtil.NULL);
-                    stbtt_PackSetOversampling(pc, samples, samples);
-                    success = stbtt_PackFontRange(pc, this.fileData, 0, baseSize, packedChars.position(), packedChars);
-                    stbtt_PackEnd(pc);
-                }
-                packedChars.clear();
-                buffer.clear();
-                
-                textureSize <<= 1;
-                
-                if (success || textureSize >= 1000) break;
-                MemoryUtil.memFree(buffer);
-            }
-            
-            IntBuffer advanceWidth    = stack.mallocInt(1);
-            IntBuffer leftSideBearing = stack.mallocInt(1);
-            
-            IntBuffer x0 = stack.mallocInt(1);
-            IntBuffer y0 = stack.mallocInt(1);
-            IntBuffer x1 = stack.mallocInt(1);
-            IntBuffer y1 = stack.mallocInt(1);
-            
-            FloatBuffer x = stack.floats(0);
-            FloatBuffer y = stack.floats(0);
-            
-            STBTTAlignedQuad quad = STBTTAlignedQuad.malloc(stack);
-            
-            int size = 0xFFFF;
-            
-            List<CharData> charData = new ArrayList<>(size);
-            for (int i = 0; i < size; i++)
-            {
-                int index = stbtt_FindGlyphIndex(this.info, i);
-                
-                stbtt_GetGlyphHMetrics(this.info, index, advanceWidth, leftSideBearing);
-                stbtt_GetGlyphBox(this.info, index, x0, y0, x1, y1);
-                stbtt_GetPackedQuad(packedChars, width, height, i, x, y, quad, this.alignToInt);
-                
-                int x0Unscaled = x0.get(0);
-                int y0Unscaled = this.ascentUnscaled - y1.get(0);
-                int x1Unscaled = x1.get(0);
-                int y1Unscaled = this.ascentUnscaled - y0.get(0);
-                
-                charData.add(new CharData((char) i, index,
-                                          advanceWidth.get(0), leftSideBearing.get(0),
-                                          x0Unscaled, y0Unscaled, x1Unscaled, y1Unscaled,
-                                          quad.s0(), quad.t0(), quad.s1(), quad.t1()));
-            }
-            this.charData = Collections.unmodifiableList(charData);
-            
-            packedChars.free();
-            
-            // Converts GL_RED to GL_RGBA
-            ByteBuffer data = MemoryUtil.memAlloc(width * height * 4);
-            for (int i = 0; i < buffer.capacity(); i++) data.putInt((buffer.get(i) << 24) | 0x00FFFFFF);
-            data.flip();
-            
-            this.texture = Texture.load(data, width, height, 1, ColorFormat.RGBA);
-            if (interpolated) this.texture.filter(TextureFilter.LINEAR, TextureFilter.LINEAR);
-            
-            MemoryUtil.memFree(buffer);
-            MemoryUtil.memFree(data);
         }
+        
+        this.glyphs       = new GlyphCache(this.info, this.ascentUnscaled, interpolated, sdf);
+        this.kerningTable = new KerningTable(this.info);
     }
     
     @Override
@@ -230,7 +139,10 @@ public class FontSingle extends Font
             this.info.free();
             MemoryUtil.memFree(this.fileData);
             
-            this.texture.delete();
+            this.glyphs.delete();
+            this.kerningTable.clear();
+            
+            TextLayout.clearCache();
             
             Font.FONT_CACHE.remove(this.id);
         }
@@ -276,6 +188,50 @@ public class FontSingle extends Font
         return this.alignToInt;
     }
     
+    /**
+     * Gets the metrics of a character. They are read from the font, so this
+     * does not rasterize anything and can be called without a context.
+     *
+     * @param codePoint The character
+     * @param size      The size of the text
+     * @return The character data.
+     */
+    public @NotNull CharData charData(int codePoint, int size)
+    {
+        return this.glyphs.metrics(codePoint, size);
+    }
+    
+    /**
+     * Gets a character and its place in the font texture, rasterizing it
+     * into the texture the first time it is drawn at a size.
+     *
+     * @param codePoint The character
+     * @param size      The size of the text
+     * @return The character region. The texture coordinates are only valid
+     * until the next character is looked up, so it should be drawn first.
+     */
+    public @NotNull GlyphRegion glyph(int codePoint, int size)
+    {
+        return this.glyphs.region(codePoint, size);
+    }
+    
+    /**
+     * @return The texture that holds the rasterized characters. It is
+     * replaced as the font grows, so get it after {@link #glyph(int, int)}
+     */
+    public @NotNull Texture texture()
+    {
+        return this.glyphs.texture();
+    }
+    
+    /**
+     * @return true if the characters are signed distance fields that must be drawn with {@link pe.render.GL#defaultProgramSDF()}
+     */
+    public boolean sdf()
+    {
+        return this.sdf;
+    }
+    
     /**
      * @return Gets the scale of the size data.
      */
@@ -296,7 +252,7 @@ public class FontSingle extends Font
         if (ch1 == null) return 0.0;
         if (ch2 == null) return 0.0;
         if (!this.kerning) return 0.0;
-        return stbtt_GetGlyphKernAdvance(this.info, ch1.index(), ch2.index());
+        return this.kerningTable.get(ch1.index(), ch2.index());
     }
     
     @Override
@@ -0,0 +1,476 @@
+package pe.font;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.stb.STBTTFontinfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.ColorFormat;
+import pe.render.GLBatch;
+import pe.render.GLTexture;
+import pe.texture.AtlasPacker;
+import pe.texture.Texture;
+import pe.texture.TextureFilter;
+import pe.texture.TextureSwizzle;
+import rutils.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.stb.STBTruetype.*;
+
+/**
+ * Keeps the metrics of the glyphs of a {@link FontSingle} and rasterizes the
+ * glyphs into a texture atlas the first time they are drawn.
+ * <p>
+ * Metrics are read from the font alone, so measuring and laying out text
+ * never touches the atlas. Only {@link #region(int, int)} rasterizes.
+ * <p>
+ * The atlas holds one coverage byte per texel. It is swizzled so that
+ * shaders sample it as white with the coverage as alpha, which lets text
+ * go through the default program.
+ * <p>
+ * In signed distance field mode every glyph is generated once at
+ * {@link #SDF_SIZE} and the texel holds the distance to the outline
+ * instead of the coverage. It has to be drawn with
+ * {@link pe.render.GL#defaultProgramSDF()}.
+ * <p>
+ * Glyphs are keyed by code point and size bucket. The atlas starts small
+ * and doubles in size when it fills up, dropping every glyph so they are
+ * rasterized again into the new texture. Once it cannot grow any more, the
+ * least recently used glyphs are evicted to make space. Their metrics stay
+ * cached.
+ * <p>
+ * Both growing and evicting move glyphs that may already be in the current
+ * batch, so the batch is drawn first.
+ */
+final class GlyphCache
+{
+    private static final Logger LOGGER = new Logger();
+    
+    static final int INITIAL_SIZE = 256;
+    static final int MAX_SIZE     = 8192;
+    
+    static final int MAX_BUCKET = 256;
+    
+    /**
+     * Signed distance fields are generated once at this size and scaled to
+     * every text size.
+     */
+    static final int SDF_SIZE = 48;
+    
+    private static final int   SDF_PADDING        = 6;
+    private static final byte  SDF_ON_EDGE        = (byte) 128;
+    private static final float SDF_DISTANCE_SCALE = 128F / GlyphCache.SDF_PADDING;
+    
+    private static final int PADDING = 1;
+    private static final int EMPTY   = -1;
+    
+    /**
+     * Sizes up to 64 are rasterized exactly. Larger sizes are rasterized at
+     * the next power of two and scaled down so that they share glyphs.
+     *
+     * @return The size that the glyphs are rasterized at
+     */
+    static int bucket(int size)
+    {
+        if (size <= 64) return Math.max(size, 1);
+        return Math.min(Integer.highestOneBit(size - 1) << 1, GlyphCache.MAX_BUCKET);
+    }
+    
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    // -------------------- Instance -------------------- //
+    
+    private final STBTTFontinfo info;
+    private final int           ascentUnscaled;
+    private final boolean       interpolated;
+    private final boolean       sdf;
+    
+    private Texture     texture;
+    private AtlasPacker packer;
+    
+    private int[]   keys;
+    private Glyph[] glyphs;
+    private int     count;
+    
+    private Glyph head; // Most recently used
+    private Glyph tail; // Least recently used
+    
+    private ByteBuffer bitmap;
+    
+    GlyphCache(@NotNull STBTTFontinfo info, int ascentUnscaled, boolean interpolated, boolean sdf)
+    {
+        this.info           = info;
+        this.ascentUnscaled = ascentUnscaled;
+        this.interpolated   = interpolated;
+        this.sdf            = sdf;
+        
+        this.keys   = new int[256];
+        this.glyphs = new Glyph[256];
+        Arrays.fill(this.keys, GlyphCache.EMPTY);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "GlyphCache{" + "size=" + (this.texture != null ? this.texture.width() : 0) + ", glyphs=" + this.count + '}';
+    }
+    
+    /**
+     * The texture is replaced when the atlas grows, so it must be read
+     * after the glyphs that are drawn with it.
+     *
+     * @return The atlas texture
+     */
+    @NotNull Texture texture()
+    {
+        if (this.texture == null) createTexture(GlyphCache.INITIAL_SIZE);
+        return this.texture;
+    }
+    
+    /**
+     * The metrics are read from the font and kept for as long as the cache,
+     * so text can be measured without touching the atlas or a context.
+     *
+     * @return The metrics of the glyph
+     */
+    @NotNull CharData metrics(int codePoint, int size)
+    {
+        return glyph(codePoint, size).data;
+    }
+    
+    /**
+     * @return The glyph and its place in the atlas, rasterizing it if it is
+     * not in the atlas
+     */
+    @NotNull GlyphRegion region(int codePoint, int size)
+    {
+        Glyph glyph = glyph(codePoint, size);
+        if (glyph.region == null)
+        {
+            rasterize(glyph);
+        }
+        else
+        {
+            unlink(glyph);
+        }
+        link(glyph);
+        return glyph.region;
+    }
+    
+    void delete()
+    {
+        if (this.texture != null) this.texture.delete();
+        this.texture = null;
+        this.packer  = null;
+        
+        clearGlyphs();
+        
+        MemoryUtil.memFree(this.bitmap);
+        this.bitmap = null;
+    }
+    
+    private @NotNull Glyph glyph(int codePoint, int size)
+    {
+        int bucket = this.sdf ? GlyphCache.SDF_SIZE : bucket(size);
+        int key    = (codePoint << 9) | bucket;
+        
+        Glyph glyph = find(key);
+        if (glyph == null)
+        {
+            glyph = measure(codePoint, bucket, key);
+            put(glyph);
+        }
+        return glyph;
+    }
+    
+    private @NotNull Glyph measure(int codePoint, int bucket, int key)
+    {
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            IntBuffer advanceWidth    = stack.mallocInt(1);
+            IntBuffer leftSideBearing = stack.mallocInt(1);
+            
+            IntBuffer x0 = stack.callocInt(1);
+            IntBuffer y0 = stack.callocInt(1);
+            IntBuffer x1 = stack.callocInt(1);
+            IntBuffer y1 = stack.callocInt(1);
+            
+            float scale = stbtt_ScaleForPixelHeight(this.info, bucket);
+            int   index = stbtt_FindGlyphIndex(this.info, codePoint);
+            
+            stbtt_GetGlyphHMetrics(this.info, index, advanceWidth, leftSideBearing);
+            stbtt_GetGlyphBitmapBox(this.info, index, scale, scale, x0, y0, x1, y1);
+            
+            // Signed distance fields fade out over padding around the box,
+            // but stbtt_GetGlyphSDF leaves empty glyphs without one
+            if (this.sdf && x0.get(0) != x1.get(0) && y0.get(0) != y1.get(0))
+            {
+                x0.put(0, x0.get(0) - GlyphCache.SDF_PADDING);
+                y0.put(0, y0.get(0) - GlyphCache.SDF_PADDING);
+                x1.put(0, x1.get(0) + GlyphCache.SDF_PADDING);
+                y1.put(0, y1.get(0) + GlyphCache.SDF_PADDING);
+            }
+            
+            Glyph glyph = new Glyph(key);
+            
+            glyph.width  = x1.get(0) - x0.get(0);
+            glyph.height = y1.get(0) - y0.get(0);
+            
+            glyph.data = new CharData((char) codePoint, index,
+                                      advanceWidth.get(0), leftSideBearing.get(0),
+                                      x0.get(0) / scale, this.ascentUnscaled + y0.get(0) / scale,
+                                      x1.get(0) / scale, this.ascentUnscaled + y1.get(0) / scale);
+            return glyph;
+        }
+    }
+    
+    private void rasterize(@NotNull Glyph glyph)
+    {
+        double u0 = 0.0, v0 = 0.0, u1 = 0.0, v1 = 0.0;
+        
+        int width  = glyph.width;
+        int height = glyph.height;
+        if (width > 0 && height > 0)
+        {
+            int slotWidth  = width + GlyphCache.PADDING * 2;
+            int slotHeight = height + GlyphCache.PADDING * 2;
+            
+            long slot = allocate(slotWidth, slotHeight);
+            
+            glyph.slotX      = (int) (slot >>> 32);
+            glyph.slotY      = (int) slot;
+            glyph.slotWidth  = slotWidth;
+            glyph.slotHeight = slotHeight;
+            
+            upload(glyph);
+            
+            double size = this.texture.width();
+            
+            u0 = (glyph.slotX + GlyphCache.PADDING) / size;
+            v0 = (glyph.slotY + GlyphCache.PADDING) / size;
+            u1 = (glyph.slotX + GlyphCache.PADDING + width) / size;
+            v1 = (glyph.slotY + GlyphCache.PADDING + height) / size;
+        }
+        
+        glyph.region = new GlyphRegion(glyph.data, u0, v0, u1, v1);
+    }
+    
+    private long allocate(int width, int height)
+    {
+        if (this.texture == null) createTexture(GlyphCache.INITIAL_SIZE);
+        
+        long slot = this.packer.insert(width, height);
+        if (slot >= 0) return slot;
+        
+        // Glyphs already in the batch still point at the atlas as it is
+        GLBatch.draw();
+        
+        int maxSize = Math.min(GlyphCache.MAX_SIZE, GL33.glGetInteger(GL33.GL_MAX_TEXTURE_SIZE));
+        while (this.texture.width() < maxSize)
+        {
+            int size = this.texture.width() << 1;
+            
+            GlyphCache.LOGGER.finer("Growing %s to %s", this, size);
+            
+            this.texture.delete();
+            createTexture(size);
+            clearRegions();
+            
+            slot = this.packer.insert(width, height);
+            if (slot >= 0) return slot;
+        }
+        
+        while (this.tail != null)
+        {
+            evict(this.tail);
+            
+            slot = this.packer.insert(width, height);
+            if (slot >= 0) return slot;
+        }
+        throw new IllegalStateException("Glyph does not fit in the atlas: " + width + "x" + height);
+    }
+    
+    private void upload(@NotNull Glyph glyph)
+    {
+        int size = glyph.slotWidth * glyph.slotHeight;
+        if (this.bitmap == null || this.bitmap.capacity() < size)
+        {
+            MemoryUtil.memFree(this.bitmap);
+            this.bitmap = MemoryUtil.memAlloc(size);
+        }
+        
+        float scale = stbtt_ScaleForPixelHeight(this.info, glyph.key & 0x1FF);
+        int   index = glyph.data.index();
+        
+        // The padding is left zero so that filtering does not pick up the neighbours
+        ByteBuffer bitmap = this.bitmap.clear().limit(size);
+        MemoryUtil.memSet(bitmap, 0);
+        int offset = GlyphCache.PADDING * glyph.slotWidth + GlyphCache.PADDING;
+        if (this.sdf)
+        {
+            try (MemoryStack stack = MemoryStack.stackPush())
+            {
+                IntBuffer width  = stack.callocInt(1);
+                IntBuffer height = stack.callocInt(1);
+                
+                ByteBuffer distances = stbtt_GetGlyphSDF(this.info, scale, index, GlyphCache.SDF_PADDING, GlyphCache.SDF_ON_EDGE, GlyphCache.SDF_DISTANCE_SCALE, width, height, null, null);
+                if (distances != null)
+                {
+                    int  rows = Math.min(height.get(0), glyph.height);
+                    int  cols = Math.min(width.get(0), glyph.width);
+                    long src  = MemoryUtil.memAddress(distances);
+                    long dst  = MemoryUtil.memAddress(bitmap) + offset;
+                    for (int row = 0; row < rows; row++) MemoryUtil.memCopy(src + (long) row * width.get(0), dst + (long) row * glyph.slotWidth, cols);
+                    
+                    stbtt_FreeSDF(distances);
+                }
+            }
+        }
+        else
+        {
+            bitmap.position(offset);
+            stbtt_MakeGlyphBitmap(this.info, bitmap, glyph.width, glyph.height, glyph.slotWidth, scale, scale, index);
+            bitmap.position(0);
+        }
+        
+        GLTexture.bind(this.texture);
+        this.texture.update(bitmap, glyph.slotX, glyph.slotY, glyph.slotWidth, glyph.slotHeight);
+    }
+    
+    private void createTexture(int size)
+    {
+        // Texels outside the glyph slots are never sampled, so they are left undefined
+        this.texture = Texture.load(size, size, ColorFormat.GRAY);
+        this.texture.swizzle(TextureSwizzle.ONE, TextureSwizzle.ONE, TextureSwizzle.ONE, TextureSwizzle.RED);
+        if (this.interpolated || this.sdf) this.texture.filter(TextureFilter.LINEAR, TextureFilter.LINEAR);
+        
+        this.packer = new AtlasPacker(size, size);
+    }
+    
+    private void evict(@NotNull Glyph glyph)
+    {
+        unlink(glyph);
+        
+        if (glyph.slotWidth > 0) this.packer.remove(glyph.slotX, glyph.slotY, glyph.slotWidth, glyph.slotHeight);
+        glyph.slotWidth  = 0;
+        glyph.slotHeight = 0;
+        glyph.region     = null;
+    }
+    
+    /**
+     * Takes every glyph out of the atlas. Their metrics are kept.
+     */
+    private void clearRegions()
+    {
+        for (Glyph glyph = this.head, next; glyph != null; glyph = next)
+        {
+            next = glyph.next;
+            
+            glyph.slotWidth  = 0;
+            glyph.slotHeight = 0;
+            glyph.region     = null;
+            glyph.prev       = null;
+            glyph.next       = null;
+        }
+        this.head = null;
+        this.tail = null;
+    }
+    
+    private void clearGlyphs()
+    {
+        Arrays.fill(this.keys, GlyphCache.EMPTY);
+        Arrays.fill(this.glyphs, null);
+        this.count = 0;
+        
+        this.head = null;
+        this.tail = null;
+    }
+    
+    // -------------------- Map -------------------- //
+    
+    private Glyph find(int key)
+    {
+        int mask = this.keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask)
+        {
+            int k = this.keys[i];
+            if (k == key) return this.glyphs[i];
+            if (k == GlyphCache.EMPTY) return null;
+        }
+    }
+    
+    private void put(@NotNull Glyph glyph)
+    {
+        if ((this.count + 1) * 2 > this.keys.length)
+        {
+            int[]   keys   = this.keys;
+            Glyph[] glyphs = this.glyphs;
+            
+            this.keys   = new int[keys.length << 1];
+            this.glyphs = new Glyph[keys.length << 1];
+            Arrays.fill(this.keys, GlyphCache.EMPTY);
+            
+            for (int i = 0; i < keys.length; i++)
+            {
+                if (keys[i] != GlyphCache.EMPTY) insert(keys[i], glyphs[i]);
+            }
+        }
+        insert(glyph.key, glyph);
+        this.count++;
+    }
+    
+    private void insert(int key, Glyph glyph)
+    {
+        int mask = this.keys.length - 1;
+        int i    = hash(key) & mask;
+        while (this.keys[i] != GlyphCache.EMPTY) i = (i + 1) & mask;
+        this.keys[i]   = key;
+        this.glyphs[i] = glyph;
+    }
+    
+    // -------------------- LRU -------------------- //
+    
+    private void link(@NotNull Glyph glyph)
+    {
+        glyph.prev = null;
+        glyph.next = this.head;
+        if (this.head != null) this.head.prev = glyph;
+        this.head = glyph;
+        if (this.tail == null) this.tail = glyph;
+    }
+    
+    private void unlink(@NotNull Glyph glyph)
+    {
+        if (glyph.prev != null) glyph.prev.next = glyph.next;
+        if (glyph.next != null) glyph.next.prev = glyph.prev;
+        if (this.head == glyph) this.head = glyph.next;
+        if (this.tail == glyph) this.tail = glyph.prev;
+        glyph.prev = null;
+        glyph.next = null;
+    }
+    
+    private static final class Glyph
+    {
+        private final int key;
+        
+        private CharData data;
+        private int      width, height;
+        
+        private GlyphRegion region;
+        private int         slotX, slotY, slotWidth, slotHeight;
+        
+        private Glyph prev, next;
+        
+        private Glyph(int key)
+        {
+            this.key = key;
+        }
+    }
+}
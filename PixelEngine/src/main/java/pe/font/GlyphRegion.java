@@ -0,0 +1,9 @@
+package pe.font;
+
+/**
+ * A glyph and where it is in the font texture. The texture coordinates are
+ * only valid until the next glyph is rasterized, which can move it.
+ */
+public record GlyphRegion(CharData data, double u0, double v0, double u1, double v1)
+{
+}
@@ -0,0 +1,108 @@
+package pe.font;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.stb.STBTTFontinfo;
+
+import java.util.Arrays;
+
+import static org.lwjgl.stb.STBTruetype.stbtt_GetGlyphKernAdvance;
+
+/**
+ * Kerning advances of a font, read from stb the first time each glyph
+ * pair is seen.
+ * <p>
+ * Pairs are packed into an int key and kept in an open addressing table so
+ * that repeated lookups stay in Java. A glyph index is at most 0xFFFE, so
+ * no pair packs to the empty key.
+ */
+final class KerningTable
+{
+    private static final int EMPTY = -1;
+    
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    // -------------------- Instance -------------------- //
+    
+    private final STBTTFontinfo info;
+    
+    private int[] keys;
+    private int[] advances;
+    private int   count;
+    
+    KerningTable(@NotNull STBTTFontinfo info)
+    {
+        this.info = info;
+        
+        this.keys     = new int[256];
+        this.advances = new int[256];
+        Arrays.fill(this.keys, KerningTable.EMPTY);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "KerningTable{" + "pairs=" + this.count + '}';
+    }
+    
+    /**
+     * @return The kerning advance in font units between two glyph indices
+     */
+    int get(int index1, int index2)
+    {
+        int key  = (index1 << 16) | (index2 & 0xFFFF);
+        int mask = this.keys.length - 1;
+        
+        int i = hash(key) & mask;
+        for (int k; (k = this.keys[i]) != KerningTable.EMPTY; i = (i + 1) & mask)
+        {
+            if (k == key) return this.advances[i];
+        }
+        
+        int advance = stbtt_GetGlyphKernAdvance(this.info, index1, index2);
+        
+        if ((this.count + 1) * 2 > this.keys.length)
+        {
+            grow();
+            
+            mask = this.keys.length - 1;
+            i    = hash(key) & mask;
+            while (this.keys[i] != KerningTable.EMPTY) i = (i + 1) & mask;
+        }
+        this.keys[i]     = key;
+        this.advances[i] = advance;
+        this.count++;
+        
+        return advance;
+    }
+    
+    void clear()
+    {
+        Arrays.fill(this.keys, KerningTable.EMPTY);
+        this.count = 0;
+    }
+    
+    private void grow()
+    {
+        int[] keys     = this.keys;
+        int[] advances = this.advances;
+        
+        this.keys     = new int[keys.length << 1];
+        this.advances = new int[keys.length << 1];
+        Arrays.fill(this.keys, KerningTable.EMPTY);
+        
+        int mask = this.keys.length - 1;
+        for (int j = 0; j < keys.length; j++)
+        {
+            if (keys[j] == KerningTable.EMPTY) continue;
+            
+            int i = hash(keys[j]) & mask;
+            while (this.keys[i] != KerningTable.EMPTY) i = (i + 1) & mask;
+            this.keys[i]     = keys[j];
+            this.advances[i] = advances[j];
+        }
+    }
+}
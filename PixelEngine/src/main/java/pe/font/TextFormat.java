@@ -6,8 +6,8 @@ import rutils.Math;
 @SuppressWarnings("unused")
 public class TextFormat
 {
-    static final char MODIFIER  = 0xB6;  // ¶
-    static final char SEPARATOR = '-';
+    public static final char MODIFIER  = 0xB6;  // ¶
+    static final        char SEPARATOR = '-';
     
     static final        String RESET     = "0";
     public static final String RESET_ALL = MODIFIER + RESET + SEPARATOR + RESET + MODIFIER;
@@ -0,0 +1,403 @@
+package pe.font;
+
+import org.jetbrains.annotations.NotNull;
+import rutils.Logger;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A string resolved once into positioned glyphs so that it can be measured
+ * and drawn again without parsing it.
+ * <p>
+ * {@link TextFormat} modifiers, font changes, kerning and line breaks are
+ * all applied when the layout is built. Each glyph keeps its code point,
+ * font, position on its line, colors and decoration. Only glyph metrics
+ * are read, so building a layout never rasterizes anything. Texture
+ * coordinates are not kept, as the glyph cache can move glyphs, so they are
+ * looked up when the layout is drawn.
+ * <p>
+ * Layouts are immutable. {@link #get(String, TextState)} keeps the most
+ * recently used ones so that labels drawn every frame are only laid out
+ * once.
+ */
+public final class TextLayout
+{
+    private static final Logger LOGGER = new Logger();
+    
+    public static final int MAX_CACHED = 256;
+    
+    public static final int UNDERLINE = 0x1;
+    public static final int STRIKE    = 0x2;
+    
+    private static final Map<Key, TextLayout> CACHE = new LinkedHashMap<>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest)
+        {
+            return size() > TextLayout.MAX_CACHED;
+        }
+    };
+    
+    /**
+     * Gets the layout of a string, building it if it is not cached.
+     *
+     * @param text  The text.
+     * @param state The state at the start of the text. It is not changed.
+     * @return The layout
+     */
+    public static @NotNull TextLayout get(@NotNull String text, @NotNull TextState state)
+    {
+        Key key = new Key(text, state.baseFont, state.weight, state.italicized, state.size,
+                          state.underline, state.strike,
+                          pack(state.textR, state.textG, state.textB, state.textA),
+                          pack(state.backR, state.backG, state.backB, state.backA),
+                          state.ignoreChanges);
+        
+        TextLayout layout = TextLayout.CACHE.get(key);
+        if (layout == null)
+        {
+            layout = new TextLayout(text, new TextState(state.baseFont, state.weight, state.italicized, state.size).set(state));
+            TextLayout.CACHE.put(key, layout);
+        }
+        return layout;
+    }
+    
+    /**
+     * Gets the layout of a string in the default weight and style.
+     */
+    public static @NotNull TextLayout get(@NotNull String text, @NotNull Font font, int size)
+    {
+        Key key = new Key(text, font, Font.DEFAULT_WEIGHT, Font.DEFAULT_ITALICS, size, false, false, 0xFFFFFFFF, 0, false);
+        
+        TextLayout layout = TextLayout.CACHE.get(key);
+        if (layout == null)
+        {
+            layout = new TextLayout(text, new TextState(font, Font.DEFAULT_WEIGHT, Font.DEFAULT_ITALICS, size));
+            TextLayout.CACHE.put(key, layout);
+        }
+        return layout;
+    }
+    
+    /**
+     * Drops every cached layout. Called when a font is deleted.
+     */
+    public static void clearCache()
+    {
+        TextLayout.LOGGER.finer("Clearing %s cached layouts", TextLayout.CACHE.size());
+        
+        TextLayout.CACHE.clear();
+    }
+    
+    private static int pack(int r, int g, int b, int a)
+    {
+        return (r << 24) | (g << 16) | (b << 8) | a;
+    }
+    
+    private record Key(String text, Font font, Weight weight, boolean italicized, int size,
+                       boolean underline, boolean strike, int textColor, int backColor,
+                       boolean ignoreChanges) {}
+    
+    // -------------------- Instance -------------------- //
+    
+    private final int size;
+    
+    private final FontSingle[] fonts;
+    private final double[]     scales;
+    
+    private final int      glyphCount;
+    private final int[]    codePoints;
+    private final byte[]   fontIndices;
+    private final double[] offsets;
+    private final double[] advances;
+    private final int[]    textColors;
+    private final int[]    backColors;
+    private final byte[]   decorations;
+    
+    private final int      lineCount;
+    private final int[]    lineStarts; // lineCount + 1 entries
+    private final double[] lineWidths;
+    private final double[] lineHeights;
+    
+    private final double width;
+    private final double height;
+    
+    /**
+     * Lays out a string.
+     *
+     * @param text  The text.
+     * @param state The state at the start of the text. It is updated by the
+     *              modifiers in the text.
+     */
+    public TextLayout(@NotNull String text, @NotNull TextState state)
+    {
+        this.size = state.size;
+        
+        int length = text.length();
+        
+        FontSingle[] fonts       = new FontSingle[4];
+        double[]     scales      = new double[4];
+        int          fontCount   = 0;
+        int[]        codePoints  = new int[length];
+        byte[]       fontIndices = new byte[length];
+        double[]     offsets     = new double[length];
+        double[]     advances    = new double[length];
+        int[]        textColors  = new int[length];
+        int[]        backColors  = new int[length];
+        byte[]       decorations = new byte[length];
+        
+        int      lineCount   = 0;
+        int[]    lineStarts  = new int[8];
+        double[] lineWidths  = new double[8];
+        double[] lineHeights = new double[8];
+        
+        int glyph = 0;
+        
+        double width  = 0.0;
+        double height = 0.0;
+        
+        for (int start = 0; start <= length; )
+        {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = length;
+            
+            if (lineCount + 1 >= lineStarts.length)
+            {
+                lineStarts  = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                lineWidths  = Arrays.copyOf(lineWidths, lineWidths.length * 2);
+                lineHeights = Arrays.copyOf(lineHeights, lineHeights.length * 2);
+            }
+            lineStarts[lineCount] = glyph;
+            
+            double x          = 0.0;
+            double lineHeight = 0.0;
+            
+            CharData   prevChar = null;
+            FontSingle prevFont = null;
+            for (int i = start; i < end; i++)
+            {
+                char character = text.charAt(i);
+                
+                if (state.handleModifier(character)) continue;
+                
+                state.changeFont();
+                
+                FontSingle font = state.currFont;
+                
+                int fontIndex = 0;
+                while (fontIndex < fontCount && fonts[fontIndex] != font) fontIndex++;
+                if (fontIndex == fontCount)
+                {
+                    if (fontCount == fonts.length)
+                    {
+                        fonts  = Arrays.copyOf(fonts, fontCount * 2);
+                        scales = Arrays.copyOf(scales, fontCount * 2);
+                    }
+                    fonts[fontCount]  = font;
+                    scales[fontCount] = font.scale(state.size);
+                    fontCount++;
+                }
+                double scale = scales[fontIndex];
+                
+                CharData currChar = font.charData(character, state.size);
+                
+                // Kerning pairs only make sense within one font
+                if (prevFont == font) x += font.getKernAdvanceUnscaled(prevChar, currChar) * scale;
+                
+                double advance = currChar.advanceWidthUnscaled() * scale;
+                
+                codePoints[glyph]  = character;
+                fontIndices[glyph] = (byte) fontIndex;
+                offsets[glyph]     = x;
+                advances[glyph]    = advance;
+                textColors[glyph]  = pack(state.textR, state.textG, state.textB, state.textA);
+                backColors[glyph]  = pack(state.backR, state.backG, state.backB, state.backA);
+                decorations[glyph] = (byte) ((state.underline ? TextLayout.UNDERLINE : 0) | (state.strike ? TextLayout.STRIKE : 0));
+                glyph++;
+                
+                x += advance;
+                
+                lineHeight = Math.max(lineHeight, (font.ascentUnscaled - font.descentUnscaled + font.lineGapUnscaled) * scale);
+                
+                prevChar = currChar;
+                prevFont = font;
+            }
+            
+            lineWidths[lineCount]  = x;
+            lineHeights[lineCount] = lineHeight;
+            lineCount++;
+            
+            width = Math.max(width, x);
+            height += lineHeight;
+            
+            start = end + 1;
+        }
+        lineStarts[lineCount] = glyph;
+        
+        if (fontCount > Byte.MAX_VALUE) throw new IllegalStateException("Too many fonts in text: " + fontCount);
+        
+        this.fonts  = Arrays.copyOf(fonts, fontCount);
+        this.scales = Arrays.copyOf(scales, fontCount);
+        
+        this.glyphCount  = glyph;
+        this.codePoints  = Arrays.copyOf(codePoints, glyph);
+        this.fontIndices = Arrays.copyOf(fontIndices, glyph);
+        this.offsets     = Arrays.copyOf(offsets, glyph);
+        this.advances    = Arrays.copyOf(advances, glyph);
+        this.textColors  = Arrays.copyOf(textColors, glyph);
+        this.backColors  = Arrays.copyOf(backColors, glyph);
+        this.decorations = Arrays.copyOf(decorations, glyph);
+        
+        this.lineCount   = lineCount;
+        this.lineStarts  = Arrays.copyOf(lineStarts, lineCount + 1);
+        this.lineWidths  = Arrays.copyOf(lineWidths, lineCount);
+        this.lineHeights = Arrays.copyOf(lineHeights, lineCount);
+        
+        this.width  = width;
+        this.height = height;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "TextLayout{" + "glyphs=" + this.glyphCount + ", lines=" + this.lineCount + ", size=" + this.width + "x" + this.height + '}';
+    }
+    
+    /**
+     * @return The size of the text that the layout was built for
+     */
+    public int size()
+    {
+        return this.size;
+    }
+    
+    /**
+     * @return The width of the widest line in pixels
+     */
+    public double width()
+    {
+        return this.width;
+    }
+    
+    /**
+     * @return The height of all lines in pixels
+     */
+    public double height()
+    {
+        return this.height;
+    }
+    
+    /**
+     * @return The number of lines
+     */
+    public int lineCount()
+    {
+        return this.lineCount;
+    }
+    
+    /**
+     * @return The index of the first glyph on a line
+     */
+    public int lineStart(int line)
+    {
+        return this.lineStarts[line];
+    }
+    
+    /**
+     * @return The index after the last glyph on a line
+     */
+    public int lineEnd(int line)
+    {
+        return this.lineStarts[line + 1];
+    }
+    
+    /**
+     * @return The width of a line in pixels
+     */
+    public double lineWidth(int line)
+    {
+        return this.lineWidths[line];
+    }
+    
+    /**
+     * @return The height of a line in pixels
+     */
+    public double lineHeight(int line)
+    {
+        return this.lineHeights[line];
+    }
+    
+    /**
+     * @return The number of glyphs, not counting modifiers and line breaks
+     */
+    public int glyphCount()
+    {
+        return this.glyphCount;
+    }
+    
+    /**
+     * @return The character of a glyph
+     */
+    public int codePoint(int glyph)
+    {
+        return this.codePoints[glyph];
+    }
+    
+    /**
+     * @return The font of a glyph
+     */
+    public @NotNull FontSingle font(int glyph)
+    {
+        return this.fonts[this.fontIndices[glyph]];
+    }
+    
+    /**
+     * @return The scale from font units to pixels for the font of a glyph
+     */
+    public double scale(int glyph)
+    {
+        return this.scales[this.fontIndices[glyph]];
+    }
+    
+    /**
+     * @return The distance in pixels from the start of the line to the pen
+     * position of a glyph
+     */
+    public double offset(int glyph)
+    {
+        return this.offsets[glyph];
+    }
+    
+    /**
+     * @return The advance of a glyph in pixels
+     */
+    public double advance(int glyph)
+    {
+        return this.advances[glyph];
+    }
+    
+    /**
+     * @return The text color of a glyph packed as RGBA
+     */
+    public int textColor(int glyph)
+    {
+        return this.textColors[glyph];
+    }
+    
+    /**
+     * @return The background color of a glyph packed as RGBA
+     */
+    public int backColor(int glyph)
+    {
+        return this.backColors[glyph];
+    }
+    
+    /**
+     * @return The {@link #UNDERLINE} and {@link #STRIKE} flags of a glyph
+     */
+    public int decoration(int glyph)
+    {
+        return this.decorations[glyph];
+    }
+}
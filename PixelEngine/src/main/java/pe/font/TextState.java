@@ -34,6 +34,15 @@ public class TextState
     private final StringBuilder modifier = new StringBuilder();
     
     public TextState(@NotNull Font font, Weight weight, boolean italicized, int size)
+    {
+        set(font, weight, italicized, size);
+    }
+    
+    /**
+     * Resets the state to how the constructor leaves it so that one instance
+     * can be reused.
+     */
+    public @NotNull TextState set(@NotNull Font font, Weight weight, boolean italicized, int size)
     {
         this.weight     = weight;
         this.italicized = italicized;
@@ -43,6 +52,27 @@ public class TextState
         this.currFont = this.baseFont.withProperties(this.weight, this.italicized);
         
         this.size = size;
+        
+        this.underline = false;
+        this.strike    = false;
+        
+        this.textR = 255;
+        this.textG = 255;
+        this.textB = 255;
+        this.textA = 255;
+        
+        this.backR = 0;
+        this.backG = 0;
+        this.backB = 0;
+        this.backA = 0;
+        
+        this.ignoreChanges = false;
+        this.changeFont    = false;
+        this.inModifier    = false;
+        
+        this.modifier.setLength(0);
+        
+        return this;
     }
     
     public @NotNull TextState set(@NotNull TextState state)
@@ -89,7 +119,7 @@ public class TextState
             }
             else if (!this.ignoreChanges)
             {
-                changeState(this.modifier.toString());
+                changeState(this.modifier);
             }
             this.inModifier = !this.inModifier;
             return true;
@@ -102,57 +132,79 @@ public class TextState
         return false;
     }
     
-    public void changeState(@NotNull String modifierTag)
+    /**
+     * Applies a modifier tag, the text between two {@link TextFormat#MODIFIER}
+     * characters.
+     * <p>
+     * The tag is read in place so that formatted text can be drawn every
+     * frame without creating garbage.
+     */
+    public void changeState(@NotNull CharSequence modifierTag)
     {
-        String[] mod = modifierTag.split("" + TextFormat.SEPARATOR);
-        switch (mod[0])
+        int length = modifierTag.length();
+        
+        int tagEnd = indexOf(modifierTag, TextFormat.SEPARATOR, 0, length);
+        
+        int valueStart = Math.min(tagEnd + 1, length);
+        int valueEnd   = indexOf(modifierTag, TextFormat.SEPARATOR, valueStart, length);
+        
+        if (regionEquals(modifierTag, 0, tagEnd, TextFormat.RESET))
         {
-            case TextFormat.RESET ->
-            {
-                this.weight     = Font.DEFAULT_WEIGHT;
-                this.italicized = Font.DEFAULT_ITALICS;
-                
-                this.underline = false;
-                this.strike    = false;
-                
-                this.textR = 255;
-                this.textG = 255;
-                this.textB = 255;
-                this.textA = 255;
-                
-                this.backR = 0;
-                this.backG = 0;
-                this.backB = 0;
-                this.backA = 0;
-            }
-            case TextFormat.WEIGHT -> this.weight = Weight.get(mod[1]);
-            case TextFormat.ITALICS -> this.italicized = Boolean.parseBoolean(mod[1]);
-            case TextFormat.UNDERLINE -> this.underline = Boolean.parseBoolean(mod[1]);
-            case TextFormat.STRIKE -> this.strike = Boolean.parseBoolean(mod[1]);
-            case TextFormat.COLOR ->
-            {
-                int colorNumber = Integer.parseInt(mod[1], 16);
-                this.textR = (colorNumber >> 16) & 0xFF;
-                this.textG = (colorNumber >> 8) & 0xFF;
-                this.textB = colorNumber & 0xFF;
-            }
-            case TextFormat.COLOR_ALPHA ->
-            {
-                int colorNumber = Integer.parseInt(mod[1], 16);
-                this.textA = colorNumber & 0xFF;
-            }
-            case TextFormat.BACKGROUND ->
-            {
-                int colorNumber = Integer.parseInt(mod[1], 16);
-                this.backR = (colorNumber >> 16) & 0xFF;
-                this.backG = (colorNumber >> 8) & 0xFF;
-                this.backB = colorNumber & 0xFF;
-            }
-            case TextFormat.BACKGROUND_ALPHA ->
-            {
-                int colorNumber = Integer.parseInt(mod[1], 16);
-                this.backA = colorNumber & 0xFF;
-            }
+            this.weight     = Font.DEFAULT_WEIGHT;
+            this.italicized = Font.DEFAULT_ITALICS;
+            
+            this.underline = false;
+            this.strike    = false;
+            
+            this.textR = 255;
+            this.textG = 255;
+            this.textB = 255;
+            this.textA = 255;
+            
+            this.backR = 0;
+            this.backG = 0;
+            this.backB = 0;
+            this.backA = 0;
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.WEIGHT))
+        {
+            this.weight = Weight.get(modifierTag, valueStart, valueEnd);
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.ITALICS))
+        {
+            this.italicized = parseBoolean(modifierTag, valueStart, valueEnd);
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.UNDERLINE))
+        {
+            this.underline = parseBoolean(modifierTag, valueStart, valueEnd);
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.STRIKE))
+        {
+            this.strike = parseBoolean(modifierTag, valueStart, valueEnd);
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.COLOR))
+        {
+            int colorNumber = Integer.parseInt(modifierTag, valueStart, valueEnd, 16);
+            this.textR = (colorNumber >> 16) & 0xFF;
+            this.textG = (colorNumber >> 8) & 0xFF;
+            this.textB = colorNumber & 0xFF;
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.COLOR_ALPHA))
+        {
+            int colorNumber = Integer.parseInt(modifierTag, valueStart, valueEnd, 16);
+            this.textA = colorNumber & 0xFF;
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.BACKGROUND))
+        {
+            int colorNumber = Integer.parseInt(modifierTag, valueStart, valueEnd, 16);
+            this.backR = (colorNumber >> 16) & 0xFF;
+            this.backG = (colorNumber >> 8) & 0xFF;
+            this.backB = colorNumber & 0xFF;
+        }
+        else if (regionEquals(modifierTag, 0, tagEnd, TextFormat.BACKGROUND_ALPHA))
+        {
+            int colorNumber = Integer.parseInt(modifierTag, valueStart, valueEnd, 16);
+            this.backA = colorNumber & 0xFF;
         }
         
         this.changeFont = true;
@@ -168,4 +220,24 @@ public class TextState
             this.changeFont = false;
         }
     }
+    
+    private static int indexOf(@NotNull CharSequence string, char character, int start, int end)
+    {
+        for (int i = start; i < end; i++) if (string.charAt(i) == character) return i;
+        return end;
+    }
+    
+    static boolean regionEquals(@NotNull CharSequence string, int start, int end, @NotNull String other)
+    {
+        if (end - start != other.length()) return false;
+        for (int i = start; i < end; i++) if (string.charAt(i) != other.charAt(i - start)) return false;
+        return true;
+    }
+    
+    private static boolean parseBoolean(@NotNull CharSequence string, int start, int end)
+    {
+        if (end - start != 4) return false;
+        for (int i = start; i < end; i++) if (Character.toLowerCase(string.charAt(i)) != "true".charAt(i - start)) return false;
+        return true;
+    }
 }
@@ -16,6 +16,8 @@ public enum Weight
     BLACK,
     ;
     
+    private static final Weight[] VALUES = values();
+    
     private final String tag;
     
     Weight()
@@ -38,6 +40,19 @@ public enum Weight
         return null;
     }
     
+    /**
+     * Looks up a weight by the tag in part of a string, without creating
+     * a substring when the tag matches exactly.
+     */
+    static @Nullable Weight get(@NotNull CharSequence tag, int start, int end)
+    {
+        for (Weight weight : Weight.VALUES)
+        {
+            if (TextState.regionEquals(tag, start, end, weight.tag)) return weight;
+        }
+        return get(tag.subSequence(start, end).toString());
+    }
+    
     private static @NotNull String format(@NotNull String weight)
     {
         return weight.replace("_", "").toLowerCase();
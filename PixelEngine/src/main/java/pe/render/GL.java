@@ -12,6 +12,7 @@ import rutils.Logger;
 
 import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public final class GL // TODO - Instance GL for multiple contexts
 {
@@ -19,9 +20,10 @@ public final class GL // TODO - Instance GL for multiple contexts
     
     public static final int DEFAULT_BATCH_BUFFER_ELEMENTS = 8192; // Default internal render batch limits
     
-    public static final int DEFAULT_BATCH_BUFFERS   = 1;   // Default number of batch buffers (multi-buffering)
-    public static final int DEFAULT_BATCH_DRAWCALLS = 256; // Default number of batch draw calls (by state changes: mode, texture)
-    public static final int MAX_ACTIVE_TEXTURES     = 16;  // Maximum number of additional textures that can be activated on batch drawing (SetShaderValueTexture())
+    public static final int DEFAULT_BATCH_BUFFERS   = 3;    // Default number of batch buffers (multi-buffering)
+    public static final int DEFAULT_BATCH_DRAWCALLS = 256;  // Default number of batch draw calls (by state changes: mode, texture)
+    public static final int DEFAULT_BATCH_INSTANCES = 8192; // Default number of instanced sprites per batch
+    public static final int MAX_ACTIVE_TEXTURES     = 16;   // Maximum number of additional textures that can be activated on batch drawing (SetShaderValueTexture())
     
     public static final int STATE_STACK_SIZE        = 32; // Initial size of GL Property stack
     public static final int BATCH_STACK_SIZE        = 32; // Initial size of Batch Property stack
@@ -36,8 +38,17 @@ public final class GL // TODO - Instance GL for multiple contexts
     
     static GLShader defaultVertShader;
     static GLShader defaultFragShader;
+    static GLShader defaultVertShader2D;
+    static GLShader defaultFragShader2D;
+    static GLShader defaultVertShaderInstanced;
+    static GLShader defaultFragShaderSDF;
+    static GLShader defaultFragShaderSDF2D;
     
     static GLProgram defaultProgram;
+    static GLProgram defaultProgram2D;
+    static GLProgram defaultProgramInstanced;
+    static GLProgram defaultProgramSDF;
+    static GLProgram defaultProgramSDF2D;
     static GLProgram currentProgram;
     
     static GLTexture defaultTexture;
@@ -91,6 +102,11 @@ public final class GL // TODO - Instance GL for multiple contexts
         GLBuffer.bind((GLBufferArray) null);
         GLBuffer.bind((GLBufferElementArray) null);
         GLBuffer.bind((GLBufferUniform) null);
+        GLBuffer.bind((GLBufferPixelPack) null);
+        GLBuffer.bind((GLBufferPixelUnpack) null);
+        
+        GLReadback.setup();
+        GLUpload.setup();
         
         GLVertexArray.setup();
         GLVertexArray.bind(null);
@@ -141,6 +157,9 @@ public final class GL // TODO - Instance GL for multiple contexts
         
         GLVertexArray.destroy();
         
+        GLUpload.destroy();
+        GLReadback.destroy();
+        
         GLBuffer.destroy();
         
         GLTexture.destroy();
@@ -286,6 +305,49 @@ public final class GL // TODO - Instance GL for multiple contexts
         return GL.defaultProgram;
     }
     
+    /**
+     * @return The default program for batches using {@link VertexLayout#COMPACT_2D}
+     */
+    public static @NotNull GLProgram defaultProgram2D()
+    {
+        return GL.defaultProgram2D;
+    }
+    
+    /**
+     * @return The default program for instanced sprites
+     */
+    public static @NotNull GLProgram defaultProgramInstanced()
+    {
+        return GL.defaultProgramInstanced;
+    }
+    
+    /**
+     * @return The program for text in signed distance field fonts. Batches
+     * using {@link VertexLayout#COMPACT_2D} draw with
+     * {@link #defaultProgramSDF2D()} instead.
+     */
+    public static @NotNull GLProgram defaultProgramSDF()
+    {
+        return GL.defaultProgramSDF;
+    }
+    
+    /**
+     * @return The program for text in signed distance field fonts in batches
+     * using {@link VertexLayout#COMPACT_2D}
+     */
+    public static @NotNull GLProgram defaultProgramSDF2D()
+    {
+        return GL.defaultProgramSDF2D;
+    }
+    
+    /**
+     * @return The program that the next batch will be drawn with
+     */
+    public static @NotNull GLProgram currentProgram()
+    {
+        return GL.currentProgram;
+    }
+    
     public static @NotNull GLTexture defaultTexture()
     {
         return GL.defaultTexture;
@@ -792,17 +854,18 @@ public final class GL // TODO - Instance GL for multiple contexts
         GL33.glReadPixels(x, y, width, height, format.format, GL33.GL_UNSIGNED_BYTE, MemoryUtil.memAddress(data));
         
         // Flip data vertically
-        int    s    = width * format.sizeof;
-        byte[] tmp1 = new byte[s], tmp2 = new byte[s];
-        for (int i = 0, n = height >> 1, col1, col2; i < n; i++)
+        int  s    = width * format.sizeof;
+        long addr = MemoryUtil.memAddress(data);
+        long tmp  = MemoryUtil.nmemAlloc(s);
+        for (int i = 0, n = height >> 1; i < n; i++)
         {
-            col1 = i * s;
-            col2 = (height - i - 1) * s;
-            data.get(col1, tmp1);
-            data.get(col2, tmp2);
-            data.put(col1, tmp2);
-            data.put(col2, tmp1);
+            long row1 = addr + (long) i * s;
+            long row2 = addr + (long) (height - i - 1) * s;
+            MemoryUtil.memCopy(row1, tmp, s);
+            MemoryUtil.memCopy(row2, row1, s);
+            MemoryUtil.memCopy(tmp, row2, s);
         }
+        MemoryUtil.nmemFree(tmp);
         
         return Color_RGBA.wrap(format, data);
     }
@@ -900,4 +963,64 @@ public final class GL // TODO - Instance GL for multiple contexts
     {
         return readBackBuffer(x, y, width, height, ColorFormat.RGB);
     }
+    
+    /**
+     * Starts reading values from the front buffer in the same way as
+     * {@link #readFrontBuffer(int, int, int, int, ColorFormat)} without
+     * waiting for the GPU. The pixels are copied into a pixel pack buffer
+     * and handed over once the GPU has written them, usually one or two
+     * frames later.
+     * <p>
+     * The future is completed on the render thread, so slow work like
+     * encoding should be moved off of it with one of the {@code *Async}
+     * methods. The buffer must be explicitly freed.
+     *
+     * @param x      the left pixel coordinate
+     * @param y      the lower pixel coordinate
+     * @param width  the number of pixels to read in the x-dimension
+     * @param height the number of pixels to read in the y-dimension
+     * @param format the color format. One of:<br>{@link ColorFormat#GRAY GRAY}, {@link ColorFormat#GRAY_ALPHA GRAY_ALPHA}, {@link ColorFormat#RGB RGB}, {@link ColorFormat#RGBA RGBA}
+     * @return The future color buffer.
+     */
+    @NotNull
+    public static CompletableFuture<Color.Buffer> readFrontBufferAsync(int x, int y, int width, int height, @NotNull ColorFormat format)
+    {
+        return GLReadback.read(GL33.GL_FRONT, x, y, width, height, format);
+    }
+    
+    /**
+     * Starts reading RGB values from the front buffer without waiting for
+     * the GPU.
+     *
+     * @see #readFrontBufferAsync(int, int, int, int, ColorFormat)
+     */
+    @NotNull
+    public static CompletableFuture<Color.Buffer> readFrontBufferAsync(int x, int y, int width, int height)
+    {
+        return readFrontBufferAsync(x, y, width, height, ColorFormat.RGB);
+    }
+    
+    /**
+     * Starts reading values from the back buffer without waiting for the
+     * GPU.
+     *
+     * @see #readFrontBufferAsync(int, int, int, int, ColorFormat)
+     */
+    @NotNull
+    public static CompletableFuture<Color.Buffer> readBackBufferAsync(int x, int y, int width, int height, @NotNull ColorFormat format)
+    {
+        return GLReadback.read(GL33.GL_BACK, x, y, width, height, format);
+    }
+    
+    /**
+     * Starts reading RGB values from the back buffer without waiting for the
+     * GPU.
+     *
+     * @see #readFrontBufferAsync(int, int, int, int, ColorFormat)
+     */
+    @NotNull
+    public static CompletableFuture<Color.Buffer> readBackBufferAsync(int x, int y, int width, int height)
+    {
+        return readBackBufferAsync(x, y, width, height, ColorFormat.RGB);
+    }
 }
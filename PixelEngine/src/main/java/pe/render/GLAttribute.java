@@ -2,8 +2,19 @@ package pe.render;
 
 import org.jetbrains.annotations.NotNull;
 
-public record GLAttribute(@NotNull GLType type, int count, boolean normalized)
+/**
+ * Describes a single vertex attribute of a {@link GLVertexArray} buffer.
+ *
+ * @param location The shader location of the attribute, or {@code -1} to use
+ *                 the next free location of the vertex array.
+ */
+public record GLAttribute(@NotNull GLType type, int count, boolean normalized, int location)
 {
+    public GLAttribute(@NotNull GLType type, int count, boolean normalized)
+    {
+        this(type, count, normalized, -1);
+    }
+    
     public GLAttribute(@NotNull GLType type, int count)
     {
         this(type, count, false);
@@ -22,7 +33,7 @@ public record GLAttribute(@NotNull GLType type, int count, boolean normalized)
     @Override
     public String toString()
     {
-        return this.type + "x" + this.count;
+        return this.type + "x" + this.count + (this.location >= 0 ? "@" + this.location : "");
     }
     
     public int size()
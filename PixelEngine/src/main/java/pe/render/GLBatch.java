@@ -4,13 +4,18 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4d;
 import org.joml.Vector3d;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
+import pe.color.BlendMode;
 import pe.color.Color;
 import pe.color.Color_RGBA;
 import pe.util.buffer.Byte4;
 import pe.util.buffer.Float3;
 import rutils.Logger;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Objects;
@@ -21,6 +26,11 @@ public class GLBatch
     
     private static int index = 0;
     
+    private static final int INSTANCE_SIZE = 48; // transform (4 floats) + position (3 floats) + texcoord rect (4 floats) + color (4 bytes)
+    
+    private static final int    SORT_LOOKBACK  = 64;  // Number of merged draw calls searched back when deferred
+    private static final double OVERLAP_MARGIN = 1.0; // Gap between bounds that still counts as overlapping, so lines and points that cover pixels without area are kept in order
+    
     // ------------------
     // ----- Static -----
     // ------------------
@@ -102,6 +112,43 @@ public class GLBatch
         GL.currentBatch.drawInternal();
     }
     
+    /**
+     * Sets whether the current batch defers its draw calls. The batch is
+     * drawn first so the change only affects new draw calls.
+     * <p>
+     * A deferred batch records each draw call with its bounds and, when it
+     * is drawn, moves each one back to the last draw call with the same
+     * texture and mode, as long as it does not overlap anything in between.
+     * Draw calls that end up together are drawn with a single
+     * {@code glMultiDraw*} call. If blending is off and the depth test is
+     * on, the depth buffer takes care of the order and overlaps are
+     * ignored.
+     * <p>
+     * Bounds are compared in model space, so this is meant for 2D drawing.
+     * They are grown by a pixel, so lines and points, which have no area,
+     * still overlap what they are drawn over.
+     *
+     * @param deferred If draw calls should be deferred and sorted
+     */
+    public static void deferred(boolean deferred)
+    {
+        if (GL.currentBatch.hasBegun) throw new IllegalStateException("Batch was not ended: " + GL.currentBatch);
+        
+        GLBatch.LOGGER.finest("Setting Deferred (%s): %s", deferred, GL.currentBatch);
+        
+        GL.currentBatch.drawInternal();
+        
+        GL.currentBatch.deferred = deferred;
+    }
+    
+    /**
+     * @return If the current batch defers and sorts its draw calls
+     */
+    public static boolean deferred()
+    {
+        return GL.currentBatch.deferred;
+    }
+    
     public static void begin(@NotNull DrawMode mode)
     {
         if (GL.currentBatch.hasBegun) throw new IllegalStateException("Batch was not ended: " + GL.currentBatch);
@@ -110,7 +157,8 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Beginning Mode (%s): %s", mode, GL.currentBatch);
         
-        if (GL.currentBatch.drawCalls[GL.currentBatch.currentDraw].mode != mode)
+        DrawCall drawCall = GL.currentBatch.drawCalls[GL.currentBatch.currentDraw];
+        if (drawCall.mode != mode || drawCall.instanceCount > 0)
         {
             GL.currentBatch.incDrawCall();
             
@@ -126,20 +174,8 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Ending", GL.currentBatch);
         
-        // Make sure tex1 count match vertex count
-        for (int i = 0, n = GL.currentBatch.pos.position() - GL.currentBatch.tex1.position(); i < n; i++) GL.currentBatch.tex1.put(0.0, 0.0, 1.0);
-        
-        // Make sure norm count match vertex count
-        for (int i = 0, n = GL.currentBatch.pos.position() - GL.currentBatch.norm.position(); i < n; i++) GL.currentBatch.norm.put(0.0, 0.0, 1.0);
-        
-        // Make sure tan count match vertex count
-        for (int i = 0, n = GL.currentBatch.pos.position() - GL.currentBatch.tan.position(); i < n; i++) GL.currentBatch.tan.put(1.0, 0.0, 0.0);
-        
-        // Make sure col count match vertex count
-        for (int i = 0, n = GL.currentBatch.pos.position() - GL.currentBatch.col.position(); i < n; i++) GL.currentBatch.col.put(GL.currentBatch.col.get(GL.currentBatch.col.position() - 1));
-        
-        // Make sure tex2 count match vertex count
-        for (int i = 0, n = GL.currentBatch.pos.position() - GL.currentBatch.tex2.position(); i < n; i++) GL.currentBatch.tex2.put(0.0, 0.0, 1.0);
+        // Make sure all attribute counts match vertex count
+        GL.currentBatch.vertices.fill();
         
         // Correct increment formula would be: depthInc = (zFar - zNear)/pow(2, bits)
         GL.currentBatch.currentDepth -= 0.00005;
@@ -149,7 +185,8 @@ public class GLBatch
     {
         GLBatch.LOGGER.finest("Setting Texture (%s) %s", texture, GL.currentBatch);
         
-        if (GL.currentBatch.drawCalls[GL.currentBatch.currentDraw].texture != texture)
+        DrawCall drawCall = GL.currentBatch.drawCalls[GL.currentBatch.currentDraw];
+        if (drawCall.texture != texture || drawCall.instanceCount > 0)
         {
             GL.currentBatch.incDrawCall();
             
@@ -174,13 +211,15 @@ public class GLBatch
         if (!GL.currentBatch.hasBegun) throw new IllegalStateException("Batch was not started: " + GL.currentBatch);
         
         // Verify that current vertex buffer elements limit has not been reached
-        if (GL.currentBatch.pos.position() < GL.currentBatch.elementsCount * 4)
+        if (GL.currentBatch.vertices.vertexCount() < GL.currentBatch.elementsCount * 4)
         {
             GLBatch.LOGGER.finest("Setting Vertex Position: [%s, %s, %s]", x, y, z);
             
-            GL.currentBatch.pos.put(x, y, z);
+            GL.currentBatch.vertices.pos(x, y, z);
             
-            GL.currentBatch.drawCalls[GL.currentBatch.currentDraw].vertexCount++;
+            DrawCall drawCall = GL.currentBatch.drawCalls[GL.currentBatch.currentDraw];
+            drawCall.vertexCount++;
+            if (GL.currentBatch.deferred) drawCall.include(x, y);
         }
         else
         {
@@ -199,7 +238,7 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Setting Vertex Texture Coordinate: [%s, %s, %s]", u, v, q);
         
-        GL.currentBatch.tex1.put(u, v, q);
+        GL.currentBatch.vertices.texCoord(u, v, q);
     }
     
     public static void texCoord(double u, double v)
@@ -213,7 +252,7 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Setting Vertex Normal: [%s, %s, %s]", x, y, z);
         
-        GL.currentBatch.norm.put(x, y, z);
+        GL.currentBatch.vertices.normal(x, y, z);
     }
     
     public static void tangent(double x, double y, double z)
@@ -222,7 +261,7 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Setting Vertex Tangent: [%s, %s, %s]", x, y, z);
         
-        GL.currentBatch.tan.put(x, y, z);
+        GL.currentBatch.vertices.tangent(x, y, z);
     }
     
     public static void color(int r, int g, int b, int a)
@@ -231,7 +270,7 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Setting Vertex Color: [%s, %s, %s, %s]", r, g, b, a);
         
-        GL.currentBatch.col.put(r, g, b, a);
+        GL.currentBatch.vertices.color(r, g, b, a);
     }
     
     public static void texCoord2(double u, double v, double q)
@@ -240,7 +279,7 @@ public class GLBatch
         
         GLBatch.LOGGER.finest("Setting Vertex Texture Coordinate 2: [%s, %s, %s]", u, v, q);
         
-        GL.currentBatch.tex2.put(u, v, q);
+        GL.currentBatch.vertices.texCoord2(u, v, q);
     }
     
     public static void texCoord2(double u, double v)
@@ -288,9 +327,62 @@ public class GLBatch
         }
     }
     
+    /**
+     * Adds an instanced sprite to the batch. Instead of four vertices, a
+     * single record is stored and drawn against a shared unit quad with
+     * {@code glDrawElementsInstanced}.
+     * <p>
+     * The corners of the unit quad are transformed by the matrix
+     * {@code [m00 m01; m10 m11]} then moved by {@code (x, y)}. The
+     * texture coordinates are picked from the rect {@code (u0, v0)-(u1, v1)}.
+     * <p>
+     * Must not be called between {@link #begin(DrawMode)} and {@link #end()}.
+     */
+    public static void instance(@NotNull GLTexture texture,
+                                double m00, double m01, double m10, double m11,
+                                double x, double y,
+                                double u0, double v0, double u1, double v1,
+                                int r, int g, int b, int a)
+    {
+        if (GL.currentBatch.hasBegun) throw new IllegalStateException("Batch was not ended: " + GL.currentBatch);
+        
+        GLBatch.LOGGER.finest("Adding Instance (%s): [%s, %s, %s, %s] [%s, %s]", texture, m00, m01, m10, m11, x, y);
+        
+        if (GL.currentBatch.instanceCount >= GL.DEFAULT_BATCH_INSTANCES) GL.currentBatch.drawInternal();
+        
+        DrawCall drawCall = GL.currentBatch.drawCalls[GL.currentBatch.currentDraw];
+        if (drawCall.vertexCount > 0 || drawCall.texture != texture)
+        {
+            GL.currentBatch.incDrawCall();
+            
+            drawCall         = GL.currentBatch.drawCalls[GL.currentBatch.currentDraw];
+            drawCall.texture = texture;
+        }
+        
+        // Columns of the 2x2 transform
+        GL.currentBatch.instances.putFloat((float) m00).putFloat((float) m10);
+        GL.currentBatch.instances.putFloat((float) m01).putFloat((float) m11);
+        GL.currentBatch.instances.putFloat((float) x).putFloat((float) y).putFloat((float) GL.currentBatch.currentDepth);
+        GL.currentBatch.instances.putFloat((float) u0).putFloat((float) v0).putFloat((float) u1).putFloat((float) v1);
+        GL.currentBatch.instances.put((byte) r).put((byte) g).put((byte) b).put((byte) a);
+        
+        drawCall.instanceCount++;
+        GL.currentBatch.instanceCount++;
+        
+        if (GL.currentBatch.deferred)
+        {
+            drawCall.include(x, y);
+            drawCall.include(x + m01, y + m11);
+            drawCall.include(x + m00 + m01, y + m10 + m11);
+            drawCall.include(x + m00, y + m10);
+        }
+        
+        GL.currentBatch.currentDepth -= 0.00005;
+    }
+    
     public static void checkBuffer(int vertexCount)
     {
-        if (GL.currentBatch.pos.position() + vertexCount >= GL.currentBatch.elementsCount * 4) GL.currentBatch.drawInternal();
+        if (GL.currentBatch.vertices.vertexCount() + vertexCount >= GL.currentBatch.elementsCount * 4) GL.currentBatch.drawInternal();
     }
     
     /**
@@ -357,17 +449,24 @@ public class GLBatch
     
     private final int elementsCount; // Number of elements in the buffer (QUADS)
     
-    private final Float3.Buffer pos;  // (XYZ)  (shader-location = 0)
-    private final Float3.Buffer tex1; // (UVQ)  (shader-location = 1)
-    private final Float3.Buffer norm; // (XYZ)  (shader-location = 2)
-    private final Float3.Buffer tan;  // (XYZ)  (shader-location = 3)
-    private final Byte4.Buffer  col;  // (RGBA) (shader-location = 4)
-    private final Float3.Buffer tex2; // (UVQ)  (shader-location = 5)
+    private final VertexLayout layout;
+    private final VertexData   vertices;
     
-    private final GLVertexArray vertexArray;
+    private final GLVertexArray[] vertexArrays; // Ring of vertex arrays (multi-buffering)
+    private       int             currentBuffer;
     
-    private       int        currentDraw;
-    private final DrawCall[] drawCalls;
+    private final ByteBuffer    instances; // Per-instance sprite records (INSTANCE_SIZE bytes each)
+    private       int           instanceCount;
+    private final GLVertexArray instanceArray;
+    
+    private int        currentDraw;
+    private DrawCall[] drawCalls;
+    
+    private boolean       deferred;
+    private DrawCall[]    sorted;       // Heads of the merged draw calls, in draw order
+    private IntBuffer     multiOffsets; // glMultiDraw* parameters
+    private PointerBuffer multiIndices;
+    private IntBuffer     multiCounts;
     
     private double currentDepth;
     
@@ -398,6 +497,11 @@ public class GLBatch
     private final BatchStats stats;
     
     public GLBatch()
+    {
+        this(VertexLayout.DEFAULT);
+    }
+    
+    public GLBatch(@NotNull VertexLayout layout)
     {
         this.id = ++GLBatch.index;
         
@@ -405,12 +509,12 @@ public class GLBatch
         
         int capacity = this.elementsCount * 4;
         
-        this.pos  = Float3.calloc(capacity); // 3 floats per position
-        this.tex1 = Float3.calloc(capacity); // 2 floats per texcoord
-        this.norm = Float3.calloc(capacity); // 3 floats per normal
-        this.tan  = Float3.calloc(capacity); // 3 floats per tangent
-        this.col  = Byte4.calloc(capacity);  // 4 bytes  per color
-        this.tex2 = Float3.calloc(capacity); // 2 floats per texcoord2
+        this.layout   = layout;
+        this.vertices = switch (layout)
+                {
+                    case FULL_3D -> new SeparateVertexData(capacity);
+                    case COMPACT_2D -> new InterleavedVertexData(capacity);
+                };
         
         IntBuffer indices = MemoryUtil.memCallocInt(this.elementsCount * 6); // 6 int per quad (indices)
         for (int i = 0; i < this.elementsCount; ++i)
@@ -423,21 +527,43 @@ public class GLBatch
             indices.put(4 * i + 3);
         }
         
-        this.vertexArray = GLVertexArray.builder()
-                                        .buffer(this.pos, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
-                                        .buffer(this.tex1, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
-                                        .buffer(this.norm, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
-                                        .buffer(this.tan, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
-                                        .buffer(this.col, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.UNSIGNED_BYTE, 4, true))
-                                        .buffer(this.tex2, Usage.DYNAMIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
-                                        .indexBuffer(indices.clear(), Usage.STATIC_DRAW)
-                                        .build();
+        this.vertexArrays = new GLVertexArray[Math.max(GL.DEFAULT_BATCH_BUFFERS, 1)];
+        for (int i = 0; i < this.vertexArrays.length; i++)
+        {
+            this.vertexArrays[i] = this.vertices.createVertexArray(indices.clear());
+        }
+        this.currentBuffer = 0;
         MemoryUtil.memFree(indices);
         
+        this.instances     = MemoryUtil.memCalloc(GL.DEFAULT_BATCH_INSTANCES * GLBatch.INSTANCE_SIZE);
+        this.instanceCount = 0;
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            // Unit quad, wound the same way as Draw2D quads
+            FloatBuffer quad        = stack.floats(0, 0, 0, 0, 1, 0, 1, 1, 0, 1, 0, 0);
+            IntBuffer   quadIndices = stack.ints(0, 1, 2, 0, 2, 3);
+            
+            this.instanceArray = GLVertexArray.builder()
+                                              .buffer(quad, Usage.STATIC_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                              .instanceBuffer(GL.DEFAULT_BATCH_INSTANCES, Usage.STREAM_DRAW,
+                                                              new GLAttribute(GLType.FLOAT, 4, false, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_INSTANCE_TRANSFORM)),
+                                                              new GLAttribute(GLType.FLOAT, 3, false, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_INSTANCE_POSITION)),
+                                                              new GLAttribute(GLType.FLOAT, 4, false, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_INSTANCE_TEXCOORD)),
+                                                              new GLAttribute(GLType.UNSIGNED_BYTE, 4, true, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_INSTANCE_COLOR)))
+                                              .indexBuffer(quadIndices, Usage.STATIC_DRAW)
+                                              .build();
+        }
+        
         this.currentDraw = 0;
         this.drawCalls   = new DrawCall[GL.DEFAULT_BATCH_DRAWCALLS];
         for (int i = 0; i < this.drawCalls.length; i++) this.drawCalls[i] = new DrawCall();
         
+        this.deferred     = false;
+        this.sorted       = new DrawCall[this.drawCalls.length];
+        this.multiOffsets = MemoryUtil.memAllocInt(this.drawCalls.length);
+        this.multiIndices = MemoryUtil.memAllocPointer(this.drawCalls.length);
+        this.multiCounts  = MemoryUtil.memAllocInt(this.drawCalls.length);
+        
         this.currentDepth = 0.99995;
         
         this.hasBegun = false;
@@ -489,7 +615,7 @@ public class GLBatch
     @Override
     public String toString()
     {
-        return "GLBatch{" + "id=" + this.id + '}';
+        return "GLBatch{" + "id=" + this.id + ", layout=" + this.layout + '}';
     }
     
     public void delete()
@@ -499,18 +625,22 @@ public class GLBatch
             GLBatch.LOGGER.fine("Deleting", this);
             
             // Free vertex arrays memory from CPU (RAM)
-            MemoryUtil.memFree(this.pos);
-            MemoryUtil.memFree(this.tex1);
-            MemoryUtil.memFree(this.norm);
-            MemoryUtil.memFree(this.tan);
-            MemoryUtil.memFree(this.col);
-            MemoryUtil.memFree(this.tex2);
+            this.vertices.free();
             
-            this.vertexArray.delete();
+            for (GLVertexArray vertexArray : this.vertexArrays) vertexArray.delete();
+            Arrays.fill(this.vertexArrays, null);
+            
+            MemoryUtil.memFree(this.instances);
+            this.instanceArray.delete();
             
             this.currentDraw = 0;
             for (DrawCall drawCall : this.drawCalls) drawCall.reset();
             Arrays.fill(this.drawCalls, null);
+            Arrays.fill(this.sorted, null);
+            
+            MemoryUtil.memFree(this.multiOffsets);
+            MemoryUtil.memFree(this.multiIndices);
+            MemoryUtil.memFree(this.multiCounts);
             
             this.id = 0;
         }
@@ -518,91 +648,72 @@ public class GLBatch
     
     private void drawInternal()
     {
-        // Check to see if the vertex array was updated.
-        if (this.pos.position() > 0)
-        {
-            this.internalStats.vertices += this.pos.position();
-            
-            GLVertexArray.bind(this.vertexArray);
-            
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_POSITION)).set(0, this.pos.flip());
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TEXCOORD)).set(0, this.tex1.flip());
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_NORMAL)).set(0, this.norm.flip());
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TANGENT)).set(0, this.tan.flip());
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_COLOR)).set(0, this.col.flip());
-            this.vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TEXCOORD2)).set(0, this.tex2.flip());
-            
-            // Get the values at the stack location
-            Matrix4d projection = this.projection[this.stackIndex];
-            Matrix4d view       = this.view[this.stackIndex];
-            Matrix4d model      = this.model[this.stackIndex];
-            Matrix4d normal     = this.normal[this.stackIndex];
-            
-            Color diffuse  = this.diffuse.get(this.stackIndex);
-            Color specular = this.specular.get(this.stackIndex);
-            Color ambient  = this.ambient.get(this.stackIndex);
-            
-            // Create modelView-projection matrix
-            this.mvp.set(projection);
-            this.mvp.mul(view);
-            this.mvp.mul(model);
-            
-            view.transformDirection(this.viewX.set(1, 0, 0));
-            view.transformDirection(this.viewY.set(0, 1, 0));
-            view.transformDirection(this.viewZ.set(0, 0, 1));
-            
-            // Upload to Shader
-            GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_MVP, false, this.mvp);
-            GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_PROJECTION, false, projection);
-            GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_VIEW, false, view);
-            GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_MODEL, false, model);
-            GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_NORMAL, false, normal);
-            GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_X, this.viewX);
-            GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_Y, this.viewY);
-            GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_Z, this.viewZ);
-            GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_DIFFUSE, diffuse);
-            GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_SPECULAR, specular);
-            GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_AMBIENT, ambient);
-            
-            // TODO - Is this needed?
-            GLProgram.Uniform.int1(GLProgram.MAP_DIFFUSE, 0);
-            GLProgram.Uniform.int1(GLProgram.MAP_SPECULAR, 1);
-            GLProgram.Uniform.int1(GLProgram.MAP_NORMAL, 2);
-            GLProgram.Uniform.int1(GLProgram.MAP_ROUGHNESS, 3);
-            GLProgram.Uniform.int1(GLProgram.MAP_OCCLUSION, 4);
-            GLProgram.Uniform.int1(GLProgram.MAP_EMISSION, 5);
-            GLProgram.Uniform.int1(GLProgram.MAP_HEIGHT, 6);
-            GLProgram.Uniform.int1(GLProgram.MAP_CUBEMAP, 7);
-            GLProgram.Uniform.int1(GLProgram.MAP_IRRADIANCE, 8);
-            GLProgram.Uniform.int1(GLProgram.MAP_PREFILTER, 9);
-            GLProgram.Uniform.int1(GLProgram.MAP_BRDF, 10);
+        // Check to see if the vertex array or the instances were updated.
+        if (this.vertices.vertexCount() > 0 || this.instanceCount > 0)
+        {
+            this.internalStats.vertices += this.vertices.vertexCount();
+            this.internalStats.instances += this.instanceCount;
             
-            for (int i = 0; i < this.textureIndex; i++)
+            // Use the next vertex array in the ring. Its buffers were last
+            // drawn from (DEFAULT_BATCH_BUFFERS - 1) flushes ago, and are
+            // orphaned before the upload so the driver never has to wait on
+            // a draw that is still in flight.
+            GLVertexArray vertexArray = this.vertexArrays[this.currentBuffer];
+            
+            if (this.vertices.vertexCount() > 0)
             {
-                GLTexture.bind(this.textureActive[i], i + 1);
-                GLProgram.Uniform.int1(this.textureNames[i], i + 1);
+                GLVertexArray.bind(vertexArray);
+                
+                this.vertices.upload(vertexArray);
             }
             
-            for (int i = 0, offset = 0; i <= this.currentDraw; i++)
+            // The default programs expect the full layout, so swap them for
+            // the ones that match the batch layout and instances while drawing.
+            GLProgram program         = GL.currentProgram;
+            GLProgram vertexProgram   = program;
+            GLProgram instanceProgram = program;
+            if (program == GL.defaultProgram)
+            {
+                if (this.layout == VertexLayout.COMPACT_2D) vertexProgram = GL.defaultProgram2D;
+                instanceProgram = GL.defaultProgramInstanced;
+            }
+            else if (program == GL.defaultProgramSDF)
+            {
+                if (this.layout == VertexLayout.COMPACT_2D) vertexProgram = GL.defaultProgramSDF2D;
+            }
+            
+            for (int i = 0; i < this.textureIndex; i++) GLTexture.bind(this.textureActive[i], i + 1);
+            
+            if (this.instanceCount > 0 && instanceProgram != vertexProgram)
+            {
+                GLProgram.bind(instanceProgram);
+                uploadUniforms();
+            }
+            if (GL.currentProgram != vertexProgram) GLProgram.bind(vertexProgram);
+            uploadUniforms();
+            
+            for (int i = 0, offset = 0, instanceOffset = 0; i <= this.currentDraw; i++)
             {
-                this.internalStats.draws++;
-                
                 DrawCall drawCall = this.drawCalls[i];
                 
-                GLTexture.bind(drawCall.texture);
-                
-                if (drawCall.mode == DrawMode.QUADS)
-                {
-                    this.vertexArray.drawElements(DrawMode.TRIANGLES, Integer.toUnsignedLong(offset / 4 * 6), drawCall.vertexCount / 4 * 6);
-                }
-                else
-                {
-                    this.vertexArray.draw(drawCall.mode, offset, drawCall.vertexCount);
-                }
+                drawCall.offset         = offset;
+                drawCall.instanceOffset = instanceOffset;
                 
                 offset += drawCall.vertexCount + drawCall.alignment;
+                instanceOffset += drawCall.instanceCount;
             }
             
+            if (this.deferred)
+            {
+                for (int i = 0, n = sortDrawCalls(); i < n; i++) submit(this.sorted[i], vertexArray, vertexProgram, instanceProgram);
+            }
+            else
+            {
+                for (int i = 0; i <= this.currentDraw; i++) submit(this.drawCalls[i], vertexArray, vertexProgram, instanceProgram);
+            }
+            
+            if (GL.currentProgram != program) GLProgram.bind(program);
+            
             for (int i = 0; i < this.textureIndex; i++)
             {
                 GLTexture.unbind(this.textureActive[i], i + 1);
@@ -613,12 +724,13 @@ public class GLBatch
             this.textureIndex = 0;
             
             // Reset Vertex Array and increment buffer objects (in case of multi-buffering)
-            this.pos.clear();
-            this.tex1.clear();
-            this.norm.clear();
-            this.tan.clear();
-            this.col.clear();
-            this.tex2.clear();
+            this.vertices.clear();
+            
+            this.currentBuffer = (this.currentBuffer + 1) % this.vertexArrays.length;
+            
+            // Reset Instances
+            this.instances.clear();
+            this.instanceCount = 0;
             
             // Reset Draw Calls
             this.currentDraw = 0;
@@ -631,12 +743,188 @@ public class GLBatch
         }
     }
     
+    /**
+     * Merges each draw call into the last one with the same texture and mode
+     * unless it overlaps one of the draw calls in between. Only the last
+     * {@link #SORT_LOOKBACK} merged draw calls are searched.
+     *
+     * @return The number of merged draw calls in {@link #sorted}
+     */
+    private int sortDrawCalls()
+    {
+        // Nothing can show through when blending is off, so the depth test alone keeps the order
+        boolean ignoreOverlap = GL.blendMode[GL.stackIndex] == BlendMode.NONE && GL.depthMode[GL.stackIndex] != DepthMode.NONE && GL.depthMask[GL.stackIndex];
+        
+        int count = 0;
+        for (int i = 0; i <= this.currentDraw; i++)
+        {
+            DrawCall drawCall = this.drawCalls[i];
+            
+            if (drawCall.vertexCount == 0 && drawCall.instanceCount == 0) continue;
+            
+            DrawCall target = null;
+            for (int j = count - 1, n = Math.max(count - GLBatch.SORT_LOOKBACK, 0); j >= n; j--)
+            {
+                DrawCall head = this.sorted[j];
+                if (head.canMerge(drawCall))
+                {
+                    target = head;
+                    break;
+                }
+                if (!ignoreOverlap && head.overlaps(drawCall)) break;
+            }
+            
+            if (target != null)
+            {
+                target.tail.next = drawCall;
+                target.tail      = drawCall;
+                target.include(drawCall.minX, drawCall.minY);
+                target.include(drawCall.maxX, drawCall.maxY);
+            }
+            else
+            {
+                this.sorted[count++] = drawCall;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Draws a draw call and any draw calls merged into it.
+     */
+    private void submit(@NotNull DrawCall drawCall, @NotNull GLVertexArray vertexArray, @NotNull GLProgram vertexProgram, @NotNull GLProgram instanceProgram)
+    {
+        this.internalStats.draws++;
+        
+        GLTexture.bind(drawCall.texture);
+        
+        if (drawCall.instanceCount > 0)
+        {
+            if (GL.currentProgram != instanceProgram) GLProgram.bind(instanceProgram);
+            
+            // There is no base instance in GL 3.3, so each run of
+            // instances is uploaded to the start of the buffer.
+            GLBuffer buffer = this.instanceArray.buffer(1).orphan();
+            
+            int instanceCount = 0;
+            for (DrawCall call = drawCall; call != null; call = call.next)
+            {
+                this.instances.limit((call.instanceOffset + call.instanceCount) * GLBatch.INSTANCE_SIZE);
+                this.instances.position(call.instanceOffset * GLBatch.INSTANCE_SIZE);
+                buffer.set((long) instanceCount * GLBatch.INSTANCE_SIZE, this.instances);
+                
+                instanceCount += call.instanceCount;
+            }
+            
+            this.instanceArray.drawElementsInstanced(DrawMode.TRIANGLES, instanceCount);
+        }
+        else
+        {
+            if (GL.currentProgram != vertexProgram) GLProgram.bind(vertexProgram);
+            
+            if (drawCall.next == null)
+            {
+                if (drawCall.mode == DrawMode.QUADS)
+                {
+                    vertexArray.drawElements(DrawMode.TRIANGLES, Integer.toUnsignedLong(drawCall.offset / 4 * 6), drawCall.vertexCount / 4 * 6);
+                }
+                else
+                {
+                    vertexArray.draw(drawCall.mode, drawCall.offset, drawCall.vertexCount);
+                }
+            }
+            else
+            {
+                this.multiOffsets.clear();
+                this.multiIndices.clear();
+                this.multiCounts.clear();
+                
+                boolean quads = drawCall.mode == DrawMode.QUADS;
+                for (DrawCall call = drawCall; call != null; call = call.next)
+                {
+                    if (quads)
+                    {
+                        this.multiIndices.put(call.offset / 4 * 6);
+                        this.multiCounts.put(call.vertexCount / 4 * 6);
+                    }
+                    else
+                    {
+                        this.multiOffsets.put(call.offset);
+                        this.multiCounts.put(call.vertexCount);
+                    }
+                }
+                
+                if (quads)
+                {
+                    vertexArray.multiDrawElements(DrawMode.TRIANGLES, this.multiIndices.flip(), this.multiCounts.flip());
+                }
+                else
+                {
+                    vertexArray.multiDraw(drawCall.mode, this.multiOffsets.flip(), this.multiCounts.flip());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Uploads the values at the current stack location to the bound program.
+     */
+    private void uploadUniforms()
+    {
+        // Get the values at the stack location
+        Matrix4d projection = this.projection[this.stackIndex];
+        Matrix4d view       = this.view[this.stackIndex];
+        Matrix4d model      = this.model[this.stackIndex];
+        Matrix4d normal     = this.normal[this.stackIndex];
+        
+        Color diffuse  = this.diffuse.get(this.stackIndex);
+        Color specular = this.specular.get(this.stackIndex);
+        Color ambient  = this.ambient.get(this.stackIndex);
+        
+        // Create modelView-projection matrix
+        this.mvp.set(projection);
+        this.mvp.mul(view);
+        this.mvp.mul(model);
+        
+        view.transformDirection(this.viewX.set(1, 0, 0));
+        view.transformDirection(this.viewY.set(0, 1, 0));
+        view.transformDirection(this.viewZ.set(0, 0, 1));
+        
+        // Upload to Shader
+        GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_MVP, false, this.mvp);
+        GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_PROJECTION, false, projection);
+        GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_VIEW, false, view);
+        GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_MODEL, false, model);
+        GLProgram.Uniform.mat4(GLProgram.UNIFORM_MATRIX_NORMAL, false, normal);
+        GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_X, this.viewX);
+        GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_Y, this.viewY);
+        GLProgram.Uniform.vec3(GLProgram.UNIFORM_VECTOR_VIEW_Z, this.viewZ);
+        GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_DIFFUSE, diffuse);
+        GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_SPECULAR, specular);
+        GLProgram.Uniform.color(GLProgram.UNIFORM_COLOR_AMBIENT, ambient);
+        
+        // TODO - Is this needed?
+        GLProgram.Uniform.int1(GLProgram.MAP_DIFFUSE, 0);
+        GLProgram.Uniform.int1(GLProgram.MAP_SPECULAR, 1);
+        GLProgram.Uniform.int1(GLProgram.MAP_NORMAL, 2);
+        GLProgram.Uniform.int1(GLProgram.MAP_ROUGHNESS, 3);
+        GLProgram.Uniform.int1(GLProgram.MAP_OCCLUSION, 4);
+        GLProgram.Uniform.int1(GLProgram.MAP_EMISSION, 5);
+        GLProgram.Uniform.int1(GLProgram.MAP_HEIGHT, 6);
+        GLProgram.Uniform.int1(GLProgram.MAP_CUBEMAP, 7);
+        GLProgram.Uniform.int1(GLProgram.MAP_IRRADIANCE, 8);
+        GLProgram.Uniform.int1(GLProgram.MAP_PREFILTER, 9);
+        GLProgram.Uniform.int1(GLProgram.MAP_BRDF, 10);
+        
+        for (int i = 0; i < this.textureIndex; i++) GLProgram.Uniform.int1(this.textureNames[i], i + 1);
+    }
+    
     private void incDrawCall()
     {
         DrawCall drawCall = this.drawCalls[this.currentDraw];
         
         // Check to see if DrawCall is empty
-        if (drawCall.vertexCount > 0)
+        if (drawCall.vertexCount > 0 || drawCall.instanceCount > 0)
         {
             // Make sure current this.draw.count is aligned a multiple of 4,
             // that way, following QUADS drawing will keep aligned with index processing
@@ -651,15 +939,353 @@ public class GLBatch
             {
                 checkBuffer(drawCall.alignment);
                 
-                this.pos.position(this.pos.position() + drawCall.alignment);
-                this.tex1.position(this.tex1.position() + drawCall.alignment);
-                this.norm.position(this.norm.position() + drawCall.alignment);
-                this.tan.position(this.tan.position() + drawCall.alignment);
-                this.col.position(this.col.position() + drawCall.alignment);
-                this.tex2.position(this.tex2.position() + drawCall.alignment);
+                this.vertices.skip(drawCall.alignment);
             }
             
-            if (++this.currentDraw >= this.drawCalls.length) drawInternal();
+            if (++this.currentDraw >= this.drawCalls.length)
+            {
+                if (this.deferred)
+                {
+                    growDrawCalls();
+                }
+                else
+                {
+                    drawInternal();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Doubles the number of draw calls so that a deferred batch is only
+     * drawn when its vertices or instances run out.
+     */
+    private void growDrawCalls()
+    {
+        int length = this.drawCalls.length;
+        
+        GLBatch.LOGGER.finest("Growing Draw Calls (%s): %s", length * 2, this);
+        
+        this.drawCalls = Arrays.copyOf(this.drawCalls, length * 2);
+        for (int i = length; i < this.drawCalls.length; i++) this.drawCalls[i] = new DrawCall();
+        
+        this.sorted       = new DrawCall[this.drawCalls.length];
+        this.multiOffsets = MemoryUtil.memRealloc(this.multiOffsets, this.drawCalls.length);
+        this.multiIndices = MemoryUtil.memRealloc(this.multiIndices, this.drawCalls.length);
+        this.multiCounts  = MemoryUtil.memRealloc(this.multiCounts, this.drawCalls.length);
+    }
+    
+    /**
+     * CPU side storage of the batch vertices for one {@link VertexLayout}.
+     * <p>
+     * Each attribute keeps its own count, so attributes can be set in any
+     * order and missing ones are filled in by {@link #fill()}.
+     */
+    private static abstract class VertexData
+    {
+        abstract int vertexCount();
+        
+        abstract void pos(double x, double y, double z);
+        
+        abstract void texCoord(double u, double v, double q);
+        
+        abstract void normal(double x, double y, double z);
+        
+        abstract void tangent(double x, double y, double z);
+        
+        abstract void color(int r, int g, int b, int a);
+        
+        abstract void texCoord2(double u, double v, double q);
+        
+        /**
+         * Fills in any attributes that were not set to match the vertex count.
+         */
+        abstract void fill();
+        
+        /**
+         * Skips {@code count} vertices for all attributes.
+         */
+        abstract void skip(int count);
+        
+        abstract @NotNull GLVertexArray createVertexArray(@NotNull IntBuffer indices);
+        
+        /**
+         * Orphans and uploads the vertices to a vertex array created by
+         * {@link #createVertexArray(IntBuffer)}.
+         */
+        abstract void upload(@NotNull GLVertexArray vertexArray);
+        
+        abstract void clear();
+        
+        abstract void free();
+    }
+    
+    /**
+     * {@link VertexLayout#FULL_3D}
+     */
+    private static final class SeparateVertexData extends VertexData
+    {
+        private final Float3.Buffer pos;  // (XYZ)  (shader-location = 0)
+        private final Float3.Buffer tex1; // (UVQ)  (shader-location = 1)
+        private final Float3.Buffer norm; // (XYZ)  (shader-location = 2)
+        private final Float3.Buffer tan;  // (XYZ)  (shader-location = 3)
+        private final Byte4.Buffer  col;  // (RGBA) (shader-location = 4)
+        private final Float3.Buffer tex2; // (UVQ)  (shader-location = 5)
+        
+        private SeparateVertexData(int capacity)
+        {
+            this.pos  = Float3.calloc(capacity); // 3 floats per position
+            this.tex1 = Float3.calloc(capacity); // 3 floats per texcoord
+            this.norm = Float3.calloc(capacity); // 3 floats per normal
+            this.tan  = Float3.calloc(capacity); // 3 floats per tangent
+            this.col  = Byte4.calloc(capacity);  // 4 bytes  per color
+            this.tex2 = Float3.calloc(capacity); // 3 floats per texcoord2
+        }
+        
+        @Override
+        int vertexCount()
+        {
+            return this.pos.position();
+        }
+        
+        @Override
+        void pos(double x, double y, double z)
+        {
+            this.pos.put(x, y, z);
+        }
+        
+        @Override
+        void texCoord(double u, double v, double q)
+        {
+            this.tex1.put(u, v, q);
+        }
+        
+        @Override
+        void normal(double x, double y, double z)
+        {
+            this.norm.put(x, y, z);
+        }
+        
+        @Override
+        void tangent(double x, double y, double z)
+        {
+            this.tan.put(x, y, z);
+        }
+        
+        @Override
+        void color(int r, int g, int b, int a)
+        {
+            this.col.put(r, g, b, a);
+        }
+        
+        @Override
+        void texCoord2(double u, double v, double q)
+        {
+            this.tex2.put(u, v, q);
+        }
+        
+        @Override
+        void fill()
+        {
+            // Make sure tex1 count match vertex count
+            for (int i = 0, n = this.pos.position() - this.tex1.position(); i < n; i++) this.tex1.put(0.0, 0.0, 1.0);
+            
+            // Make sure norm count match vertex count
+            for (int i = 0, n = this.pos.position() - this.norm.position(); i < n; i++) this.norm.put(0.0, 0.0, 1.0);
+            
+            // Make sure tan count match vertex count
+            for (int i = 0, n = this.pos.position() - this.tan.position(); i < n; i++) this.tan.put(1.0, 0.0, 0.0);
+            
+            // Make sure col count match vertex count
+            for (int i = 0, n = this.pos.position() - this.col.position(); i < n; i++) this.col.put(this.col.get(this.col.position() - 1));
+            
+            // Make sure tex2 count match vertex count
+            for (int i = 0, n = this.pos.position() - this.tex2.position(); i < n; i++) this.tex2.put(0.0, 0.0, 1.0);
+        }
+        
+        @Override
+        void skip(int count)
+        {
+            this.pos.position(this.pos.position() + count);
+            this.tex1.position(this.tex1.position() + count);
+            this.norm.position(this.norm.position() + count);
+            this.tan.position(this.tan.position() + count);
+            this.col.position(this.col.position() + count);
+            this.tex2.position(this.tex2.position() + count);
+        }
+        
+        @Override
+        @NotNull GLVertexArray createVertexArray(@NotNull IntBuffer indices)
+        {
+            return GLVertexArray.builder()
+                                .buffer(this.pos, Usage.STREAM_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                .buffer(this.tex1, Usage.STREAM_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                .buffer(this.norm, Usage.STREAM_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                .buffer(this.tan, Usage.STREAM_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                .buffer(this.col, Usage.STREAM_DRAW, new GLAttribute(GLType.UNSIGNED_BYTE, 4, true))
+                                .buffer(this.tex2, Usage.STREAM_DRAW, new GLAttribute(GLType.FLOAT, 3, false))
+                                .indexBuffer(indices, Usage.STATIC_DRAW)
+                                .build();
+        }
+        
+        @Override
+        void upload(@NotNull GLVertexArray vertexArray)
+        {
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_POSITION)).orphan().set(0, this.pos.flip());
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TEXCOORD)).orphan().set(0, this.tex1.flip());
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_NORMAL)).orphan().set(0, this.norm.flip());
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TANGENT)).orphan().set(0, this.tan.flip());
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_COLOR)).orphan().set(0, this.col.flip());
+            vertexArray.buffer(GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TEXCOORD2)).orphan().set(0, this.tex2.flip());
+        }
+        
+        @Override
+        void clear()
+        {
+            this.pos.clear();
+            this.tex1.clear();
+            this.norm.clear();
+            this.tan.clear();
+            this.col.clear();
+            this.tex2.clear();
+        }
+        
+        @Override
+        void free()
+        {
+            MemoryUtil.memFree(this.pos);
+            MemoryUtil.memFree(this.tex1);
+            MemoryUtil.memFree(this.norm);
+            MemoryUtil.memFree(this.tan);
+            MemoryUtil.memFree(this.col);
+            MemoryUtil.memFree(this.tex2);
+        }
+    }
+    
+    /**
+     * {@link VertexLayout#COMPACT_2D}
+     * <p>
+     * Vertices are written straight into one interleaved buffer:
+     * <pre>
+     * | x y z (3 floats) | u v (2 floats) | r g b a (4 bytes) |
+     * </pre>
+     */
+    private static final class InterleavedVertexData extends VertexData
+    {
+        private static final int STRIDE = 24;
+        
+        private static final int POS_OFFSET = 0;
+        private static final int TEX_OFFSET = 12;
+        private static final int COL_OFFSET = 20;
+        
+        private final ByteBuffer data;
+        
+        private int posCount;
+        private int texCount;
+        private int colCount;
+        
+        private InterleavedVertexData(int capacity)
+        {
+            this.data = MemoryUtil.memCalloc(capacity * InterleavedVertexData.STRIDE);
+        }
+        
+        @Override
+        int vertexCount()
+        {
+            return this.posCount;
+        }
+        
+        @Override
+        void pos(double x, double y, double z)
+        {
+            int index = this.posCount++ * InterleavedVertexData.STRIDE + InterleavedVertexData.POS_OFFSET;
+            this.data.putFloat(index, (float) x);
+            this.data.putFloat(index + 4, (float) y);
+            this.data.putFloat(index + 8, (float) z);
+        }
+        
+        @Override
+        void texCoord(double u, double v, double q)
+        {
+            // Projective coordinates are resolved here, the compact shader samples with plain UVs
+            int index = this.texCount++ * InterleavedVertexData.STRIDE + InterleavedVertexData.TEX_OFFSET;
+            this.data.putFloat(index, (float) (u / q));
+            this.data.putFloat(index + 4, (float) (v / q));
+        }
+        
+        @Override
+        void normal(double x, double y, double z) {}
+        
+        @Override
+        void tangent(double x, double y, double z) {}
+        
+        @Override
+        void color(int r, int g, int b, int a)
+        {
+            int index = this.colCount++ * InterleavedVertexData.STRIDE + InterleavedVertexData.COL_OFFSET;
+            this.data.put(index, (byte) r);
+            this.data.put(index + 1, (byte) g);
+            this.data.put(index + 2, (byte) b);
+            this.data.put(index + 3, (byte) a);
+        }
+        
+        @Override
+        void texCoord2(double u, double v, double q) {}
+        
+        @Override
+        void fill()
+        {
+            // Make sure tex count match vertex count
+            for (int i = 0, n = this.posCount - this.texCount; i < n; i++) texCoord(0.0, 0.0, 1.0);
+            
+            // Make sure col count match vertex count
+            int prev = this.colCount > 0 ? this.data.getInt((this.colCount - 1) * InterleavedVertexData.STRIDE + InterleavedVertexData.COL_OFFSET) : 0xFFFFFFFF;
+            for (int i = 0, n = this.posCount - this.colCount; i < n; i++)
+            {
+                this.data.putInt(this.colCount++ * InterleavedVertexData.STRIDE + InterleavedVertexData.COL_OFFSET, prev);
+            }
+        }
+        
+        @Override
+        void skip(int count)
+        {
+            this.posCount += count;
+            this.texCount += count;
+            this.colCount += count;
+        }
+        
+        @Override
+        @NotNull GLVertexArray createVertexArray(@NotNull IntBuffer indices)
+        {
+            return GLVertexArray.builder()
+                                .buffer(this.data.capacity() / InterleavedVertexData.STRIDE, Usage.STREAM_DRAW,
+                                        new GLAttribute(GLType.FLOAT, 3, false, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_POSITION)),
+                                        new GLAttribute(GLType.FLOAT, 2, false, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_TEXCOORD)),
+                                        new GLAttribute(GLType.UNSIGNED_BYTE, 4, true, GLProgram.DEFAULT_ATTRIBUTES.indexOf(GLProgram.ATTRIBUTE_COLOR)))
+                                .indexBuffer(indices, Usage.STATIC_DRAW)
+                                .build();
+        }
+        
+        @Override
+        void upload(@NotNull GLVertexArray vertexArray)
+        {
+            this.data.limit(this.posCount * InterleavedVertexData.STRIDE);
+            vertexArray.buffer(0).orphan().set(0, this.data);
+            this.data.clear();
+        }
+        
+        @Override
+        void clear()
+        {
+            this.posCount = 0;
+            this.texCount = 0;
+            this.colCount = 0;
+        }
+        
+        @Override
+        void free()
+        {
+            MemoryUtil.memFree(this.data);
         }
     }
     
@@ -670,8 +1296,25 @@ public class GLBatch
         private int vertexCount;
         private int alignment;
         
+        private int instanceCount;
+        
         private GLTexture texture;
         
+        // Set when drawn
+        private int offset;
+        private int instanceOffset;
+        
+        // Only tracked when deferred
+        private double minX, minY, maxX, maxY;
+        
+        // Draw calls merged into this one when deferred
+        private DrawCall next, tail;
+        
+        private DrawCall()
+        {
+            reset();
+        }
+        
         private void reset()
         {
             this.mode = DrawMode.DEFAULT;
@@ -679,13 +1322,46 @@ public class GLBatch
             this.vertexCount = 0;
             this.alignment   = 0;
             
+            this.instanceCount = 0;
+            
             this.texture = null;
+            
+            this.offset         = 0;
+            this.instanceOffset = 0;
+            
+            this.minX = Double.POSITIVE_INFINITY;
+            this.minY = Double.POSITIVE_INFINITY;
+            this.maxX = Double.NEGATIVE_INFINITY;
+            this.maxY = Double.NEGATIVE_INFINITY;
+            
+            this.next = null;
+            this.tail = this;
+        }
+        
+        private void include(double x, double y)
+        {
+            this.minX = Math.min(this.minX, x);
+            this.minY = Math.min(this.minY, y);
+            this.maxX = Math.max(this.maxX, x);
+            this.maxY = Math.max(this.maxY, y);
+        }
+        
+        private boolean canMerge(@NotNull DrawCall other)
+        {
+            return this.texture == other.texture && (this.instanceCount > 0) == (other.instanceCount > 0) && (this.instanceCount > 0 || this.mode == other.mode);
+        }
+        
+        private boolean overlaps(@NotNull DrawCall other)
+        {
+            return this.minX - GLBatch.OVERLAP_MARGIN <= other.maxX && other.minX - GLBatch.OVERLAP_MARGIN <= this.maxX &&
+                   this.minY - GLBatch.OVERLAP_MARGIN <= other.maxY && other.minY - GLBatch.OVERLAP_MARGIN <= this.maxY;
         }
     }
     
     public static final class BatchStats
     {
         private int vertices;
+        private int instances;
         private int draws;
         
         private BatchStats()
@@ -695,14 +1371,16 @@ public class GLBatch
         
         private void reset()
         {
-            this.vertices = 0;
-            this.draws    = 0;
+            this.vertices  = 0;
+            this.instances = 0;
+            this.draws     = 0;
         }
         
         private void set(@NotNull BatchStats other)
         {
-            this.vertices = other.vertices;
-            this.draws    = other.draws;
+            this.vertices  = other.vertices;
+            this.instances = other.instances;
+            this.draws     = other.draws;
         }
         
         public int vertices()
@@ -710,6 +1388,11 @@ public class GLBatch
             return this.vertices;
         }
         
+        public int instances()
+        {
+            return this.instances;
+        }
+        
         public int draws()
         {
             return this.draws;
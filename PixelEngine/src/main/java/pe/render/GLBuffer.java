@@ -33,13 +33,17 @@ public abstract class GLBuffer
         GL33.glBindBuffer(GL33.GL_ARRAY_BUFFER, 0);
         GL33.glBindBuffer(GL33.GL_ELEMENT_ARRAY_BUFFER, 0);
         GL33.glBindBuffer(GL33.GL_UNIFORM_BUFFER, 0);
+        GL33.glBindBuffer(GL33.GL_PIXEL_PACK_BUFFER, 0);
+        GL33.glBindBuffer(GL33.GL_PIXEL_UNPACK_BUFFER, 0);
     }
     
     public static void bind(@Nullable GLBuffer buffer)
     {
         if (buffer instanceof GLBufferArray buf) {bind(buf);}
         else if (buffer instanceof GLBufferElementArray buf) {bind(buf);}
-        else if (buffer instanceof GLBufferUniform buf) bind(buf);
+        else if (buffer instanceof GLBufferUniform buf) {bind(buf);}
+        else if (buffer instanceof GLBufferPixelPack buf) {bind(buf);}
+        else if (buffer instanceof GLBufferPixelUnpack buf) bind(buf);
     }
     
     public static void bind(@Nullable GLBufferArray buffer)
@@ -63,6 +67,20 @@ public abstract class GLBuffer
         GL33.glBindBuffer(GL33.GL_UNIFORM_BUFFER, buffer != null ? buffer.id : 0);
     }
     
+    public static void bind(@Nullable GLBufferPixelPack buffer)
+    {
+        GLBuffer.LOGGER.finest("Binding Pixel Pack Buffer:", buffer);
+        
+        GL33.glBindBuffer(GL33.GL_PIXEL_PACK_BUFFER, buffer != null ? buffer.id : 0);
+    }
+    
+    public static void bind(@Nullable GLBufferPixelUnpack buffer)
+    {
+        GLBuffer.LOGGER.finest("Binding Pixel Unpack Buffer:", buffer);
+        
+        GL33.glBindBuffer(GL33.GL_PIXEL_UNPACK_BUFFER, buffer != null ? buffer.id : 0);
+    }
+    
     // --------------------
     // ----- Instance -----
     // --------------------
@@ -229,6 +247,24 @@ public abstract class GLBuffer
         if (!GL33.glUnmapBuffer(this.type)) GLBuffer.LOGGER.warning("Could not unmap", this);
     }
     
+    /**
+     * Orphans the data store of the buffer. The driver is free to hand back
+     * new storage of the same size while any pending draw calls still read
+     * from the old one, so the next {@link #set} does not have to wait for
+     * the GPU.
+     *
+     * @return This instance for call chaining.
+     */
+    public GLBuffer orphan()
+    {
+        GLBuffer.LOGGER.finer("Orphaning", this);
+        
+        bind(this);
+        
+        GL33.nglBufferData(this.type, this.size, MemoryUtil.NULL, this.usage.ref);
+        return this;
+    }
+    
     /**
      * Gets the data in the buffer.
      *
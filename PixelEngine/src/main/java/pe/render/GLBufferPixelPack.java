@@ -0,0 +1,16 @@
+package pe.render;
+
+import org.lwjgl.opengl.GL33;
+
+/**
+ * A buffer that {@code glReadPixels} and {@code glGetTexImage} write into
+ * instead of client memory while it is bound. The call returns right away
+ * and the data can be mapped once the GPU has written it.
+ */
+public class GLBufferPixelPack extends GLBuffer
+{
+    public GLBufferPixelPack(long size, Usage usage)
+    {
+        super(GL33.GL_PIXEL_PACK_BUFFER, size, usage);
+    }
+}
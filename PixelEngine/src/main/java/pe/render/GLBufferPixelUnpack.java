@@ -0,0 +1,16 @@
+package pe.render;
+
+import org.lwjgl.opengl.GL33;
+
+/**
+ * A buffer that {@code glTexImage2D} and {@code glTexSubImage2D} read from
+ * instead of client memory while it is bound. The call returns once the
+ * copy has been queued and the GPU reads the data later.
+ */
+public class GLBufferPixelUnpack extends GLBuffer
+{
+    public GLBufferPixelUnpack(long size, Usage usage)
+    {
+        super(GL33.GL_PIXEL_UNPACK_BUFFER, size, usage);
+    }
+}
@@ -26,12 +26,21 @@ public class GLProgram
     public static final String ATTRIBUTE_COLOR     = "COLOR";
     public static final String ATTRIBUTE_TEXCOORD2 = "TEXCOORD2";
     
+    public static final String ATTRIBUTE_INSTANCE_TRANSFORM = "INSTANCE_TRANSFORM";
+    public static final String ATTRIBUTE_INSTANCE_POSITION  = "INSTANCE_POSITION";
+    public static final String ATTRIBUTE_INSTANCE_TEXCOORD  = "INSTANCE_TEXCOORD";
+    public static final String ATTRIBUTE_INSTANCE_COLOR     = "INSTANCE_COLOR";
+    
     public static final List<String> DEFAULT_ATTRIBUTES = List.of(ATTRIBUTE_POSITION,
                                                                   ATTRIBUTE_TEXCOORD,
                                                                   ATTRIBUTE_NORMAL,
                                                                   ATTRIBUTE_TANGENT,
                                                                   ATTRIBUTE_COLOR,
-                                                                  ATTRIBUTE_TEXCOORD2);
+                                                                  ATTRIBUTE_TEXCOORD2,
+                                                                  ATTRIBUTE_INSTANCE_TRANSFORM,
+                                                                  ATTRIBUTE_INSTANCE_POSITION,
+                                                                  ATTRIBUTE_INSTANCE_TEXCOORD,
+                                                                  ATTRIBUTE_INSTANCE_COLOR);
     
     public static final String UNIFORM_MATRIX_MVP        = "MATRIX_MVP";
     public static final String UNIFORM_MATRIX_PROJECTION = "MATRIX_PROJECTION";
@@ -81,6 +90,12 @@ public class GLProgram
         GLProgram.LOGGER.fine("Setup");
         
         GL.defaultProgram = new GLProgram(GL.defaultVertShader, null, GL.defaultFragShader);
+        GL.defaultProgram2D = new GLProgram(GL.defaultVertShader2D, null, GL.defaultFragShader2D);
+        
+        GL.defaultProgramInstanced = new GLProgram(GL.defaultVertShaderInstanced, null, GL.defaultFragShader2D);
+        
+        GL.defaultProgramSDF   = new GLProgram(GL.defaultVertShader, null, GL.defaultFragShaderSDF);
+        GL.defaultProgramSDF2D = new GLProgram(GL.defaultVertShader2D, null, GL.defaultFragShaderSDF2D);
     }
     
     static void destroy()
@@ -93,6 +108,22 @@ public class GLProgram
         GLProgram program = GL.defaultProgram;
         GL.defaultProgram = null;
         program.delete();
+        
+        GLProgram program2D = GL.defaultProgram2D;
+        GL.defaultProgram2D = null;
+        program2D.delete();
+        
+        GLProgram programInstanced = GL.defaultProgramInstanced;
+        GL.defaultProgramInstanced = null;
+        programInstanced.delete();
+        
+        GLProgram programSDF = GL.defaultProgramSDF;
+        GL.defaultProgramSDF = null;
+        programSDF.delete();
+        
+        GLProgram programSDF2D = GL.defaultProgramSDF2D;
+        GL.defaultProgramSDF2D = null;
+        programSDF2D.delete();
     }
     
     /**
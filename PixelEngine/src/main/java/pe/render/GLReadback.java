@@ -0,0 +1,298 @@
+package pe.render;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.Color;
+import pe.color.ColorFormat;
+import rutils.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads pixels from the framebuffer or a texture without waiting for the
+ * GPU.
+ * <p>
+ * Each read goes into one of a ring of pixel pack buffers and a fence is
+ * placed after it. {@link #poll()} is called once a frame and completes
+ * every read whose fence has signaled, which is usually one or two frames
+ * later. Framebuffer rows are copied out of the mapped buffer from the
+ * bottom up, so the data comes out top to bottom without a separate flip.
+ * <p>
+ * If every buffer in the ring is in use when a new read is made, the
+ * oldest read is completed first, which waits for the GPU.
+ */
+public final class GLReadback
+{
+    private static final Logger LOGGER = new Logger();
+    
+    public static final int RING_SIZE = 3;
+    
+    private static Request[] ring;
+    private static int       head;
+    private static int       count;
+    
+    static void setup()
+    {
+        GLReadback.LOGGER.fine("Setup");
+        
+        GLReadback.ring = new Request[GLReadback.RING_SIZE];
+        for (int i = 0; i < GLReadback.RING_SIZE; i++) GLReadback.ring[i] = new Request();
+        
+        GLReadback.head  = 0;
+        GLReadback.count = 0;
+    }
+    
+    static void destroy()
+    {
+        GLReadback.LOGGER.fine("Destroy");
+        
+        finish();
+        
+        for (Request request : GLReadback.ring)
+        {
+            if (request.buffer != null) request.buffer.delete();
+        }
+        GLReadback.ring = null;
+    }
+    
+    /**
+     * Starts reading a rectangle of a buffer into the next pixel pack buffer.
+     *
+     * @param buffer The buffer to read from, {@code GL_FRONT} or {@code GL_BACK}
+     * @return The future that is completed with the pixels, top row first,
+     * by {@link #poll()} or {@link #finish()}. The buffer must be explicitly
+     * freed.
+     */
+    static @NotNull CompletableFuture<Color.Buffer> read(int buffer, int x, int y, int width, int height, @NotNull ColorFormat format)
+    {
+        long size = (long) width * height * format.sizeof;
+        
+        Request request = next(size);
+        
+        GL33.glReadBuffer(buffer);
+        GL33.glReadPixels(x, y, width, height, format.format, GL33.GL_UNSIGNED_BYTE, 0L);
+        
+        return submit(request, size, width, height, format, true);
+    }
+    
+    /**
+     * Starts reading every mipmap level of a texture into the next pixel
+     * pack buffer.
+     *
+     * @param texture The texture to read from
+     * @return The future that is completed with the pixels of each level,
+     * one after the other, by {@link #poll()} or {@link #finish()}. The
+     * buffer must be explicitly freed.
+     */
+    public static @NotNull CompletableFuture<Color.Buffer> read(@NotNull GLTexture texture)
+    {
+        if (texture.format.format < 0) throw new IllegalArgumentException("Invalid Format: " + texture.format);
+        
+        return read(texture, texture.format.format, GL33.GL_UNSIGNED_BYTE);
+    }
+    
+    /**
+     * Starts reading every mipmap level of a texture into the next pixel
+     * pack buffer, in a pixel format that is not a {@link ColorFormat}. Each
+     * pixel must be the same size as one in the format of the texture.
+     *
+     * @param texture The texture to read from
+     * @param format  The GL pixel format, e.g. {@code GL_DEPTH_STENCIL}
+     * @param type    The GL pixel type, e.g. {@code GL_UNSIGNED_INT_24_8}
+     * @see #read(GLTexture)
+     */
+    public static @NotNull CompletableFuture<Color.Buffer> read(@NotNull GLTexture texture, int format, int type)
+    {
+        ColorFormat colorFormat = texture.format;
+        
+        long size      = 0;
+        int  mipWidth  = texture.width;
+        int  mipHeight = texture.height;
+        for (int i = 0; i < texture.mipmaps; i++)
+        {
+            size += (long) mipWidth * mipHeight * colorFormat.sizeof;
+            
+            if ((mipWidth >>= 1) < 1) mipWidth = 1;
+            if ((mipHeight >>= 1) < 1) mipHeight = 1;
+        }
+        
+        Request request = next(size);
+        
+        GLTexture.bind(texture);
+        
+        long offset = 0;
+        mipWidth  = texture.width;
+        mipHeight = texture.height;
+        for (int i = 0; i < texture.mipmaps; i++)
+        {
+            GL33.glGetTexImage(texture.type, i, format, type, offset);
+            
+            offset += (long) mipWidth * mipHeight * colorFormat.sizeof;
+            
+            if ((mipWidth >>= 1) < 1) mipWidth = 1;
+            if ((mipHeight >>= 1) < 1) mipHeight = 1;
+        }
+        
+        // Texture rows are already stored top row first
+        return submit(request, size, texture.width, texture.height, colorFormat, false);
+    }
+    
+    /**
+     * Makes room in the ring and binds the next pixel pack buffer.
+     *
+     * @param size The size of the read in bytes
+     */
+    private static @NotNull Request next(long size)
+    {
+        if (GLReadback.count == GLReadback.RING_SIZE)
+        {
+            GLReadback.LOGGER.finer("Readback ring is full, waiting on the oldest read");
+            
+            complete(true);
+        }
+        
+        Request request = GLReadback.ring[(GLReadback.head + GLReadback.count) % GLReadback.RING_SIZE];
+        
+        if (request.buffer == null || request.buffer.size() < size)
+        {
+            if (request.buffer != null) request.buffer.delete();
+            request.buffer = new GLBufferPixelPack(size, Usage.STREAM_READ);
+        }
+        
+        GLBuffer.bind(request.buffer);
+        
+        return request;
+    }
+    
+    /**
+     * Unbinds the pixel pack buffer and places the fence after the read.
+     *
+     * @param flip If the rows are stored bottom row first
+     */
+    private static @NotNull CompletableFuture<Color.Buffer> submit(@NotNull Request request, long size, int width, int height, @NotNull ColorFormat format, boolean flip)
+    {
+        GLBuffer.bind((GLBufferPixelPack) null);
+        
+        request.fence  = GL33.glFenceSync(GL33.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        request.size   = size;
+        request.width  = width;
+        request.height = height;
+        request.format = format;
+        request.flip   = flip;
+        request.future = new CompletableFuture<>();
+        
+        GLReadback.count++;
+        
+        return request.future;
+    }
+    
+    /**
+     * Completes every read that the GPU has finished, in the order that they
+     * were made. Never waits.
+     */
+    public static void poll()
+    {
+        while (GLReadback.count > 0)
+        {
+            if (!complete(false)) break;
+        }
+    }
+    
+    /**
+     * Waits for and completes every read that is still in flight.
+     */
+    public static void finish()
+    {
+        while (GLReadback.count > 0) complete(true);
+    }
+    
+    /**
+     * @return The number of reads that have not been completed
+     */
+    public static int pending()
+    {
+        return GLReadback.count;
+    }
+    
+    /**
+     * Completes the oldest read.
+     *
+     * @param wait If the GPU should be waited on
+     * @return If the read was completed
+     */
+    private static boolean complete(boolean wait)
+    {
+        Request request = GLReadback.ring[GLReadback.head];
+        
+        int status = wait ?
+                     GL33.glClientWaitSync(request.fence, GL33.GL_SYNC_FLUSH_COMMANDS_BIT, GL33.GL_TIMEOUT_IGNORED) :
+                     GL33.glClientWaitSync(request.fence, 0, 0L);
+        
+        if (status == GL33.GL_TIMEOUT_EXPIRED) return false;
+        
+        GL33.glDeleteSync(request.fence);
+        request.fence = 0L;
+        
+        CompletableFuture<Color.Buffer> future = request.future;
+        request.future = null;
+        
+        // The slot is free before the future runs anything that could read again
+        GLReadback.head = (GLReadback.head + 1) % GLReadback.RING_SIZE;
+        GLReadback.count--;
+        
+        if (status == GL33.GL_WAIT_FAILED)
+        {
+            future.completeExceptionally(new IllegalStateException("Could not wait on readback fence"));
+            return true;
+        }
+        
+        int stride = request.width * request.format.sizeof;
+        
+        ByteBuffer mapped = request.buffer.map(GLBuffer.Access.READ_ONLY);
+        if (mapped == null)
+        {
+            GLBuffer.bind((GLBufferPixelPack) null);
+            future.completeExceptionally(new IllegalStateException("Could not map readback buffer: " + request.buffer));
+            return true;
+        }
+        
+        ByteBuffer data = MemoryUtil.memAlloc((int) request.size);
+        
+        long src = MemoryUtil.memAddress(mapped);
+        long dst = MemoryUtil.memAddress(data);
+        if (request.flip)
+        {
+            // GL rows start at the bottom, so copying them in reverse flips the image
+            for (int row = 0, n = request.height; row < n; row++)
+            {
+                MemoryUtil.memCopy(src + (long) row * stride, dst + (long) (n - 1 - row) * stride, stride);
+            }
+        }
+        else
+        {
+            MemoryUtil.memCopy(src, dst, request.size);
+        }
+        
+        request.buffer.unmap();
+        GLBuffer.bind((GLBufferPixelPack) null);
+        
+        future.complete(Color.wrap(request.format, data));
+        return true;
+    }
+    
+    private static final class Request
+    {
+        private GLBufferPixelPack buffer;
+        private long              fence;
+        
+        private long        size;
+        private int         width;
+        private int         height;
+        private ColorFormat format;
+        private boolean     flip;
+        
+        private CompletableFuture<Color.Buffer> future;
+    }
+}
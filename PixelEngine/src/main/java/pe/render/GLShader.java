@@ -54,8 +54,103 @@ public class GLShader
                 }
                 """;
         
+        // Shaders for batches using VertexLayout.COMPACT_2D
+        String vertCode2D =
+                """
+                #version 330
+                in vec3 POSITION;
+                in vec2 TEXCOORD;
+                in vec4 COLOR;
+                out vec2 fragTexCoord;
+                out vec4 fragColor;
+                uniform mat4 MATRIX_MVP;
+                void main()
+                {
+                    gl_Position = MATRIX_MVP * vec4(POSITION, 1.0);
+                    fragTexCoord = TEXCOORD;
+                    fragColor = COLOR;
+                }
+                """;
+        String fragCode2D =
+                """
+                #version 330
+                in vec2 fragTexCoord;
+                in vec4 fragColor;
+                out vec4 finalColor;
+                uniform sampler2D texture0;
+                void main()
+                {
+                    vec4 texelColor = texture(texture0, fragTexCoord);
+                    finalColor = texelColor * fragColor;
+                }
+                """;
+        
+        // Shader for signed distance field text. The distance is in alpha,
+        // with the outline at 0.5, and is smoothed over one pixel.
+        String fragCodeSDF =
+                """
+                #version 330
+                in vec3 fragTexCoord;
+                in vec4 fragColor;
+                out vec4 finalColor;
+                uniform sampler2D texture0;
+                void main()
+                {
+                    vec4 texelColor = textureProj(texture0, fragTexCoord);
+                    float width = max(fwidth(texelColor.a), 1e-5);
+                    float alpha = clamp((texelColor.a - 0.5) / width + 0.5, 0.0, 1.0);
+                    finalColor = vec4(texelColor.rgb, alpha) * fragColor;
+                }
+                """;
+        String fragCodeSDF2D =
+                """
+                #version 330
+                in vec2 fragTexCoord;
+                in vec4 fragColor;
+                out vec4 finalColor;
+                uniform sampler2D texture0;
+                void main()
+                {
+                    vec4 texelColor = texture(texture0, fragTexCoord);
+                    float width = max(fwidth(texelColor.a), 1e-5);
+                    float alpha = clamp((texelColor.a - 0.5) / width + 0.5, 0.0, 1.0);
+                    finalColor = vec4(texelColor.rgb, alpha) * fragColor;
+                }
+                """;
+        
+        // Shader for instanced sprites. POSITION is a corner of the unit
+        // quad, which is placed with the per-instance 2x2 transform and
+        // position and used to pick the texcoord out of the UV rect.
+        String vertCodeInstanced =
+                """
+                #version 330
+                in vec3 POSITION;
+                in vec4 INSTANCE_TRANSFORM;
+                in vec3 INSTANCE_POSITION;
+                in vec4 INSTANCE_TEXCOORD;
+                in vec4 INSTANCE_COLOR;
+                out vec2 fragTexCoord;
+                out vec4 fragColor;
+                uniform mat4 MATRIX_MVP;
+                void main()
+                {
+                    vec2 pos = mat2(INSTANCE_TRANSFORM.xy, INSTANCE_TRANSFORM.zw) * POSITION.xy + INSTANCE_POSITION.xy;
+                    gl_Position = MATRIX_MVP * vec4(pos, INSTANCE_POSITION.z, 1.0);
+                    fragTexCoord = mix(INSTANCE_TEXCOORD.xy, INSTANCE_TEXCOORD.zw, POSITION.xy);
+                    fragColor = INSTANCE_COLOR;
+                }
+                """;
+        
         GL.defaultVertShader = new GLShader(ShaderType.VERTEX, vertCode);
         GL.defaultFragShader = new GLShader(ShaderType.FRAGMENT, fragCode);
+        
+        GL.defaultVertShader2D = new GLShader(ShaderType.VERTEX, vertCode2D);
+        GL.defaultFragShader2D = new GLShader(ShaderType.FRAGMENT, fragCode2D);
+        
+        GL.defaultVertShaderInstanced = new GLShader(ShaderType.VERTEX, vertCodeInstanced);
+        
+        GL.defaultFragShaderSDF   = new GLShader(ShaderType.FRAGMENT, fragCodeSDF);
+        GL.defaultFragShaderSDF2D = new GLShader(ShaderType.FRAGMENT, fragCodeSDF2D);
     }
     
     static void destroy()
@@ -69,6 +164,26 @@ public class GLShader
         GLShader frag = GL.defaultFragShader;
         GL.defaultFragShader = null;
         frag.delete();
+        
+        GLShader vert2D = GL.defaultVertShader2D;
+        GL.defaultVertShader2D = null;
+        vert2D.delete();
+        
+        GLShader frag2D = GL.defaultFragShader2D;
+        GL.defaultFragShader2D = null;
+        frag2D.delete();
+        
+        GLShader vertInstanced = GL.defaultVertShaderInstanced;
+        GL.defaultVertShaderInstanced = null;
+        vertInstanced.delete();
+        
+        GLShader fragSDF = GL.defaultFragShaderSDF;
+        GL.defaultFragShaderSDF = null;
+        fragSDF.delete();
+        
+        GLShader fragSDF2D = GL.defaultFragShaderSDF2D;
+        GL.defaultFragShaderSDF2D = null;
+        fragSDF2D.delete();
     }
     
     /**
@@ -0,0 +1,243 @@
+package pe.render;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.ColorFormat;
+import rutils.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Uploads pixels to textures over several frames.
+ * <p>
+ * Each upload is split into bands of rows. A band is copied into one of a
+ * ring of pixel unpack buffers, then {@code glTexSubImage2D} reads it from
+ * there and a fence is placed after it. {@link #poll()} is called once a
+ * frame and uploads bands until the {@link #budget() byte budget} is spent
+ * or the next buffer in the ring is still being read by the GPU, so a large
+ * texture never stalls a single frame.
+ * <p>
+ * The pixels must stay allocated until the future of the upload completes.
+ */
+public final class GLUpload
+{
+    private static final Logger LOGGER = new Logger();
+    
+    public static final int RING_SIZE    = 4;
+    public static final int STAGING_SIZE = 4 << 20; // The size of each staging buffer and the largest band (bytes)
+    
+    private static final ArrayDeque<Request> queue = new ArrayDeque<>();
+    
+    private static Staging[] ring;
+    private static int       next;
+    
+    private static long budget = 16L << 20; // The bytes uploaded each frame, 0 for no limit
+    
+    static void setup()
+    {
+        GLUpload.LOGGER.fine("Setup");
+        
+        GLUpload.ring = new Staging[GLUpload.RING_SIZE];
+        for (int i = 0; i < GLUpload.RING_SIZE; i++) GLUpload.ring[i] = new Staging();
+        
+        GLUpload.next = 0;
+    }
+    
+    static void destroy()
+    {
+        GLUpload.LOGGER.fine("Destroy");
+        
+        while (!GLUpload.queue.isEmpty()) GLUpload.queue.poll().future.cancel(false);
+        
+        for (Staging staging : GLUpload.ring)
+        {
+            if (staging.fence != 0L) GL33.glDeleteSync(staging.fence);
+            if (staging.buffer != null) staging.buffer.delete();
+        }
+        GLUpload.ring = null;
+    }
+    
+    /**
+     * Queues pixels to be uploaded into a rectangle of a texture.
+     *
+     * @param texture The texture, which must not change size until the upload completes
+     * @param level   The mipmap level
+     * @param data    The address of the pixels, tightly packed in the format of the texture
+     * @return The future that is completed by {@link #poll()} once every row
+     * has been handed to GL, or exceptionally if the texture is deleted first
+     */
+    public static @NotNull CompletableFuture<Void> upload(@NotNull GLTexture texture, int level, long data, int x, int y, int width, int height)
+    {
+        if (texture.format.format < 0) throw new IllegalArgumentException("Invalid Format: " + texture.format);
+        if (data == MemoryUtil.NULL) throw new IllegalArgumentException("No pixel data");
+        
+        if (width <= 0 || height <= 0) return CompletableFuture.completedFuture(null);
+        
+        Request request = new Request();
+        request.texture = texture;
+        request.level   = level;
+        request.data    = data;
+        request.x       = x;
+        request.y       = y;
+        request.width   = width;
+        request.height  = height;
+        request.format  = texture.format;
+        request.future  = new CompletableFuture<>();
+        
+        GLUpload.queue.offer(request);
+        
+        return request.future;
+    }
+    
+    /**
+     * Uploads the queued rows until the budget for this frame is spent or
+     * the ring is full. Never waits.
+     */
+    public static void poll()
+    {
+        long uploaded = 0;
+        while (!GLUpload.queue.isEmpty())
+        {
+            if (GLUpload.budget > 0 && uploaded >= GLUpload.budget) break;
+            
+            long size = uploadBand(GLUpload.budget > 0 ? GLUpload.budget - uploaded : Long.MAX_VALUE, false);
+            if (size < 0) break;
+            
+            uploaded += size;
+        }
+    }
+    
+    /**
+     * Uploads every queued row, waiting on the GPU if the ring is full.
+     */
+    public static void finish()
+    {
+        while (!GLUpload.queue.isEmpty()) uploadBand(Long.MAX_VALUE, true);
+    }
+    
+    /**
+     * @return The number of uploads that have not been completed
+     */
+    public static int pending()
+    {
+        return GLUpload.queue.size();
+    }
+    
+    /**
+     * @return The bytes uploaded each frame, {@code 0} for no limit
+     */
+    public static long budget()
+    {
+        return GLUpload.budget;
+    }
+    
+    /**
+     * Sets the bytes uploaded each frame. At least one row is uploaded each
+     * frame, even if it is larger than the budget.
+     *
+     * @param bytes The budget, or {@code 0} for no limit
+     */
+    public static void budget(long bytes)
+    {
+        GLUpload.budget = Math.max(0L, bytes);
+    }
+    
+    /**
+     * Uploads the next band of rows of the oldest request.
+     *
+     * @param limit The most bytes to upload
+     * @param wait  If the GPU should be waited on when the next buffer is in use
+     * @return The bytes uploaded, or {@code -1} if the next buffer is in use
+     */
+    private static long uploadBand(long limit, boolean wait)
+    {
+        Request request = GLUpload.queue.peek();
+        
+        if (request.texture.id == 0)
+        {
+            GLUpload.queue.poll();
+            request.future.completeExceptionally(new IllegalStateException("Texture was deleted: " + request.texture));
+            return 0;
+        }
+        
+        Staging staging = GLUpload.ring[GLUpload.next];
+        if (staging.fence != 0L)
+        {
+            int status = wait ?
+                         GL33.glClientWaitSync(staging.fence, GL33.GL_SYNC_FLUSH_COMMANDS_BIT, GL33.GL_TIMEOUT_IGNORED) :
+                         GL33.glClientWaitSync(staging.fence, 0, 0L);
+            
+            if (status == GL33.GL_TIMEOUT_EXPIRED) return -1;
+            
+            GL33.glDeleteSync(staging.fence);
+            staging.fence = 0L;
+        }
+        
+        long rowSize = (long) request.width * request.format.sizeof;
+        long maxSize = Math.min(Math.max(GLUpload.STAGING_SIZE, rowSize), limit);
+        
+        int  rows = (int) Math.max(1, Math.min(request.height - request.row, maxSize / rowSize));
+        long size = rows * rowSize;
+        
+        if (staging.buffer == null || staging.buffer.size() < size)
+        {
+            if (staging.buffer != null) staging.buffer.delete();
+            staging.buffer = new GLBufferPixelUnpack(Math.max(size, GLUpload.STAGING_SIZE), Usage.STREAM_DRAW);
+        }
+        
+        ByteBuffer mapped = staging.buffer.map(GLBuffer.Access.WRITE_ONLY);
+        if (mapped == null)
+        {
+            GLBuffer.bind((GLBufferPixelUnpack) null);
+            
+            GLUpload.queue.poll();
+            request.future.completeExceptionally(new IllegalStateException("Could not map upload buffer: " + staging.buffer));
+            return 0;
+        }
+        MemoryUtil.memCopy(request.data + request.row * rowSize, MemoryUtil.memAddress(mapped), size);
+        staging.buffer.unmap();
+        
+        GLTexture.bind(request.texture);
+        GL33.glTexSubImage2D(request.texture.type, request.level, request.x, request.y + request.row, request.width, rows, request.format.format, GL33.GL_UNSIGNED_BYTE, 0L);
+        
+        GLBuffer.bind((GLBufferPixelUnpack) null);
+        
+        staging.fence = GL33.glFenceSync(GL33.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        
+        GLUpload.next = (GLUpload.next + 1) % GLUpload.RING_SIZE;
+        
+        request.row += rows;
+        if (request.row == request.height)
+        {
+            GLUpload.queue.poll();
+            request.future.complete(null);
+        }
+        return size;
+    }
+    
+    private static final class Staging
+    {
+        private GLBufferPixelUnpack buffer;
+        private long                fence;
+    }
+    
+    private static final class Request
+    {
+        private GLTexture texture;
+        private int       level;
+        private long      data;
+        
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private int row; // The next row to upload
+        
+        private ColorFormat format;
+        
+        private CompletableFuture<Void> future;
+    }
+}
@@ -2,11 +2,13 @@ package pe.render;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.opengl.GL33;
 import org.lwjgl.system.CustomBuffer;
 import rutils.Logger;
 
 import java.nio.Buffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -61,7 +63,7 @@ public class GLVertexArray
     /**
      * Creates a new GLVertexArray.
      */
-    protected GLVertexArray(GLBufferElementArray indexBuffer, List<GLBufferArray> vertexBuffers, List<GLAttribute[]> vertexAttributes)
+    protected GLVertexArray(GLBufferElementArray indexBuffer, List<GLBufferArray> vertexBuffers, List<GLAttribute[]> vertexAttributes, List<Integer> vertexDivisors)
     {
         this.id = GL33.glGenVertexArrays();
         
@@ -77,6 +79,7 @@ public class GLVertexArray
         {
             GLBufferArray buffer     = vertexBuffers.get(i);
             GLAttribute[] attributes = vertexAttributes.get(i);
+            int           divisor    = vertexDivisors.get(i);
             
             int stride = 0;
             for (GLAttribute attribute : attributes)
@@ -86,7 +89,8 @@ public class GLVertexArray
             
             GLVertexArray.LOGGER.finest("Adding VBO %s of structure %s to", buffer, attributes, this);
             
-            this.vertexCount = Math.min(this.vertexCount > 0 ? this.vertexCount : Integer.MAX_VALUE, (int) (buffer.size() / stride));
+            // Per-instance buffers do not limit the vertex count
+            if (divisor == 0) this.vertexCount = Math.min(this.vertexCount > 0 ? this.vertexCount : Integer.MAX_VALUE, (int) (buffer.size() / stride));
             
             GLBuffer.bind(buffer);
             this.vertexBuffers.add(buffer);
@@ -94,8 +98,12 @@ public class GLVertexArray
             {
                 GLAttribute attribute = attributes[j];
                 
-                GL33.glVertexAttribPointer(attributeCount, attribute.count(), attribute.type().ref, attribute.normalized(), stride, offset);
-                GL33.glEnableVertexAttribArray(attributeCount++);
+                int location = attribute.location() >= 0 ? attribute.location() : attributeCount;
+                attributeCount++;
+                
+                GL33.glVertexAttribPointer(location, attribute.count(), attribute.type().ref, attribute.normalized(), stride, offset);
+                GL33.glEnableVertexAttribArray(location);
+                if (divisor > 0) GL33.glVertexAttribDivisor(location, divisor);
                 offset += attribute.size();
                 
                 this.vertexAttributes.add(attribute);
@@ -185,9 +193,10 @@ public class GLVertexArray
         if (this.indexBuffer != null) this.indexBuffer.delete();
         
         int i = 0;
-        for (GLAttribute ignored : this.vertexAttributes)
+        for (GLAttribute attribute : this.vertexAttributes)
         {
-            GL33.glDisableVertexAttribArray(i++);
+            GL33.glDisableVertexAttribArray(attribute.location() >= 0 ? attribute.location() : i);
+            i++;
         }
         this.vertexAttributes.clear();
         this.vertexCount = 0;
@@ -216,7 +225,6 @@ public class GLVertexArray
         GLVertexArray.LOGGER.finer("Drawing Arrays size=%s from %s", count, this);
         
         GL33.glDrawArrays(mode.ref, offset, count);
-        // glDrawArraysInstanced(int mode, int first, int count, int primcount) // TODO
         
         return this;
     }
@@ -263,7 +271,6 @@ public class GLVertexArray
         GLType indexType = this.indexBuffer.indexType();
         
         GL33.glDrawElements(mode.ref, count, indexType.ref, offset * indexType.bytes);
-        // GL33.glDrawElementsInstanced(int mode, int count, int type, long indices, int primcount); // TODO
         
         return this;
     }
@@ -291,6 +298,109 @@ public class GLVertexArray
         return drawElements(mode, 0L, indexCount());
     }
     
+    /**
+     * Draws several ranges of the array in the specified mode with one call.
+     *
+     * @param mode    The primitive type.
+     * @param offsets The offset into the array of each range.
+     * @param counts  The number of vertices in each range.
+     * @return This instance for call chaining.
+     */
+    public GLVertexArray multiDraw(@NotNull DrawMode mode, @NotNull IntBuffer offsets, @NotNull IntBuffer counts)
+    {
+        bind(this);
+        
+        GLVertexArray.LOGGER.finer("Drawing Arrays ranges=%s from %s", counts.remaining(), this);
+        
+        GL33.glMultiDrawArrays(mode.ref, offsets, counts);
+        
+        return this;
+    }
+    
+    /**
+     * Draws several ranges of the array with elements in the specified mode
+     * with one call.
+     * <p>
+     * The offsets are given in elements and are converted to bytes in place.
+     *
+     * @param mode    The primitive type.
+     * @param offsets The offset into the elements of each range.
+     * @param counts  The number of vertices in each range.
+     * @return This instance for call chaining.
+     */
+    public GLVertexArray multiDrawElements(@NotNull DrawMode mode, @NotNull PointerBuffer offsets, @NotNull IntBuffer counts)
+    {
+        bind(this);
+        
+        if (this.indexBuffer == null) throw new IllegalStateException("Cannot draw elements when non are provided.");
+        
+        GLVertexArray.LOGGER.finer("Drawing Elements ranges=%s from %s", counts.remaining(), this);
+        
+        GLType indexType = this.indexBuffer.indexType();
+        
+        for (int i = offsets.position(), n = offsets.limit(); i < n; i++) offsets.put(i, offsets.get(i) * indexType.bytes);
+        
+        GL33.glMultiDrawElements(mode.ref, counts, indexType.ref, offsets);
+        
+        return this;
+    }
+    
+    /**
+     * Draws {@code instances} copies of the array in the specified mode.
+     *
+     * @param mode      The primitive type.
+     * @param offset    The offset into the array.
+     * @param count     The number of vertices to draw.
+     * @param instances The number of instances to draw.
+     * @return This instance for call chaining.
+     */
+    public GLVertexArray drawInstanced(@NotNull DrawMode mode, int offset, int count, int instances)
+    {
+        bind(this);
+        
+        GLVertexArray.LOGGER.finer("Drawing Arrays size=%s instances=%s from %s", count, instances, this);
+        
+        GL33.glDrawArraysInstanced(mode.ref, offset, count, instances);
+        
+        return this;
+    }
+    
+    /**
+     * Draws {@code instances} copies of the array with elements in the specified mode.
+     *
+     * @param mode      The primitive type.
+     * @param offset    The offset into the array.
+     * @param count     The number of vertices to draw.
+     * @param instances The number of instances to draw.
+     * @return This instance for call chaining.
+     */
+    public GLVertexArray drawElementsInstanced(@NotNull DrawMode mode, long offset, int count, int instances)
+    {
+        bind(this);
+        
+        if (this.indexBuffer == null) throw new IllegalStateException("Cannot draw elements when non are provided.");
+        
+        GLVertexArray.LOGGER.finer("Drawing Elements size=%s instances=%s from %s", count, instances, this);
+        
+        GLType indexType = this.indexBuffer.indexType();
+        
+        GL33.glDrawElementsInstanced(mode.ref, count, indexType.ref, offset * indexType.bytes, instances);
+        
+        return this;
+    }
+    
+    /**
+     * Draws {@code instances} copies of the array with elements in the specified mode.
+     *
+     * @param mode      The primitive type.
+     * @param instances The number of instances to draw.
+     * @return This instance for call chaining.
+     */
+    public GLVertexArray drawElementsInstanced(@NotNull DrawMode mode, int instances)
+    {
+        return drawElementsInstanced(mode, 0L, indexCount(), instances);
+    }
+    
     //-----------------------------
     // ----- Buffer Functions -----
     //-----------------------------
@@ -321,12 +431,14 @@ public class GLVertexArray
         private       GLBufferElementArray indexBuffer;
         private final List<GLBufferArray>  buffers    = new ArrayList<>();
         private final List<GLAttribute[]>  attributes = new ArrayList<>();
+        private final List<Integer>        divisors   = new ArrayList<>();
         
         private Builder reset()
         {
             this.indexBuffer = null;
             this.buffers.clear();
             this.attributes.clear();
+            this.divisors.clear();
             return this;
         }
         
@@ -337,6 +449,7 @@ public class GLVertexArray
             long size = Integer.toUnsignedLong(attributeSize * count);
             this.buffers.add(new GLBufferArray(size, usage));
             this.attributes.add(attributes);
+            this.divisors.add(0);
             return this;
         }
         
@@ -344,6 +457,7 @@ public class GLVertexArray
         {
             this.buffers.add(new GLBufferArray(data, usage));
             this.attributes.add(attributes);
+            this.divisors.add(0);
             return this;
         }
         
@@ -351,6 +465,26 @@ public class GLVertexArray
         {
             this.buffers.add(new GLBufferArray(data, usage));
             this.attributes.add(attributes);
+            this.divisors.add(0);
+            return this;
+        }
+        
+        /**
+         * Adds a buffer whose attributes advance once per instance instead of once per vertex.
+         *
+         * @param count      The number of instances the buffer can hold.
+         * @param usage      How the buffer will be used.
+         * @param attributes The per-instance attributes.
+         * @return This instance for call chaining.
+         */
+        public Builder instanceBuffer(int count, @NotNull Usage usage, GLAttribute @NotNull ... attributes)
+        {
+            int attributeSize = 0;
+            for (GLAttribute attribute : attributes) attributeSize += attribute.size();
+            long size = Integer.toUnsignedLong(attributeSize * count);
+            this.buffers.add(new GLBufferArray(size, usage));
+            this.attributes.add(attributes);
+            this.divisors.add(1);
             return this;
         }
         
@@ -392,7 +526,7 @@ public class GLVertexArray
         
         public @NotNull GLVertexArray build()
         {
-            return new GLVertexArray(this.indexBuffer, this.buffers, this.attributes);
+            return new GLVertexArray(this.indexBuffer, this.buffers, this.attributes, this.divisors);
         }
     }
 }
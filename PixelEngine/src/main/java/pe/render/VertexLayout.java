@@ -0,0 +1,34 @@
+package pe.render;
+
+/**
+ * The way a {@link GLBatch} stores and uploads its vertices.
+ */
+public enum VertexLayout
+{
+    /**
+     * Six separate streams: position (XYZ), texcoord (UVQ), normal (XYZ),
+     * tangent (XYZ), color (RGBA8) and texcoord2 (UVQ). 64 bytes per vertex.
+     */
+    FULL_3D(64),
+    
+    /**
+     * One interleaved stream: position (XYZ), texcoord (UV) and color
+     * (RGBA8). 24 bytes per vertex.
+     * <p>
+     * Normals, tangents and the second texcoord are dropped and projective
+     * texcoords are divided on the CPU, so this is only meant for flat 2D
+     * drawing. The Z coordinate is kept so that the batch depth still
+     * orders the shapes.
+     */
+    COMPACT_2D(24),
+    ;
+    
+    public static final VertexLayout DEFAULT = FULL_3D;
+    
+    public final int vertexSize;
+    
+    VertexLayout(int vertexSize)
+    {
+        this.vertexSize = vertexSize;
+    }
+}
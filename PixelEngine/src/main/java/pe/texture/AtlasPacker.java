@@ -0,0 +1,266 @@
+package pe.texture;
+
+import java.util.Arrays;
+
+/**
+ * MaxRects packer used by {@link TextureAtlas} pages and the font glyph
+ * caches.
+ * <p>
+ * The free space is kept as a list of maximal free rectangles. A new
+ * rectangle goes into the free rectangle that leaves the shortest side
+ * over, then every free rectangle it touches is split around it.
+ * Removed rectangles are added back to the free list as they are. That
+ * list can end up more broken up than it needs to be, so when a rectangle
+ * does not fit after a removal the list is rebuilt from the rectangles
+ * that are left.
+ */
+public final class AtlasPacker
+{
+    private final int width;
+    private final int height;
+    
+    private int[] free; // x, y, width, height per free rectangle
+    private int   freeCount;
+    
+    private int[] used; // x, y, width, height per used rectangle
+    private int   usedCount;
+    
+    private int     usedArea;
+    private boolean fragmented;
+    
+    public AtlasPacker(int width, int height)
+    {
+        this.width  = width;
+        this.height = height;
+        
+        this.free = new int[64];
+        this.used = new int[64];
+        
+        clear();
+    }
+    
+    public int width()
+    {
+        return this.width;
+    }
+    
+    public int height()
+    {
+        return this.height;
+    }
+    
+    /**
+     * @return The fraction of the page in use, from 0 to 1
+     */
+    public double occupancy()
+    {
+        return (double) this.usedArea / ((double) this.width * this.height);
+    }
+    
+    public void clear()
+    {
+        this.freeCount = 0;
+        addFree(0, 0, this.width, this.height);
+        
+        this.usedCount  = 0;
+        this.usedArea   = 0;
+        this.fragmented = false;
+    }
+    
+    /**
+     * Finds a place for a rectangle and marks it as used.
+     *
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     * @return The position packed as {@code (x << 32) | y}, or {@code -1}
+     * if the rectangle does not fit
+     */
+    public long insert(int width, int height)
+    {
+        int bestIndex = -1, bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE;
+        for (int i = 0; i < this.freeCount; i++)
+        {
+            int fw = this.free[i * 4 + 2];
+            int fh = this.free[i * 4 + 3];
+            
+            if (fw < width || fh < height) continue;
+            
+            int leftoverW = fw - width;
+            int leftoverH = fh - height;
+            
+            int shortSide = Math.min(leftoverW, leftoverH);
+            int longSide  = Math.max(leftoverW, leftoverH);
+            if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong))
+            {
+                bestIndex = i;
+                bestShort = shortSide;
+                bestLong  = longSide;
+            }
+        }
+        if (bestIndex < 0)
+        {
+            // Rebuilding is only worth it if there could be enough space
+            if (!this.fragmented || this.width * this.height - this.usedArea < width * height) return -1L;
+            
+            rebuild();
+            return insert(width, height);
+        }
+        
+        int x = this.free[bestIndex * 4];
+        int y = this.free[bestIndex * 4 + 1];
+        
+        place(x, y, width, height);
+        
+        if ((this.usedCount + 1) * 4 > this.used.length) this.used = Arrays.copyOf(this.used, this.used.length * 2);
+        
+        int index = this.usedCount++ * 4;
+        this.used[index]     = x;
+        this.used[index + 1] = y;
+        this.used[index + 2] = width;
+        this.used[index + 3] = height;
+        
+        this.usedArea += width * height;
+        
+        return ((long) x << 32) | y;
+    }
+    
+    /**
+     * Marks a rectangle returned by {@link #insert(int, int)} as free.
+     */
+    public void remove(int x, int y, int width, int height)
+    {
+        int index = -1;
+        for (int i = 0; i < this.usedCount; i++)
+        {
+            if (this.used[i * 4] == x && this.used[i * 4 + 1] == y && this.used[i * 4 + 2] == width && this.used[i * 4 + 3] == height)
+            {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) throw new IllegalArgumentException("Rectangle was not packed: " + x + ", " + y + ", " + width + ", " + height);
+        
+        int last = --this.usedCount;
+        System.arraycopy(this.used, last * 4, this.used, index * 4, 4);
+        
+        this.usedArea -= width * height;
+        
+        if (this.usedCount == 0)
+        {
+            clear();
+        }
+        else
+        {
+            addFree(x, y, width, height);
+            prune(this.freeCount - 1);
+            
+            this.fragmented = true;
+        }
+    }
+    
+    /**
+     * Splitting cannot be undone, so the free list is built again from the
+     * rectangles that are still used.
+     */
+    private void rebuild()
+    {
+        this.freeCount = 0;
+        addFree(0, 0, this.width, this.height);
+        for (int i = 0; i < this.usedCount; i++) place(this.used[i * 4], this.used[i * 4 + 1], this.used[i * 4 + 2], this.used[i * 4 + 3]);
+        
+        this.fragmented = false;
+    }
+    
+    /**
+     * Splits every free rectangle that overlaps a used rectangle.
+     */
+    private void place(int x, int y, int width, int height)
+    {
+        // New pieces are added to the end, so only the rectangles that
+        // were there before are checked. Split ones are marked and
+        // compacted by prune.
+        int count = this.freeCount;
+        for (int i = 0; i < count; i++)
+        {
+            if (splitFree(i, x, y, width, height)) this.free[i * 4 + 2] = 0;
+        }
+        prune(count);
+    }
+    
+    /**
+     * Adds the parts of free rectangle {@code index} that are not covered
+     * by the used rectangle.
+     *
+     * @return If the free rectangle overlapped and must be removed
+     */
+    private boolean splitFree(int index, int x, int y, int width, int height)
+    {
+        int fx = this.free[index * 4];
+        int fy = this.free[index * 4 + 1];
+        int fw = this.free[index * 4 + 2];
+        int fh = this.free[index * 4 + 3];
+        
+        if (x >= fx + fw || x + width <= fx || y >= fy + fh || y + height <= fy) return false;
+        
+        if (x > fx) addFree(fx, fy, x - fx, fh);                                     // Left
+        if (x + width < fx + fw) addFree(x + width, fy, fx + fw - x - width, fh);     // Right
+        if (y > fy) addFree(fx, fy, fw, y - fy);                                     // Top
+        if (y + height < fy + fh) addFree(fx, y + height, fw, fy + fh - y - height); // Bottom
+        
+        return true;
+    }
+    
+    /**
+     * Removes free rectangles that are contained in another. Only the
+     * rectangles from {@code first} on are new, the rest were already
+     * checked against each other.
+     */
+    private void prune(int first)
+    {
+        // Removed rectangles are marked with a width of 0 then compacted
+        for (int i = first; i < this.freeCount; i++)
+        {
+            if (this.free[i * 4 + 2] == 0) continue;
+            
+            for (int j = 0; j < this.freeCount; j++)
+            {
+                if (i == j || this.free[j * 4 + 2] == 0) continue;
+                
+                if (contains(j, i))
+                {
+                    this.free[i * 4 + 2] = 0;
+                    break;
+                }
+                if (contains(i, j)) this.free[j * 4 + 2] = 0;
+            }
+        }
+        
+        int count = 0;
+        for (int i = 0; i < this.freeCount; i++)
+        {
+            if (this.free[i * 4 + 2] == 0) continue;
+            if (count != i) System.arraycopy(this.free, i * 4, this.free, count * 4, 4);
+            count++;
+        }
+        this.freeCount = count;
+    }
+    
+    private boolean contains(int outer, int inner)
+    {
+        int ox = this.free[outer * 4], oy = this.free[outer * 4 + 1], ow = this.free[outer * 4 + 2], oh = this.free[outer * 4 + 3];
+        int ix = this.free[inner * 4], iy = this.free[inner * 4 + 1], iw = this.free[inner * 4 + 2], ih = this.free[inner * 4 + 3];
+        
+        return ix >= ox && iy >= oy && ix + iw <= ox + ow && iy + ih <= oy + oh;
+    }
+    
+    private void addFree(int x, int y, int width, int height)
+    {
+        if ((this.freeCount + 1) * 4 > this.free.length) this.free = Arrays.copyOf(this.free, this.free.length * 2);
+        
+        int index = this.freeCount++ * 4;
+        this.free[index]     = x;
+        this.free[index + 1] = y;
+        this.free[index + 2] = width;
+        this.free[index + 3] = height;
+    }
+}
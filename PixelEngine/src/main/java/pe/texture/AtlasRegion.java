@@ -0,0 +1,121 @@
+package pe.texture;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A handle to an image packed into a {@link TextureAtlas}.
+ * <p>
+ * Can be passed to {@link pe.draw.DrawTexture2D} and
+ * {@link pe.draw.DrawTextureWarped2D} in place of a {@link Texture}. The
+ * handle stops being valid once it is removed from the atlas or the atlas
+ * is deleted.
+ */
+public final class AtlasRegion
+{
+    final TextureAtlas atlas;
+    final int          page;
+    
+    final int x, y, width, height;
+    
+    boolean valid;
+    
+    AtlasRegion(@NotNull TextureAtlas atlas, int page, int x, int y, int width, int height)
+    {
+        this.atlas = atlas;
+        this.page  = page;
+        
+        this.x      = x;
+        this.y      = y;
+        this.width  = width;
+        this.height = height;
+        
+        this.valid = true;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "AtlasRegion{" + "page=" + this.page + ", x=" + this.x + ", y=" + this.y + ", width=" + this.width + ", height=" + this.height + ", valid=" + this.valid + '}';
+    }
+    
+    /**
+     * @return The atlas page that holds the image
+     * @throws IllegalStateException if the atlas was deleted
+     */
+    public @NotNull Texture texture()
+    {
+        return this.atlas.page(this.page);
+    }
+    
+    /**
+     * @return The x coordinate of the image in the page
+     */
+    public int x()
+    {
+        return this.x;
+    }
+    
+    /**
+     * @return The y coordinate of the image in the page
+     */
+    public int y()
+    {
+        return this.y;
+    }
+    
+    /**
+     * @return The width of the image
+     */
+    public int width()
+    {
+        return this.width;
+    }
+    
+    /**
+     * @return The height of the image
+     */
+    public int height()
+    {
+        return this.height;
+    }
+    
+    /**
+     * @return The left texture coordinate
+     */
+    public double u0()
+    {
+        return (double) this.x / this.atlas.pageWidth;
+    }
+    
+    /**
+     * @return The top texture coordinate
+     */
+    public double v0()
+    {
+        return (double) this.y / this.atlas.pageHeight;
+    }
+    
+    /**
+     * @return The right texture coordinate
+     */
+    public double u1()
+    {
+        return (double) (this.x + this.width) / this.atlas.pageWidth;
+    }
+    
+    /**
+     * @return The bottom texture coordinate
+     */
+    public double v1()
+    {
+        return (double) (this.y + this.height) / this.atlas.pageHeight;
+    }
+    
+    /**
+     * @return If the region is still in the atlas
+     */
+    public boolean valid()
+    {
+        return this.valid;
+    }
+}
@@ -0,0 +1,513 @@
+package pe.texture;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.Color;
+import pe.color.ColorFormat;
+import rutils.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static rutils.IOUtil.getPath;
+import static rutils.IOUtil.readFromFile;
+
+/**
+ * Reads and writes {@code .engine_img} files.
+ * <p>
+ * Version 2 files start with a little endian header, padded to a multiple
+ * of 64 bytes, followed by the pixel data of every mipmap level, largest
+ * first:
+ * <pre>
+ *  0  int     magic, "EIMG"
+ *  4  int     version
+ *  8  int     width
+ * 12  int     height
+ * 16  int     mipmaps
+ * 20  int     format ordinal
+ * 24  int     compression, 0 for none or 1 for deflate
+ * 28  int     reserved
+ * 32  long    offset of the pixel data in the file
+ * 40  long    size of the pixel data
+ * 48  long    size of the pixel data as stored in the file
+ * 56  long[]  offset of each mipmap level in the pixel data
+ * </pre>
+ * Uncompressed files are mapped into memory, so the pixels are never
+ * copied, unless the file cannot be opened for writing. Version 1 files, a native order header of width, height, mipmaps
+ * and format, can still be read.
+ */
+final class EngineImageFile
+{
+    private static final Logger LOGGER = new Logger();
+    
+    private static final int MAGIC   = 0x474D4945; // "EIMG" read as a little endian int
+    private static final int VERSION = 2;
+    
+    private static final int HEADER_SIZE    = 56;
+    private static final int HEADER_ALIGN   = 64;
+    private static final int HEADER_SIZE_V1 = Integer.BYTES * 4;
+    
+    private static final int MAX_MIPMAPS = 32;
+    
+    private static final int COMPRESSION_NONE    = 0;
+    private static final int COMPRESSION_DEFLATE = 1;
+    
+    private static final int CHUNK_SIZE = 1 << 16;
+    
+    private EngineImageFile() {}
+    
+    // -------------------
+    // ----- Reading -----
+    // -------------------
+    
+    /**
+     * Loads an image. Files on disk are read through a {@link FileChannel},
+     * anything else, like a resource in a jar, is read into memory first.
+     *
+     * @param filePath The path to the file
+     * @return The image, or an empty image if the file could not be read
+     */
+    static @NotNull Image read(@NotNull String filePath)
+    {
+        Path path = getPath(filePath);
+        try
+        {
+            if (path != null && path.getFileSystem() == FileSystems.getDefault() && Files.isRegularFile(path))
+            {
+                // A private mapping needs a channel that can be written to, the file itself is never changed
+                boolean writable = Files.isWritable(path);
+                
+                try (FileChannel channel = writable ?
+                                           FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+                                           FileChannel.open(path, StandardOpenOption.READ))
+                {
+                    return EngineImageFile.read(channel, writable);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            EngineImageFile.LOGGER.warning("Failed to load image %s: %s", filePath, e.getMessage());
+            return Image.load((Color.Buffer) null, 0, 0, 1, ColorFormat.RGBA);
+        }
+        
+        ByteBuffer fileData = readFromFile(filePath, new int[1], MemoryUtil::memAlloc);
+        if (fileData == null) return Image.load((Color.Buffer) null, 0, 0, 1, ColorFormat.RGBA);
+        try
+        {
+            return EngineImageFile.read(fileData, filePath);
+        }
+        finally
+        {
+            MemoryUtil.memFree(fileData);
+        }
+    }
+    
+    /**
+     * Loads an image from the contents of a file that is already in memory.
+     *
+     * @param fileData The contents of the file, which are not freed
+     * @param filePath The path to the file
+     * @return The image, or an empty image if the contents are not valid
+     */
+    static @NotNull Image read(@NotNull ByteBuffer fileData, @NotNull String filePath)
+    {
+        try
+        {
+            return EngineImageFile.read(fileData);
+        }
+        catch (IOException e)
+        {
+            EngineImageFile.LOGGER.warning("Failed to load image %s: %s", filePath, e.getMessage());
+            return Image.load((Color.Buffer) null, 0, 0, 1, ColorFormat.RGBA);
+        }
+    }
+    
+    /**
+     * @param writable If the channel was opened for writing, so the pixels
+     *                 can be mapped. Otherwise they are read into memory.
+     */
+    private static @NotNull Image read(@NotNull FileChannel channel, boolean writable) throws IOException
+    {
+        long fileSize = channel.size();
+        
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(fileSize, EngineImageFile.HEADER_ALIGN)).order(ByteOrder.LITTLE_ENDIAN);
+        EngineImageFile.readFully(channel, head, 0);
+        head.flip();
+        
+        if (!EngineImageFile.isVersion2(head))
+        {
+            if (fileSize < EngineImageFile.HEADER_SIZE_V1) throw new IOException("Truncated header");
+            
+            head.order(ByteOrder.nativeOrder());
+            
+            int         width   = head.getInt(0);
+            int         height  = head.getInt(4);
+            int         mipmaps = head.getInt(8);
+            ColorFormat format  = EngineImageFile.format(head.getInt(12));
+            
+            int count = (int) (EngineImageFile.checkSize(fileSize - EngineImageFile.HEADER_SIZE_V1) / format.sizeof);
+            
+            Color.Buffer data = Color.malloc(format, count);
+            try
+            {
+                EngineImageFile.readFully(channel, MemoryUtil.memByteBuffer(data.address(), count * format.sizeof), EngineImageFile.HEADER_SIZE_V1);
+            }
+            catch (IOException e)
+            {
+                data.free();
+                throw e;
+            }
+            return Image.load(data, width, height, mipmaps, format);
+        }
+        
+        int headerSize = EngineImageFile.headerSize(head.getInt(16));
+        if (headerSize > head.capacity())
+        {
+            if (headerSize > fileSize) throw new IOException("Truncated header");
+            
+            head = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            EngineImageFile.readFully(channel, head, 0);
+            head.flip();
+        }
+        Header header = EngineImageFile.header(head, fileSize);
+        
+        if (header.compression() == EngineImageFile.COMPRESSION_NONE && writable)
+        {
+            // A private mapping is copy on write, so the image can be edited without changing the file
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.PRIVATE, header.dataOffset(), header.dataSize());
+            
+            return Image.mapped(mapping, Color.wrap(header.format(), mapping), header.width(), header.height(), header.mipmaps(), header.format());
+        }
+        if (header.compression() == EngineImageFile.COMPRESSION_NONE)
+        {
+            Color.Buffer data = Color.malloc(header.format(), (int) (header.dataSize() / header.format().sizeof));
+            try
+            {
+                EngineImageFile.readFully(channel, MemoryUtil.memByteBuffer(data.address(), (int) header.dataSize()), header.dataOffset());
+            }
+            catch (IOException e)
+            {
+                data.free();
+                throw e;
+            }
+            return Image.load(data, header.width(), header.height(), header.mipmaps(), header.format());
+        }
+        
+        MappedByteBuffer stored = channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset(), header.storedSize());
+        
+        return Image.load(EngineImageFile.inflate(stored, header), header.width(), header.height(), header.mipmaps(), header.format());
+    }
+    
+    private static @NotNull Image read(@NotNull ByteBuffer fileData) throws IOException
+    {
+        ByteBuffer head = fileData.slice().order(ByteOrder.LITTLE_ENDIAN);
+        
+        if (!EngineImageFile.isVersion2(head))
+        {
+            if (head.remaining() < EngineImageFile.HEADER_SIZE_V1) throw new IOException("Truncated header");
+            
+            head.order(ByteOrder.nativeOrder());
+            
+            int         width   = head.getInt();
+            int         height  = head.getInt();
+            int         mipmaps = head.getInt();
+            ColorFormat format  = EngineImageFile.format(head.getInt());
+            
+            Color.Buffer data = Color.malloc(format, head.remaining() / format.sizeof);
+            MemoryUtil.memCopy(MemoryUtil.memAddress(head), data.address(), (long) data.capacity() * format.sizeof);
+            
+            return Image.load(data, width, height, mipmaps, format);
+        }
+        
+        if (head.remaining() < EngineImageFile.headerSize(head.getInt(16))) throw new IOException("Truncated header");
+        
+        Header header = EngineImageFile.header(head, head.remaining());
+        
+        ByteBuffer stored = head.slice((int) header.dataOffset(), (int) header.storedSize());
+        
+        if (header.compression() == EngineImageFile.COMPRESSION_NONE)
+        {
+            Color.Buffer data = Color.malloc(header.format(), (int) (header.dataSize() / header.format().sizeof));
+            MemoryUtil.memCopy(MemoryUtil.memAddress(stored), data.address(), header.dataSize());
+            
+            return Image.load(data, header.width(), header.height(), header.mipmaps(), header.format());
+        }
+        return Image.load(EngineImageFile.inflate(stored, header), header.width(), header.height(), header.mipmaps(), header.format());
+    }
+    
+    private static boolean isVersion2(@NotNull ByteBuffer head)
+    {
+        return head.remaining() >= Integer.BYTES && head.getInt(0) == EngineImageFile.MAGIC;
+    }
+    
+    /**
+     * Reads and checks a version 2 header. The mipmap offsets have to match
+     * the sizes of the levels, so the pixel data can be trusted afterwards.
+     */
+    private static @NotNull Header header(@NotNull ByteBuffer head, long fileSize) throws IOException
+    {
+        int version = head.getInt(4);
+        if (version != EngineImageFile.VERSION) throw new IOException("Unsupported version " + version);
+        
+        int         width       = head.getInt(8);
+        int         height      = head.getInt(12);
+        int         mipmaps     = head.getInt(16);
+        ColorFormat format      = EngineImageFile.format(head.getInt(20));
+        int         compression = head.getInt(24);
+        long        dataOffset  = head.getLong(32);
+        long        dataSize    = head.getLong(40);
+        long        storedSize  = head.getLong(48);
+        
+        if (width < 0 || height < 0) throw new IOException("Invalid size " + width + "x" + height);
+        if (compression != EngineImageFile.COMPRESSION_NONE && compression != EngineImageFile.COMPRESSION_DEFLATE)
+        {
+            throw new IOException("Unsupported compression " + compression);
+        }
+        
+        long[] offsets = EngineImageFile.offsets(width, height, mipmaps, format);
+        for (int i = 0; i < mipmaps; i++)
+        {
+            if (head.getLong(EngineImageFile.HEADER_SIZE + i * Long.BYTES) != offsets[i]) throw new IOException("Invalid offset of mipmap " + i);
+        }
+        if (dataSize != offsets[mipmaps]) throw new IOException("Invalid data size " + dataSize);
+        if (compression == EngineImageFile.COMPRESSION_NONE && storedSize != dataSize) throw new IOException("Invalid stored size " + storedSize);
+        
+        if (dataOffset < EngineImageFile.headerSize(mipmaps) || storedSize < 0 || dataOffset + storedSize > fileSize) throw new IOException("Truncated data");
+        
+        EngineImageFile.checkSize(dataSize);
+        EngineImageFile.checkSize(storedSize);
+        
+        return new Header(width, height, mipmaps, format, compression, dataOffset, dataSize, storedSize);
+    }
+    
+    private static @NotNull Color.Buffer inflate(@NotNull ByteBuffer stored, @NotNull Header header) throws IOException
+    {
+        Color.Buffer data = Color.malloc(header.format(), (int) (header.dataSize() / header.format().sizeof));
+        
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(stored);
+            
+            ByteBuffer output = MemoryUtil.memByteBuffer(data.address(), (int) header.dataSize());
+            while (output.hasRemaining())
+            {
+                if (inflater.inflate(output) == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IOException("Compressed data ends early");
+                }
+            }
+            return data;
+        }
+        catch (IOException | DataFormatException e)
+        {
+            data.free();
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+    
+    // -------------------
+    // ----- Writing -----
+    // -------------------
+    
+    /**
+     * Writes the first {@code mipmaps} levels of an image. The pixel data is
+     * written straight from native memory into a temporary file, which then
+     * replaces the target, so an image mapped from the target can be written
+     * back to it and a file that was not finished is never read.
+     *
+     * @param image    The image
+     * @param fileName The path to the file
+     * @param mipmaps  The number of mipmap levels to write
+     * @param compress If the pixel data should be compressed with deflate
+     * @return If everything was a success
+     */
+    static boolean write(@NotNull Image image, @NotNull String fileName, int mipmaps, boolean compress)
+    {
+        Color.Buffer data = image.data();
+        if (data == null) return false;
+        
+        try
+        {
+            ColorFormat format = image.format();
+            
+            long[] offsets  = EngineImageFile.offsets(image.width(), image.height(), mipmaps, format);
+            long   dataSize = EngineImageFile.checkSize(offsets[mipmaps]);
+            
+            if (dataSize > (long) data.capacity() * format.sizeof) throw new IOException("Image has less than " + mipmaps + " mipmaps");
+            
+            int headerSize = EngineImageFile.headerSize(mipmaps);
+            
+            // The image may be mapped from the file being replaced, so it cannot be truncated until the new file is written
+            Path target = Path.of(fileName).toAbsolutePath();
+            Path temp   = target.resolveSibling(target.getFileName() + ".tmp");
+            try
+            {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                {
+                    ByteBuffer pixels = MemoryUtil.memByteBuffer(data.address(), (int) dataSize);
+                    
+                    long storedSize;
+                    if (compress)
+                    {
+                        storedSize = EngineImageFile.deflate(pixels, channel, headerSize);
+                    }
+                    else
+                    {
+                        EngineImageFile.writeFully(channel, pixels, headerSize);
+                        storedSize = dataSize;
+                    }
+                    
+                    ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(EngineImageFile.MAGIC);
+                    header.putInt(EngineImageFile.VERSION);
+                    header.putInt(image.width());
+                    header.putInt(image.height());
+                    header.putInt(mipmaps);
+                    header.putInt(format.ordinal());
+                    header.putInt(compress ? EngineImageFile.COMPRESSION_DEFLATE : EngineImageFile.COMPRESSION_NONE);
+                    header.putInt(0);
+                    header.putLong(headerSize);
+                    header.putLong(dataSize);
+                    header.putLong(storedSize);
+                    for (int i = 0; i < mipmaps; i++) header.putLong(offsets[i]);
+                    header.clear();
+                    
+                    EngineImageFile.writeFully(channel, header, 0);
+                }
+                
+                try
+                {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            finally
+            {
+                Files.deleteIfExists(temp);
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            EngineImageFile.LOGGER.warning("Failed to write image %s: %s", fileName, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * @return The number of compressed bytes written
+     */
+    private static long deflate(@NotNull ByteBuffer pixels, @NotNull FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(EngineImageFile.CHUNK_SIZE);
+        
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(pixels);
+            deflater.finish();
+            
+            long written = 0;
+            while (!deflater.finished())
+            {
+                chunk.clear();
+                deflater.deflate(chunk);
+                chunk.flip();
+                
+                written += EngineImageFile.writeFully(channel, chunk, position + written);
+            }
+            return written;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+    
+    // -------------------
+    // ----- Helpers -----
+    // -------------------
+    
+    /**
+     * @return The offset of each mipmap level, followed by the size of all of them
+     */
+    private static long @NotNull [] offsets(int width, int height, int mipmaps, @NotNull ColorFormat format) throws IOException
+    {
+        if (mipmaps < 1 || mipmaps > EngineImageFile.MAX_MIPMAPS) throw new IOException("Invalid mipmap count " + mipmaps);
+        
+        long[] offsets = new long[mipmaps + 1];
+        for (int i = 0; i < mipmaps; i++)
+        {
+            offsets[i + 1] = offsets[i] + (long) width * height * format.sizeof;
+            
+            width  = Math.max(width >> 1, 1);
+            height = Math.max(height >> 1, 1);
+        }
+        return offsets;
+    }
+    
+    private static int headerSize(int mipmaps) throws IOException
+    {
+        if (mipmaps < 1 || mipmaps > EngineImageFile.MAX_MIPMAPS) throw new IOException("Invalid mipmap count " + mipmaps);
+        
+        int size = EngineImageFile.HEADER_SIZE + mipmaps * Long.BYTES;
+        return (size + EngineImageFile.HEADER_ALIGN - 1) & -EngineImageFile.HEADER_ALIGN;
+    }
+    
+    private static @NotNull ColorFormat format(int ordinal) throws IOException
+    {
+        ColorFormat[] formats = ColorFormat.values();
+        if (ordinal < 0 || ordinal >= formats.length || formats[ordinal].sizeof <= 0) throw new IOException("Invalid format " + ordinal);
+        return formats[ordinal];
+    }
+    
+    /**
+     * Pixel data is addressed through a {@link ByteBuffer}, so it has to fit
+     * in an int.
+     */
+    private static long checkSize(long size) throws IOException
+    {
+        if (size < 0 || size > Integer.MAX_VALUE) throw new IOException("Invalid data size " + size);
+        return size;
+    }
+    
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+    
+    private static int writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException
+    {
+        int written = 0;
+        while (buffer.hasRemaining()) written += channel.write(buffer, position + written);
+        return written;
+    }
+    
+    private record Header(int width, int height, int mipmaps, ColorFormat format, int compression, long dataOffset, long dataSize, long storedSize) {}
+}
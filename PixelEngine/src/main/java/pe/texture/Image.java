@@ -5,17 +5,19 @@ import org.jetbrains.annotations.Nullable;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
-import pe.color.BlendMode;
-import pe.color.Color;
-import pe.color.ColorFormat;
-import pe.color.Colorc;
+import pe.AssetLoader;
+import pe.color.*;
 import pe.util.Random;
 import rutils.Logger;
 
+import java.io.Serial;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
 import static org.lwjgl.stb.STBImage.stbi_load_gif_from_memory;
@@ -32,6 +34,75 @@ public class Image
     // ----- Static -----
     // ------------------
     
+    private static @Nullable ForkJoinPool parallelPool      = ForkJoinPool.commonPool();
+    private static           int          parallelThreshold = 256 * 256;
+    
+    /**
+     * Sets how pixel operations are spread over threads. Images with at
+     * least {@code threshold} pixels are split into bands of rows that are
+     * processed on the pool, smaller images are processed on the calling
+     * thread.
+     * <p>
+     * Defaults to the {@link ForkJoinPool#commonPool() common pool} and
+     * 256x256 pixels.
+     *
+     * @param pool      The pool to run bands on, or null to always process on the calling thread.
+     * @param threshold The fewest pixels to split an image at.
+     */
+    public static void parallelism(@Nullable ForkJoinPool pool, int threshold)
+    {
+        Image.parallelPool      = pool;
+        Image.parallelThreshold = Math.max(threshold, 1);
+    }
+    
+    /**
+     * @return The pool that large images are processed on, or null if they are processed on the calling thread
+     */
+    public static @Nullable ForkJoinPool parallelPool()
+    {
+        return Image.parallelPool;
+    }
+    
+    /**
+     * @return The fewest pixels that an image is split into bands at
+     */
+    public static int parallelThreshold()
+    {
+        return Image.parallelThreshold;
+    }
+    
+    /**
+     * Runs an operation over {@code count} rows, split into bands on
+     * {@link #parallelPool()} if there are enough pixels.
+     *
+     * @param count The number of rows.
+     * @param size  The number of pixels in a row.
+     * @param band  The operation to run on each band of rows.
+     */
+    private static void parallel(int count, int size, @NotNull Band band)
+    {
+        ForkJoinPool pool = Image.parallelPool;
+        if (pool == null || count < 2 || (long) count * size < Image.parallelThreshold)
+        {
+            band.apply(0, count);
+            return;
+        }
+        int grain = Math.max(1, count / (pool.getParallelism() * 4));
+        pool.invoke(new BandTask(band, 0, count, grain));
+    }
+    
+    /**
+     * Runs an operation on every pixel of a buffer from its position to its
+     * limit, split into bands if there are enough pixels.
+     */
+    private static void forEachPixel(@NotNull Color.Buffer pixels, @NotNull Consumer<Color> action)
+    {
+        int offset = pixels.position();
+        Image.parallel(pixels.remaining(), 1, (start, end) -> {
+            for (int i = offset + start, n = offset + end; i < n; i++) action.accept(pixels.get(i));
+        });
+    }
+    
     public static @NotNull Image load(@Nullable Color.Buffer data, int width, int height, int mipmaps, @NotNull ColorFormat format)
     {
         return new Image(data, width, height, mipmaps, format);
@@ -44,10 +115,30 @@ public class Image
     
     public static @NotNull Image loadFromFile(@NotNull String filePath)
     {
+        if (getExtension(filePath).equals(".engine_img")) return EngineImageFile.read(filePath);
+        
         ByteBuffer fileData = readFromFile(filePath, new int[1], MemoryUtil::memAlloc);
         
         if (fileData == null) return new Image(null, 0, 0, 1, ColorFormat.RGBA);
         
+        try
+        {
+            return decode(fileData, filePath);
+        }
+        finally
+        {
+            MemoryUtil.memFree(fileData);
+        }
+    }
+    
+    /**
+     * Decodes the contents of a file that is already in memory.
+     *
+     * @param fileData The contents of the file, which are not freed
+     * @param filePath The path to the file, used for its extension
+     */
+    static @NotNull Image decode(@NotNull ByteBuffer fileData, @NotNull String filePath)
+    {
         Color.Buffer colorData;
         int          width;
         int          height;
@@ -110,30 +201,32 @@ public class Image
                     mipmaps = 1;
                 }
             }
-            case ".engine_img" ->
-            {
-                width  = fileData.getInt();
-                height = fileData.getInt();
-                
-                mipmaps = fileData.getInt();
-                
-                format = ColorFormat.values()[fileData.getInt()];
-                
-                colorData = Color.malloc(format, width * height);
-                
-                MemoryUtil.memCopy(MemoryUtil.memAddress(fileData), colorData.address(), fileData.remaining());
-            }
             // case ".dds" -> {}
             // case ".pkm" -> {}
             // case ".ktx" -> {}
             // case ".pvr" -> {}
             // case ".astc" -> {}
+            case ".engine_img" ->
+            {
+                return EngineImageFile.read(fileData, filePath);
+            }
             default -> throw new RuntimeException("File format not supported");
         }
-        MemoryUtil.memFree(fileData);
         return new Image(colorData, width, height, mipmaps, format);
     }
     
+    /**
+     * Loads an image on a background thread.
+     *
+     * @param filePath The path to the file
+     * @return The future that is completed with the image on a worker thread
+     * @see AssetLoader
+     */
+    public static @NotNull CompletableFuture<Image> loadFromFileAsync(@NotNull String filePath)
+    {
+        return AssetLoader.load(() -> loadFromFile(filePath));
+    }
+    
     public static @NotNull Image loadAnimFromFile(@NotNull String fileName, int[] frameCount)
     {
         ByteBuffer fileData = readFromFile(fileName, new int[1], MemoryUtil::memAlloc);
@@ -211,36 +304,33 @@ public class Image
     {
         Color.Buffer pixels = Color.malloc(ColorFormat.RGBA, width * height);
         
-        Color colorL = Color.malloc(ColorFormat.RGBA);
-        Color colorR = Color.malloc(ColorFormat.RGBA);
-        
-        int vFactor, hFactor;
-        for (int j = 0; j < height; j++)
-        {
-            vFactor = (int) ((float) j / (height - 1) * 255);
-            
-            colorL.set((bottomLeft.r() * vFactor + topLeft.r() * (255 - vFactor)) / 255,
-                       (bottomLeft.g() * vFactor + topLeft.g() * (255 - vFactor)) / 255,
-                       (bottomLeft.b() * vFactor + topLeft.b() * (255 - vFactor)) / 255,
-                       (bottomLeft.a() * vFactor + topLeft.a() * (255 - vFactor)) / 255);
-            colorR.set((bottomRight.r() * vFactor + topRight.r() * (255 - vFactor)) / 255,
-                       (bottomRight.g() * vFactor + topRight.g() * (255 - vFactor)) / 255,
-                       (bottomRight.b() * vFactor + topRight.b() * (255 - vFactor)) / 255,
-                       (bottomRight.a() * vFactor + topRight.a() * (255 - vFactor)) / 255);
-            for (int i = 0; i < width; i++)
+        Image.parallel(height, width, (start, end) -> {
+            for (int j = start; j < end; j++)
             {
-                hFactor = (int) ((float) i / (width - 1) * 255);
+                int vFactor = (int) ((float) j / (height - 1) * 255);
+                
+                int lr = (bottomLeft.r() * vFactor + topLeft.r() * (255 - vFactor)) / 255;
+                int lg = (bottomLeft.g() * vFactor + topLeft.g() * (255 - vFactor)) / 255;
+                int lb = (bottomLeft.b() * vFactor + topLeft.b() * (255 - vFactor)) / 255;
+                int la = (bottomLeft.a() * vFactor + topLeft.a() * (255 - vFactor)) / 255;
+                
+                int rr = (bottomRight.r() * vFactor + topRight.r() * (255 - vFactor)) / 255;
+                int rg = (bottomRight.g() * vFactor + topRight.g() * (255 - vFactor)) / 255;
+                int rb = (bottomRight.b() * vFactor + topRight.b() * (255 - vFactor)) / 255;
+                int ra = (bottomRight.a() * vFactor + topRight.a() * (255 - vFactor)) / 255;
                 
-                pixels.put(j * width + i,
-                           (colorR.r() * hFactor + colorL.r() * (255 - hFactor)) / 255,
-                           (colorR.g() * hFactor + colorL.g() * (255 - hFactor)) / 255,
-                           (colorR.b() * hFactor + colorL.b() * (255 - hFactor)) / 255,
-                           (colorR.a() * hFactor + colorL.a() * (255 - hFactor)) / 255);
+                for (int i = 0; i < width; i++)
+                {
+                    int hFactor = (int) ((float) i / (width - 1) * 255);
+                    
+                    pixels.put(j * width + i,
+                               (rr * hFactor + lr * (255 - hFactor)) / 255,
+                               (rg * hFactor + lg * (255 - hFactor)) / 255,
+                               (rb * hFactor + lb * (255 - hFactor)) / 255,
+                               (ra * hFactor + la * (255 - hFactor)) / 255);
+                }
             }
-        }
-        
-        colorL.free();
-        colorR.free();
+        });
         
         return new Image(pixels, width, height, 1, ColorFormat.RGBA);
     }
@@ -352,24 +442,26 @@ public class Image
         double centerX = (width - 1) * 0.5;
         double centerY = (height - 1) * 0.5;
         
-        for (int j = 0; j < height; j++)
-        {
-            for (int i = 0; i < width; i++)
+        Image.parallel(height, width, (start, end) -> {
+            for (int j = start; j < end; j++)
             {
-                double dist   = Math.hypot(i - centerX, j - centerY);
-                double factor = (dist - radius * density) / (radius * (1.0f - density));
-                
-                factor = Math.max(0.0, Math.min(factor, 1.0));
-                
-                int f = (int) Math.round(255 * factor);
-                
-                pixels.put(j * width + i,
-                           (outer.r() * f + inner.r() * (255 - f)) / 255,
-                           (outer.g() * f + inner.g() * (255 - f)) / 255,
-                           (outer.b() * f + inner.b() * (255 - f)) / 255,
-                           (outer.a() * f + inner.a() * (255 - f)) / 255);
+                for (int i = 0; i < width; i++)
+                {
+                    double dist   = Math.hypot(i - centerX, j - centerY);
+                    double factor = (dist - radius * density) / (radius * (1.0f - density));
+                    
+                    factor = Math.max(0.0, Math.min(factor, 1.0));
+                    
+                    int f = (int) Math.round(255 * factor);
+                    
+                    pixels.put(j * width + i,
+                               (outer.r() * f + inner.r() * (255 - f)) / 255,
+                               (outer.g() * f + inner.g() * (255 - f)) / 255,
+                               (outer.b() * f + inner.b() * (255 - f)) / 255,
+                               (outer.a() * f + inner.a() * (255 - f)) / 255);
+                }
             }
-        }
+        });
         
         return new Image(pixels, width, height, 1, ColorFormat.RGBA);
     }
@@ -392,13 +484,15 @@ public class Image
     {
         Color.Buffer pixels = Color.malloc(ColorFormat.RGBA, width * height);
         
-        for (int j = 0; j < height; j++)
-        {
-            for (int i = 0; i < width; i++)
+        Image.parallel(height, width, (start, end) -> {
+            for (int j = start; j < end; j++)
             {
-                pixels.put(j * width + i, (i / checksX + j / checksY) % 2 == 0 ? col1 : col2);
+                for (int i = 0; i < width; i++)
+                {
+                    pixels.put(j * width + i, (i / checksX + j / checksY) % 2 == 0 ? col1 : col2);
+                }
             }
-        }
+        });
         
         return new Image(pixels, width, height, 1, ColorFormat.RGBA);
     }
@@ -420,24 +514,26 @@ public class Image
     {
         Color.Buffer pixels = Color.malloc(ColorFormat.RGBA, width * height);
         
-        for (int j = 0; j < height; j++)
-        {
-            for (int i = 0; i < width; i++)
+        Image.parallel(height, width, (start, end) -> {
+            for (int j = start; j < end; j++)
             {
-                float nx = (i + offsetX) * (float) scale / width;
-                float ny = (j + offsetY) * (float) scale / height;
-                
-                // Typical values to start playing with:
-                //   lacunarity = ~2.0   -- spacing between successive octaves (use exactly 2.0 for wrapping output)
-                //   gain       =  0.5   -- relative weighting applied to each successive octave
-                //   octaves    =  6     -- number of "octaves" of noise3() to sum
-                
-                // NOTE: We need to translate the data from [-1..1] to [0..1]
-                float p = (stb_perlin_fbm_noise3(nx, ny, 1.0F, 2.0F, 0.5F, 6) + 1.0F) / 2.0F;
-                
-                pixels.put(j * width + i, (int) (p * 255), 255);
+                for (int i = 0; i < width; i++)
+                {
+                    float nx = (i + offsetX) * (float) scale / width;
+                    float ny = (j + offsetY) * (float) scale / height;
+                    
+                    // Typical values to start playing with:
+                    //   lacunarity = ~2.0   -- spacing between successive octaves (use exactly 2.0 for wrapping output)
+                    //   gain       =  0.5   -- relative weighting applied to each successive octave
+                    //   octaves    =  6     -- number of "octaves" of noise3() to sum
+                    
+                    // NOTE: We need to translate the data from [-1..1] to [0..1]
+                    float p = (stb_perlin_fbm_noise3(nx, ny, 1.0F, 2.0F, 0.5F, 6) + 1.0F) / 2.0F;
+                    
+                    pixels.put(j * width + i, (int) (p * 255), 255);
+                }
             }
-        }
+        });
         
         return new Image(pixels, width, height, 1, ColorFormat.RGBA);
     }
@@ -461,42 +557,44 @@ public class Image
             seeds[2 * i + 1] = i / seedsPerRow * tileSize + random.nextInt(tileSize);
         }
         
-        for (int j = 0; j < height; j++)
-        {
-            int tileY = j / tileSize;
-            
-            for (int i = 0; i < width; i++)
+        Image.parallel(height, width, (start, end) -> {
+            for (int j = start; j < end; j++)
             {
-                int tileX = i / tileSize;
+                int tileY = j / tileSize;
                 
-                double minDistance = Double.MAX_VALUE;
-                
-                // Check all adjacent tiles
-                for (int x = -1; x < 2; x++)
+                for (int i = 0; i < width; i++)
                 {
-                    if (tileX + x < 0 || tileX + x >= seedsPerRow) continue;
+                    int tileX = i / tileSize;
+                    
+                    double minDistance = Double.MAX_VALUE;
                     
-                    for (int y = -1; y < 2; y++)
+                    // Check all adjacent tiles
+                    for (int x = -1; x < 2; x++)
                     {
-                        if (tileY + y < 0 || tileY + y >= seedsPerCol) continue;
-                        
-                        int index = (tileY + y) * seedsPerRow + tileX + x;
+                        if (tileX + x < 0 || tileX + x >= seedsPerRow) continue;
                         
-                        int seedX = seeds[2 * index];
-                        int seedY = seeds[2 * index + 1];
-                        
-                        double dist = Math.hypot(i - seedX, j - seedY);
-                        
-                        minDistance = Math.min(minDistance, dist);
+                        for (int y = -1; y < 2; y++)
+                        {
+                            if (tileY + y < 0 || tileY + y >= seedsPerCol) continue;
+                            
+                            int index = (tileY + y) * seedsPerRow + tileX + x;
+                            
+                            int seedX = seeds[2 * index];
+                            int seedY = seeds[2 * index + 1];
+                            
+                            double dist = Math.hypot(i - seedX, j - seedY);
+                            
+                            minDistance = Math.min(minDistance, dist);
+                        }
                     }
+                    
+                    // I made this up but it seems to give good results at all tile sizes
+                    int intensity = (int) Math.round(minDistance * 256 / tileSize);
+                    
+                    pixels.put(j * width + i, Math.min(intensity, 255), 255);
                 }
-                
-                // I made this up but it seems to give good results at all tile sizes
-                int intensity = (int) Math.round(minDistance * 256 / tileSize);
-                
-                pixels.put(j * width + i, Math.min(intensity, 255), 255);
             }
-        }
+        });
         
         return new Image(pixels, width, height, 1, ColorFormat.RGBA);
     }
@@ -583,6 +681,8 @@ public class Image
     
     private @Nullable Color.Buffer data;
     
+    private @Nullable ByteBuffer mapping; // Keeps file mapped data alive, which must not be freed
+    
     private int width;
     private int height;
     
@@ -602,6 +702,23 @@ public class Image
         this.format = format;
     }
     
+    /**
+     * Creates an {@link Image} whose data is a view of a memory mapped file.
+     * The mapping is kept by the image until its data is replaced.
+     */
+    static @NotNull Image mapped(@NotNull ByteBuffer mapping, @NotNull Color.Buffer data, int width, int height, int mipmaps, @NotNull ColorFormat format)
+    {
+        Image image = new Image(data, width, height, mipmaps, format);
+        image.mapping = mapping;
+        return image;
+    }
+    
+    private void freeData()
+    {
+        if (this.data != null && this.mapping == null) this.data.free();
+        this.mapping = null;
+    }
+    
     @Override
     public @NotNull String toString()
     {
@@ -640,7 +757,7 @@ public class Image
     {
         if (this.data != null)
         {
-            this.data.free();
+            freeData();
             this.data = null;
         }
         
@@ -664,6 +781,8 @@ public class Image
         
         String extension = getExtension(fileName);
         
+        if (extension.equals(".engine_img")) return exportEngineImage(fileName, withMipmaps ? this.mipmaps : 1, false);
+        
         ByteBuffer buffer = this.data.toBuffer();
         buffer.limit(this.width * this.height * this.format.sizeof);
         
@@ -711,6 +830,34 @@ public class Image
         return export(fileName, false);
     }
     
+    /**
+     * Exports this image and all of its mipmaps to an {@code .engine_img}
+     * file, which can be loaded without decoding.
+     *
+     * @param fileName The path to the file.
+     * @param compress If the data should be compressed. Uncompressed files
+     *                 are larger, but are memory mapped when loaded.
+     * @return If everything was a success.
+     */
+    public boolean exportEngineImage(@NotNull String fileName, boolean compress)
+    {
+        return exportEngineImage(fileName, this.mipmaps, compress);
+    }
+    
+    private boolean exportEngineImage(String fileName, int mipmaps, boolean compress)
+    {
+        boolean success = EngineImageFile.write(this, fileName, mipmaps, compress);
+        if (success)
+        {
+            Image.LOGGER.info("Image exported successfully:", fileName);
+        }
+        else
+        {
+            Image.LOGGER.warning("Failed to export image:", fileName);
+        }
+        return success;
+    }
+    
     private static boolean export(String extension, String fileName, int width, int height, int channels, int mipmaps, ColorFormat format, ByteBuffer data)
     {
         boolean success = false;
@@ -722,20 +869,6 @@ public class Image
             case ".jpg" -> success = stbi_write_jpg(fileName, width, height, channels, data, 90); // JPG quality: between 1 and 100
             // case ".ktx" -> SaveKTX(image, fileName);
             case ".raw" -> success = writeToFile(fileName, data);
-            case ".engine_img" ->
-            {
-                ByteBuffer newBuffer = MemoryUtil.memAlloc(data.remaining() + Integer.BYTES * 4);
-                newBuffer.putInt(width);
-                newBuffer.putInt(height);
-                newBuffer.putInt(mipmaps);
-                newBuffer.putInt(format.ordinal());
-                newBuffer.put(data);
-                newBuffer.flip();
-                
-                success = writeToFile(fileName, newBuffer);
-                
-                MemoryUtil.memFree(newBuffer);
-            }
         }
         if (success)
         {
@@ -823,7 +956,7 @@ public class Image
         {
             Color.Buffer output = this.data.copy(format);
             
-            this.data.free();
+            freeData();
             
             this.data    = output;
             this.format  = format;
@@ -870,7 +1003,18 @@ public class Image
             
             if (this.mipmaps < mipCount)
             {
-                Color.Buffer temp = Color.realloc(this.data, mipSize);
+                Color.Buffer temp;
+                if (this.mapping != null)
+                {
+                    // Mapped data can not be reallocated, so it is copied out of the file
+                    temp = Color.malloc(this.format, mipSize);
+                    MemoryUtil.memCopy(this.data.address(), temp.address(), (long) Math.min(this.data.capacity(), temp.capacity()) * this.format.sizeof);
+                    this.mapping = null;
+                }
+                else
+                {
+                    temp = Color.realloc(this.data, mipSize);
+                }
                 
                 if (temp.address() != 0)
                 {
@@ -928,50 +1072,83 @@ public class Image
     
     /**
      * Generates a {@link Color.Buffer} filled with one of every color in the image.
+     * Fully transparent pixels are skipped. Colors are in the order they are
+     * first seen.
      *
      * @param maxPaletteSize The maximum size of the buffer.
      * @return The pallet data.
      */
     public @NotNull Color.Buffer getPalette(int maxPaletteSize)
     {
+        Color.Buffer data = Objects.requireNonNull(this.data);
+        
         int count = 0;
         
         Color.Buffer palette = Color.calloc(ColorFormat.RGBA, maxPaletteSize);
-        Color.Buffer pixels  = Objects.requireNonNull(getColorData());
-        for (int i = 0, n = this.width * this.height; i < n; i++)
+        if (maxPaletteSize <= 0) return palette.limit(0);
+        
+        // Open addressing set of the packed colors on the palette, at least
+        // twice as large as the palette so it never fills up. Transparent
+        // pixels are skipped, so no color packs to the empty key of 0.
+        int[] colors = new int[Integer.highestOneBit(maxPaletteSize) << 2];
+        int   mask   = colors.length - 1;
+        
+        long address = data.address();
+        int  sizeof  = this.format.sizeof;
+        
+        outer:
+        for (int i = 0, n = this.width * this.height; i < n; i++, address += sizeof)
         {
-            Color pixel = pixels.get(i);
-            
-            if (pixel.a() != 0)
+            int key;
+            switch (this.format)
             {
-                // Check if the color is already on palette
-                boolean present = false;
-                for (int j = 0; j < count; j++)
-                {
-                    if (pixel.equals(palette.get(j)))
-                    {
-                        present = true;
-                        break;
-                    }
+                case GRAY -> {
+                    int gray = MemoryUtil.memGetByte(address) & 0xFF;
+                    key = gray | (gray << 8) | (gray << 16) | 0xFF000000;
                 }
-                
-                // Store color if not on the palette
-                if (!present)
-                {
-                    // Add pixels[i] to palette
-                    palette.get(count).set(pixel);
-                    count++;
-                    
-                    // We reached the limit of colors supported by palette
-                    if (count >= maxPaletteSize)
-                    {
-                        Image.LOGGER.warning("Palette is greater than %s colors", maxPaletteSize);
-                        break;
-                    }
+                case GRAY_ALPHA -> {
+                    int gray  = MemoryUtil.memGetByte(address) & 0xFF;
+                    int alpha = MemoryUtil.memGetByte(address + 1) & 0xFF;
+                    if (alpha == 0) continue;
+                    key = gray | (gray << 8) | (gray << 16) | (alpha << 24);
+                }
+                case RGB -> key = (MemoryUtil.memGetByte(address) & 0xFF) |
+                                  (MemoryUtil.memGetByte(address + 1) & 0xFF) << 8 |
+                                  (MemoryUtil.memGetByte(address + 2) & 0xFF) << 16 |
+                                  0xFF000000;
+                default -> {
+                    if (MemoryUtil.memGetByte(address + 3) == 0) continue;
+                    key = MemoryUtil.memGetInt(address); // Only compared and copied back, so byte order does not matter
                 }
             }
+            
+            // Check if the color is already on palette
+            int h    = key * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            for (int k; (k = colors[slot]) != 0; slot = (slot + 1) & mask)
+            {
+                if (k == key) continue outer;
+            }
+            colors[slot] = key;
+            
+            // Add pixel to palette
+            if (this.format == ColorFormat.RGBA)
+            {
+                MemoryUtil.memPutInt(palette.address() + Integer.toUnsignedLong(count) * ColorFormat.RGBA.sizeof, key);
+            }
+            else
+            {
+                palette.put(count, key & 0xFF, (key >>> 8) & 0xFF, (key >>> 16) & 0xFF, key >>> 24);
+            }
+            count++;
+            
+            // We reached the limit of colors supported by palette
+            if (count >= maxPaletteSize)
+            {
+                Image.LOGGER.warning("Palette is greater than %s colors", maxPaletteSize);
+                break;
+            }
         }
-        pixels.free();
         return palette.limit(count);
     }
     
@@ -1017,7 +1194,7 @@ public class Image
                     };
             stbir_resize_uint8(this.data.toBuffer(), this.width, this.height, 0, output.toBuffer(), width, height, 0, channels);
             
-            this.data.free();
+            freeData();
             this.data    = output;
             this.width   = width;
             this.height  = height;
@@ -1068,7 +1245,7 @@ public class Image
                 }
             }
             
-            this.data.free();
+            freeData();
             pixels.free();
             
             this.data    = output;
@@ -1135,7 +1312,7 @@ public class Image
             }
             
             pixels.free();
-            this.data.free();
+            freeData();
             
             this.data    = output;
             this.width   = width;
@@ -1176,7 +1353,7 @@ public class Image
                 MemoryUtil.memCopy(src, dst, bytesPerLine);
             }
             
-            this.data.free();
+            freeData();
             
             this.data    = output;
             this.width   = width;
@@ -1219,36 +1396,33 @@ public class Image
         {
             Color.Buffer pixels = Objects.requireNonNull(getColorData());
             
-            this.data.free(); // free old image data
+            freeData(); // free old image data
             
             this.format  = ColorFormat.RGBA;
             this.data    = Color.malloc(this.format, this.width * this.height);
             this.mipmaps = 1;
             
-            Color color;
-            
-            int r, g, b, a;
+            Color.Buffer output = this.data;
             
             int rs = (1 << rBpp) - 1;
             int gs = (1 << gBpp) - 1;
             int bs = (1 << bBpp) - 1;
             int as = (1 << aBpp) - 1;
             
-            for (int y = 0; y < this.height; y++)
-            {
-                for (int x = 0; x < this.width; x++)
+            Image.parallel(this.height, this.width, (start, end) -> {
+                for (int i = start * this.width, n = end * this.width; i < n; i++)
                 {
-                    color = pixels.get(y * this.width + x);
+                    Color color = pixels.get(i);
                     
                     // This "CAN" be simplified, but we need the precision to be lost.
-                    r = rs > 0 ? ((((color.r() + (127 / rs)) * rs) / 255) * 255) / rs : 0;
-                    g = gs > 0 ? ((((color.g() + (127 / gs)) * gs) / 255) * 255) / gs : 0;
-                    b = bs > 0 ? ((((color.b() + (127 / bs)) * bs) / 255) * 255) / bs : 0;
-                    a = as > 0 ? ((((color.a() + (127 / as)) * as) / 255) * 255) / as : 255;
+                    int r = rs > 0 ? ((((color.r() + (127 / rs)) * rs) / 255) * 255) / rs : 0;
+                    int g = gs > 0 ? ((((color.g() + (127 / gs)) * gs) / 255) * 255) / gs : 0;
+                    int b = bs > 0 ? ((((color.b() + (127 / bs)) * bs) / 255) * 255) / bs : 0;
+                    int a = as > 0 ? ((((color.a() + (127 / as)) * as) / 255) * 255) / as : 255;
                     
-                    this.data.put(y * this.width + x, r, g, b, a);
+                    output.put(i, r, g, b, a);
                 }
-            }
+            });
             
             pixels.free();
         }
@@ -1256,367 +1430,59 @@ public class Image
     }
     
     /**
-     * Quantize the image to only 256 colors.
+     * Reduces the colors of the image to a palette built by a quantizer.
+     * Alpha is left as it is.
      *
-     * @param sampleFactor Sampling Factor {@code [1..30]}
+     * @param quantizer The quantizer.
      * @return This
      */
-    public @NotNull Image neuQuantize(int sampleFactor)
+    public @NotNull Image quantize(@NotNull Quantizer quantizer)
     {
         if (this.data != null)
         {
-            int sizeof = this.data.sizeof();
-            
-            final int NET_SIZE = 256;
-            final int
-                    PRIME1 = 499,
-                    PRIME2 = 491,
-                    PRIME3 = 487,
-                    PRIME4 = 503;
-            final int MIN_PICTURE_BYTES = sizeof * PRIME4;
-            final int
-                    MAX_NET_POS = NET_SIZE - 1,
-                    NET_BIAS_SHIFT = 4,
-                    N_CYCLES = 100;
-            @SuppressWarnings("unused")
-            final int
-                    INT_BIAS_SHIFT = 16,
-                    INT_BIAS = 1 << INT_BIAS_SHIFT,
-                    GAMMA_SHIFT = 10,
-                    GAMMA = 1 << GAMMA_SHIFT,
-                    BETA_SHIFT = 10,
-                    BETA = INT_BIAS >> BETA_SHIFT,
-                    BETA_GAMMA = INT_BIAS << (GAMMA_SHIFT - BETA_SHIFT);
-            final int
-                    INIT_RAD = NET_SIZE >> 3,
-                    RADIUS_BIAS_SHIFT = 6,
-                    RADIUS_BIAS = 1 << RADIUS_BIAS_SHIFT,
-                    INIT_RADIUS = INIT_RAD * RADIUS_BIAS,
-                    RADIUS_DEC = 30;
-            final int
-                    ALPHA_BIAS_SHIFT = 10,
-                    INIT_ALPHA = 1 << ALPHA_BIAS_SHIFT;
-            final int
-                    RAD_BIAS_SHIFT = 8,
-                    RAD_BIAS = 1 << RAD_BIAS_SHIFT,
-                    ALPHA_RAD_BIAS_SHIFT = ALPHA_BIAS_SHIFT + RAD_BIAS_SHIFT,
-                    ALPHA_RAD_BIAS = 1 << ALPHA_RAD_BIAS_SHIFT;
-            
-            int dataSize = this.data.capacity() * sizeof;
-            
-            sampleFactor = dataSize < MIN_PICTURE_BYTES ? 1 : sampleFactor;
-            
-            int[][] network  = new int[NET_SIZE][];
-            int[]   netIndex = new int[256];
-            int[]   bias     = new int[NET_SIZE];
-            int[]   freq     = new int[NET_SIZE];
-            int[]   radPower = new int[INIT_RAD];
-            
-            int alphaDec = 30 + ((sampleFactor - 1) / sizeof);
-            
-            for (int i = 0; i < NET_SIZE; i++)
-            {
-                int initial = (i << (NET_BIAS_SHIFT + 8)) / NET_SIZE;
-                
-                network[i] = new int[] {initial, initial, initial, initial, 0};
-            }
-            Arrays.fill(netIndex, 0);
-            Arrays.fill(bias, 0);
-            Arrays.fill(freq, INT_BIAS / NET_SIZE); // 1/NET_SIZE
-            Arrays.fill(radPower, 0);
-            
-            int samplePixels = dataSize / (sizeof * sampleFactor);
-            int alpha        = INIT_ALPHA;
-            int radius       = INIT_RADIUS;
-            int rad          = radius >> RADIUS_BIAS_SHIFT;
+            Color.Buffer data  = this.data;
+            int          count = data.capacity();
             
-            // if (rad <= 1) rad = 0;
-            
-            for (int i = 0, rad2 = rad * rad; i < rad; i++) radPower[i] = alpha * (((rad2 - i * i) * RAD_BIAS) / rad2);
-            
-            int step;
-            if (dataSize < MIN_PICTURE_BYTES)
-            {
-                step = 1;
-            }
-            else if ((dataSize % PRIME1) != 0)
-            {
-                step = PRIME1;
-            }
-            else if ((dataSize % PRIME2) != 0)
-            {
-                step = PRIME2;
-            }
-            else if ((dataSize % PRIME3) != 0)
-            {
-                step = PRIME3;
-            }
-            else
-            {
-                step = PRIME4;
-            }
-            
-            int delta = samplePixels / N_CYCLES;
-            if (delta == 0) delta = 1;
-            for (int i = 0, pix = 0; i < samplePixels; )
-            {
-                Color pixel = this.data.get(pix);
-                
-                int r = pixel.r() << NET_BIAS_SHIFT;
-                int g = pixel.g() << NET_BIAS_SHIFT;
-                int b = pixel.b() << NET_BIAS_SHIFT;
-                int a = pixel.a() << NET_BIAS_SHIFT;
-                
-                int bestDist     = Integer.MAX_VALUE;
-                int bestBiasDist = Integer.MAX_VALUE;
-                int bestPos      = -1;
-                int bestBiasPos  = -1;
-                
-                for (int j = 0; j < NET_SIZE; j++)
+            byte[] pixels = new byte[count * 3];
+            Image.parallel(count, 1, (start, end) -> {
+                for (int i = start, k = start * 3; i < end; i++)
                 {
-                    int[] n = network[j];
-                    
-                    int dist = Math.abs(n[0] - r) +
-                               Math.abs(n[1] - g) +
-                               Math.abs(n[2] - b) +
-                               Math.abs(n[3] - a);
-                    
-                    if (dist < bestDist)
-                    {
-                        bestDist = dist;
-                        bestPos  = j;
-                    }
-                    
-                    int biasDist = dist - (bias[j] >> (INT_BIAS_SHIFT - NET_BIAS_SHIFT));
-                    if (biasDist < bestBiasDist)
-                    {
-                        bestBiasDist = biasDist;
-                        bestBiasPos  = j;
-                    }
-                    
-                    int betaFreq = freq[j] >> BETA_SHIFT;
-                    bias[j] += betaFreq << GAMMA_SHIFT;
-                    freq[j] -= betaFreq;
+                    Color color = data.get(i);
+                    pixels[k++] = (byte) color.r();
+                    pixels[k++] = (byte) color.g();
+                    pixels[k++] = (byte) color.b();
                 }
-                bias[bestPos] -= BETA_GAMMA;
-                freq[bestPos] += BETA;
-                
-                // alter hit neuron
-                int[] n = network[bestBiasPos];
-                n[0] -= (alpha * (n[0] - r)) / INIT_ALPHA;
-                n[1] -= (alpha * (n[1] - g)) / INIT_ALPHA;
-                n[2] -= (alpha * (n[2] - b)) / INIT_ALPHA;
-                n[3] -= (alpha * (n[3] - a)) / INIT_ALPHA;
-                if (rad != 0)
-                {
-                    // alter neighbours
-                    int lo = Math.max(bestBiasPos - rad, -1);
-                    int hi = Math.min(bestBiasPos + rad, NET_SIZE);
-                    
-                    int j = bestBiasPos + 1;
-                    int k = bestBiasPos - 1;
-                    int m = 1;
-                    while (j < hi || k > lo)
-                    {
-                        int radP = radPower[m++];
-                        if (j < hi)
-                        {
-                            int[] p = network[j++];
-                            try
-                            {
-                                p[0] -= (radP * (p[0] - r)) / ALPHA_RAD_BIAS;
-                                p[1] -= (radP * (p[1] - g)) / ALPHA_RAD_BIAS;
-                                p[2] -= (radP * (p[2] - b)) / ALPHA_RAD_BIAS;
-                                p[3] -= (radP * (p[3] - a)) / ALPHA_RAD_BIAS;
-                            }
-                            catch (Exception ignored) {}
-                        }
-                        if (k > lo)
-                        {
-                            int[] p = network[k--];
-                            try
-                            {
-                                p[0] -= (radP * (p[0] - r)) / ALPHA_RAD_BIAS;
-                                p[1] -= (radP * (p[1] - g)) / ALPHA_RAD_BIAS;
-                                p[2] -= (radP * (p[2] - b)) / ALPHA_RAD_BIAS;
-                                p[3] -= (radP * (p[3] - a)) / ALPHA_RAD_BIAS;
-                            }
-                            catch (Exception ignored) {}
-                        }
-                    }
-                }
-                
-                pix += step;
-                if (pix >= this.data.capacity()) pix -= this.data.capacity();
-                
-                i++;
-                
-                if (i % delta == 0)
-                {
-                    alpha -= alpha / alphaDec;
-                    radius -= radius / RADIUS_DEC;
-                    rad = radius >> RADIUS_BIAS_SHIFT;
-                    if (rad <= 1) rad = 0;
-                    for (bestBiasPos = 0; bestBiasPos < rad; bestBiasPos++)
-                    {
-                        radPower[bestBiasPos] = alpha * (((rad * rad - bestBiasPos * bestBiasPos) * RAD_BIAS) / (rad * rad));
-                    }
-                }
-            }
+            });
             
-            // Unbias network to give byte values 0..255 and record position i to prepare for sort
-            for (int i = 0; i < NET_SIZE; i++)
-            {
-                network[i][0] >>= NET_BIAS_SHIFT;
-                network[i][1] >>= NET_BIAS_SHIFT;
-                network[i][2] >>= NET_BIAS_SHIFT;
-                network[i][3] >>= NET_BIAS_SHIFT;
-                network[i][4] =   i; /* record color no */
-            }
+            Palette palette = quantizer.quantize(pixels);
             
-            int prevCol  = 0;
-            int startPos = 0;
-            for (int i = 0; i < NET_SIZE; i++)
-            {
-                int[] p        = network[i];
-                int   smallPos = i;
-                int   smallVal = p[1]; /* index on g */
-                /* find smallest in [i..NET_SIZE-1] */
-                for (int j = i + 1; j < NET_SIZE; j++)
+            Image.parallel(count, 1, (start, end) -> {
+                for (int i = start, k = start * 3; i < end; i++, k += 3)
                 {
-                    int[] q = network[j];
-                    if (q[1] < smallVal)
-                    { /* index on g */
-                        smallPos = j;
-                        smallVal = q[1]; /* index on g */
-                    }
-                }
-                int[] q = network[smallPos];
-                /* swap p(i) and q(smallPos) entries */
-                if (i != smallPos)
-                {
-                    int temp;
+                    int index = palette.index(pixels[k] & 0xFF, pixels[k + 1] & 0xFF, pixels[k + 2] & 0xFF);
                     
-                    temp = q[0];
-                    q[0] = p[0];
-                    p[0] = temp;
-                    temp = q[1];
-                    q[1] = p[1];
-                    p[1] = temp;
-                    temp = q[2];
-                    q[2] = p[2];
-                    p[2] = temp;
-                    temp = q[3];
-                    q[3] = p[3];
-                    p[3] = temp;
-                }
-                /* smallVal entry is now in position i */
-                if (smallVal != prevCol)
-                {
-                    netIndex[prevCol] = (startPos + i) >> 1;
-                    for (int j = prevCol + 1; j < smallVal; j++) netIndex[j] = i;
-                    prevCol  = smallVal;
-                    startPos = i;
-                }
-            }
-            
-            netIndex[prevCol] = (startPos + MAX_NET_POS) >> 1;
-            Arrays.fill(netIndex, prevCol + 1, netIndex.length, MAX_NET_POS); // really 256
-            
-            int[] index = new int[NET_SIZE];
-            for (int i = 0; i < NET_SIZE; i++) index[network[i][4]] = i;
-            
-            byte[] colorTable = new byte[sizeof * NET_SIZE];
-            for (int i = 0, k = 0; i < NET_SIZE; i++)
-            {
-                int j = index[i];
-                colorTable[k++] = (byte) network[j][0];
-                colorTable[k++] = (byte) network[j][1];
-                colorTable[k++] = (byte) network[j][2];
-                colorTable[k++] = (byte) network[j][3];
-            }
-            
-            this.data.clear();
-            for (Color color = this.data.get(); this.data.hasRemaining(); color = this.data.get())
-            {
-                int r = color.r();
-                int g = color.g();
-                int b = color.b();
-                int a = color.a();
-                
-                int bestDist = 1000; /* biggest possible dist is 256*3 */
-                int best     = -1;
-                
-                // i: index on g
-                // j: start at netIndex[g] and work outwards
-                for (int i = netIndex[g], j = i - 1; i < NET_SIZE || j >= 0; )
-                {
-                    if (i < NET_SIZE)
-                    {
-                        int[] p    = network[i];
-                        int   dist = p[1] - g; /* inx key */
-                        if (dist >= bestDist)
-                        {
-                            i = NET_SIZE; /* stop iter */
-                        }
-                        else
-                        {
-                            i++;
-                            dist = Math.abs(dist) + Math.abs(p[0] - r);
-                            if (dist < bestDist)
-                            {
-                                dist += Math.abs(p[2] - b);
-                                if (dist < bestDist)
-                                {
-                                    dist += Math.abs(p[3] - a);
-                                    if (dist < bestDist)
-                                    {
-                                        bestDist = dist;
-                                        best     = p[4];
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    if (j >= 0)
-                    {
-                        int[] p    = network[j];
-                        int   dist = g - p[1]; /* inx key - reverse dif */
-                        if (dist >= bestDist)
-                        {
-                            j = -1; /* stop iter */
-                        }
-                        else
-                        {
-                            j--;
-                            dist = Math.abs(dist) + Math.abs(p[0] - r);
-                            if (dist < bestDist)
-                            {
-                                dist += Math.abs(p[2] - b);
-                                if (dist < bestDist)
-                                {
-                                    dist += Math.abs(p[3] - a);
-                                    if (dist < bestDist)
-                                    {
-                                        bestDist = dist;
-                                        best     = p[4];
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    Color color = data.get(i);
+                    color.r(palette.r(index));
+                    color.g(palette.g(index));
+                    color.b(palette.b(index));
                 }
-                
-                color.r(colorTable[(4 * best)] & 0xFF);
-                color.g(colorTable[(4 * best) + 1] & 0xFF);
-                color.b(colorTable[(4 * best) + 2] & 0xFF);
-                color.a(colorTable[(4 * best) + 3] & 0xFF);
-            }
-            this.data.clear();
+            });
+            data.clear();
         }
         return this;
     }
     
+    /**
+     * Quantize the image to only 256 colors with {@link NeuQuantizer}.
+     *
+     * @param sampleFactor Sampling Factor {@code [1..30]}
+     * @return This
+     */
+    public @NotNull Image neuQuantize(int sampleFactor)
+    {
+        return quantize(new NeuQuantizer(sampleFactor));
+    }
+    
     /**
      * Dither image data (Floyd-Steinberg dithering)
      * <p>
@@ -1634,7 +1500,7 @@ public class Image
         {
             Color.Buffer pixels = Objects.requireNonNull(getColorData());
             
-            this.data.free(); // free old image data
+            freeData(); // free old image data
             
             this.format  = ColorFormat.RGBA;
             this.data    = Color.malloc(this.format, this.width * this.height);
@@ -1737,16 +1603,16 @@ public class Image
             long srcPtr = this.data.address();
             long dstPtr = output.address();
             
+            int  height       = this.height;
             long bytesPerLine = Integer.toUnsignedLong(this.width) * this.format.sizeof;
-            for (int i = this.height - 1, offsetSize = 0; i >= 0; i--)
-            {
-                long src = srcPtr + Integer.toUnsignedLong(i * this.width) * this.format.sizeof;
-                
-                MemoryUtil.memCopy(src, dstPtr + offsetSize, bytesPerLine);
-                offsetSize += bytesPerLine;
-            }
+            Image.parallel(this.height, this.width, (start, end) -> {
+                for (int y = start; y < end; y++)
+                {
+                    MemoryUtil.memCopy(srcPtr + (height - 1 - y) * bytesPerLine, dstPtr + y * bytesPerLine, bytesPerLine);
+                }
+            });
             
-            this.data.free();
+            freeData();
             this.data    = output;
             this.mipmaps = 1;
         }
@@ -1773,23 +1639,26 @@ public class Image
                 long srcPtr = this.data.address();
                 long dstPtr = output.address();
                 
-                long bytesPerLine = Integer.toUnsignedLong(this.width) * this.format.sizeof;
-                for (int y = 0; y < this.height; y++)
-                {
-                    for (int x = 0; x < this.width; x++)
+                int width  = this.width;
+                int sizeof = this.format.sizeof;
+                Image.parallel(this.height, this.width, (start, end) -> {
+                    for (int y = start; y < end; y++)
                     {
-                        // OPTION 1: Move pixels with memCopy()
-                        long src = Integer.toUnsignedLong(y * this.width + this.width - 1 - x) * this.format.sizeof;
-                        long dst = Integer.toUnsignedLong(y * this.width + x) * this.format.sizeof;
-                        
-                        MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, bytesPerLine);
-                        
-                        // OPTION 2: Just copy data pixel by pixel
-                        // output.put(y * this.width + x, this.data.getBytes(y * this.width + (this.width - 1 - x)));
+                        for (int x = 0; x < width; x++)
+                        {
+                            // OPTION 1: Move pixels with memCopy()
+                            long src = Integer.toUnsignedLong(y * width + width - 1 - x) * sizeof;
+                            long dst = Integer.toUnsignedLong(y * width + x) * sizeof;
+                            
+                            MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, sizeof);
+                            
+                            // OPTION 2: Just copy data pixel by pixel
+                            // output.put(y * this.width + x, this.data.getBytes(y * this.width + (this.width - 1 - x)));
+                        }
                     }
-                }
+                });
                 
-                this.data.free();
+                freeData();
                 
                 this.data = output;
             }
@@ -1797,16 +1666,19 @@ public class Image
             {
                 // OPTION 3: Faster implementation (specific for 32bit pixels)
                 // NOTE: It does not require additional allocations
-                IntBuffer ptr = this.data.toBuffer().asIntBuffer();
-                for (int y = 0; y < this.height; y++)
-                {
-                    for (int x = 0; x < this.width / 2; x++)
+                IntBuffer ptr   = this.data.toBuffer().asIntBuffer();
+                int       width = this.width;
+                Image.parallel(this.height, this.width, (start, end) -> {
+                    for (int y = start; y < end; y++)
                     {
-                        int backup = ptr.get(y * this.width + x);
-                        ptr.put(y * this.width + x, ptr.get(y * this.width + this.width - 1 - x));
-                        ptr.put(y * this.width + this.width - 1 - x, backup);
+                        for (int x = 0; x < width / 2; x++)
+                        {
+                            int backup = ptr.get(y * width + x);
+                            ptr.put(y * width + x, ptr.get(y * width + width - 1 - x));
+                            ptr.put(y * width + width - 1 - x, backup);
+                        }
                     }
-                }
+                });
             }
             this.mipmaps = 1;
         }
@@ -1832,19 +1704,27 @@ public class Image
             long srcPtr = this.data.address();
             long dstPtr = output.address();
             
-            for (int y = 0; y < this.height; y++)
-            {
-                for (int x = 0; x < this.width; x++)
+            int width  = this.width;
+            int height = this.height;
+            int sizeof = this.format.sizeof;
+            Image.parallel(this.height, this.width, (start, end) -> {
+                for (int y = start; y < end; y++)
                 {
-                    long src = Integer.toUnsignedLong(y * this.width + x) * this.format.sizeof;
-                    long dst = Integer.toUnsignedLong(x * this.height + this.height - y - 1) * this.format.sizeof;
-                    
-                    MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, this.format.sizeof);
+                    for (int x = 0; x < width; x++)
+                    {
+                        long src = Integer.toUnsignedLong(y * width + x) * sizeof;
+                        long dst = Integer.toUnsignedLong(x * height + height - y - 1) * sizeof;
+                        
+                        MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, sizeof);
+                    }
                 }
-            }
+            });
             
-            this.data.free();
-            this.data = output;
+            freeData();
+            this.data    = output;
+            this.width   = height;
+            this.height  = width;
+            this.mipmaps = 1;
         }
         return this;
     }
@@ -1867,19 +1747,27 @@ public class Image
             long srcPtr = this.data.address();
             long dstPtr = output.address();
             
-            for (int y = 0; y < this.height; y++)
-            {
-                for (int x = 0; x < this.width; x++)
+            int width  = this.width;
+            int height = this.height;
+            int sizeof = this.format.sizeof;
+            Image.parallel(this.height, this.width, (start, end) -> {
+                for (int y = start; y < end; y++)
                 {
-                    long src = Integer.toUnsignedLong(y * this.width + this.width - x - 1) * this.format.sizeof;
-                    long dst = Integer.toUnsignedLong(x * this.height + y) * this.format.sizeof;
-                    
-                    MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, this.format.sizeof);
+                    for (int x = 0; x < width; x++)
+                    {
+                        long src = Integer.toUnsignedLong(y * width + width - x - 1) * sizeof;
+                        long dst = Integer.toUnsignedLong(x * height + y) * sizeof;
+                        
+                        MemoryUtil.memCopy(srcPtr + src, dstPtr + dst, sizeof);
+                    }
                 }
-            }
+            });
             
-            this.data.free();
-            this.data = output;
+            freeData();
+            this.data    = output;
+            this.width   = height;
+            this.height  = width;
+            this.mipmaps = 1;
         }
         return this;
     }
@@ -1905,7 +1793,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -1913,7 +1801,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.tint(color));
+            forEachPixel(pixels, c -> c.tint(color));
             
             this.data = pixels;
         }
@@ -1936,7 +1824,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -1944,7 +1832,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(Color::grayscale);
+            forEachPixel(pixels, Color::grayscale);
             
             this.data = pixels;
         }
@@ -1968,7 +1856,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -1976,7 +1864,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.brightness(brightness));
+            forEachPixel(pixels, c -> c.brightness(brightness));
             
             this.data = pixels;
         }
@@ -2000,7 +1888,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2008,7 +1896,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.brightness(brightness));
+            forEachPixel(pixels, c -> c.brightness(brightness));
             
             this.data = pixels;
         }
@@ -2032,7 +1920,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2040,7 +1928,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.contrast(contrast));
+            forEachPixel(pixels, c -> c.contrast(contrast));
             
             this.data = pixels;
         }
@@ -2064,7 +1952,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2072,7 +1960,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.contrast(contrast));
+            forEachPixel(pixels, c -> c.contrast(contrast));
             
             this.data = pixels;
         }
@@ -2096,7 +1984,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2104,7 +1992,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.gamma(gamma));
+            forEachPixel(pixels, c -> c.gamma(gamma));
             
             this.data = pixels;
         }
@@ -2127,7 +2015,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2135,7 +2023,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(Color::invert);
+            forEachPixel(pixels, Color::invert);
             
             this.data = pixels;
         }
@@ -2159,7 +2047,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2167,7 +2055,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.brighter(percentage));
+            forEachPixel(pixels, c -> c.brighter(percentage));
             
             this.data = pixels;
         }
@@ -2191,7 +2079,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2199,7 +2087,7 @@ public class Image
                 pixels = this.data;
             }
             
-            pixels.forEach(c -> c.darker(percentage));
+            forEachPixel(pixels, c -> c.darker(percentage));
             
             this.data = pixels;
         }
@@ -2225,7 +2113,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2235,7 +2123,7 @@ public class Image
             
             if (distance <= 0.0)
             {
-                pixels.forEach(c -> {if (c.equals(color)) c.set(replace);});
+                forEachPixel(pixels, c -> {if (c.equals(color)) c.set(replace);});
             }
             else
             {
@@ -2243,7 +2131,7 @@ public class Image
                 int g = color.g();
                 int b = color.b();
                 
-                pixels.forEach(c -> {
+                forEachPixel(pixels, c -> {
                     double rc   = r > 0 ? (double) Math.abs(c.r() - r) / r : c.rf();
                     double gc   = g > 0 ? (double) Math.abs(c.g() - g) / g : c.gf();
                     double bc   = b > 0 ? (double) Math.abs(c.b() - b) / b : c.bf();
@@ -2280,7 +2168,7 @@ public class Image
             if (this.format != ColorFormat.RGBA)
             {
                 pixels = Objects.requireNonNull(getColorData());
-                this.data.free();
+                freeData();
                 this.format = ColorFormat.RGBA;
             }
             else
@@ -2290,7 +2178,7 @@ public class Image
             
             int _threshold = (int) (threshold * 255);
             
-            pixels.forEach(c -> {if (c.a() <= _threshold) c.set(color);});
+            forEachPixel(pixels, c -> {if (c.a() <= _threshold) c.set(color);});
             
             this.data = pixels;
         }
@@ -2335,7 +2223,7 @@ public class Image
                 output.forEach(c -> c.a(mask.data.get().r()));
                 
                 pixels.free();
-                this.data.free();
+                freeData();
                 
                 this.data    = output;
                 this.format  = ColorFormat.RGBA;
@@ -2359,7 +2247,7 @@ public class Image
         {
             Color.Buffer pixels = Objects.requireNonNull(getColorData());
             
-            pixels.forEach(c -> {
+            forEachPixel(pixels, c -> {
                 int a = c.a();
                 if (a == 0)
                 {
@@ -2374,7 +2262,7 @@ public class Image
                 }
             });
             
-            this.data.free();
+            freeData();
             
             this.data   = pixels;
             this.format = ColorFormat.RGBA;
@@ -2390,7 +2278,7 @@ public class Image
     
     public void clear(Colorc color)
     {
-        if (this.data != null) this.data.forEach(c -> c.set(color));
+        if (this.data != null) forEachPixel(this.data, c -> c.set(color));
     }
     
     public void drawPixel(int x, int y, Colorc color, BlendMode blendMode)
@@ -2398,12 +2286,9 @@ public class Image
         if (x < 0 || this.width <= x) return;
         if (y < 0 || this.height <= y) return;
         if (this.data == null) return;
-        if (blendMode == BlendMode.NONE)
-        {
-            this.data.put(y * this.width + x, color);
-            return;
-        }
-        this.data.get(y * this.width + x).blend(color, blendMode);
+        
+        long address = this.data.address() + Integer.toUnsignedLong(y * this.width + x) * this.format.sizeof;
+        BlendKernel.get(blendMode, this.format).blend(color.r(), color.g(), color.b(), color.a(), address, 1);
     }
     
     public void drawPixel(int x, int y, Colorc color)
@@ -2533,12 +2418,21 @@ public class Image
     
     public void fillRectangle(int x, int y, int width, int height, Colorc color, BlendMode blendMode)
     {
-        for (int j = y; j < y + height; j++)
+        if (this.data == null) return;
+        
+        int minX = Math.max(x, 0), maxX = Math.min(x + width, this.width);
+        int minY = Math.max(y, 0), maxY = Math.min(y + height, this.height);
+        if (minX >= maxX || minY >= maxY) return;
+        
+        BlendKernel kernel = BlendKernel.get(blendMode, this.format);
+        
+        int r = color.r(), g = color.g(), b = color.b(), a = color.a();
+        
+        int  bpp     = this.format.sizeof;
+        long address = this.data.address() + Integer.toUnsignedLong(minY * this.width + minX) * bpp;
+        for (int j = minY; j < maxY; j++, address += (long) this.width * bpp)
         {
-            for (int i = x; i < x + width; i++)
-            {
-                drawPixel(i, j, color, blendMode);
-            }
+            kernel.blend(r, g, b, a, address, maxX - minX);
         }
     }
     
@@ -2951,36 +2845,17 @@ public class Image
         int dstBPP    = this.format.sizeof;
         int dstStride = this.width * dstBPP;
         
-        long srcPtrBase = srcI.data.address() + Integer.toUnsignedLong(srcY * srcI.width + srcX) * srcBPP;
-        long dstPtrBase = this.data.address() + Integer.toUnsignedLong(dstY * this.width + dstX) * dstBPP;
+        long srcPtr = srcI.data.address() + Integer.toUnsignedLong(srcY * srcI.width + srcX) * srcBPP;
+        long dstPtr = this.data.address() + Integer.toUnsignedLong(dstY * this.width + dstX) * dstBPP;
         
+        // Same format without blending is a plain copy of each row
+        BlendKernel kernel = BlendKernel.get(blendRequired ? blendMode : BlendMode.NONE, srcI.format, this.format);
         for (int j = 0; j < srcH; j++)
         {
-            long srcPtr = srcPtrBase;
-            long dstPtr = dstPtrBase;
+            kernel.blend(srcPtr, dstPtr, srcW);
             
-            // Fast path: Avoid moving pixel by pixel if no blendMode required and same format
-            if (!blendRequired && srcI.format == this.format)
-            {
-                MemoryUtil.memCopy(srcPtr, dstPtr, srcStride);
-            }
-            else
-            {
-                for (int i = 0; i < srcW; i++)
-                {
-                    Color colSrc = Color.create(srcI.format, srcPtr);
-                    Color colDst = Color.create(this.format, dstPtr);
-                    
-                    // Fast path: Avoid blendMode if source has no alpha to blendMode
-                    if (blendRequired) colDst.blend(colSrc, blendMode);
-                    
-                    dstPtr += dstBPP;
-                    srcPtr += srcBPP;
-                }
-            }
-            
-            srcPtrBase += srcStride;
-            dstPtrBase += dstStride;
+            srcPtr += srcStride;
+            dstPtr += dstStride;
         }
         
         if (copiedSrc) srcI.delete(); // Unload source modified image
@@ -2990,4 +2865,43 @@ public class Image
     {
         drawImage(src, srcX, srcY, srcW, srcH, dstX, dstY, dstW, dstH, BlendMode.NONE);
     }
+    
+    @FunctionalInterface
+    private interface Band
+    {
+        void apply(int start, int end);
+    }
+    
+    /**
+     * Splits a range of rows in half until it is at most {@code grain}
+     * rows long.
+     */
+    private static final class BandTask extends RecursiveAction
+    {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        
+        private final Band band;
+        private final int  start, end, grain;
+        
+        private BandTask(Band band, int start, int end, int grain)
+        {
+            this.band  = band;
+            this.start = start;
+            this.end   = end;
+            this.grain = grain;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if (this.end - this.start <= this.grain)
+            {
+                this.band.apply(this.start, this.end);
+                return;
+            }
+            int mid = (this.start + this.end) >>> 1;
+            invokeAll(new BandTask(this.band, this.start, mid, this.grain), new BandTask(this.band, mid, this.end, this.grain));
+        }
+    }
 }
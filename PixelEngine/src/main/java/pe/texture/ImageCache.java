@@ -0,0 +1,475 @@
+package pe.texture;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.ColorFormat;
+import rutils.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static rutils.IOUtil.getPath;
+import static rutils.IOUtil.readFromFile;
+
+/**
+ * Keeps decoded images and their textures so that loading the same file
+ * again does not read and decode it.
+ * <p>
+ * Entries are keyed by a hash of the file contents, so a file that was
+ * touched but not changed, or the same file under two paths, shares one
+ * entry. The path, modification time and size of each file are remembered
+ * as well, so a repeated load only looks at the file attributes and is not
+ * hashed again until the file changes.
+ * <p>
+ * Images and textures each have a byte budget. When one is exceeded, the
+ * least recently used images are freed, and the least recently used
+ * textures that are not held by a {@link Handle} are deleted.
+ * <p>
+ * Images can be requested from any thread. Textures and
+ * {@link Handle#release()} must only be used on the thread with the GL
+ * context.
+ */
+public final class ImageCache
+{
+    private static final Logger LOGGER = new Logger();
+    
+    private static final Object LOCK = new Object();
+    
+    private static final Map<PathKey, String>        PATHS   = new HashMap<>();
+    private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75F, true); // Least recently used first
+    
+    private static long cpuBudget = 256L << 20;
+    private static long gpuBudget = 256L << 20;
+    
+    private static long cpuBytes;
+    private static long gpuBytes;
+    
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    
+    /**
+     * Gets a copy of the image in a file, decoding it if it is not cached.
+     *
+     * @param filePath The path to the file
+     * @return The image, which must be explicitly deleted
+     */
+    public static @NotNull Image image(@NotNull String filePath)
+    {
+        PathKey pathKey = pathKey(filePath);
+        
+        synchronized (ImageCache.LOCK)
+        {
+            Entry entry = ImageCache.ENTRIES.get(ImageCache.PATHS.get(pathKey));
+            if (entry != null && entry.image != null)
+            {
+                ImageCache.hits++;
+                return entry.image.copy();
+            }
+        }
+        
+        Entry entry = load(filePath, pathKey, false);
+        if (entry == null) return Image.load((ByteBuffer) null, 0, 0, 1, ColorFormat.RGBA);
+        
+        synchronized (ImageCache.LOCK)
+        {
+            if (entry.image != null)
+            {
+                Image image = entry.image.copy();
+                evict(false);
+                return image;
+            }
+        }
+        
+        // The image was evicted by another thread before it was copied, so
+        // it is decoded again without holding the lock
+        Image image = Image.loadFromFile(filePath);
+        if (image.data() == null) return image;
+        
+        synchronized (ImageCache.LOCK)
+        {
+            Image copy = insert(pathKey, entry.key, image).image.copy();
+            evict(false);
+            return copy;
+        }
+    }
+    
+    /**
+     * Gets the texture of the image in a file, creating it if it is not
+     * cached. The texture is not deleted until the handle is released.
+     *
+     * @param filePath The path to the file
+     * @return The handle to the texture
+     */
+    public static @NotNull Handle texture(@NotNull String filePath)
+    {
+        PathKey pathKey = pathKey(filePath);
+        
+        synchronized (ImageCache.LOCK)
+        {
+            Entry entry = ImageCache.ENTRIES.get(ImageCache.PATHS.get(pathKey));
+            if (entry != null && entry.texture != null)
+            {
+                ImageCache.hits++;
+                entry.refs++;
+                return new Handle(entry, entry.texture);
+            }
+        }
+        
+        Entry entry = load(filePath, pathKey, true);
+        if (entry == null) return new Handle(null, Texture.load(0, 0, ColorFormat.RGBA));
+        
+        synchronized (ImageCache.LOCK)
+        {
+            if (entry.texture != null || entry.image != null) return handle(entry);
+        }
+        
+        // The image was evicted by another thread before the texture was
+        // created, so it is decoded again without holding the lock
+        Image image = Image.loadFromFile(filePath);
+        if (image.data() == null)
+        {
+            image.delete();
+            return new Handle(null, Texture.load(0, 0, ColorFormat.RGBA));
+        }
+        
+        synchronized (ImageCache.LOCK)
+        {
+            return handle(insert(pathKey, entry.key, image));
+        }
+    }
+    
+    /**
+     * Frees every cached image and deletes every texture that is not held.
+     * Must be called on the thread with the GL context.
+     */
+    public static void clear()
+    {
+        synchronized (ImageCache.LOCK)
+        {
+            ImageCache.LOGGER.finer("Clearing %s cached images", ImageCache.ENTRIES.size());
+            
+            for (Iterator<Entry> iterator = ImageCache.ENTRIES.values().iterator(); iterator.hasNext(); )
+            {
+                Entry entry = iterator.next();
+                
+                freeImage(entry);
+                if (entry.refs == 0) deleteTexture(entry);
+                
+                if (entry.texture == null) iterator.remove();
+            }
+            ImageCache.PATHS.values().removeIf(key -> !ImageCache.ENTRIES.containsKey(key));
+        }
+    }
+    
+    /**
+     * Sets the most memory that the cache should use. Textures that are held
+     * by a handle are kept even if they are over the budget.
+     *
+     * @param cpuBytes The budget for decoded images, in bytes
+     * @param gpuBytes The budget for textures, in bytes
+     */
+    public static void budget(long cpuBytes, long gpuBytes)
+    {
+        synchronized (ImageCache.LOCK)
+        {
+            ImageCache.cpuBudget = Math.max(0L, cpuBytes);
+            ImageCache.gpuBudget = Math.max(0L, gpuBytes);
+        }
+    }
+    
+    /**
+     * @return The budget for decoded images, in bytes
+     */
+    public static long cpuBudget()
+    {
+        return ImageCache.cpuBudget;
+    }
+    
+    /**
+     * @return The budget for textures, in bytes
+     */
+    public static long gpuBudget()
+    {
+        return ImageCache.gpuBudget;
+    }
+    
+    /**
+     * @return The counters and memory use of the cache
+     */
+    public static @NotNull Stats stats()
+    {
+        synchronized (ImageCache.LOCK)
+        {
+            return new Stats(ImageCache.hits, ImageCache.misses, ImageCache.evictions, ImageCache.cpuBytes, ImageCache.gpuBytes, ImageCache.ENTRIES.size());
+        }
+    }
+    
+    /**
+     * Reads and hashes a file, and decodes it if no entry has the same
+     * contents.
+     *
+     * @param texture If a cached texture is enough, without the image
+     * @return The entry, or {@code null} if the file could not be read
+     */
+    private static @Nullable Entry load(@NotNull String filePath, @NotNull PathKey pathKey, boolean texture)
+    {
+        ByteBuffer fileData = readFromFile(filePath, new int[1], MemoryUtil::memAlloc);
+        if (fileData == null) return null;
+        
+        try
+        {
+            String key = hash(fileData);
+            
+            synchronized (ImageCache.LOCK)
+            {
+                ImageCache.PATHS.put(pathKey, key);
+                
+                Entry entry = ImageCache.ENTRIES.get(key);
+                if (entry != null && (entry.image != null || texture && entry.texture != null))
+                {
+                    ImageCache.hits++;
+                    return entry;
+                }
+            }
+            
+            Image image = Image.decode(fileData, filePath);
+            if (image.data() == null) return null;
+            
+            synchronized (ImageCache.LOCK)
+            {
+                return insert(pathKey, key, image);
+            }
+        }
+        finally
+        {
+            MemoryUtil.memFree(fileData);
+        }
+    }
+    
+    /**
+     * Puts an image that was decoded without holding the lock into its
+     * entry. The lock must be held.
+     *
+     * @return The entry, which may have been added again if it was evicted
+     */
+    private static @NotNull Entry insert(@NotNull PathKey pathKey, @NotNull String key, @NotNull Image image)
+    {
+        ImageCache.misses++;
+        
+        ImageCache.PATHS.put(pathKey, key);
+        
+        Entry entry = ImageCache.ENTRIES.computeIfAbsent(key, Entry::new);
+        if (entry.image == null)
+        {
+            entry.image      = image;
+            entry.imageBytes = bytes(image);
+            ImageCache.cpuBytes += entry.imageBytes;
+        }
+        else
+        {
+            image.delete(); // Decoded by another thread at the same time
+        }
+        return entry;
+    }
+    
+    /**
+     * Holds the texture of an entry, creating it from the image if needed.
+     * The lock must be held.
+     */
+    private static @NotNull Handle handle(@NotNull Entry entry)
+    {
+        if (entry.texture == null)
+        {
+            entry.texture      = Texture.load(entry.image);
+            entry.textureBytes = entry.imageBytes;
+            ImageCache.gpuBytes += entry.textureBytes;
+        }
+        entry.refs++;
+        
+        Handle handle = new Handle(entry, entry.texture);
+        evict(true);
+        return handle;
+    }
+    
+    /**
+     * Frees the least recently used images, and deletes the least recently
+     * used textures that are not held, until both are within budget.
+     */
+    private static void evict(boolean textures)
+    {
+        for (Iterator<Entry> iterator = ImageCache.ENTRIES.values().iterator(); iterator.hasNext(); )
+        {
+            boolean overCpu = ImageCache.cpuBytes > ImageCache.cpuBudget;
+            boolean overGpu = textures && ImageCache.gpuBytes > ImageCache.gpuBudget;
+            if (!overCpu && !overGpu) break;
+            
+            Entry entry = iterator.next();
+            if (overCpu && entry.image != null)
+            {
+                freeImage(entry);
+                ImageCache.evictions++;
+            }
+            if (overGpu && entry.texture != null && entry.refs == 0)
+            {
+                deleteTexture(entry);
+                ImageCache.evictions++;
+            }
+            if (entry.image == null && entry.texture == null) iterator.remove();
+        }
+        ImageCache.PATHS.values().removeIf(key -> !ImageCache.ENTRIES.containsKey(key));
+    }
+    
+    private static void freeImage(@NotNull Entry entry)
+    {
+        if (entry.image == null) return;
+        
+        entry.image.delete();
+        entry.image = null;
+        ImageCache.cpuBytes -= entry.imageBytes;
+    }
+    
+    private static void deleteTexture(@NotNull Entry entry)
+    {
+        if (entry.texture == null) return;
+        
+        entry.texture.delete();
+        entry.texture = null;
+        ImageCache.gpuBytes -= entry.textureBytes;
+    }
+    
+    private static @NotNull PathKey pathKey(@NotNull String filePath)
+    {
+        try
+        {
+            Path path = getPath(filePath);
+            if (path != null) return new PathKey(filePath, Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+        }
+        catch (IOException ignored)
+        {
+        }
+        return new PathKey(filePath, -1L, -1L);
+    }
+    
+    private static @NotNull String hash(@NotNull ByteBuffer fileData)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fileData.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * @return The size of the pixel data of every mipmap level, in bytes
+     */
+    private static long bytes(@NotNull Image image)
+    {
+        ColorFormat format = image.format();
+        
+        long bytes  = 0;
+        int  width  = image.width();
+        int  height = image.height();
+        for (int i = 0; i < image.mipmaps(); i++)
+        {
+            bytes += (long) width * height * format.sizeof;
+            
+            width  = Math.max(width >> 1, 1);
+            height = Math.max(height >> 1, 1);
+        }
+        return bytes;
+    }
+    
+    /**
+     * A reference to a cached texture. The texture must not be deleted
+     * directly, it is deleted by the cache once no handle holds it.
+     */
+    public static final class Handle
+    {
+        private final @Nullable Entry entry; // null if the texture is not cached
+        
+        private @Nullable Texture texture;
+        
+        private Handle(@Nullable Entry entry, @NotNull Texture texture)
+        {
+            this.entry   = entry;
+            this.texture = texture;
+        }
+        
+        /**
+         * @return The texture
+         * @throws IllegalStateException if the handle was released
+         */
+        public @NotNull Texture texture()
+        {
+            if (this.texture == null) throw new IllegalStateException("Handle was released");
+            return this.texture;
+        }
+        
+        /**
+         * Releases the texture. Releasing a handle more than once does
+         * nothing.
+         */
+        public void release()
+        {
+            if (this.texture == null) return;
+            
+            if (this.entry == null)
+            {
+                this.texture.delete();
+            }
+            else
+            {
+                synchronized (ImageCache.LOCK)
+                {
+                    this.entry.refs--;
+                    evict(true);
+                }
+            }
+            this.texture = null;
+        }
+    }
+    
+    /**
+     * @param hits      Loads that did not decode a file
+     * @param misses    Loads that decoded a file
+     * @param evictions Images freed and textures deleted to stay in budget
+     * @param cpuBytes  The size of the cached images
+     * @param gpuBytes  The size of the cached textures
+     * @param entries   The number of cached files
+     */
+    public record Stats(long hits, long misses, long evictions, long cpuBytes, long gpuBytes, int entries) {}
+    
+    private record PathKey(String filePath, long modified, long size) {}
+    
+    private static final class Entry
+    {
+        private final String key;
+        
+        private @Nullable Image   image;
+        private long              imageBytes;
+        private @Nullable Texture texture;
+        private long              textureBytes;
+        private int               refs;
+        
+        private Entry(@NotNull String key)
+        {
+            this.key = key;
+        }
+    }
+}
@@ -6,12 +6,16 @@ import org.lwjgl.opengl.GL33;
 import org.lwjgl.system.CustomBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
+import pe.AssetLoader;
 import pe.color.Color;
 import pe.color.ColorFormat;
+import pe.render.GLReadback;
 import pe.render.GLTexture;
+import pe.render.GLUpload;
 import rutils.Logger;
 
 import java.nio.Buffer;
+import java.util.concurrent.CompletableFuture;
 
 public class Texture extends GLTexture
 {
@@ -47,7 +51,7 @@ public class Texture extends GLTexture
             
             Texture.LOGGER.finer("Load mipmap level %s (%s x %s), size: %s, offset: %s", i, mipWidth, mipHeight, mipSize, mipOffset);
             
-            GL33.glTexImage2D(GL33.GL_TEXTURE_2D, i, format.internalFormat, mipWidth, mipHeight, 0, format.format, GL33.GL_UNSIGNED_BYTE, data + mipOffset);
+            GL33.glTexImage2D(GL33.GL_TEXTURE_2D, i, format.internalFormat, mipWidth, mipHeight, 0, format.format, GL33.GL_UNSIGNED_BYTE, data != MemoryUtil.NULL ? data + mipOffset : MemoryUtil.NULL);
             
             mipWidth >>= 1;
             mipHeight >>= 1;
@@ -111,6 +115,56 @@ public class Texture extends GLTexture
         return texture;
     }
     
+    /**
+     * Creates a texture right away and uploads the image into it over the
+     * next frames, so that a large image does not stall a single frame.
+     *
+     * @param image The image, which must not be changed or deleted until the future completes
+     * @return The future that is completed with the texture once every mipmap level is uploaded
+     * @see GLUpload
+     */
+    public static @NotNull CompletableFuture<Texture> loadStreamed(@NotNull Image image)
+    {
+        Texture texture = load(MemoryUtil.NULL, image.width(), image.height(), image.mipmaps(), image.format());
+        
+        if (image.data() == null) return CompletableFuture.completedFuture(texture);
+        
+        long data = image.data().address();
+        
+        CompletableFuture<?>[] levels = new CompletableFuture<?>[image.mipmaps()];
+        
+        int mipWidth  = image.width();
+        int mipHeight = image.height();
+        for (int i = 0; i < levels.length; i++)
+        {
+            levels[i] = GLUpload.upload(texture, i, data, 0, 0, mipWidth, mipHeight);
+            
+            data += (long) mipWidth * mipHeight * image.format().sizeof;
+            
+            if ((mipWidth >>= 1) < 1) mipWidth = 1;
+            if ((mipHeight >>= 1) < 1) mipHeight = 1;
+        }
+        return CompletableFuture.allOf(levels).thenApply(v -> texture);
+    }
+    
+    /**
+     * Decodes the file on a background thread, then creates the texture on
+     * the render thread and streams the pixels into it.
+     *
+     * @param filePath The path to the file
+     * @return The future that is completed with the texture on the render thread
+     * @see AssetLoader
+     * @see #loadStreamed(Image)
+     */
+    public static @NotNull CompletableFuture<Texture> loadAsync(@NotNull String filePath)
+    {
+        return AssetLoader.load(() -> Image.loadFromFile(filePath), image -> {
+            CompletableFuture<Texture> texture = loadStreamed(image);
+            texture.whenComplete((t, e) -> image.delete());
+            return texture;
+        }, Image::delete).thenCompose(texture -> texture);
+    }
+    
     // --------------------
     // ----- Instance -----
     // --------------------
@@ -136,6 +190,21 @@ public class Texture extends GLTexture
         GL33.glTexParameteri(GL33.GL_TEXTURE_2D, GL33.GL_TEXTURE_MIN_FILTER, mag.ref);
     }
     
+    /**
+     * Sets where the red, green, blue and alpha values that shaders sample
+     * are read from. Single channel textures can use this to be sampled as
+     * a mask, e.g. {@code swizzle(ONE, ONE, ONE, RED)}.
+     */
+    public void swizzle(@NotNull TextureSwizzle r, @NotNull TextureSwizzle g, @NotNull TextureSwizzle b, @NotNull TextureSwizzle a)
+    {
+        GLTexture.bind(this);
+        
+        try (MemoryStack stack = MemoryStack.stackPush())
+        {
+            GL33.glTexParameteriv(GL33.GL_TEXTURE_2D, GL33.GL_TEXTURE_SWIZZLE_RGBA, stack.ints(r.ref, g.ref, b.ref, a.ref));
+        }
+    }
+    
     /**
      * Read texture pixel data.
      * <p>
@@ -187,6 +256,20 @@ public class Texture extends GLTexture
         return pixels;
     }
     
+    /**
+     * Read texture pixel data without waiting for the GPU.
+     * <p>
+     * The pixels are copied into a pixel pack buffer and are handed back by
+     * {@link GLReadback#poll()}, usually a frame or two later.
+     *
+     * @return The future that is completed with the data of every mipmap
+     * level on the render thread. The buffer must be explicitly freed.
+     */
+    public @NotNull CompletableFuture<Color.Buffer> getPixelDataAsync()
+    {
+        return GLReadback.read(this);
+    }
+    
     /**
      * Update GPU texture rectangle with new data
      * <p>
@@ -205,6 +288,34 @@ public class Texture extends GLTexture
         GL33.glTexSubImage2D(this.type, 0, x, y, width, height, this.format.format, GL33.GL_UNSIGNED_BYTE, pixels);
     }
     
+    /**
+     * Update GPU texture rectangle with new data
+     * <p>
+     * NOTE: pixels data must be tightly packed in texture.format
+     */
+    public void update(@NotNull Buffer data, int x, int y, int width, int height)
+    {
+        GL33.glTexSubImage2D(this.type, 0, x, y, width, height, this.format.format, GL33.GL_UNSIGNED_BYTE, MemoryUtil.memAddress(data));
+    }
+    
+    /**
+     * Update GPU texture rectangle with new data over the next frames
+     * <p>
+     * NOTE: pixels data must match texture.format and stay allocated until
+     * the future completes
+     *
+     * @return The future that is completed once every row is uploaded
+     * @see GLUpload
+     */
+    public @NotNull CompletableFuture<Texture> updateAsync(@NotNull Color.Buffer data, int x, int y, int width, int height)
+    {
+        if (this.format != data.format())
+        {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Data format (" + data.format() + ") does not match texture (" + this + ")"));
+        }
+        return GLUpload.upload(this, 0, MemoryUtil.memAddress(data), x, y, width, height).thenApply(v -> this);
+    }
+    
     /**
      * Update GPU texture with new data
      * <p>
@@ -225,6 +336,24 @@ public class Texture extends GLTexture
         return Image.load(getPixelData(), this.width, this.height, this.mipmaps, this.format);
     }
     
+    /**
+     * Get pixel data from GPU texture without waiting for the GPU and return
+     * an Image
+     * <p>
+     * NOTE: Compressed texture formats not supported
+     *
+     * @see #getPixelDataAsync()
+     */
+    public @NotNull CompletableFuture<Image> toImageAsync()
+    {
+        int         width   = this.width;
+        int         height  = this.height;
+        int         mipmaps = this.mipmaps;
+        ColorFormat format  = this.format;
+        
+        return getPixelDataAsync().thenApply(data -> Image.load(data, width, height, mipmaps, format));
+    }
+    
     /**
      * Generate mipmap data for selected texture
      */
@@ -0,0 +1,285 @@
+package pe.texture;
+
+import org.jetbrains.annotations.NotNull;
+import pe.color.Color;
+import pe.color.ColorFormat;
+import pe.render.GLBatch;
+import pe.render.GLTexture;
+import rutils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs many {@link Image}s into a few large {@link Texture} pages so that
+ * they can be drawn without changing texture.
+ * <p>
+ * Images are added one at a time and can be removed again, which frees
+ * their space for later images. A new page is created when an image does
+ * not fit on any existing page.
+ */
+public class TextureAtlas
+{
+    private static final Logger LOGGER = new Logger();
+    
+    // --------------------
+    // ----- Instance -----
+    // --------------------
+    
+    final int pageWidth;
+    final int pageHeight;
+    
+    private final int         padding;
+    private final ColorFormat format;
+    
+    private final List<Page> pages;
+    
+    private boolean deleted;
+    
+    /**
+     * Creates an empty atlas.
+     *
+     * @param pageWidth  The width of each page
+     * @param pageHeight The height of each page
+     * @param padding    The empty space left around each image so that
+     *                   filtering does not bleed between neighbours
+     * @param format     The format of the pages. Images are converted to it.
+     */
+    public TextureAtlas(int pageWidth, int pageHeight, int padding, @NotNull ColorFormat format)
+    {
+        if (pageWidth <= 0 || pageHeight <= 0) throw new IllegalArgumentException("Invalid Page Size: " + pageWidth + "x" + pageHeight);
+        if (padding < 0) throw new IllegalArgumentException("Invalid Padding: " + padding);
+        
+        this.pageWidth  = pageWidth;
+        this.pageHeight = pageHeight;
+        
+        this.padding = padding;
+        this.format  = format;
+        
+        this.pages = new ArrayList<>();
+        
+        TextureAtlas.LOGGER.fine("Created", this);
+    }
+    
+    public TextureAtlas(int pageWidth, int pageHeight)
+    {
+        this(pageWidth, pageHeight, 1, ColorFormat.RGBA);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "TextureAtlas{" + "pageSize=" + this.pageWidth + "x" + this.pageHeight + ", padding=" + this.padding + ", format=" + this.format + ", pages=" + this.pages.size() + (this.deleted ? ", deleted" : "") + '}';
+    }
+    
+    /**
+     * @return If {@link #delete()} was called
+     */
+    public boolean deleted()
+    {
+        return this.deleted;
+    }
+    
+    /**
+     * @return The number of pages
+     */
+    public int pageCount()
+    {
+        return this.pages.size();
+    }
+    
+    /**
+     * @return The texture of a page
+     * @throws IllegalStateException if the atlas was deleted
+     */
+    public @NotNull Texture page(int index)
+    {
+        checkDeleted();
+        
+        return this.pages.get(index).texture;
+    }
+    
+    /**
+     * @return The fraction of a page in use, from 0 to 1
+     * @throws IllegalStateException if the atlas was deleted
+     */
+    public double occupancy(int index)
+    {
+        checkDeleted();
+        
+        return this.pages.get(index).packer.occupancy();
+    }
+    
+    /**
+     * Packs an image into the atlas and uploads it.
+     *
+     * @param image The image. Only the first mipmap is used.
+     * @return The handle to the packed image
+     * @throws IllegalArgumentException if the image is larger than a page
+     * @throws IllegalStateException    if the atlas was deleted
+     */
+    public @NotNull AtlasRegion add(@NotNull Image image)
+    {
+        checkDeleted();
+        
+        Color.Buffer data = image.data();
+        if (data == null) throw new IllegalArgumentException("Image has no data: " + image);
+        
+        int width  = image.width();
+        int height = image.height();
+        
+        int slotWidth  = width + this.padding * 2;
+        int slotHeight = height + this.padding * 2;
+        if (slotWidth > this.pageWidth || slotHeight > this.pageHeight)
+        {
+            throw new IllegalArgumentException("Image does not fit in a page: " + image);
+        }
+        
+        int  index = 0;
+        long slot  = -1L;
+        for (int n = this.pages.size(); index < n; index++)
+        {
+            slot = this.pages.get(index).packer.insert(slotWidth, slotHeight);
+            if (slot >= 0) break;
+        }
+        if (slot < 0)
+        {
+            Page page = new Page(this.pageWidth, this.pageHeight, this.format);
+            this.pages.add(page);
+            
+            TextureAtlas.LOGGER.finer("Added Page %s to %s", index, this);
+            
+            slot = page.packer.insert(slotWidth, slotHeight);
+        }
+        
+        Page page = this.pages.get(index);
+        
+        AtlasRegion region = new AtlasRegion(this, index, (int) (slot >>> 32) + this.padding, (int) slot + this.padding, width, height);
+        page.regions.add(region);
+        
+        Color.Buffer pixels = data.format() == this.format ? data : data.copy(this.format);
+        
+        // Sprites already in the batch still sample the page as it is
+        GLBatch.draw();
+        
+        GLTexture.bind(page.texture);
+        page.texture.update(pixels, region.x, region.y, width, height);
+        
+        if (pixels != data) pixels.free();
+        
+        TextureAtlas.LOGGER.finest("Added %s to %s", region, this);
+        
+        return region;
+    }
+    
+    /**
+     * Removes an image from the atlas. Its space is cleared and can be used
+     * by later images, and the region is no longer valid.
+     *
+     * @param region The handle returned by {@link #add(Image)}
+     * @throws IllegalStateException if the atlas was deleted
+     */
+    public void remove(@NotNull AtlasRegion region)
+    {
+        checkDeleted();
+        
+        if (region.atlas != this) throw new IllegalArgumentException("Region is not from this atlas: " + region);
+        if (!region.valid) return;
+        
+        Page page = this.pages.get(region.page);
+        
+        int slotX      = region.x - this.padding;
+        int slotY      = region.y - this.padding;
+        int slotWidth  = region.width + this.padding * 2;
+        int slotHeight = region.height + this.padding * 2;
+        
+        // Clear the old pixels so that they do not show in the padding of the next image
+        Color.Buffer clear = Color.calloc(this.format, slotWidth * slotHeight);
+        GLBatch.draw();
+        GLTexture.bind(page.texture);
+        page.texture.update(clear, slotX, slotY, slotWidth, slotHeight);
+        clear.free();
+        
+        page.packer.remove(slotX, slotY, slotWidth, slotHeight);
+        page.regions.remove(region);
+        
+        region.valid = false;
+        
+        TextureAtlas.LOGGER.finest("Removed %s from %s", region, this);
+    }
+    
+    /**
+     * Removes every image from the atlas, keeping the pages.
+     *
+     * @throws IllegalStateException if the atlas was deleted
+     */
+    public void clear()
+    {
+        checkDeleted();
+        
+        TextureAtlas.LOGGER.finer("Clearing", this);
+        
+        GLBatch.draw();
+        
+        for (Page page : this.pages)
+        {
+            for (AtlasRegion region : page.regions) region.valid = false;
+            page.regions.clear();
+            
+            page.packer.clear();
+            
+            Color.Buffer clear = Color.calloc(this.format, this.pageWidth * this.pageHeight);
+            GLTexture.bind(page.texture);
+            page.texture.update(clear);
+            clear.free();
+        }
+    }
+    
+    /**
+     * Deletes every page. All regions are no longer valid and the atlas
+     * cannot be used again.
+     */
+    public void delete()
+    {
+        if (this.deleted) return;
+        
+        TextureAtlas.LOGGER.fine("Deleting", this);
+        
+        // Sprites already in the batch still sample the pages
+        GLBatch.draw();
+        
+        for (Page page : this.pages)
+        {
+            for (AtlasRegion region : page.regions) region.valid = false;
+            page.regions.clear();
+            
+            page.texture.delete();
+        }
+        this.pages.clear();
+        
+        this.deleted = true;
+    }
+    
+    private void checkDeleted()
+    {
+        if (this.deleted) throw new IllegalStateException("Atlas was deleted: " + this);
+    }
+    
+    private static final class Page
+    {
+        private final Texture           texture;
+        private final AtlasPacker       packer;
+        private final List<AtlasRegion> regions;
+        
+        private Page(int width, int height, @NotNull ColorFormat format)
+        {
+            // Start out transparent
+            Color.Buffer clear = Color.calloc(format, width * height);
+            this.texture = Texture.load(clear, width, height, 1, format);
+            clear.free();
+            
+            this.packer  = new AtlasPacker(width, height);
+            this.regions = new ArrayList<>();
+        }
+    }
+}
@@ -6,9 +6,12 @@ import org.lwjgl.opengl.GL33;
 import org.lwjgl.system.MemoryUtil;
 import pe.color.Color;
 import pe.color.ColorFormat;
+import pe.render.GLReadback;
 import pe.render.GLTexture;
 import rutils.Logger;
 
+import java.util.concurrent.CompletableFuture;
+
 public class TextureDepthStencil extends Texture
 {
     private static final Logger LOGGER = new Logger();
@@ -57,12 +60,24 @@ public class TextureDepthStencil extends Texture
         return pixels;
     }
     
+    @Override
+    public @NotNull CompletableFuture<Color.Buffer> getPixelDataAsync()
+    {
+        return GLReadback.read(this, GL33.GL_DEPTH_STENCIL, GL33.GL_UNSIGNED_INT_24_8);
+    }
+    
     @Override
     public void update(Color.@NotNull Buffer data, int x, int y, int width, int height)
     {
         throw new UnsupportedOperationException("Not supported for TextureDepthStencil");
     }
     
+    @Override
+    public @NotNull CompletableFuture<Texture> updateAsync(Color.@NotNull Buffer data, int x, int y, int width, int height)
+    {
+        throw new UnsupportedOperationException("Not supported for TextureDepthStencil");
+    }
+    
     @Override
     public void genMipmaps()
     {
@@ -0,0 +1,21 @@
+package pe.texture;
+
+import org.lwjgl.opengl.GL33;
+
+public enum TextureSwizzle
+{
+    RED(GL33.GL_RED),
+    GREEN(GL33.GL_GREEN),
+    BLUE(GL33.GL_BLUE),
+    ALPHA(GL33.GL_ALPHA),
+    ZERO(GL33.GL_ZERO),
+    ONE(GL33.GL_ONE),
+    ;
+    
+    public final int ref;
+    
+    TextureSwizzle(int ref)
+    {
+        this.ref = ref;
+    }
+}
@@ -0,0 +1,67 @@
+package pe;
+
+import pe.color.Color;
+import pe.color.ColorFormat;
+import pe.render.GL;
+import pe.render.GLBatch;
+import pe.render.GLFramebuffer;
+import rutils.Logger;
+
+import java.util.logging.Level;
+
+/**
+ * Checks that a deferred batch does not move a draw call across one that it
+ * overlaps.
+ * <p>
+ * A horizontal line is drawn, then a blended quad, then a second horizontal
+ * line on top of the quad. Both lines have the same texture and mode, so the
+ * second one would be merged into the first if the quad did not stop it.
+ * Lines have no area, so this only works if zero area bounds still overlap.
+ * The pixel under the second line must be the line color, not the quad
+ * blended over it.
+ */
+public class BatchOrderTest extends Engine
+{
+    @Override
+    protected void setup()
+    {
+        
+    }
+    
+    @Override
+    protected void draw(double elapsedTime)
+    {
+        Draw.clearBackground(Color.BLACK);
+        
+        GLBatch.deferred(true);
+        
+        Draw.line2D().point0(10, 10.5).point1(90, 10.5).thickness(1.0).color(255, 255, 255, 255).draw();
+        Draw.fillRect2D().point(0, 20).size(100, 60).color(0, 0, 255, 128).draw();
+        Draw.line2D().point0(10, 50.5).point1(90, 50.5).thickness(1.0).color(255, 255, 255, 255).draw();
+        
+        GLBatch.deferred(false);
+        
+        Color.Buffer pixel = GL.readBackBuffer(50, GLFramebuffer.currentHeight() - 1 - 50, 1, 1, ColorFormat.RGB);
+        
+        int r = pixel.get(0).r();
+        int g = pixel.get(0).g();
+        int b = pixel.get(0).b();
+        pixel.free();
+        
+        System.out.printf("Pixel under the second line: (%s, %s, %s) %s%n", r, g, b, r == 255 && g == 255 && b == 255 ? "PASSED" : "FAILED");
+        
+        Engine.stop();
+    }
+    
+    @Override
+    protected void destroy()
+    {
+        
+    }
+    
+    public static void main(String[] args)
+    {
+        Logger.setLevel(Level.INFO);
+        new BatchOrderTest().start(100, 100, 1, 1);
+    }
+}
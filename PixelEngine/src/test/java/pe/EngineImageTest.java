@@ -0,0 +1,87 @@
+package pe;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.system.MemoryUtil;
+import pe.color.Color;
+import pe.texture.Image;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Exports images as {@code .engine_img} files and loads them back, with and
+ * without compression, and checks that the pixels are the same. An edited
+ * image is also written back over the file that it was loaded from.
+ */
+public class EngineImageTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        Files.createDirectories(Path.of("out"));
+        
+        Image image = Image.genColorGradient(67, 45, Color.RED, Color.GREEN, Color.BLUE, Color.WHITE).genMipmaps();
+        
+        roundTrip(image, "out/gradient.engine_img", false);
+        roundTrip(image, "out/gradient_deflate.engine_img", true);
+        
+        image.delete();
+        
+        // An uncompressed file is mapped when loaded, so this writes the image back over the file it is mapped from
+        Image mapped = Image.loadFromFile("out/gradient.engine_img");
+        mapped.fillRectangle(10, 10, 20, 20, Color.MAGENTA);
+        
+        roundTrip(mapped, "out/gradient.engine_img", false);
+        
+        mapped.delete();
+        
+        System.out.println("All round trips passed");
+    }
+    
+    private static void roundTrip(@NotNull Image image, @NotNull String fileName, boolean compress)
+    {
+        if (!image.exportEngineImage(fileName, compress)) throw new IllegalStateException("Could not export " + fileName);
+        
+        Image loaded = Image.loadFromFile(fileName);
+        try
+        {
+            check(image, loaded, fileName);
+        }
+        finally
+        {
+            loaded.delete();
+        }
+    }
+    
+    private static void check(@NotNull Image expected, @NotNull Image actual, @NotNull String fileName)
+    {
+        if (actual.width() != expected.width() || actual.height() != expected.height() || actual.mipmaps() != expected.mipmaps() || actual.format() != expected.format())
+        {
+            throw new IllegalStateException("Header differs for " + fileName + ": " + actual);
+        }
+        if (!pixels(expected).equals(pixels(actual))) throw new IllegalStateException("Pixels differ for " + fileName);
+    }
+    
+    /**
+     * @return The pixels of every mipmap level
+     */
+    private static @NotNull ByteBuffer pixels(@NotNull Image image)
+    {
+        Color.Buffer data = image.data();
+        if (data == null) throw new IllegalStateException("Image has no data: " + image);
+        
+        int size   = 0;
+        int width  = image.width();
+        int height = image.height();
+        for (int i = 0; i < image.mipmaps(); i++)
+        {
+            size += width * height * image.format().sizeof;
+            
+            width  = Math.max(width >> 1, 1);
+            height = Math.max(height >> 1, 1);
+        }
+        if (size > data.capacity() * image.format().sizeof) throw new IllegalStateException("Image is missing mipmaps: " + image);
+        
+        return MemoryUtil.memByteBuffer(data.address(), size);
+    }
+}
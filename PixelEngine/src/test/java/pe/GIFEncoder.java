@@ -811,7 +811,7 @@ public class GIFEncoder
         int transparentIndex();
     }
     
-    private static class LZWEncoder
+    static class LZWEncoder
     {
         private static final int EOF = -1;
         
@@ -0,0 +1,50 @@
+package pe;
+
+import org.jetbrains.annotations.NotNull;
+import pe.font.CharData;
+import pe.font.Font;
+import pe.font.FontSingle;
+
+/**
+ * Checks the boxes of glyphs in signed distance field fonts.
+ * <p>
+ * A space has no outline, so no distance field is generated for it. Its box
+ * must be empty and sit on the baseline at the pen position, the same as in
+ * a coverage font, instead of whatever was left on the stack. A letter must
+ * still get a box that holds it.
+ * <p>
+ * Boxes are glyph metrics, which never touch the atlas, so this runs without
+ * a window. Measuring text must not need one either.
+ */
+public class GlyphBoxTest
+{
+    public static void main(String[] args)
+    {
+        FontSingle font = Font.register("font/PressStart2P/PressStart2P.ttf", true, false, false, true);
+        
+        for (int size : new int[] {8, 24, 96})
+        {
+            CharData space = font.charData(' ', size);
+            if (space.x0Unscaled() != 0.0 || space.x1Unscaled() != 0.0 || space.y0Unscaled() != font.ascentUnscaled || space.y1Unscaled() != font.ascentUnscaled)
+            {
+                throw new IllegalStateException("Space box is not empty at size " + size + ": " + box(space));
+            }
+            
+            CharData letter = font.charData('A', size);
+            if (letter.x0Unscaled() >= letter.x1Unscaled() || letter.y0Unscaled() >= letter.y1Unscaled())
+            {
+                throw new IllegalStateException("Letter box is empty at size " + size + ": " + box(letter));
+            }
+            
+            double width = font.getTextWidth("A A", size);
+            if (width <= 0.0) throw new IllegalStateException("Text has no width at size " + size + ": " + width);
+        }
+        
+        System.out.println("Glyph boxes passed");
+    }
+    
+    private static @NotNull String box(@NotNull CharData data)
+    {
+        return "(" + data.x0Unscaled() + ", " + data.y0Unscaled() + ") - (" + data.x1Unscaled() + ", " + data.y1Unscaled() + ")";
+    }
+}
@@ -0,0 +1,130 @@
+package pe;
+
+import pe.color.Color;
+import pe.render.GLBatch;
+import pe.texture.Image;
+import pe.texture.Texture;
+import rutils.Logger;
+
+import java.util.Random;
+import java.util.logging.Level;
+
+/**
+ * Draws {@link #SPRITES} sprites per frame, alternating every
+ * {@link #FRAMES} frames between {@link Draw#drawTexture2D()} and
+ * {@link Draw#drawTextureInstanced2D()}, and prints the CPU time to submit
+ * and flush them along with how much vertex data was uploaded.
+ * <p>
+ * Needs a GL context, so it opens a small window, but nothing has to be
+ * looked at. It stops after {@link #RUNS} runs of each path.
+ */
+public class InstancedSpriteBenchmark extends Engine
+{
+    private static final int SPRITES = 10_000;
+    private static final int FRAMES  = 120;
+    private static final int RUNS    = 3;
+    
+    private static final int VERTEX_SIZE   = 64; // VertexLayout.FULL_3D
+    private static final int INSTANCE_SIZE = 48;
+    
+    private Texture texture;
+    
+    private double[] x, y, angle;
+    
+    private int frame, run;
+    
+    private long time;
+    private long vertices, instances;
+    
+    @Override
+    protected void setup()
+    {
+        Image image = Image.genColorGradient(16, 16, Color.BLUE, Color.MAGENTA, Color.CYAN, Color.WHITE);
+        this.texture = Texture.load(image);
+        image.delete();
+        
+        Random random = new Random(1337);
+        
+        this.x     = new double[SPRITES];
+        this.y     = new double[SPRITES];
+        this.angle = new double[SPRITES];
+        for (int i = 0; i < SPRITES; i++)
+        {
+            this.x[i]     = random.nextDouble() * 400;
+            this.y[i]     = random.nextDouble() * 400;
+            this.angle[i] = random.nextDouble() * Math.PI * 2;
+        }
+    }
+    
+    @Override
+    protected void draw(double elapsedTime)
+    {
+        Draw.clearBackground(Color.BACKGROUND_GRAY);
+        
+        boolean instanced = (this.run & 1) == 1;
+        
+        // Flush anything that is not part of the measurement
+        GLBatch.stats();
+        
+        long start = System.nanoTime();
+        if (instanced)
+        {
+            for (int i = 0; i < SPRITES; i++)
+            {
+                Draw.drawTextureInstanced2D()
+                    .texture(this.texture)
+                    .dst(this.x[i], this.y[i], 16, 16)
+                    .rotationOrigin(8, 8)
+                    .rotationAngle(this.angle[i])
+                    .draw();
+            }
+        }
+        else
+        {
+            for (int i = 0; i < SPRITES; i++)
+            {
+                Draw.drawTexture2D()
+                    .texture(this.texture)
+                    .dst(this.x[i], this.y[i], 16, 16)
+                    .rotationOrigin(8, 8)
+                    .rotationAngle(this.angle[i])
+                    .draw();
+            }
+        }
+        GLBatch.BatchStats stats = GLBatch.stats();
+        this.time += System.nanoTime() - start;
+        
+        this.vertices += stats.vertices();
+        this.instances += stats.instances();
+        
+        if (++this.frame == FRAMES)
+        {
+            System.out.printf("%-10s %,8d sprites: %8.3f ms/frame, %,9d vertices/frame, %,9d instances/frame, %,10d bytes/frame%n",
+                              instanced ? "instanced" : "vertices",
+                              SPRITES,
+                              this.time / 1_000_000.0 / FRAMES,
+                              this.vertices / FRAMES,
+                              this.instances / FRAMES,
+                              (this.vertices * VERTEX_SIZE + this.instances * INSTANCE_SIZE) / FRAMES);
+            
+            this.frame     = 0;
+            this.time      = 0;
+            this.vertices  = 0;
+            this.instances = 0;
+            
+            if (++this.run == RUNS * 2) Engine.stop();
+        }
+    }
+    
+    @Override
+    protected void destroy()
+    {
+        this.texture.delete();
+    }
+    
+    public static void main(String[] args)
+    {
+        Logger.setLevel(Level.INFO);
+        new InstancedSpriteBenchmark().start(400, 400, 2, 2);
+    }
+}
@@ -0,0 +1,159 @@
+package pe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the LZW throughput of {@link EXT_GIF.LZW} against the original
+ * stream based encoder in {@link GIFEncoder}, in MB/s of indexed pixels.
+ * <p>
+ * Three 1920x1080 frames are used: flat areas like a user interface, a
+ * dithered gradient and noise. Before timing, the code streams of both
+ * encoders are checked to be the same, since they only differ in how the
+ * sub-blocks are cut. The new encoder is then run on one thread per core
+ * to show how it scales when frames are compressed in parallel.
+ */
+public class LZWBenchmark
+{
+    private static final int WIDTH  = 1920;
+    private static final int HEIGHT = 1080;
+    
+    private static final int WARMUP = 10;
+    private static final int RUNS   = 30;
+    
+    public static void main(String[] args) throws Exception
+    {
+        byte[][] frames = {flat(), gradient(), noise()};
+        String[] names  = {"flat", "gradient", "noise"};
+        
+        EXT_GIF.LZW lzw = new EXT_GIF.LZW();
+        
+        for (int i = 0; i < frames.length; i++)
+        {
+            byte[] expected = codes(legacy(frames[i]));
+            byte[] actual   = codes(current(lzw, frames[i]));
+            if (!Arrays.equals(expected, actual)) throw new IllegalStateException("Code streams differ for " + names[i]);
+        }
+        
+        for (int i = 0; i < frames.length; i++)
+        {
+            byte[] frame = frames[i];
+            
+            double legacy  = throughput(() -> legacy(frame));
+            double current = throughput(() -> current(lzw, frame));
+            
+            System.out.printf("%-8s legacy %8.1f MB/s, current %8.1f MB/s, %5.2fx, %,9d bytes%n", names[i], legacy, current, current / legacy, current(lzw, frame).length);
+        }
+        
+        int threads = Runtime.getRuntime().availableProcessors();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            long start = System.nanoTime();
+            
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++)
+            {
+                futures[t] = executor.submit(() -> {
+                    EXT_GIF.LZW local = new EXT_GIF.LZW();
+                    for (int run = 0; run < RUNS; run++)
+                    {
+                        for (byte[] frame : frames) local.encode(frame, 8);
+                    }
+                });
+            }
+            for (Future<?> future : futures) future.get();
+            
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            double bytes   = (double) threads * RUNS * frames.length * WIDTH * HEIGHT;
+            
+            System.out.printf("%d threads: %8.1f MB/s%n", threads, bytes / seconds / 1_000_000.0);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+    
+    private static double throughput(Encoder encoder) throws IOException
+    {
+        for (int i = 0; i < WARMUP; i++) encoder.encode();
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) encoder.encode();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        
+        return (double) RUNS * WIDTH * HEIGHT / seconds / 1_000_000.0;
+    }
+    
+    private static byte[] legacy(byte[] frame) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new GIFEncoder.LZWEncoder(WIDTH, HEIGHT, frame, 8).encode(stream);
+        return stream.toByteArray();
+    }
+    
+    private static byte[] current(EXT_GIF.LZW lzw, byte[] frame)
+    {
+        ByteBuffer data = lzw.encode(frame, 8);
+        return Arrays.copyOf(data.array(), data.limit());
+    }
+    
+    /**
+     * @return The compressed codes without the code size byte and the
+     * sub-block lengths
+     */
+    private static byte[] codes(byte[] data)
+    {
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        for (int i = 1; data[i] != 0; i += (data[i] & 0xFF) + 1) codes.write(data, i + 1, data[i] & 0xFF);
+        return codes.toByteArray();
+    }
+    
+    private static byte[] flat()
+    {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                frame[y * WIDTH + x] = (byte) ((x / 240) * 8 + (y / 120));
+            }
+        }
+        return frame;
+    }
+    
+    private static byte[] gradient()
+    {
+        Random random = new Random(1337);
+        
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                frame[y * WIDTH + x] = (byte) ((x + y) * 255 / (WIDTH + HEIGHT) + random.nextInt(2));
+            }
+        }
+        return frame;
+    }
+    
+    private static byte[] noise()
+    {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        new Random(1337).nextBytes(frame);
+        return frame;
+    }
+    
+    private interface Encoder
+    {
+        void encode() throws IOException;
+    }
+}
@@ -0,0 +1,96 @@
+package pe;
+
+import pe.color.Color;
+import pe.font.TextFormat;
+import rutils.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+
+/**
+ * Draws a debug HUD of {@link #LINES} formatted lines every frame and
+ * prints how many bytes the render thread allocated per frame while doing
+ * it, along with the CPU time.
+ * <p>
+ * The glyphs are cached during the first {@link #WARMUP} frames. After
+ * that the text path should not allocate anything, so a number above zero
+ * means something started creating garbage again. It stops after
+ * {@link #RUNS} runs of {@link #FRAMES} frames.
+ */
+public class TextAllocationBenchmark extends Engine
+{
+    private static final int LINES  = 40;
+    private static final int WARMUP = 10;
+    private static final int FRAMES = 120;
+    private static final int RUNS   = 5;
+    
+    private com.sun.management.ThreadMXBean threads;
+    
+    private String hud;
+    
+    private int frame, run;
+    
+    private long time;
+    private long bytes;
+    
+    @Override
+    protected void setup()
+    {
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++)
+        {
+            if (i > 0) builder.append('\n');
+            builder.append(TextFormat.COLOR_YELLOW).append("Line ").append(i).append(TextFormat.COLOR_RESET);
+            builder.append(": The quick brown fox jumps over the lazy dog ");
+            builder.append(TextFormat.UNDERLINE_ON).append("0123456789").append(TextFormat.UNDERLINE_OFF);
+        }
+        this.hud = builder.toString();
+        
+        System.out.printf("%,d characters per frame%n", this.hud.length());
+    }
+    
+    @Override
+    protected void draw(double elapsedTime)
+    {
+        Draw.clearBackground(Color.BACKGROUND_GRAY);
+        
+        long thread = Thread.currentThread().getId();
+        
+        long allocated = this.threads.getThreadAllocatedBytes(thread);
+        long start     = System.nanoTime();
+        
+        Draw.drawText2D().text(this.hud).point(4, 4).size(8).draw();
+        
+        long end = System.nanoTime();
+        
+        if (this.frame++ < WARMUP) return;
+        
+        this.time += end - start;
+        this.bytes += this.threads.getThreadAllocatedBytes(thread) - allocated;
+        
+        if (this.frame == WARMUP + FRAMES)
+        {
+            System.out.printf("run %d: %8.3f ms/frame, %,10d bytes/frame%n", this.run, this.time / 1_000_000.0 / FRAMES, this.bytes / FRAMES);
+            
+            this.frame = WARMUP;
+            this.time  = 0;
+            this.bytes = 0;
+            
+            if (++this.run == RUNS) Engine.stop();
+        }
+    }
+    
+    @Override
+    protected void destroy()
+    {
+        
+    }
+    
+    public static void main(String[] args)
+    {
+        Logger.setLevel(Level.INFO);
+        new TextAllocationBenchmark().start(640, 400, 2, 2);
+    }
+}